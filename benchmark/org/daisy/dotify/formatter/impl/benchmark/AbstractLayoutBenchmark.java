@@ -0,0 +1,88 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.daisy.dotify.api.formatter.Formatter;
+import org.daisy.dotify.api.formatter.FormatterException;
+import org.daisy.dotify.api.obfl.ObflParserException;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Provides a base for benchmarks that measure the layout of a parsed
+ * document, that is to say the time it takes to write a formatter.</p>
+ *
+ * <p>The document is parsed again before each invocation, since a formatter
+ * can only be written once. Layout of the smallest documents takes a
+ * few milliseconds, which is long enough for a per invocation setup not
+ * to affect the results.</p>
+ *
+ * <p>By default, documents of up to 1000 pages are measured. Larger documents
+ * can be measured by setting the parameter on the command line,
+ * e.g. <code>-p pages=10000</code>.</p>
+ *
+ * @author Joel Håkansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public abstract class AbstractLayoutBenchmark {
+	/**
+	 * The approximate number of pages in the document.
+	 */
+	@Param({"10", "100", "1000"})
+	public int pages;
+	private SyntheticObfl obfl;
+	private Formatter formatter;
+
+	/**
+	 * Creates the document to use.
+	 * @param pages the approximate number of pages
+	 * @return the document
+	 */
+	protected abstract SyntheticObfl newDocument(int pages);
+
+	/**
+	 * Generates the document.
+	 */
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		obfl = newDocument(pages);
+		obfl.toBytes();
+	}
+
+	/**
+	 * Parses the document.
+	 * @throws ObflParserException if the document could not be parsed
+	 * @throws XMLStreamException if the document could not be read
+	 * @throws FormatterException if the formatter could not be configured
+	 */
+	@Setup(Level.Invocation)
+	public void setupInvocation() throws ObflParserException, XMLStreamException, FormatterException {
+		formatter = Documents.parse(obfl);
+	}
+
+	/**
+	 * Lays out the document.
+	 * @return the number of rows
+	 */
+	protected int layout() {
+		Documents.NullMediaWriter writer = new Documents.NullMediaWriter();
+		formatter.write(writer);
+		return writer.getRowCount();
+	}
+}
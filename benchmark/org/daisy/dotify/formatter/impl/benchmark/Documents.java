@@ -0,0 +1,167 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.daisy.dotify.api.formatter.Formatter;
+import org.daisy.dotify.api.formatter.FormatterException;
+import org.daisy.dotify.api.formatter.FormatterFactory;
+import org.daisy.dotify.api.formatter.FormatterFactoryMaker;
+import org.daisy.dotify.api.obfl.ObflParser;
+import org.daisy.dotify.api.obfl.ObflParserException;
+import org.daisy.dotify.api.obfl.ObflParserFactoryMaker;
+import org.daisy.dotify.api.translator.TranslatorType;
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+import org.daisy.dotify.formatter.impl.FormatterFactoryImpl;
+
+/**
+ * Provides methods for preparing documents for the benchmarks.
+ * @author Joel Håkansson
+ */
+public final class Documents {
+	/**
+	 * The locale used in the benchmarks.
+	 */
+	public static final String LOCALE = "sv-SE";
+	/**
+	 * The translation mode used in the benchmarks.
+	 */
+	public static final String MODE = TranslatorType.UNCONTRACTED.toString();
+	private static final XMLInputFactory IN_FACTORY = newXMLInputFactory();
+
+	private Documents() {}
+
+	private static XMLInputFactory newXMLInputFactory() {
+		// Same settings as the obfl parser factory
+		XMLInputFactory in = XMLInputFactory.newInstance();
+		in.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		in.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		in.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		in.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+		return in;
+	}
+
+	/**
+	 * Creates a new formatter. The translation cache shared by formatters
+	 * is cleared, so that translation is included in the results.
+	 * @return a new formatter
+	 */
+	public static Formatter newFormatter() {
+		FormatterFactory factory = FormatterFactoryMaker.newInstance().getFactory();
+		if (factory instanceof FormatterFactoryImpl) {
+			((FormatterFactoryImpl)factory).getTranslationCache().clear();
+		}
+		return factory.newFormatter(LOCALE, MODE);
+	}
+
+	/**
+	 * Parses the document into a new formatter. The returned formatter
+	 * is ready to be written, which is when layout is performed.
+	 * @param obfl the document
+	 * @return a new formatter
+	 * @throws ObflParserException if the document could not be parsed
+	 * @throws XMLStreamException if the document could not be read
+	 * @throws FormatterException if the formatter could not be configured
+	 */
+	public static Formatter parse(SyntheticObfl obfl) throws ObflParserException, XMLStreamException, FormatterException {
+		Formatter formatter = newFormatter();
+		newObflParser().parse(newEventReader(obfl), formatter);
+		return formatter;
+	}
+
+	/**
+	 * Creates a new obfl parser.
+	 * @return a new obfl parser
+	 */
+	public static ObflParser newObflParser() {
+		return ObflParserFactoryMaker.newInstance().getFactory().newObflParser();
+	}
+
+	/**
+	 * Creates a new event reader for the document.
+	 * @param obfl the document
+	 * @return a new event reader
+	 * @throws XMLStreamException if the reader could not be created
+	 */
+	public static XMLEventReader newEventReader(SyntheticObfl obfl) throws XMLStreamException {
+		return IN_FACTORY.createXMLEventReader(obfl.newInputStream());
+	}
+
+	/**
+	 * Provides a paged media writer that counts the rows it receives,
+	 * but otherwise discards them.
+	 */
+	public static final class NullMediaWriter implements PagedMediaWriter {
+		private int rows = 0;
+
+		@Override
+		public void prepare(List<MetaDataItem> meta) {
+			// Nothing to do
+		}
+
+		@Override
+		public void open(OutputStream os) {
+			// Nothing to do
+		}
+
+		@Override
+		public void newVolume(SectionProperties props) {
+			// Nothing to do
+		}
+
+		@Override
+		public void newSection(SectionProperties props) {
+			// Nothing to do
+		}
+
+		@Override
+		public void newPage() {
+			// Nothing to do
+		}
+
+		@Override
+		public void newRow(Row row) {
+			rows++;
+		}
+
+		@Override
+		public void newRow() {
+			rows++;
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do
+		}
+
+		/**
+		 * Gets the number of rows written.
+		 * @return the number of rows
+		 */
+		public int getRowCount() {
+			return rows;
+		}
+	}
+
+	/**
+	 * Provides an output stream that discards everything written to it.
+	 */
+	public static final class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+			// Discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// Discard
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.daisy.dotify.api.formatter.Formatter;
+import org.daisy.dotify.api.formatter.FormatterException;
+import org.daisy.dotify.api.obfl.ObflParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of OBFL into a formatter. Layout isn't included,
+ * since the formatter doesn't perform layout until it is written.
+ * @author Joel Håkansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ObflParserBenchmark {
+	/**
+	 * The approximate number of pages in the document.
+	 */
+	@Param({"10", "100", "1000", "10000"})
+	public int pages;
+	private SyntheticObfl obfl;
+
+	/**
+	 * Generates the document.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		obfl = new SyntheticObfl.Builder(pages).tables(10).build();
+		obfl.toBytes();
+	}
+
+	/**
+	 * Parses the document.
+	 * @return the formatter
+	 * @throws ObflParserException if the document could not be parsed
+	 * @throws XMLStreamException if the document could not be read
+	 * @throws FormatterException if the formatter could not be configured
+	 */
+	@Benchmark
+	public Formatter parse() throws ObflParserException, XMLStreamException, FormatterException {
+		return Documents.parse(obfl);
+	}
+}
@@ -0,0 +1,27 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Measures page breaking of a document without a volume template and
+ * running text only. Most of the time is spent breaking rows
+ * into pages in <code>RowGroupDataSource</code> and
+ * <code>SplitPointHandler</code>.
+ * @author Joel Håkansson
+ */
+public class PageBreakingBenchmark extends AbstractLayoutBenchmark {
+
+	@Override
+	protected SyntheticObfl newDocument(int pages) {
+		return new SyntheticObfl.Builder(pages).build();
+	}
+
+	/**
+	 * Lays out the document.
+	 * @return the number of rows
+	 */
+	@Benchmark
+	public int breakPages() {
+		return layout();
+	}
+}
@@ -0,0 +1,294 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * <p>Provides synthetic OBFL documents for benchmarking. The documents are
+ * generated from a fixed seed, so that the same parameters always produce
+ * the same document. This makes it possible to compare results between
+ * releases.</p>
+ *
+ * <p>The size of a document is specified as an approximate number of body
+ * pages. The text is made up of lower case latin words, which means that
+ * it has to be translated, but not contracted. The estimate is based on
+ * the number of characters in each block and is accurate enough to scale
+ * a document from 10 to 10,000 pages.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class SyntheticObfl {
+	/**
+	 * The page width of the generated documents.
+	 */
+	public static final int PAGE_WIDTH = 32;
+	/**
+	 * The page height of the generated documents.
+	 */
+	public static final int PAGE_HEIGHT = 29;
+	// A header row and a blank row below it
+	private static final int ROWS_PER_PAGE = PAGE_HEIGHT - 2;
+	private static final String[] WORDS = {
+		"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+		"sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+		"magna", "aliqua", "enim", "ad", "minim", "veniam", "quis", "nostrud",
+		"exercitation", "ullamco", "laboris", "nisi", "aliquip", "ex", "ea", "commodo",
+		"consequat", "duis", "aute", "irure", "in", "reprehenderit", "voluptate"
+	};
+	private final int pages;
+	private final int pagesPerChapter;
+	private final int tableInterval;
+	private final int sheetsPerVolume;
+	private final boolean toc;
+	private final long seed;
+	private byte[] data;
+
+	/**
+	 * Provides a builder for synthetic OBFL documents.
+	 */
+	public static class Builder {
+		private final int pages;
+		private int pagesPerChapter = 20;
+		private int tableInterval = 0;
+		private int sheetsPerVolume = 0;
+		private boolean toc = false;
+		private long seed = 1;
+
+		/**
+		 * Creates a new builder.
+		 * @param pages the approximate number of body pages
+		 * @throws IllegalArgumentException if pages is less than 1
+		 */
+		public Builder(int pages) {
+			if (pages<1) {
+				throw new IllegalArgumentException("Pages must be at least 1: " + pages);
+			}
+			this.pages = pages;
+		}
+
+		/**
+		 * Sets the approximate number of pages in each chapter. Each chapter
+		 * is a sequence of its own, starting with a heading.
+		 * @param value the number of pages
+		 * @return this builder
+		 */
+		public Builder pagesPerChapter(int value) {
+			this.pagesPerChapter = Math.max(1, value);
+			return this;
+		}
+
+		/**
+		 * Adds a table after every n:th paragraph.
+		 * @param value the number of paragraphs between tables, or 0 for no tables
+		 * @return this builder
+		 */
+		public Builder tables(int value) {
+			this.tableInterval = Math.max(0, value);
+			return this;
+		}
+
+		/**
+		 * Splits the document into volumes with the specified maximum number of sheets.
+		 * @param value the maximum number of sheets in a volume, or 0 for a single volume
+		 *  without a volume template
+		 * @return this builder
+		 */
+		public Builder volumes(int value) {
+			this.sheetsPerVolume = Math.max(0, value);
+			return this;
+		}
+
+		/**
+		 * Adds a table of contents with one entry per chapter at the
+		 * beginning of the first volume. This requires that volumes have
+		 * been set.
+		 * @param value true if a table of contents should be added, false otherwise
+		 * @return this builder
+		 */
+		public Builder tableOfContents(boolean value) {
+			this.toc = value;
+			return this;
+		}
+
+		/**
+		 * Sets the seed used when generating the text.
+		 * @param value the seed
+		 * @return this builder
+		 */
+		public Builder seed(long value) {
+			this.seed = value;
+			return this;
+		}
+
+		/**
+		 * Creates a new synthetic OBFL document based on the current state of the builder.
+		 * @return a new document
+		 */
+		public SyntheticObfl build() {
+			return new SyntheticObfl(this);
+		}
+	}
+
+	private SyntheticObfl(Builder builder) {
+		this.pages = builder.pages;
+		this.pagesPerChapter = builder.pagesPerChapter;
+		this.tableInterval = builder.tableInterval;
+		this.sheetsPerVolume = builder.sheetsPerVolume;
+		this.toc = builder.toc && builder.sheetsPerVolume>0;
+		this.seed = builder.seed;
+		this.data = null;
+	}
+
+	/**
+	 * Gets the document as UTF-8 encoded bytes. The document is generated
+	 * the first time this method is called.
+	 * @return the document
+	 */
+	public synchronized byte[] toBytes() {
+		if (data==null) {
+			data = generate().getBytes(StandardCharsets.UTF_8);
+		}
+		return data;
+	}
+
+	/**
+	 * Creates a new input stream for the document.
+	 * @return a new input stream
+	 */
+	public InputStream newInputStream() {
+		return new ByteArrayInputStream(toBytes());
+	}
+
+	private int getChapterCount() {
+		return (pages + pagesPerChapter - 1) / pagesPerChapter;
+	}
+
+	private String generate() {
+		Random r = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<obfl xmlns=\"http://www.daisy.org/ns/2011/obfl\" version=\"2011-1\" xml:lang=\"sv-SE\" hyphenate=\"false\">\n");
+		sb.append("<meta xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Synthetic document, ")
+			.append(pages).append(" pages</dc:title></meta>\n");
+		sb.append("<layout-master name=\"main\" page-width=\"").append(PAGE_WIDTH)
+			.append("\" page-height=\"").append(PAGE_HEIGHT).append("\" duplex=\"true\">")
+			.append("<default-template><header><field><current-page number-format=\"default\"/></field></header><footer/></default-template>")
+			.append("</layout-master>\n");
+		int chapters = getChapterCount();
+		if (toc) {
+			sb.append("<table-of-contents name=\"toc\">\n");
+			for (int i=1; i<=chapters; i++) {
+				sb.append("<toc-entry ref-id=\"ch").append(i).append("\">kapitel ").append(i)
+					.append("<leader pattern=\"⠄\" position=\"100%\" align=\"right\"/><page-number ref-id=\"ch")
+					.append(i).append("\" number-format=\"default\"/></toc-entry>\n");
+			}
+			sb.append("</table-of-contents>\n");
+		}
+		if (sheetsPerVolume>0) {
+			sb.append("<volume-template sheets-in-volume-max=\"").append(sheetsPerVolume).append("\">");
+			if (toc) {
+				sb.append("<pre-content><toc-sequence master=\"main\" range=\"document\" toc=\"toc\" use-when=\"(= $volume 1)\"/></pre-content>");
+			}
+			sb.append("</volume-template>\n");
+		}
+		int remaining = pages;
+		for (int i=1; i<=chapters; i++) {
+			int chapterPages = Math.min(pagesPerChapter, remaining);
+			remaining -= chapterPages;
+			appendChapter(sb, r, i, chapterPages * ROWS_PER_PAGE);
+		}
+		sb.append("</obfl>\n");
+		return sb.toString();
+	}
+
+	private void appendChapter(StringBuilder sb, Random r, int chapter, int rows) {
+		sb.append("<sequence master=\"main\">\n");
+		sb.append("<block id=\"ch").append(chapter).append("\" margin-bottom=\"1\" keep-with-next=\"1\">kapitel ")
+			.append(chapter).append("</block>\n");
+		int used = 2;
+		int paragraphs = 0;
+		while (used<rows) {
+			paragraphs++;
+			if (tableInterval>0 && paragraphs % tableInterval == 0) {
+				used += appendTable(sb, r);
+			} else {
+				used += appendParagraph(sb, r);
+			}
+		}
+		sb.append("</sequence>\n");
+	}
+
+	private int appendParagraph(StringBuilder sb, Random r) {
+		String text = words(r, 20 + r.nextInt(60));
+		sb.append("<block first-line-indent=\"2\">").append(text).append("</block>\n");
+		return (text.length() + 2 + PAGE_WIDTH - 1) / PAGE_WIDTH;
+	}
+
+	private int appendTable(StringBuilder sb, Random r) {
+		int cols = 2 + r.nextInt(3);
+		int rows = 3 + r.nextInt(6);
+		int cellWidth = PAGE_WIDTH / cols;
+		int height = 0;
+		sb.append("<block margin-top=\"1\" margin-bottom=\"1\"><table table-col-spacing=\"1\">");
+		sb.append("<thead><tr>");
+		for (int c=0; c<cols; c++) {
+			sb.append("<td>").append(words(r, 1)).append("</td>");
+		}
+		sb.append("</tr></thead><tbody>");
+		for (int i=0; i<rows; i++) {
+			sb.append("<tr>");
+			int rowHeight = 1;
+			for (int c=0; c<cols; c++) {
+				String text = words(r, 1 + r.nextInt(4));
+				rowHeight = Math.max(rowHeight, (text.length() + cellWidth - 1) / cellWidth);
+				sb.append("<td>").append(text).append("</td>");
+			}
+			sb.append("</tr>");
+			height += rowHeight;
+		}
+		sb.append("</tbody></table></block>\n");
+		return height + 3;
+	}
+
+	/**
+	 * Creates a text with the specified number of words, separated by spaces.
+	 * The words are picked from the same list as the words in the documents.
+	 * @param r the random generator to pick words with
+	 * @param count the number of words
+	 * @return the text
+	 */
+	public static String words(Random r, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<count; i++) {
+			if (i>0) {
+				sb.append(' ');
+			}
+			sb.append(WORDS[r.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a synthetic document to a file. This can be used to run the same
+	 * document through other tools.
+	 * @param args the number of pages, the output file and optionally
+	 * 		the maximum number of sheets in a volume
+	 * @throws IOException if the file could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length<2) {
+			System.out.println("Expected: pages output [sheets-per-volume]");
+			System.exit(1);
+		}
+		Builder b = new Builder(Integer.parseInt(args[0]));
+		if (args.length>2) {
+			b.volumes(Integer.parseInt(args[2])).tableOfContents(true);
+		}
+		Files.write(new File(args[1]).toPath(), b.build().toBytes());
+	}
+}
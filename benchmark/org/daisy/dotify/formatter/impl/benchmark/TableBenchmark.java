@@ -0,0 +1,25 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Measures layout of a document with a table after every third paragraph.
+ * The column widths of each table are determined by <code>Table.minimizeCost</code>.
+ * @author Joel Håkansson
+ */
+public class TableBenchmark extends AbstractLayoutBenchmark {
+
+	@Override
+	protected SyntheticObfl newDocument(int pages) {
+		return new SyntheticObfl.Builder(pages).tables(3).build();
+	}
+
+	/**
+	 * Lays out the document.
+	 * @return the number of rows
+	 */
+	@Benchmark
+	public int layoutTables() {
+		return layout();
+	}
+}
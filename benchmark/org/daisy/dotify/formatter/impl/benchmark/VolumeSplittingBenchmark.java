@@ -0,0 +1,33 @@
+package org.daisy.dotify.formatter.impl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Measures layout of a document that is split into volumes, with a
+ * table of contents in the first volume. The document is laid out
+ * several times by <code>VolumeProvider</code>, until the volume
+ * breaks and the page references in the table of contents are stable.
+ * @author Joel Håkansson
+ */
+public class VolumeSplittingBenchmark extends AbstractLayoutBenchmark {
+	/**
+	 * The maximum number of sheets in a volume.
+	 */
+	@Param({"50"})
+	public int sheetsPerVolume;
+
+	@Override
+	protected SyntheticObfl newDocument(int pages) {
+		return new SyntheticObfl.Builder(pages).volumes(sheetsPerVolume).tableOfContents(true).build();
+	}
+
+	/**
+	 * Lays out the document.
+	 * @return the number of rows
+	 */
+	@Benchmark
+	public int splitVolumes() {
+		return layout();
+	}
+}
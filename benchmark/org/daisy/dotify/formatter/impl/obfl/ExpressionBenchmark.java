@@ -0,0 +1,149 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.daisy.dotify.api.obfl.Expression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures evaluation of expressions of the kind used in headers, footers,
+ * conditions and volume templates, for a number of pages.</p>
+ *
+ * <p>The <code>slots</code> benchmark evaluates the expressions the way
+ * conditions and dynamic content do, with each expression compiled once and
+ * the variables bound to slots. The <code>cached</code> benchmark resolves the
+ * variables into the expression strings and evaluates them using the shared
+ * cache of compiled expressions. The <code>uncompiled</code> benchmark compiles
+ * every resolved expression string before it is evaluated. The <code>legacy</code>
+ * benchmark evaluates the resolved expression strings with a copy of the interpreter
+ * that was used before expressions were compiled, see {@link LegacyExpression}.</p>
+ *
+ * @author Joel Håkansson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExpressionBenchmark {
+	private static final String[] TEMPLATES = {
+		"(= (% $page 2) 0)",
+		"(& (> $volume 1) (< $volume $volumes))",
+		"(if (= $volume $volumes) \"\" (concat \"Volym \" $volume \" av \" $volumes))",
+		"(format \"{0}/{1}\" (round (/ $page 2)) $volumes)",
+		"(set half (+ 1 (round (/ $page 2)))) (if (>= $half 10) (numeral-format roman $half) $half)"
+	};
+	/**
+	 * The number of pages to evaluate the expressions for.
+	 */
+	@Param({"100"})
+	public int pages;
+	private List<String> expressions;
+	private List<CompiledExpression> templates;
+	private ExpressionFactoryImpl factory;
+	private ExpressionImpl owner;
+	private LegacyExpression legacy;
+
+	/**
+	 * Resolves the variables of the expressions and compiles the templates.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		templates = new ArrayList<>();
+		for (String t : TEMPLATES) {
+			templates.add(CompiledExpression.compile(t, Arrays.asList("$page", "$volume", "$volumes")));
+		}
+		expressions = new ArrayList<>();
+		for (int i=1; i<=pages; i++) {
+			for (String t : TEMPLATES) {
+				expressions.add(ExpressionTools.resolveVariables(t, "page=" + i, "volume=" + (1 + i / 50), "volumes=3"));
+			}
+		}
+		factory = new ExpressionFactoryImpl();
+		factory.setCreatedWithSPI();
+		owner = (ExpressionImpl)factory.newExpression();
+		legacy = new LegacyExpression(null);
+	}
+
+	/**
+	 * Evaluates the compiled templates with the variables bound to slots.
+	 * @return the number of true results
+	 */
+	@Benchmark
+	public int slots() {
+		int ret = 0;
+		for (int i=1; i<=pages; i++) {
+			Object[] values = {(double)i, (double)(1 + i / 50), 3d};
+			for (CompiledExpression t : templates) {
+				ExpressionImpl e = (ExpressionImpl)factory.newExpression();
+				if (Boolean.TRUE.equals(e.evaluate(t, values))) {
+					ret++;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Evaluates the resolved expressions using the shared cache.
+	 * @return the number of true results
+	 */
+	@Benchmark
+	public int cached() {
+		int ret = 0;
+		for (String expr : expressions) {
+			Expression e = factory.newExpression();
+			if (Boolean.TRUE.equals(e.evaluate(expr))) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Compiles each resolved expression before it is evaluated.
+	 * @return the number of true results
+	 */
+	@Benchmark
+	public int uncompiled() {
+		int ret = 0;
+		for (String expr : expressions) {
+			if (Boolean.TRUE.equals(CompiledExpression.compile(expr).evaluate(owner, Collections.emptyMap()))) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Evaluates the resolved expressions with the interpreter that was
+	 * used before expressions were compiled.
+	 * @return the number of true results
+	 */
+	@Benchmark
+	public int legacy() {
+		int ret = 0;
+		for (String expr : expressions) {
+			if (Boolean.TRUE.equals(legacy.evaluate(expr))) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+}
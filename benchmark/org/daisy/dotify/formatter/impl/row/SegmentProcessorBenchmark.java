@@ -0,0 +1,100 @@
+package org.daisy.dotify.formatter.impl.row;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.daisy.dotify.api.formatter.Context;
+import org.daisy.dotify.api.formatter.FormatterConfiguration;
+import org.daisy.dotify.api.formatter.TextProperties;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
+import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
+import org.daisy.dotify.formatter.impl.benchmark.Documents;
+import org.daisy.dotify.formatter.impl.benchmark.SyntheticObfl;
+import org.daisy.dotify.formatter.impl.core.FormatterContext;
+import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
+import org.daisy.dotify.formatter.impl.search.DefaultContext;
+import org.daisy.dotify.formatter.impl.segment.Segment;
+import org.daisy.dotify.formatter.impl.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures row breaking of paragraphs in the segment processor, including
+ * translation. New segments are created for each invocation, since text
+ * segments keep their translation.
+ * @author Joel Håkansson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SegmentProcessorBenchmark {
+	/**
+	 * The number of paragraphs.
+	 */
+	@Param({"10", "100", "1000"})
+	public int paragraphs;
+	/**
+	 * The width of the rows.
+	 */
+	@Param({"32"})
+	public int width;
+	private FormatterContext fcontext;
+	private TextProperties tp;
+	private RowDataProperties rdp;
+	private CrossReferenceHandler refs;
+	private Context context;
+	private List<String> texts;
+
+	/**
+	 * Creates the texts and the formatter context.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		fcontext = new FormatterContext(BrailleTranslatorFactoryMaker.newInstance(), TextBorderFactoryMaker.newInstance(),
+				FormatterConfiguration.with(Documents.LOCALE, Documents.MODE).build());
+		tp = new TextProperties.Builder(Documents.LOCALE).build();
+		rdp = new RowDataProperties.Builder().firstLineIndent(2).build();
+		refs = new CrossReferenceHandler();
+		refs.setVolumeCount(1);
+		context = new DefaultContext.Builder(refs).currentVolume(1).build();
+		Random r = new Random(1);
+		texts = new ArrayList<>();
+		for (int i=0; i<paragraphs; i++) {
+			texts.add(SyntheticObfl.words(r, 20 + r.nextInt(60)));
+		}
+	}
+
+	/**
+	 * Breaks the paragraphs into rows.
+	 * @return the number of rows
+	 */
+	@Benchmark
+	public int breakRows() {
+		int rows = 0;
+		for (String text : texts) {
+			List<Segment> segments = new ArrayList<>();
+			segments.add(new TextSegment(text, tp, true));
+			AbstractBlockContentManager m = new BlockContentManager(null, width, segments, rdp, refs, context, fcontext);
+			while (m.hasNext()) {
+				m.getNext();
+				rows++;
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,156 @@
+package org.daisy.dotify.formatter.impl.writer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.daisy.dotify.api.formatter.Formatter;
+import org.daisy.dotify.api.formatter.FormatterException;
+import org.daisy.dotify.api.obfl.ObflParserException;
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.api.writer.PagedMediaWriterException;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+import org.daisy.dotify.formatter.impl.benchmark.Documents;
+import org.daisy.dotify.formatter.impl.benchmark.SyntheticObfl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing of PEF to a file, with and without compression. The
+ * document is laid out once and the calls to the writer are recorded, so
+ * that only the writer is measured.
+ * @author Joel Håkansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PEFMediaWriterBenchmark {
+	/**
+	 * The approximate number of pages in the document.
+	 */
+	@Param({"10", "100", "1000"})
+	public int pages;
+	/**
+	 * True if the output should be gzip compressed, false otherwise.
+	 */
+	@Param({"false", "true"})
+	public boolean gzip;
+	private RecordingMediaWriter recording;
+	private File file;
+
+	/**
+	 * Lays out the document and records the output.
+	 * @throws ObflParserException if the document could not be parsed
+	 * @throws XMLStreamException if the document could not be read
+	 * @throws FormatterException if the formatter could not be configured
+	 * @throws IOException if the output file could not be created
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws ObflParserException, XMLStreamException, FormatterException, IOException {
+		Formatter formatter = Documents.parse(new SyntheticObfl.Builder(pages).volumes(50).build());
+		recording = new RecordingMediaWriter();
+		formatter.write(recording);
+		file = File.createTempFile("benchmark", ".pef");
+	}
+
+	/**
+	 * Deletes the output file.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Writes the recorded output as PEF.
+	 * @return the writer
+	 * @throws PagedMediaWriterException if the writer could not be opened
+	 * @throws FileNotFoundException if the output file could not be opened
+	 */
+	@Benchmark
+	public PagedMediaWriter write() throws PagedMediaWriterException, FileNotFoundException {
+		Properties props = new Properties();
+		props.setProperty(PEFMediaWriter.GZIP_KEY, Boolean.toString(gzip));
+		PEFMediaWriter writer = new PEFMediaWriter(props);
+		writer.prepare(new ArrayList<>());
+		writer.open(new FileOutputStream(file));
+		recording.replay(writer);
+		writer.close();
+		return writer;
+	}
+
+	private static class RecordingMediaWriter implements PagedMediaWriter {
+		private final List<Consumer<PagedMediaWriter>> events = new ArrayList<>();
+
+		@Override
+		public void prepare(List<MetaDataItem> meta) {
+			// Not recorded
+		}
+
+		@Override
+		public void open(OutputStream os) {
+			// Not recorded
+		}
+
+		@Override
+		public void newVolume(SectionProperties props) {
+			events.add(w->w.newVolume(props));
+		}
+
+		@Override
+		public void newSection(SectionProperties props) {
+			events.add(w->w.newSection(props));
+		}
+
+		@Override
+		public void newPage() {
+			events.add(w->w.newPage());
+		}
+
+		@Override
+		public void newRow(Row row) {
+			events.add(w->w.newRow(row));
+		}
+
+		@Override
+		public void newRow() {
+			events.add(w->w.newRow());
+		}
+
+		@Override
+		public void close() {
+			// Not recorded
+		}
+
+		private void replay(PagedMediaWriter writer) {
+			for (Consumer<PagedMediaWriter> e : events) {
+				e.accept(writer);
+			}
+		}
+	}
+}
@@ -7,6 +7,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import javax.xml.transform.stream.StreamSource;
 
@@ -59,4 +61,44 @@ abstract class AbstractFormatterEngineTest {
 			}
 		}
 	}
+
+	/**
+	 * Tests that the input gives the same result when the specified system property is set
+	 * as when it isn't set.
+	 */
+	void testSameResultWithProperty(String input, String key, String value) throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		File unset = File.createTempFile("TestResult", ".tmp");
+		File set = File.createTempFile("TestResult", ".tmp");
+		try {
+			convert(input, unset);
+			System.setProperty(key, value);
+			try {
+				convert(input, set);
+			} finally {
+				System.clearProperty(key);
+			}
+			try (InputStream exp = new FileInputStream(unset);
+				InputStream res = new FileInputStream(set)) {
+				PEFFileCompare cmp = new PEFFileCompare();
+				cmp.compare(new StreamSource(exp), new StreamSource(res));
+				assertEquals("Binary compare is equal", -1, cmp.getPos());
+			} catch (PEFFileCompareException e) {
+				e.printStackTrace();
+				fail();
+			}
+		} finally {
+			unset.delete();
+			set.delete();
+		}
+	}
+
+	private void convert(String input, File output) throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		try (InputStream in = this.getClass().getResourceAsStream(input);
+			OutputStream out = new FileOutputStream(output)) {
+			FormatterEngineMaker.newInstance().newFormatterEngine("sv-SE",
+					TranslatorType.UNCONTRACTED.toString(),
+					PagedMediaWriterFactoryMaker.newInstance().newPagedMediaWriter(MediaTypes.PEF_MEDIA_TYPE))
+				.convert(in, out);
+		}
+	}
 }
@@ -0,0 +1,237 @@
+package org.daisy.dotify.formatter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.daisy.braille.utils.pef.PEFFileCompare;
+import org.daisy.braille.utils.pef.PEFFileCompareException;
+import org.daisy.dotify.api.formatter.FormatterConfiguration;
+import org.daisy.dotify.api.translator.TranslatorType;
+import org.daisy.dotify.api.writer.MediaTypes;
+import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
+import org.daisy.dotify.api.writer.PagedMediaWriterFactoryMaker;
+import org.daisy.dotify.formatter.impl.engine.BatchLayoutEngine;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.engine.LayoutEngineFactoryImpl;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class BatchLayoutEngineTest {
+	private static final String[][] DOCUMENTS = {
+			{"resource-files/border/border-center-input.obfl", "resource-files/border/border-center-expected.pef"},
+			{"resource-files/border/nested-blocks-with-borders-input.obfl", "resource-files/border/nested-blocks-with-borders-expected.pef"},
+			{"resource-files/xml-data/xml-data-input.obfl", "resource-files/xml-data/xml-data-expected.pef"},
+	};
+
+	private File copy(String resource, File dir, String name) throws IOException {
+		File ret = new File(dir, name);
+		try (InputStream in = this.getClass().getResourceAsStream(resource)) {
+			Files.copy(in, ret.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return ret;
+	}
+
+	@Test
+	public void testBatch() throws IOException, InterruptedException, PEFFileCompareException {
+		File dir = Files.createTempDirectory("batch").toFile();
+		try {
+			List<BatchLayoutEngine.Job> jobs = new ArrayList<>();
+			List<File> expected = new ArrayList<>();
+			// Each document twice, so that the threads convert the same documents
+			for (int i=0; i<DOCUMENTS.length*2; i++) {
+				String[] d = DOCUMENTS[i%DOCUMENTS.length];
+				jobs.add(new BatchLayoutEngine.Job(copy(d[0], dir, "input"+i+".obfl"), new File(dir, "output"+i+".pef")));
+				expected.add(copy(d[1], dir, "expected"+i+".pef"));
+			}
+			LayoutEngineFactoryImpl factory = new LayoutEngineFactoryImpl();
+			factory.setCreatedWithSPI();
+			List<BatchLayoutEngine.Result> results;
+			try (BatchLayoutEngine engine = factory.newBatchEngine(
+					FormatterConfiguration.with("sv-SE", TranslatorType.UNCONTRACTED.toString()).build(),
+					()->{
+						try {
+							return PagedMediaWriterFactoryMaker.newInstance().newPagedMediaWriter(MediaTypes.PEF_MEDIA_TYPE);
+						} catch (PagedMediaWriterConfigurationException e) {
+							throw new IllegalStateException(e);
+						}
+					}, 2)) {
+				results = engine.convert(jobs);
+			}
+			assertEquals(jobs.size(), results.size());
+			for (int i=0; i<results.size(); i++) {
+				BatchLayoutEngine.Result r = results.get(i);
+				assertTrue(r.getException().map(Exception::toString).orElse(""), r.isSuccess());
+				assertEquals(jobs.get(i), r.getJob());
+				assertTrue(r.getNanos()>0);
+				assertTrue(r.getMetrics().getCount(FormatterMetrics.Counter.PAGES)>0);
+				try (InputStream exp = new FileInputStream(expected.get(i));
+					InputStream res = new FileInputStream(r.getJob().getOutput())) {
+					PEFFileCompare cmp = new PEFFileCompare();
+					cmp.compare(new StreamSource(exp), new StreamSource(res));
+					assertEquals("Binary compare is equal", -1, cmp.getPos());
+				}
+			}
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testFailingJob() throws IOException, InterruptedException, PEFFileCompareException {
+		File dir = Files.createTempDirectory("batch").toFile();
+		try {
+			List<BatchLayoutEngine.Job> jobs = new ArrayList<>();
+			for (int i=0; i<DOCUMENTS.length; i++) {
+				jobs.add(new BatchLayoutEngine.Job(copy(DOCUMENTS[i][0], dir, "input"+i+".obfl"), new File(dir, "output"+i+".pef")));
+			}
+			LayoutEngineFactoryImpl factory = new LayoutEngineFactoryImpl();
+			factory.setCreatedWithSPI();
+			AtomicInteger calls = new AtomicInteger();
+			List<BatchLayoutEngine.Result> results;
+			try (BatchLayoutEngine engine = factory.newBatchEngine(
+					FormatterConfiguration.with("sv-SE", TranslatorType.UNCONTRACTED.toString()).build(),
+					()->{
+						// The writer of the second job can't be created
+						if (calls.incrementAndGet()==2) {
+							throw new IllegalStateException("No writer");
+						}
+						try {
+							return PagedMediaWriterFactoryMaker.newInstance().newPagedMediaWriter(MediaTypes.PEF_MEDIA_TYPE);
+						} catch (PagedMediaWriterConfigurationException e) {
+							throw new IllegalStateException(e);
+						}
+					}, 1)) {
+				results = engine.convert(jobs);
+			}
+			assertEquals(jobs.size(), results.size());
+			for (int i=0; i<results.size(); i++) {
+				BatchLayoutEngine.Result r = results.get(i);
+				assertEquals(jobs.get(i), r.getJob());
+				if (i==1) {
+					assertFalse(r.isSuccess());
+					assertTrue(r.getException().get() instanceof IllegalStateException);
+					continue;
+				}
+				assertTrue(r.getException().map(Exception::toString).orElse(""), r.isSuccess());
+				try (InputStream exp = this.getClass().getResourceAsStream(DOCUMENTS[i][1]);
+					InputStream res = new FileInputStream(r.getJob().getOutput())) {
+					PEFFileCompare cmp = new PEFFileCompare();
+					cmp.compare(new StreamSource(exp), new StreamSource(res));
+					assertEquals("Binary compare is equal", -1, cmp.getPos());
+				}
+			}
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testReferenceSnapshot() throws IOException, InterruptedException, PEFFileCompareException {
+		File dir = Files.createTempDirectory("batch").toFile();
+		try {
+			String[] d = DOCUMENTS[2];
+			File input = copy(d[0], dir, "input.obfl");
+			File expected = copy(d[1], dir, "expected.pef");
+			File snapshot = new File(dir, "input.refs");
+			LayoutEngineFactoryImpl factory = new LayoutEngineFactoryImpl();
+			factory.setCreatedWithSPI();
+			List<BatchLayoutEngine.Result> results;
+			try (BatchLayoutEngine engine = factory.newBatchEngine(
+					FormatterConfiguration.with("sv-SE", TranslatorType.UNCONTRACTED.toString()).build(),
+					()->{
+						try {
+							return PagedMediaWriterFactoryMaker.newInstance().newPagedMediaWriter(MediaTypes.PEF_MEDIA_TYPE);
+						} catch (PagedMediaWriterConfigurationException e) {
+							throw new IllegalStateException(e);
+						}
+					}, 1)) {
+				// Convert the document twice, the second time seeded with the result of the first
+				results = new ArrayList<>(engine.convert(Arrays.asList(new BatchLayoutEngine.Job(input, new File(dir, "output0.pef"), snapshot))));
+				assertTrue(snapshot.isFile());
+				results.addAll(engine.convert(Arrays.asList(new BatchLayoutEngine.Job(input, new File(dir, "output1.pef"), snapshot))));
+			}
+			for (BatchLayoutEngine.Result r : results) {
+				assertTrue(r.getException().map(Exception::toString).orElse(""), r.isSuccess());
+				try (InputStream exp = new FileInputStream(expected);
+					InputStream res = new FileInputStream(r.getJob().getOutput())) {
+					PEFFileCompare cmp = new PEFFileCompare();
+					cmp.compare(new StreamSource(exp), new StreamSource(res));
+					assertEquals("Binary compare is equal", -1, cmp.getPos());
+				}
+			}
+			assertTrue(results.get(1).getMetrics().getCount(FormatterMetrics.Counter.ITERATIONS)
+					<=results.get(0).getMetrics().getCount(FormatterMetrics.Counter.ITERATIONS));
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testWrongReferenceSnapshot() throws IOException, InterruptedException, PEFFileCompareException {
+		File dir = Files.createTempDirectory("batch").toFile();
+		try {
+			LayoutEngineFactoryImpl factory = new LayoutEngineFactoryImpl();
+			factory.setCreatedWithSPI();
+			List<BatchLayoutEngine.Result> results = new ArrayList<>();
+			List<File> expected = new ArrayList<>();
+			try (BatchLayoutEngine engine = factory.newBatchEngine(
+					FormatterConfiguration.with("sv-SE", TranslatorType.UNCONTRACTED.toString()).build(),
+					()->{
+						try {
+							return PagedMediaWriterFactoryMaker.newInstance().newPagedMediaWriter(MediaTypes.PEF_MEDIA_TYPE);
+						} catch (PagedMediaWriterConfigurationException e) {
+							throw new IllegalStateException(e);
+						}
+					}, 1)) {
+				// Convert each document seeded with the snapshot of the previous document,
+				// the result must be the same as without a seed
+				File snapshot = new File(dir, "input.refs");
+				for (int i=0; i<=DOCUMENTS.length; i++) {
+					String[] d = DOCUMENTS[i%DOCUMENTS.length];
+					File input = copy(d[0], dir, "input"+i+".obfl");
+					expected.add(copy(d[1], dir, "expected"+i+".pef"));
+					results.addAll(engine.convert(Arrays.asList(new BatchLayoutEngine.Job(input, new File(dir, "output"+i+".pef"), snapshot))));
+					assertTrue(snapshot.isFile());
+				}
+			}
+			for (int i=0; i<results.size(); i++) {
+				BatchLayoutEngine.Result r = results.get(i);
+				assertTrue(r.getException().map(Exception::toString).orElse(""), r.isSuccess());
+				try (InputStream exp = new FileInputStream(expected.get(i));
+					InputStream res = new FileInputStream(r.getJob().getOutput())) {
+					PEFFileCompare cmp = new PEFFileCompare();
+					cmp.compare(new StreamSource(exp), new StreamSource(res));
+					assertEquals("Binary compare is equal", -1, cmp.getPos());
+				}
+			}
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+}
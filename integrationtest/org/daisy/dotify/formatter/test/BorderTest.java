@@ -1,9 +1,13 @@
 package org.daisy.dotify.formatter.test;
 
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
 import java.io.IOException;
 
 import org.daisy.dotify.api.engine.LayoutEngineException;
 import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
+import org.daisy.dotify.formatter.impl.row.RowImpl;
 import org.junit.Test;
 @SuppressWarnings("javadoc")
 public class BorderTest extends AbstractFormatterEngineTest {
@@ -33,4 +37,16 @@ public class BorderTest extends AbstractFormatterEngineTest {
 				"resource-files/border/border-align-center-expected.pef", false);
 	}
 
+	/**
+	 * The property is read when the rows class is loaded, so this test only runs
+	 * in a JVM where it is set from the start (see the packedRowsTest task).
+	 */
+	@Test
+	public void testNestedBlocksWithBordersPacked() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		assumeTrue(Boolean.getBoolean("org.daisy.dotify.formatter.impl.packedRows"));
+		assertTrue(RowImpl.isPackingEnabled());
+		testPEF("resource-files/border/nested-blocks-with-borders-input.obfl",
+				"resource-files/border/nested-blocks-with-borders-expected.pef", false);
+	}
+
 }
@@ -0,0 +1,41 @@
+package org.daisy.dotify.formatter.test;
+
+import java.io.IOException;
+
+import org.daisy.dotify.api.engine.LayoutEngineException;
+import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
+import org.junit.Test;
+
+/**
+ * Tests that laying out the block sequences concurrently before the first
+ * pass gives the same result as laying them out when they are paginated.
+ */
+@SuppressWarnings("javadoc")
+public class ParallelSequencesTest extends AbstractFormatterEngineTest {
+	private static final String PARALLEL_SEQUENCES_PROPERTY = "org.daisy.dotify.formatter.impl.parallelSequences";
+
+	@Test
+	public void testPageBreakingAndBorders() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/dp2/page-breaking-and-borders-input.obfl", PARALLEL_SEQUENCES_PROPERTY, "true");
+	}
+
+	@Test
+	public void testOrphansWidowsCountingAndBorders() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/dp2/orphans-widows-counting-and-borders-input.obfl", PARALLEL_SEQUENCES_PROPERTY, "true");
+	}
+
+	@Test
+	public void testManualAndAutomaticVolumeBreaking() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/dp2/manual-and-automatic-volume-breaking-input.obfl", PARALLEL_SEQUENCES_PROPERTY, "true");
+	}
+
+	@Test
+	public void testAdvancedVolumeBreak() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/volume-break/volume-breaks-advanced-input.obfl", PARALLEL_SEQUENCES_PROPERTY, "true");
+	}
+
+	@Test
+	public void testPageNumber() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/page/page-number2-input.obfl", PARALLEL_SEQUENCES_PROPERTY, "true");
+	}
+}
@@ -0,0 +1,41 @@
+package org.daisy.dotify.formatter.test;
+
+import java.io.IOException;
+
+import org.daisy.dotify.api.engine.LayoutEngineException;
+import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
+import org.junit.Test;
+
+/**
+ * Tests that reusing the sheets of unchanged block sequences between iterations
+ * gives the same result as paginating every sequence in every iteration.
+ */
+@SuppressWarnings("javadoc")
+public class SequenceCacheTest extends AbstractFormatterEngineTest {
+	private static final String SEQUENCE_CACHE_PROPERTY = "org.daisy.dotify.formatter.impl.sequenceCache";
+
+	@Test
+	public void testToc() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/obfl-input-toc.obfl", SEQUENCE_CACHE_PROPERTY, "false");
+	}
+
+	@Test
+	public void testContentItemsFallback() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/obfl-input-content-items-fallback.obfl", SEQUENCE_CACHE_PROPERTY, "false");
+	}
+
+	@Test
+	public void testPageNumberBackwardReference() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/dp2/page-number-backward-reference-input.obfl", SEQUENCE_CACHE_PROPERTY, "false");
+	}
+
+	@Test
+	public void testManualVolumeBreakingToc() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/dp2/manual-volume-breaking-toc-input.obfl", SEQUENCE_CACHE_PROPERTY, "false");
+	}
+
+	@Test
+	public void testAdvancedVolumeBreak() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/volume-break/volume-breaks-advanced-input.obfl", SEQUENCE_CACHE_PROPERTY, "false");
+	}
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 @SuppressWarnings("javadoc")
 public class TableTest extends AbstractFormatterEngineTest {
+	private static final String PARALLEL_TABLES_PROPERTY = "org.daisy.dotify.formatter.impl.parallelTables";
 	
 	@Test
 	public void testSimpleTable() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
@@ -199,4 +200,10 @@ public class TableTest extends AbstractFormatterEngineTest {
 		testPEF("resource-files/table/table-in-block-input.obfl", "resource-files/table/table-in-block-expected.pef", false);
 	}
 	
+	@Test
+	public void testTablePageNumberParallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		// cells with references must not be rendered concurrently
+		testSameResultWithProperty("resource-files/table/tables-page-number-input.obfl", PARALLEL_TABLES_PROPERTY, "true");
+	}
+	
 }
@@ -7,6 +7,7 @@ import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
 import org.junit.Test;
 @SuppressWarnings("javadoc")
 public class XMLDataTest extends AbstractFormatterEngineTest {
+	private static final String PARALLEL_SCENARIOS_PROPERTY = "org.daisy.dotify.formatter.impl.parallelScenarios";
 
 	@Test
 	public void testXMLData_01() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
@@ -48,4 +49,29 @@ public class XMLDataTest extends AbstractFormatterEngineTest {
 		testPEF("resource-files/xml-data/xml-data-in-block-input.obfl", "resource-files/xml-data/xml-data-in-block-expected.pef", false);
 	}
 
+	@Test
+	public void testXMLData_02_Parallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/xml-data/xml-data2-input.obfl", PARALLEL_SCENARIOS_PROPERTY, "true");
+	}
+
+	@Test
+	public void testXMLData_03_Parallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/xml-data/xml-data3-input.obfl", PARALLEL_SCENARIOS_PROPERTY, "true");
+	}
+
+	@Test
+	public void testXMLData_04_Parallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/xml-data/xml-data4-input.obfl", PARALLEL_SCENARIOS_PROPERTY, "true");
+	}
+
+	@Test
+	public void testXMLData_05_Parallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/xml-data/xml-data5-input.obfl", PARALLEL_SCENARIOS_PROPERTY, "true");
+	}
+
+	@Test
+	public void testXMLData_07_Parallel() throws LayoutEngineException, IOException, PagedMediaWriterConfigurationException {
+		testSameResultWithProperty("resource-files/xml-data/xml-data7-input.obfl", PARALLEL_SCENARIOS_PROPERTY, "true");
+	}
+
 }
@@ -6,23 +6,50 @@ import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
 import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
 import org.daisy.dotify.api.translator.TextBorderFactoryMakerService;
+import org.daisy.dotify.formatter.impl.common.TranslationCache;
+import org.daisy.dotify.formatter.impl.common.TranslatorPool;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 
 /**
- * Provides a formatter proxy implementation. This class is intended to be instantiated
- * by the formatter factory, and is not part of the public API.
+ * <p>Provides a formatter proxy implementation. This class is intended to be instantiated
+ * by the formatter factory, and is not part of the public API.</p>
+ *
+ * <p>The formatters created by a factory share the translation cache of that
+ * factory. The cache is cleared when the translator service changes. A factory
+ * that also shares the translators, see {@link #newPooledFactory()}, is used
+ * when converting many documents in a row.</p>
  * @author Joel Håkansson
  */
 @Component
 public class FormatterFactoryImpl implements FormatterFactory {
 	private BrailleTranslatorFactoryMakerService translatorFactory;
 	private TextBorderFactoryMakerService borderFactory;
+	private final TranslationCache translationCache;
+
+	/**
+	 * Creates a new formatter factory with an empty translation cache.
+	 */
+	public FormatterFactoryImpl() {
+		this(new TranslationCache());
+	}
+
+	private FormatterFactoryImpl(TranslationCache translationCache) {
+		this.translationCache = translationCache;
+	}
 
 	@Override
 	public Formatter newFormatter(String locale, String mode) {
-		return new FormatterImpl(translatorFactory, borderFactory, locale, mode);
+		return new FormatterImpl(translatorFactory, borderFactory, locale, mode, translationCache);
+	}
+
+	/**
+	 * Gets the translation cache shared by the formatters created by this factory.
+	 * @return the translation cache
+	 */
+	public TranslationCache getTranslationCache() {
+		return translationCache;
 	}
 
 	/**
@@ -32,6 +59,7 @@ public class FormatterFactoryImpl implements FormatterFactory {
 	@Reference(cardinality=ReferenceCardinality.MANDATORY)
 	public void setTranslator(BrailleTranslatorFactoryMakerService service) {
 		this.translatorFactory = service;
+		translationCache.clear();
 	}
 
 	/**
@@ -40,6 +68,7 @@ public class FormatterFactoryImpl implements FormatterFactory {
 	 */
 	public void unsetTranslator(BrailleTranslatorFactoryMakerService service) {
 		this.translatorFactory = null;
+		translationCache.clear();
 	}
 	
 	/**
@@ -59,6 +88,22 @@ public class FormatterFactoryImpl implements FormatterFactory {
 		this.borderFactory = null;
 	}
 
+	/**
+	 * Creates a new factory with the same dependencies and translation cache as
+	 * this factory, where the translators are kept in a {@link TranslatorPool}.
+	 * The formatters created by the new factory share the translators, so that
+	 * a translator is created once for each thread rather than once for each
+	 * document.
+	 * @return a new factory
+	 */
+	public FormatterFactoryImpl newPooledFactory() {
+		FormatterFactoryImpl ret = new FormatterFactoryImpl(translationCache);
+		// Not through setTranslator, which would clear the cache of this factory
+		ret.translatorFactory = translatorFactory!=null?new TranslatorPool(translatorFactory):null;
+		ret.borderFactory = borderFactory;
+		return ret;
+	}
+
 	@Override
 	public void setCreatedWithSPI() {
 		setTranslator(BrailleTranslatorFactoryMaker.newInstance());
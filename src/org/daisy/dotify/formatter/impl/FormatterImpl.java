@@ -2,6 +2,8 @@ package org.daisy.dotify.formatter.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,10 +22,12 @@ import org.daisy.dotify.api.formatter.VolumeTemplateProperties;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
 import org.daisy.dotify.api.translator.TextBorderFactoryMakerService;
 import org.daisy.dotify.api.writer.PagedMediaWriter;
-import org.daisy.dotify.formatter.impl.common.Volume;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.TranslationCache;
 import org.daisy.dotify.formatter.impl.common.WriterHandler;
 import org.daisy.dotify.formatter.impl.page.BlockSequence;
 import org.daisy.dotify.formatter.impl.page.RestartPaginationException;
+import org.daisy.dotify.formatter.impl.search.ReferenceSnapshot;
 import org.daisy.dotify.formatter.impl.sheet.VolumeImpl;
 import org.daisy.dotify.formatter.impl.volume.VolumeTemplate;
 
@@ -33,7 +37,7 @@ import org.daisy.dotify.formatter.impl.volume.VolumeTemplate;
  * 
  * @author Joel Håkansson
  */
-class FormatterImpl implements Formatter {
+class FormatterImpl implements Formatter, FormatterMetrics.Provider, ReferenceSnapshot.Seedable {
 
 	private final Stack<VolumeTemplate> volumeTemplates;
 	private final Logger logger;
@@ -42,6 +46,8 @@ class FormatterImpl implements Formatter {
 	private final Stack<BlockSequence> blocks;
 	
 	private final LazyFormatterContext context;
+	private ReferenceSnapshot referenceSeed;
+	private ReferenceSnapshot referenceSnapshot;
 
 	/**
 	 * Creates a new formatter.
@@ -55,6 +61,18 @@ class FormatterImpl implements Formatter {
 		this(translatorFactory, tbf, FormatterConfiguration.with(locale, mode).build());
 	}
 
+	/**
+	 * Creates a new formatter.
+	 * @param translatorFactory a braille translator factory maker service
+	 * @param tbf a text border factory maker service
+	 * @param locale a locale
+	 * @param mode a braille mode
+	 * @param translationCache a cache for translation results, or null
+	 */
+	FormatterImpl(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, String locale, String mode, TranslationCache translationCache) {
+		this(translatorFactory, tbf, FormatterConfiguration.with(locale, mode).build(), translationCache);
+	}
+
 	/**
 	 * Creates a new formatter.
 	 * @param translatorFactory a braille translator factory maker service
@@ -63,7 +81,18 @@ class FormatterImpl implements Formatter {
 	 * @param config the configuration
 	 */
 	FormatterImpl(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config) {
-		this.context = new LazyFormatterContext(translatorFactory, tbf, config);
+		this(translatorFactory, tbf, config, null);
+	}
+
+	/**
+	 * Creates a new formatter.
+	 * @param translatorFactory a braille translator factory maker service
+	 * @param tbf a text border factory maker service
+	 * @param config the configuration
+	 * @param translationCache a cache for translation results, or null
+	 */
+	FormatterImpl(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache) {
+		this.context = new LazyFormatterContext(translatorFactory, tbf, config, translationCache);
 		this.blocks = new Stack<>();
 		this.unopened = true;
 		this.volumeTemplates = new Stack<>();
@@ -125,14 +154,23 @@ class FormatterImpl implements Formatter {
 	public void write(PagedMediaWriter writer) {
 		unopened = false;
 		try (WriterHandler wh = new WriterHandler(writer)) {
-			wh.write(getVolumes());
+			List<VolumeImpl> volumes = getVolumes();
+			FormatterMetrics.Timer t = getMetrics().start(FormatterMetrics.Phase.WRITING);
+			try {
+				wh.write(volumes);
+			} finally {
+				t.close();
+			}
 		} catch (IOException e) {
 			logger.log(Level.WARNING, "Failed to close resource.", e);
 		}
 	}
 
-	private Iterable<? extends Volume> getVolumes() {
+	private List<VolumeImpl> getVolumes() {
 		VolumeProvider volumeProvider = new VolumeProvider(blocks, volumeTemplates, context);
+		if (referenceSeed!=null) {
+			volumeProvider.seed(referenceSeed);
+		}
 
 		ArrayList<VolumeImpl> ret;
 
@@ -158,7 +196,9 @@ class FormatterImpl implements Formatter {
 		 * changing this value temporarily could be useful for debugging purposes.
 		 */
 		int maxIterations = 50;
+		FormatterMetrics metrics = getMetrics();
 		for (int j=1;j<=maxIterations;j++) {
+			metrics.startIteration();
 			try {
 				ret = new ArrayList<>();
 				volumeProvider.prepare();
@@ -168,17 +208,40 @@ class FormatterImpl implements Formatter {
 	
 				if (volumeProvider.done()) {
 					//everything fits
+					referenceSnapshot = volumeProvider.getSnapshot();
 					return ret;
 				}
 
 			} catch (RestartPaginationException e) {
 				// don't count this round, simply restart
+				metrics.increment(FormatterMetrics.Counter.RESTARTS);
+				volumeProvider.restart(e);
 				j--;
 			}
 		}
 		throw new RuntimeException("Failed to complete volume division.");
 	}
 
+	/**
+	 * Gets the metrics of this formatter. The figures are accumulated for
+	 * as long as the formatter is used.
+	 * @return the metrics
+	 */
+	@Override
+	public FormatterMetrics getMetrics() {
+		return context.getMetrics();
+	}
+
+	@Override
+	public void setReferenceSeed(ReferenceSnapshot seed) {
+		referenceSeed = seed;
+	}
+
+	@Override
+	public Optional<ReferenceSnapshot> getReferenceSnapshot() {
+		return Optional.ofNullable(referenceSnapshot);
+	}
+
 	@Override
 	public TransitionBuilder getTransitionBuilder() {
 		return context.getFormatterContext().getTransitionBuilder();
@@ -3,30 +3,49 @@ package org.daisy.dotify.formatter.impl;
 import org.daisy.dotify.api.formatter.FormatterConfiguration;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
 import org.daisy.dotify.api.translator.TextBorderFactoryMakerService;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.TranslationCache;
 import org.daisy.dotify.formatter.impl.core.FormatterContext;
 
 public class LazyFormatterContext {
 	private final BrailleTranslatorFactoryMakerService translatorFactory;
 	private final TextBorderFactoryMakerService tbf;
+	private final TranslationCache translationCache;
+	private final FormatterMetrics metrics;
 	private FormatterContext context = null;
 	private FormatterConfiguration config = null;
 
 	public LazyFormatterContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config) {
+		this(translatorFactory, tbf, config, null);
+	}
+
+	public LazyFormatterContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache) {
 		if (config==null) {
 			throw new IllegalArgumentException();
 		}
 		this.translatorFactory = translatorFactory;
 		this.tbf = tbf;
+		this.translationCache = translationCache;
+		this.metrics = new FormatterMetrics();
 		this.config = config;
 	}
 	
 	public synchronized FormatterContext getFormatterContext() {
 		if (context==null) {
-			context = new FormatterContext(translatorFactory, tbf, config);
+			context = new FormatterContext(translatorFactory, tbf, config, translationCache, metrics);
 		}
 		return context;
 	}
 
+	/**
+	 * Gets the metrics of the formatter. The same instance is used if
+	 * the configuration changes.
+	 * @return the metrics
+	 */
+	public FormatterMetrics getMetrics() {
+		return metrics;
+	}
+
 	public void setConfiguration(FormatterConfiguration config) {
 		if (config==null) {
 			throw new IllegalArgumentException();
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,6 +16,7 @@ import org.daisy.dotify.common.splitter.SplitPointDataSource;
 import org.daisy.dotify.common.splitter.SplitPointHandler;
 import org.daisy.dotify.common.splitter.SplitPointSpecification;
 import org.daisy.dotify.common.splitter.StandardSplitOption;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
 import org.daisy.dotify.formatter.impl.core.PaginatorException;
 import org.daisy.dotify.formatter.impl.page.BlockSequence;
 import org.daisy.dotify.formatter.impl.page.PageImpl;
@@ -22,10 +24,12 @@ import org.daisy.dotify.formatter.impl.page.RestartPaginationException;
 import org.daisy.dotify.formatter.impl.search.AnchorData;
 import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
 import org.daisy.dotify.formatter.impl.search.DefaultContext;
+import org.daisy.dotify.formatter.impl.search.ReferenceSnapshot;
 import org.daisy.dotify.formatter.impl.search.Space;
 import org.daisy.dotify.formatter.impl.search.VolumeKeepPriority;
 import org.daisy.dotify.formatter.impl.sheet.PageCounter;
 import org.daisy.dotify.formatter.impl.sheet.SectionBuilder;
+import org.daisy.dotify.formatter.impl.sheet.SequenceCache;
 import org.daisy.dotify.formatter.impl.sheet.Sheet;
 import org.daisy.dotify.formatter.impl.sheet.SheetDataSource;
 import org.daisy.dotify.formatter.impl.sheet.SheetGroup;
@@ -44,15 +48,31 @@ import org.daisy.dotify.formatter.impl.volume.VolumeTemplate;
 public class VolumeProvider {
 	private static final Logger logger = Logger.getLogger(VolumeProvider.class.getCanonicalName());
 	private static final int DEFAULT_SPLITTER_MAX = 50;
+	/**
+	 * The name of the system property that disables the reuse of the sheets of
+	 * unchanged block sequences between iterations. When set to "false", every
+	 * sequence is paginated in every iteration.
+	 */
+	static final String SEQUENCE_CACHE_PROPERTY = "org.daisy.dotify.formatter.impl.sequenceCache";
+	/**
+	 * The name of the system property that enables the concurrent preparation of
+	 * the block sequences in the main body of text. When set to "true", the blocks
+	 * of the sequences are laid out concurrently before the first pass, see
+	 * {@link BlockSequence#newPreparationTask(org.daisy.dotify.formatter.impl.core.FormatterContext, DefaultContext)}.
+	 */
+	static final String PARALLEL_SEQUENCES_PROPERTY = "org.daisy.dotify.formatter.impl.parallelSequences";
 	private final List<BlockSequence> blocks;
 	private final CrossReferenceHandler crh;
 	private SheetGroupManager groups;
 	private final SplitPointHandler<Sheet, SheetDataSource> volSplitter;
+	private final SequenceCache sequenceCache;
 
 	private int pageIndex = 0;
 	private int currentVolumeNumber=0;
 	private boolean init = false;
 	private int j = 1;
+	private boolean completed = true;
+	private Set<String> changedCollections = null;
 	
 	private final SplitterLimit splitterLimit;
     private final Stack<VolumeTemplate> volumeTemplates;
@@ -63,11 +83,10 @@ public class VolumeProvider {
 	 * @param blocks the block sequences
 	 * @param volumeTemplates volume templates
 	 * @param context the formatter context
-	 * @param crh the cross reference handler
 	 */
 	VolumeProvider(List<BlockSequence> blocks, Stack<VolumeTemplate> volumeTemplates, LazyFormatterContext context) {
 		this.blocks = blocks;
-		this.crh = new CrossReferenceHandler();
+		this.crh = new CrossReferenceHandler(logger.isLoggable(Level.FINE));
 		this.splitterLimit = volumeNumber -> {
             final DefaultContext c = new DefaultContext.Builder(crh)
                     .currentVolume(volumeNumber)
@@ -83,6 +102,7 @@ public class VolumeProvider {
 		this.volumeTemplates = volumeTemplates;
 		this.context = context;
 		this.volSplitter = new SplitPointHandler<>();
+		this.sequenceCache = "false".equalsIgnoreCase(System.getProperty(SEQUENCE_CACHE_PROPERTY))?null:new SequenceCache();
 	}
 		
 	/**
@@ -90,7 +110,22 @@ public class VolumeProvider {
 	 * @throws RestartPaginationException
 	 */
 	void prepare() {
+		if (!completed && sequenceCache!=null) {
+			// The previous iteration was restarted, which means that the
+			// formatter context has changed. Cached sheets cannot be reused,
+			// except for sequences that don't depend on the part that changed.
+			if (changedCollections!=null) {
+				sequenceCache.invalidate(changedCollections);
+			} else {
+				sequenceCache.clear();
+			}
+		}
+		completed = false;
+		changedCollections = null;
 		if (!init) {
+			if (Boolean.getBoolean(PARALLEL_SEQUENCES_PROPERTY)) {
+				prepareSequences();
+			}
 			groups = new SheetGroupManager(splitterLimit);
 			// make a preliminary calculation based on a contents only
 			Iterable<SheetDataSource> allUnits = prepareToPaginateWithVolumeGroups(blocks, new DefaultContext.Builder(crh).space(Space.BODY).build());
@@ -117,6 +152,28 @@ public class VolumeProvider {
 		groups.resetAll();
 	}
 	
+	/**
+	 * <p>Lays out the blocks of the sequences in the main body of text concurrently.
+	 * This is the part of the pagination of a sequence that doesn't depend on the
+	 * preceding sequences. Each sequence uses a fork of the cross reference handler.
+	 * The lookups are made on the handler when the sequence is paginated, in the same order
+	 * as if the blocks had been laid out at that point.</p>
+	 *
+	 * <p>The pagination itself, including the page numbers and the splitting into
+	 * volumes, is still sequential.</p>
+	 */
+	private void prepareSequences() {
+		DefaultContext rcontext = new DefaultContext.Builder(crh).space(Space.BODY).build();
+		List<Runnable> tasks = new ArrayList<>();
+		for (BlockSequence bs : blocks) {
+			bs.newPreparationTask(context.getFormatterContext(), rcontext).ifPresent(tasks::add);
+		}
+		if (tasks.size()>1) {
+			// the cross reference handler must not be modified until all tasks are done
+			tasks.parallelStream().forEach(Runnable::run);
+		}
+	}
+
 	/**
 	 * @return returns the next volume
 	 * @throws RestartPaginationException if pagination should be restarted
@@ -179,14 +236,21 @@ public class VolumeProvider {
 			}};
 		SplitPoint<Sheet, SheetDataSource> sp;
 
-		crh.setReadOnly();
-		SheetDataSource data = groups.currentGroup().getUnits();
-		SheetDataSource copySource = new SheetDataSource(data);
-		SplitPointSpecification spec = volSplitter.find(splitterMax-overhead, 
-				copySource, 
-				cost, StandardSplitOption.ALLOW_FORCE);
-		crh.setReadWrite();
-		sp = volSplitter.split(spec, groups.currentGroup().getUnits());
+		FormatterMetrics metrics = context.getFormatterContext().getMetrics();
+		FormatterMetrics.Timer t = metrics.start(FormatterMetrics.Phase.VOLUME_SPLITTING);
+		try {
+			crh.setReadOnly();
+			SheetDataSource data = groups.currentGroup().getUnits();
+			SheetDataSource copySource = new SheetDataSource(data);
+			metrics.increment(FormatterMetrics.Counter.SPLIT_POINT_SEARCHES);
+			SplitPointSpecification spec = volSplitter.find(splitterMax-overhead, 
+					copySource, 
+					cost, StandardSplitOption.ALLOW_FORCE);
+			crh.setReadWrite();
+			sp = volSplitter.split(spec, groups.currentGroup().getUnits());
+		} finally {
+			t.close();
+		}
 		/*
 			sp = volSplitter.split(splitterMax-overhead, 
 					groups.currentGroup().getUnits(),
@@ -221,6 +285,7 @@ public class VolumeProvider {
 						.currentVolume(volumeNumber)
 						.space(pre?Space.PRE_CONTENT:Space.POST_CONTENT)
 						.build();
+		Object reader = crh.setReader(volumeNumber);
 		try {
 			ArrayList<BlockSequence> ib = new ArrayList<>();
 			for (VolumeTemplate t : volumeTemplates) {
@@ -247,6 +312,8 @@ public class VolumeProvider {
 			return sb;
 		} catch (PaginatorException e) {
 			return null;
+		} finally {
+			crh.setReader(reader);
 		}
 	}
 	
@@ -282,7 +349,7 @@ public class VolumeProvider {
 		List<SheetDataSource> ret = new ArrayList<>();
 		int i = 0;
 		for (List<BlockSequence> glist : volGroups) {
-			ret.add(prepareToPaginate(pageCounter, rcontext, i++, glist));
+			ret.add(new SheetDataSource(pageCounter, context.getFormatterContext(), rcontext, i++, glist, sequenceCache));
 		}
 		return ret;
 	}
@@ -291,12 +358,24 @@ public class VolumeProvider {
 		return new SheetDataSource(pageCounter, context.getFormatterContext(), rcontext, volumeGroup, seqs);
 	}
 	
+	/**
+	 * Informs the volume provider that the current iteration was restarted. The
+	 * next call to {@link #prepare()} starts a new iteration, in which the sheets
+	 * of the sequences that weren't affected by the cause of the restart are reused,
+	 * if possible.
+	 * @param e the exception that caused the restart
+	 */
+	void restart(RestartPaginationException e) {
+		changedCollections = e.getChangedCollections().orElse(null);
+	}
+
 	/**
 	 * Informs the volume provider that the caller has finished requesting volumes.
 	 * <b>Note: only use after all volumes have been calculated.</b>
 	 * @return returns true if the volumes can be accepted, false otherwise  
 	 */
 	boolean done() {
+		completed = true;
 		if (groups.hasNext() && logger.isLoggable(Level.FINE)) {
 			logger.fine("There is more content (sheets: " + groups.countRemainingSheets() + ", pages: " + groups.countRemainingPages() + ")");
 		}
@@ -309,9 +388,13 @@ public class VolumeProvider {
 		crh.setVolumeCount(groups.getVolumeCount());
 		crh.setSheetsInDocument(groups.countTotalSheets());
 		//crh.setPagesInDocument(value);
+		crh.releaseSeed();
 		if (!crh.isDirty() && !groups.hasNext()) {
 			return true;
 		} else {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Changes in iteration " + j + ":\n" + crh.getChangeReport());
+			}
 			crh.setDirty(false);
 			logger.info("Things didn't add up, running another iteration (" + j + ")");
 		}
@@ -323,4 +406,27 @@ public class VolumeProvider {
 		return crh.getVolumeCount();
 	}
 
+	/**
+	 * Seeds the first iteration with the references of an earlier layout.
+	 * Only the lookup values are seeded, the search for a volume division starts
+	 * from the preliminary calculation as usual.
+	 * Must be called before {@link #prepare()} is called for the first time.
+	 * @param snapshot the snapshot
+	 */
+	void seed(ReferenceSnapshot snapshot) {
+		if (init) {
+			throw new IllegalStateException("Already started.");
+		}
+		crh.seed(snapshot);
+	}
+
+	/**
+	 * Gets a snapshot of the references. Only use after {@link #done()}
+	 * has returned true.
+	 * @return the snapshot
+	 */
+	ReferenceSnapshot getSnapshot() {
+		return crh.getSnapshot();
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.daisy.dotify.api.translator.AttributeWithContext;
+import org.daisy.dotify.api.translator.BrailleTranslator;
+import org.daisy.dotify.api.translator.BrailleTranslatorResult;
+import org.daisy.dotify.api.translator.FollowingText;
+import org.daisy.dotify.api.translator.PrecedingText;
+import org.daisy.dotify.api.translator.ResolvableText;
+import org.daisy.dotify.api.translator.TextAttribute;
+import org.daisy.dotify.api.translator.Translatable;
+import org.daisy.dotify.api.translator.TranslatableWithContext;
+import org.daisy.dotify.api.translator.TranslationException;
+
+/**
+ * <p>Provides a braille translator that stores its results in a {@link TranslationCache}.</p>
+ *
+ * <p>The key of a result contains the text, the locale, the hyphenation
+ * and capital letter settings and the attributes, together with the identity
+ * of the translator that produced it. Text that isn't static is never cached. If the attributes
+ * contain named styles, the preceding and following text is also part of the
+ * key, since the styles may span the text to translate.</p>
+ *
+ * @author Joel Håkansson
+ */
+class CachingBrailleTranslator implements BrailleTranslator {
+	private final BrailleTranslator translator;
+	private final TranslationCache cache;
+	private final List<Object> id;
+
+	/**
+	 * Creates a new caching braille translator.
+	 * @param translator the translator to use for results that aren't in the cache
+	 * @param cache the cache
+	 * @param locale the locale of the translator
+	 */
+	CachingBrailleTranslator(BrailleTranslator translator, TranslationCache cache, String locale) {
+		this(translator, translator, cache, locale);
+	}
+
+	/**
+	 * Creates a new caching braille translator.
+	 * @param translator the translator to use for results that aren't in the cache
+	 * @param translatorId the identity of the translator, used in the key together
+	 * 		with the locale and mode. Translators with equal identities must produce the
+	 * 		same results. For example, the service that created the translator.
+	 * @param cache the cache
+	 * @param locale the locale of the translator
+	 */
+	CachingBrailleTranslator(BrailleTranslator translator, Object translatorId, TranslationCache cache, String locale) {
+		this.translator = translator;
+		this.cache = cache;
+		this.id = Arrays.asList(translatorId, locale, translator.getTranslatorMode());
+	}
+
+	@Override
+	public BrailleTranslatorResult translate(Translatable specification) throws TranslationException {
+		List<Object> key = Arrays.asList(id,
+				specification.getText(),
+				specification.getLocale(),
+				specification.isHyphenating(),
+				specification.shouldMarkCapitalLetters(),
+				toKey(specification.getAttributes()));
+		BrailleTranslatorResult ret = cache.get(key);
+		if (ret==null) {
+			ret = translator.translate(specification);
+			cache.put(key, ret);
+		}
+		return ret;
+	}
+
+	@Override
+	public BrailleTranslatorResult translate(TranslatableWithContext specification) throws TranslationException {
+		List<Object> key = toKey(specification);
+		if (key==null) {
+			return translator.translate(specification);
+		}
+		BrailleTranslatorResult ret = cache.get(key);
+		if (ret==null) {
+			ret = translator.translate(specification);
+			cache.put(key, ret);
+		}
+		return ret;
+	}
+
+	@Override
+	public String getTranslatorMode() {
+		return translator.getTranslatorMode();
+	}
+
+	private List<Object> toKey(TranslatableWithContext specification) {
+		List<Object> key = new ArrayList<>();
+		key.add(id);
+		for (ResolvableText t : specification.getTextToTranslate()) {
+			if (!t.isStatic()) {
+				return null;
+			}
+			key.add(t.peek());
+			key.add(t.getLocale().orElse(null));
+			key.add(t.shouldHyphenate());
+			key.add(t.shouldMarkCapitalLetters());
+		}
+		AttributeWithContext attr = specification.getAttributes().orElse(null);
+		if (attr!=null && hasName(attr)) {
+			key.add(toKey(attr));
+			List<Object> context = new ArrayList<>();
+			for (PrecedingText t : specification.getPrecedingText()) {
+				context.add(t.resolve());
+			}
+			// Separates the preceding text from the following text
+			context.add(null);
+			for (FollowingText t : specification.getFollowingText()) {
+				context.add(t.peek());
+			}
+			key.add(context);
+		}
+		return key;
+	}
+
+	private static boolean hasName(AttributeWithContext attr) {
+		if (attr.getName().isPresent()) {
+			return true;
+		}
+		if (attr.hasChildren()) {
+			for (AttributeWithContext a : attr) {
+				if (hasName(a)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static List<Object> toKey(AttributeWithContext attr) {
+		List<Object> children = new ArrayList<>();
+		if (attr.hasChildren()) {
+			for (AttributeWithContext a : attr) {
+				children.add(toKey(a));
+			}
+		}
+		return Arrays.asList(attr.getWidth(), attr.getName().orElse(null), children);
+	}
+
+	private static List<Object> toKey(TextAttribute attr) {
+		if (attr==null) {
+			return null;
+		}
+		List<Object> children = new ArrayList<>();
+		if (attr.hasChildren()) {
+			for (TextAttribute a : attr) {
+				children.add(toKey(a));
+			}
+		}
+		return Arrays.asList(attr.getWidth(), attr.getDictionaryIdentifier(), children);
+	}
+}
@@ -0,0 +1,45 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import org.daisy.dotify.api.translator.BrailleTranslator;
+import org.daisy.dotify.api.translator.BrailleTranslatorResult;
+import org.daisy.dotify.api.translator.Translatable;
+import org.daisy.dotify.api.translator.TranslatableWithContext;
+import org.daisy.dotify.api.translator.TranslationException;
+
+/**
+ * Provides a braille translator that counts the calls to another translator.
+ *
+ * @author Joel Håkansson
+ */
+class CountingBrailleTranslator implements BrailleTranslator {
+	private final BrailleTranslator translator;
+	private final FormatterMetrics metrics;
+
+	/**
+	 * Creates a new counting braille translator.
+	 * @param translator the translator
+	 * @param metrics the metrics to count the calls in
+	 */
+	CountingBrailleTranslator(BrailleTranslator translator, FormatterMetrics metrics) {
+		this.translator = translator;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public BrailleTranslatorResult translate(Translatable specification) throws TranslationException {
+		metrics.increment(FormatterMetrics.Counter.TRANSLATIONS);
+		return translator.translate(specification);
+	}
+
+	@Override
+	public BrailleTranslatorResult translate(TranslatableWithContext specification) throws TranslationException {
+		metrics.increment(FormatterMetrics.Counter.TRANSLATIONS);
+		return translator.translate(specification);
+	}
+
+	@Override
+	public String getTranslatorMode() {
+		return translator.getTranslatorMode();
+	}
+
+}
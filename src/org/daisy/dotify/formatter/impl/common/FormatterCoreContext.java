@@ -11,22 +11,55 @@ import org.daisy.dotify.api.translator.Translatable;
 import org.daisy.dotify.api.translator.TranslationException;
 import org.daisy.dotify.api.translator.TranslatorConfigurationException;
 
+/**
+ * <p>Provides the context needed by the formatter core.</p>
+ * 
+ * <p>Braille translators are not assumed to be thread safe. Therefore, each thread
+ * that requests a translator gets its own instance.</p>
+ */
 public class FormatterCoreContext {
 	private final TextBorderFactoryMakerService tbf;
 	private final FormatterConfiguration config;
-	private final BrailleTranslator translator;
 	private final BrailleTranslatorFactoryMakerService translatorFactory;
 	private final char spaceChar;
-	private final Map<String, BrailleTranslator> cache;
+	private final ThreadLocal<Map<String, BrailleTranslator>> cache;
+	private final TranslationCache translationCache;
+	private final FormatterMetrics metrics;
 
 	protected FormatterCoreContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config) {
+		this(translatorFactory, tbf, config, null);
+	}
+
+	/**
+	 * Creates a new formatter core context.
+	 * @param translatorFactory the translator factory
+	 * @param tbf the text border factory
+	 * @param config the configuration
+	 * @param translationCache a cache for translation results, or null to
+	 * 		translate all text every time
+	 */
+	protected FormatterCoreContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache) {
+		this(translatorFactory, tbf, config, translationCache, new FormatterMetrics());
+	}
+
+	/**
+	 * Creates a new formatter core context.
+	 * @param translatorFactory the translator factory
+	 * @param tbf the text border factory
+	 * @param config the configuration
+	 * @param translationCache a cache for translation results, or null to
+	 * 		translate all text every time
+	 * @param metrics the metrics to record the layout figures in
+	 */
+	protected FormatterCoreContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache, FormatterMetrics metrics) {
 		this.tbf = tbf;
+		this.metrics = metrics;
 		this.config = config;
 		this.translatorFactory = translatorFactory;
-		this.cache = new HashMap<>();
+		this.cache = ThreadLocal.withInitial(HashMap::new);
+		this.translationCache = translationCache;
 		try {
-			this.translator = translatorFactory.newTranslator(config.getLocale(), config.getTranslationMode());
-			cache.put(config.getTranslationMode(), translator);
+			cache.get().put(config.getTranslationMode(), newTranslator(config.getTranslationMode()));
 		} catch (TranslatorConfigurationException e) {
 			throw new IllegalArgumentException(e);
 		}
@@ -45,21 +78,39 @@ public class FormatterCoreContext {
 	}
 	
 	public BrailleTranslator getDefaultTranslator() {
-		return translator;
+		return getTranslatorInCurrentThread(config.getTranslationMode());
 	}
 	
 	public BrailleTranslator getTranslator(String mode) {
 		if (mode==null) {
-			return translator;
+			return getDefaultTranslator();
 		}
-		BrailleTranslator ret = cache.get(mode);
+		return getTranslatorInCurrentThread(mode);
+	}
+
+	private BrailleTranslator getTranslatorInCurrentThread(String mode) {
+		Map<String, BrailleTranslator> translators = cache.get();
+		BrailleTranslator ret = translators.get(mode);
 		if (ret==null) {
 			try {
-				ret = translatorFactory.newTranslator(getConfiguration().getLocale(), mode);
+				ret = newTranslator(mode);
 			} catch (TranslatorConfigurationException e) {
 				throw new IllegalArgumentException(e);
 			}
-			cache.put(mode, ret);
+			translators.put(mode, ret);
+		}
+		return ret;
+	}
+
+	private BrailleTranslator newTranslator(String mode) throws TranslatorConfigurationException {
+		BrailleTranslator translator = translatorFactory.newTranslator(config.getLocale(), mode);
+		BrailleTranslator ret = new CountingBrailleTranslator(translator, metrics);
+		if (translationCache!=null) {
+			// The translators of a pool are created by the pooled service, so they are equivalent
+			Object translatorId = translatorFactory instanceof TranslatorPool
+					?((TranslatorPool)translatorFactory).getFactory()
+					:translatorFactory;
+			ret = new CachingBrailleTranslator(ret, translatorId, translationCache, config.getLocale());
 		}
 		return ret;
 	}
@@ -76,4 +127,12 @@ public class FormatterCoreContext {
 		return spaceChar;
 	}
 
+	/**
+	 * Gets the metrics that the layout figures are recorded in.
+	 * @return the metrics
+	 */
+	public FormatterMetrics getMetrics() {
+		return metrics;
+	}
+
 }
@@ -0,0 +1,312 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Provides figures about a conversion: the time spent in each phase of the
+ * layout and a number of counters.</p>
+ *
+ * <p>Phase times are exclusive. When a phase is started while another phase is
+ * running in the same thread, for example row breaking while splitting pages,
+ * the outer phase is paused until the inner phase ends. Time spent in other
+ * threads is added to the phase it was spent in, so the sum of all phases may
+ * be larger than the wall time if the layout runs in parallel.</p>
+ *
+ * <p>The figures can be exported as JSON, see {@link #toJson()}, or read
+ * one by one and passed on to some other metrics system.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class FormatterMetrics {
+
+	/**
+	 * Provides access to the metrics of an object, for example a formatter.
+	 */
+	@FunctionalInterface
+	public interface Provider {
+		/**
+		 * Gets the metrics.
+		 * @return the metrics
+		 */
+		FormatterMetrics getMetrics();
+	}
+
+	/**
+	 * Provides the phases that are timed.
+	 */
+	public enum Phase {
+		/**
+		 * Parsing the input and building the formatter structure.
+		 */
+		PARSING("parsing"),
+		/**
+		 * Selecting the block scenarios of the sequences.
+		 */
+		SCENARIO_SELECTION("scenarioSelection"),
+		/**
+		 * Breaking text into rows.
+		 */
+		ROW_BREAKING("rowBreaking"),
+		/**
+		 * Splitting rows into pages.
+		 */
+		PAGE_SPLITTING("pageSplitting"),
+		/**
+		 * Splitting sheets into volumes.
+		 */
+		VOLUME_SPLITTING("volumeSplitting"),
+		/**
+		 * Writing the result.
+		 */
+		WRITING("writing");
+
+		private final String key;
+
+		private Phase(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Gets the key used for this phase when exporting.
+		 * @return the key
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+
+	/**
+	 * Provides the events that are counted.
+	 */
+	public enum Counter {
+		/**
+		 * Pagination passes, including passes that were restarted.
+		 */
+		ITERATIONS("iterations"),
+		/**
+		 * Pagination passes that were restarted.
+		 */
+		RESTARTS("restarts"),
+		/**
+		 * Searches for a split point, of pages as well as of volumes.
+		 */
+		SPLIT_POINT_SEARCHES("splitPointSearches"),
+		/**
+		 * Copies of the row group and sheet data sources.
+		 */
+		DATA_SOURCE_COPIES("dataSourceCopies"),
+		/**
+		 * Calls to a braille translator. Results taken from the translation
+		 * cache are not counted.
+		 */
+		TRANSLATIONS("translations"),
+		/**
+		 * Pages created, in all passes.
+		 */
+		PAGES("pages");
+
+		private final String key;
+
+		private Counter(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Gets the key used for this counter when exporting.
+		 * @return the key
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private final LongAdder[] nanos;
+	private final LongAdder[] calls;
+	private final LongAdder[] counts;
+	private final AtomicInteger pagesInIteration;
+	private final AtomicInteger peakPages;
+	private final ThreadLocal<Timer> current;
+
+	/**
+	 * Creates a new instance where all figures are zero.
+	 */
+	public FormatterMetrics() {
+		this.nanos = newAdders(Phase.values().length);
+		this.calls = newAdders(Phase.values().length);
+		this.counts = newAdders(Counter.values().length);
+		this.pagesInIteration = new AtomicInteger();
+		this.peakPages = new AtomicInteger();
+		this.current = new ThreadLocal<>();
+	}
+
+	private static LongAdder[] newAdders(int size) {
+		LongAdder[] ret = new LongAdder[size];
+		for (int i=0; i<size; i++) {
+			ret[i] = new LongAdder();
+		}
+		return ret;
+	}
+
+	/**
+	 * Starts timing a phase in the current thread. The returned timer must be
+	 * closed in the same thread, preferably in a finally block:
+	 * <pre>
+	 * FormatterMetrics.Timer t = metrics.start(Phase.WRITING);
+	 * try {
+	 *     ...
+	 * } finally {
+	 *     t.close();
+	 * }
+	 * </pre>
+	 * @param phase the phase
+	 * @return the timer
+	 */
+	public Timer start(Phase phase) {
+		long now = System.nanoTime();
+		Timer parent = current.get();
+		if (parent!=null) {
+			parent.pause(now);
+		}
+		Timer ret = new Timer(phase, parent, now);
+		current.set(ret);
+		return ret;
+	}
+
+	/**
+	 * Provides a running phase timer.
+	 */
+	public final class Timer implements AutoCloseable {
+		private final Phase phase;
+		private final Timer parent;
+		private long start;
+		private boolean closed;
+
+		private Timer(Phase phase, Timer parent, long start) {
+			this.phase = phase;
+			this.parent = parent;
+			this.start = start;
+			this.closed = false;
+		}
+
+		private void pause(long now) {
+			nanos[phase.ordinal()].add(now-start);
+		}
+
+		/**
+		 * Stops the timer and resumes the enclosing phase, if any.
+		 */
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			long now = System.nanoTime();
+			nanos[phase.ordinal()].add(now-start);
+			calls[phase.ordinal()].increment();
+			if (parent!=null) {
+				parent.start = now;
+				current.set(parent);
+			} else {
+				current.remove();
+			}
+		}
+	}
+
+	/**
+	 * Increments a counter by one.
+	 * @param counter the counter
+	 */
+	public void increment(Counter counter) {
+		counts[counter.ordinal()].increment();
+	}
+
+	/**
+	 * Marks the start of a pagination pass.
+	 */
+	public void startIteration() {
+		increment(Counter.ITERATIONS);
+		pagesInIteration.set(0);
+	}
+
+	/**
+	 * Marks that a page has been created.
+	 */
+	public void pageCreated() {
+		increment(Counter.PAGES);
+		int c = pagesInIteration.incrementAndGet();
+		peakPages.accumulateAndGet(c, Math::max);
+	}
+
+	/**
+	 * Gets the time spent in a phase.
+	 * @param phase the phase
+	 * @return the time, in nanoseconds
+	 */
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the number of times a phase has been entered.
+	 * @param phase the phase
+	 * @return the number of times
+	 */
+	public long getCalls(Phase phase) {
+		return calls[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the value of a counter.
+	 * @param counter the counter
+	 * @return the value
+	 */
+	public long getCount(Counter counter) {
+		return counts[counter.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the largest number of pages created in a single pagination pass.
+	 * @return the number of pages
+	 */
+	public int getPeakPages() {
+		return peakPages.get();
+	}
+
+	/**
+	 * <p>Gets the figures as a JSON object, for example:</p>
+	 * <pre>
+	 * {"phases":{"parsing":{"nanos":1200,"calls":1},...},
+	 *  "counters":{"iterations":2,...},"peakPages":12}
+	 * </pre>
+	 * @return a JSON string
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"phases\":{");
+		for (Phase p : Phase.values()) {
+			if (p.ordinal()>0) {
+				sb.append(',');
+			}
+			sb.append('"').append(p.getKey()).append("\":{\"nanos\":").append(getNanos(p))
+				.append(",\"calls\":").append(getCalls(p)).append('}');
+		}
+		sb.append("},\"counters\":{");
+		for (Counter c : Counter.values()) {
+			if (c.ordinal()>0) {
+				sb.append(',');
+			}
+			sb.append('"').append(c.getKey()).append("\":").append(getCount(c));
+		}
+		sb.append("},\"peakPages\":").append(getPeakPages()).append('}');
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+}
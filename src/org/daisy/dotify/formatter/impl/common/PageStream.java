@@ -0,0 +1,219 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+
+/**
+ * <p>Provides the constants and helpers of the page stream format, used by
+ * {@link PageStreamWriter} and {@link PageStreamReader}.</p>
+ *
+ * <p>A page stream starts with a header and the metadata, followed by
+ * the calls made to the writer, one operation byte for each call:</p>
+ * <ul>
+ * <li>Section properties are interned. The first time a set of properties
+ * is used, it is defined with {@link #PROPERTIES}. After that it is
+ * referred to by index in {@link #VOLUME} and {@link #SECTION}.</li>
+ * <li>Rows are dictionary coded. The dictionary has a fixed number of slots
+ * and a row is assigned to the slot given by its hash code. A row that
+ * is in its slot is written as a reference to the slot, other rows are
+ * written in full and replace the row in the slot. Rows of braille
+ * patterns only (U+2800 to U+28FF) are written as one byte per character.</li>
+ * <li>The flags byte of a row tells if it has row spacing and how the
+ * characters are coded.</li>
+ * </ul>
+ * <p>Integers are written as variable length unsigned integers, seven bits
+ * per byte with the least significant group first.</p>
+ *
+ * @author Joel Håkansson
+ */
+final class PageStream {
+	static final int MAGIC = 0x44505331; // "DPS1"
+	static final int VERSION = 1;
+	static final int DICTIONARY_SIZE = 4096;
+
+	static final int END = 0;
+	static final int PROPERTIES = 1;
+	static final int VOLUME = 2;
+	static final int SECTION = 3;
+	static final int PAGE = 4;
+	static final int ROW = 5;
+	static final int EMPTY_ROW = 6;
+
+	static final int FLAG_ROW_SPACING = 0x01;
+	static final int FLAG_REFERENCE = 0x02;
+	static final int FLAG_BRAILLE = 0x04;
+
+	static final char BRAILLE_PATTERN_BLANK = '⠀';
+
+	private PageStream() {}
+
+	static int slot(String chars) {
+		return (chars.hashCode() & 0x7FFFFFFF) % DICTIONARY_SIZE;
+	}
+
+	static boolean isBraille(String chars) {
+		for (int i=0; i<chars.length(); i++) {
+			if ((chars.charAt(i) & 0xFF00) != BRAILLE_PATTERN_BLANK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void writeInt(DataOutput out, int value) throws IOException {
+		if (value<0) {
+			throw new IllegalArgumentException("Negative value: " + value);
+		}
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readInt(DataInput in) throws IOException {
+		int ret = 0;
+		for (int shift=0; shift<32; shift+=7) {
+			int b = in.readUnsignedByte();
+			ret |= (b & 0x7F) << shift;
+			if ((b & 0x80)==0) {
+				return ret;
+			}
+		}
+		throw new IOException("Malformed integer.");
+	}
+
+	/**
+	 * Writes a string, which may be null. The length is written plus one,
+	 * so that zero can be used for null.
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		if (value==null) {
+			writeInt(out, 0);
+			return;
+		}
+		writeInt(out, value.length() + 1);
+		for (int i=0; i<value.length(); i++) {
+			out.writeChar(value.charAt(i));
+		}
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int len = readInt(in);
+		if (len==0) {
+			return null;
+		}
+		char[] chars = new char[len - 1];
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Provides section properties with value equality, so that they
+	 * can be interned.
+	 */
+	static final class Properties implements SectionProperties {
+		private final int pageWidth;
+		private final int pageHeight;
+		private final float rowSpacing;
+		private final boolean duplex;
+
+		Properties(SectionProperties props) {
+			this(props.getPageWidth(), props.getPageHeight(), props.getRowSpacing(), props.duplex());
+		}
+
+		Properties(int pageWidth, int pageHeight, float rowSpacing, boolean duplex) {
+			this.pageWidth = pageWidth;
+			this.pageHeight = pageHeight;
+			this.rowSpacing = rowSpacing;
+			this.duplex = duplex;
+		}
+
+		@Override
+		public int getPageWidth() {
+			return pageWidth;
+		}
+
+		@Override
+		public int getPageHeight() {
+			return pageHeight;
+		}
+
+		@Override
+		public float getRowSpacing() {
+			return rowSpacing;
+		}
+
+		@Override
+		public boolean duplex() {
+			return duplex;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (duplex ? 1231 : 1237);
+			result = prime * result + pageHeight;
+			result = prime * result + pageWidth;
+			result = prime * result + Float.floatToIntBits(rowSpacing);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			Properties other = (Properties) obj;
+			if (duplex != other.duplex) {
+				return false;
+			}
+			if (pageHeight != other.pageHeight) {
+				return false;
+			}
+			if (pageWidth != other.pageWidth) {
+				return false;
+			}
+			if (Float.floatToIntBits(rowSpacing) != Float.floatToIntBits(other.rowSpacing)) {
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Provides a row read from a page stream.
+	 */
+	static final class StoredRow implements Row {
+		private final String chars;
+		private final Float rowSpacing;
+
+		StoredRow(String chars, Float rowSpacing) {
+			this.chars = chars;
+			this.rowSpacing = rowSpacing;
+		}
+
+		@Override
+		public String getChars() {
+			return chars;
+		}
+
+		@Override
+		public Float getRowSpacing() {
+			return rowSpacing;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.daisy.dotify.api.writer.AttributeItem;
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+
+/**
+ * <p>Provides a reader for page streams created by a {@link PageStreamWriter}.
+ * The recorded calls are replayed to one or more writers in a single pass,
+ * for example to create both PEF and formatted text from the same
+ * paginated result.</p>
+ *
+ * <p>The writers must be prepared and opened before the page stream is
+ * replayed, and closed afterwards. The metadata of the page stream is
+ * available before it is replayed, so that it can be used when preparing
+ * the writers.</p>
+ *
+ * @author Joel Håkansson
+ */
+public class PageStreamReader implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final DataInputStream in;
+	private final List<MetaDataItem> metadata;
+	private boolean replayed;
+
+	/**
+	 * Creates a new page stream reader. The header and the metadata
+	 * are read from the stream.
+	 * @param is the input stream
+	 * @throws IOException if the stream could not be read or isn't a page stream
+	 */
+	public PageStreamReader(InputStream is) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+		if (in.readInt()!=PageStream.MAGIC) {
+			throw new IOException("Not a page stream.");
+		}
+		int version = in.readUnsignedByte();
+		if (version!=PageStream.VERSION) {
+			throw new IOException("Unsupported page stream version: " + version);
+		}
+		int size = PageStream.readInt(in);
+		List<MetaDataItem> meta = new ArrayList<>();
+		for (int i=0; i<size; i++) {
+			QName key = new QName(PageStream.readString(in), PageStream.readString(in), PageStream.readString(in));
+			MetaDataItem.Builder builder = new MetaDataItem.Builder(key, PageStream.readString(in));
+			if (in.readBoolean()) {
+				builder.attribute(new AttributeItem(PageStream.readString(in), PageStream.readString(in)));
+			}
+			meta.add(builder.build());
+		}
+		this.metadata = Collections.unmodifiableList(meta);
+		this.replayed = false;
+	}
+
+	/**
+	 * Gets the metadata of the page stream.
+	 * @return the metadata
+	 */
+	public List<MetaDataItem> getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Replays the page stream to the supplied writers. This method can only
+	 * be called once.
+	 * @param writers the writers
+	 * @throws IOException if the stream could not be read
+	 * @throws IllegalStateException if the page stream has already been replayed
+	 */
+	public void replay(PagedMediaWriter ... writers) throws IOException {
+		if (replayed) {
+			throw new IllegalStateException("The page stream has already been replayed.");
+		}
+		replayed = true;
+		List<SectionProperties> properties = new ArrayList<>();
+		String[] dictionary = new String[PageStream.DICTIONARY_SIZE];
+		int op;
+		while ((op = in.readUnsignedByte())!=PageStream.END) {
+			switch (op) {
+				case PageStream.PROPERTIES:
+					properties.add(new PageStream.Properties(PageStream.readInt(in), PageStream.readInt(in), in.readFloat(), in.readBoolean()));
+					break;
+				case PageStream.VOLUME: {
+					SectionProperties props = properties.get(PageStream.readInt(in));
+					for (PagedMediaWriter w : writers) {
+						w.newVolume(props);
+					}
+					break;
+				}
+				case PageStream.SECTION: {
+					SectionProperties props = properties.get(PageStream.readInt(in));
+					for (PagedMediaWriter w : writers) {
+						w.newSection(props);
+					}
+					break;
+				}
+				case PageStream.PAGE:
+					for (PagedMediaWriter w : writers) {
+						w.newPage();
+					}
+					break;
+				case PageStream.ROW: {
+					Row row = readRow(dictionary);
+					for (PagedMediaWriter w : writers) {
+						w.newRow(row);
+					}
+					break;
+				}
+				case PageStream.EMPTY_ROW:
+					for (PagedMediaWriter w : writers) {
+						w.newRow();
+					}
+					break;
+				default:
+					throw new IOException("Unexpected data in page stream: " + op);
+			}
+		}
+	}
+
+	private Row readRow(String[] dictionary) throws IOException {
+		int flags = in.readUnsignedByte();
+		Float rowSpacing = (flags & PageStream.FLAG_ROW_SPACING)!=0?in.readFloat():null;
+		String chars;
+		if ((flags & PageStream.FLAG_REFERENCE)!=0) {
+			chars = dictionary[PageStream.readInt(in)];
+			if (chars==null) {
+				throw new IOException("Reference to an empty dictionary slot.");
+			}
+		} else {
+			if ((flags & PageStream.FLAG_BRAILLE)!=0) {
+				char[] c = new char[PageStream.readInt(in)];
+				for (int i=0; i<c.length; i++) {
+					c[i] = (char)(PageStream.BRAILLE_PATTERN_BLANK | in.readUnsignedByte());
+				}
+				chars = new String(c);
+			} else {
+				chars = PageStream.readString(in);
+			}
+			dictionary[PageStream.slot(chars)] = chars;
+		}
+		return new PageStream.StoredRow(chars, rowSpacing);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,178 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.daisy.dotify.api.writer.AttributeItem;
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+import org.daisy.dotify.common.io.StateObject;
+
+/**
+ * <p>Provides a paged media writer that records the paginated result
+ * in a compact binary format, a page stream. The page stream can be
+ * replayed to any number of other writers with a {@link PageStreamReader},
+ * without formatting the document again.</p>
+ *
+ * <p>The format is described in {@link PageStream}.</p>
+ *
+ * @author Joel Håkansson
+ */
+public class PageStreamWriter implements PagedMediaWriter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final StateObject state;
+	private final List<MetaDataItem> metadata;
+	private final Map<PageStream.Properties, Integer> properties;
+	private final String[] dictionary;
+	private DataOutputStream out;
+
+	/**
+	 * Creates a new page stream writer.
+	 */
+	public PageStreamWriter() {
+		this.state = new StateObject("Writer");
+		this.metadata = new ArrayList<>();
+		this.properties = new HashMap<>();
+		this.dictionary = new String[PageStream.DICTIONARY_SIZE];
+	}
+
+	@Override
+	public void prepare(List<MetaDataItem> meta) {
+		state.assertUnopened();
+		metadata.addAll(meta);
+	}
+
+	@Override
+	public void open(OutputStream os) {
+		state.assertUnopened();
+		state.open();
+		out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+		try {
+			out.writeInt(PageStream.MAGIC);
+			out.writeByte(PageStream.VERSION);
+			PageStream.writeInt(out, metadata.size());
+			for (MetaDataItem item : metadata) {
+				PageStream.writeString(out, item.getKey().getNamespaceURI());
+				PageStream.writeString(out, item.getKey().getLocalPart());
+				PageStream.writeString(out, item.getKey().getPrefix());
+				PageStream.writeString(out, item.getValue());
+				AttributeItem att = item.getAttribute();
+				out.writeBoolean(att!=null);
+				if (att!=null) {
+					PageStream.writeString(out, att.getName());
+					PageStream.writeString(out, att.getValue());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void newVolume(SectionProperties props) {
+		writeProperties(PageStream.VOLUME, props);
+	}
+
+	@Override
+	public void newSection(SectionProperties props) {
+		writeProperties(PageStream.SECTION, props);
+	}
+
+	private void writeProperties(int op, SectionProperties props) {
+		state.assertOpen();
+		try {
+			PageStream.Properties p = new PageStream.Properties(props);
+			Integer index = properties.get(p);
+			if (index==null) {
+				index = properties.size();
+				properties.put(p, index);
+				out.writeByte(PageStream.PROPERTIES);
+				PageStream.writeInt(out, p.getPageWidth());
+				PageStream.writeInt(out, p.getPageHeight());
+				out.writeFloat(p.getRowSpacing());
+				out.writeBoolean(p.duplex());
+			}
+			out.writeByte(op);
+			PageStream.writeInt(out, index);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void newPage() {
+		writeOperation(PageStream.PAGE);
+	}
+
+	@Override
+	public void newRow() {
+		writeOperation(PageStream.EMPTY_ROW);
+	}
+
+	private void writeOperation(int op) {
+		state.assertOpen();
+		try {
+			out.writeByte(op);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void newRow(Row row) {
+		state.assertOpen();
+		String chars = row.getChars();
+		Float rowSpacing = row.getRowSpacing();
+		int slot = PageStream.slot(chars);
+		boolean reference = chars.equals(dictionary[slot]);
+		boolean braille = !reference && PageStream.isBraille(chars);
+		int flags = (rowSpacing!=null?PageStream.FLAG_ROW_SPACING:0)
+				| (reference?PageStream.FLAG_REFERENCE:0)
+				| (braille?PageStream.FLAG_BRAILLE:0);
+		try {
+			out.writeByte(PageStream.ROW);
+			out.writeByte(flags);
+			if (rowSpacing!=null) {
+				out.writeFloat(rowSpacing);
+			}
+			if (reference) {
+				PageStream.writeInt(out, slot);
+			} else {
+				dictionary[slot] = chars;
+				if (braille) {
+					PageStream.writeInt(out, chars.length());
+					for (int i=0; i<chars.length(); i++) {
+						out.writeByte(chars.charAt(i));
+					}
+				} else {
+					PageStream.writeString(out, chars);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (state.isClosed()) {
+			return;
+		}
+		state.assertOpen();
+		try {
+			out.writeByte(PageStream.END);
+		} finally {
+			out.close();
+			state.close();
+		}
+	}
+}
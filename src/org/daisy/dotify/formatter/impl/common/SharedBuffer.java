@@ -0,0 +1,127 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * <p>Provides an append-only list that can be copied in constant time.</p>
+ *
+ * <p>A copy, or a tail, shares its elements with the original. Since
+ * elements can only be appended, the shared elements never change.
+ * The first buffer to append to the shared storage does so in place.
+ * If another buffer sharing the same storage then appends, it first moves
+ * its own elements to a new storage. In other words, a copy that is
+ * discarded without being modified costs nothing but the copy itself.</p>
+ *
+ * <p>This is useful for the buffers of the data sources used when
+ * searching for break points, since they are copied for every
+ * trial, but most copies are discarded after a few additions.</p>
+ *
+ * <p>Note that this class isn't thread safe. Buffers sharing storage
+ * must be used in the same thread.</p>
+ *
+ * @author Joel Håkansson
+ * @param <E> the type of elements
+ */
+public final class SharedBuffer<E> extends AbstractList<E> implements RandomAccess {
+	private static final int INITIAL_CAPACITY = 10;
+	private static final Object[] EMPTY = new Object[0];
+	private Store store;
+	private int offset;
+	private int size;
+
+	private static final class Store {
+		private final Object[] items;
+		private int size;
+
+		private Store(Object[] items, int size) {
+			this.items = items;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Creates a new empty buffer.
+	 */
+	public SharedBuffer() {
+		this.store = new Store(EMPTY, 0);
+		this.offset = 0;
+		this.size = 0;
+	}
+
+	private SharedBuffer(SharedBuffer<E> template, int from) {
+		this.store = template.store;
+		this.offset = template.offset + from;
+		this.size = template.size - from;
+	}
+
+	/**
+	 * Creates a copy of this buffer. This is a constant time operation.
+	 * @return a new buffer
+	 */
+	public SharedBuffer<E> copy() {
+		return new SharedBuffer<>(this, 0);
+	}
+
+	/**
+	 * Creates a new buffer containing the elements of this buffer starting at the
+	 * specified index. If the index is larger than the size of this buffer, the
+	 * new buffer is empty. This is a constant time operation.
+	 * @param fromIndex the index of the first element in the new buffer
+	 * @return a new buffer
+	 * @throws IndexOutOfBoundsException if the index is negative
+	 */
+	public SharedBuffer<E> tail(int fromIndex) {
+		if (fromIndex<0) {
+			throw new IndexOutOfBoundsException("Index: " + fromIndex);
+		}
+		return new SharedBuffer<>(this, Math.min(fromIndex, size));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E get(int index) {
+		if (index<0 || index>=size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return (E)store.items[offset + index];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean add(E e) {
+		if (store.size!=offset+size || store.size==store.items.length) {
+			// Either another buffer has appended to the storage after the last element of
+			// this buffer, or the storage is full. In both cases the elements of this buffer
+			// are moved to a new storage, which also drops the elements before the offset.
+			Object[] items = new Object[Math.max(INITIAL_CAPACITY, size * 2)];
+			System.arraycopy(store.items, offset, items, 0, size);
+			store = new Store(items, size);
+			offset = 0;
+		}
+		store.items[store.size] = e;
+		store.size++;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		// Other buffers may share the storage, so it must not be modified.
+		store = new Store(EMPTY, 0);
+		offset = 0;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return Arrays.copyOfRange(store.items, offset, offset + size);
+	}
+}
@@ -0,0 +1,118 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.daisy.dotify.api.translator.BrailleTranslatorResult;
+
+/**
+ * <p>Provides a cache for braille translation results. The cache is bounded
+ * and evicts the least recently used result when it is full.</p>
+ *
+ * <p>A cache can be shared between formatter instances, in which case
+ * identical text is translated only once, regardless of which formatter
+ * encounters it first. The cache is thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class TranslationCache {
+	/**
+	 * The default maximum number of results in a cache.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	private final Map<List<Object>, BrailleTranslatorResult> results;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Creates a new cache with the default maximum size.
+	 */
+	public TranslationCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a new cache with the specified maximum size.
+	 * @param maxSize the maximum number of results in the cache
+	 * @throws IllegalArgumentException if max size is less than 1
+	 */
+	public TranslationCache(final int maxSize) {
+		if (maxSize<1) {
+			throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+		}
+		this.results = new LinkedHashMap<List<Object>, BrailleTranslatorResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 6547896510307284523L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, BrailleTranslatorResult> eldest) {
+				return size()>maxSize;
+			}
+		};
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Gets a copy of the result for the specified key.
+	 * @param key the key
+	 * @return a copy of the result, or null if the key isn't in the cache
+	 */
+	synchronized BrailleTranslatorResult get(List<Object> key) {
+		BrailleTranslatorResult ret = results.get(key);
+		if (ret==null) {
+			misses++;
+			return null;
+		} else {
+			hits++;
+			return ret.copy();
+		}
+	}
+
+	/**
+	 * Puts a copy of the result in the cache. The result must not
+	 * have been used to get translated rows.
+	 * @param key the key
+	 * @param value the result
+	 */
+	synchronized void put(List<Object> key, BrailleTranslatorResult value) {
+		results.put(key, value.copy());
+	}
+
+	/**
+	 * Gets the number of requests that were found in the cache.
+	 * @return the number of hits
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of requests that weren't found in the cache.
+	 * Note that this doesn't include requests that can't be cached.
+	 * @return the number of misses
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of results in the cache.
+	 * @return the number of results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * Removes all results from the cache. The hit and miss counts are not affected.
+	 */
+	public synchronized void clear() {
+		results.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TranslationCache [size=" + results.size() + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+}
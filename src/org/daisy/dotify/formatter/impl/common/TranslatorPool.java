@@ -0,0 +1,81 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.daisy.dotify.api.translator.BrailleTranslator;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactory;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
+import org.daisy.dotify.api.translator.TranslatorConfigurationException;
+import org.daisy.dotify.api.translator.TranslatorSpecification;
+
+/**
+ * <p>Provides a braille translator factory that keeps the translators it has
+ * created, so that formatters can share them instead of creating new ones
+ * for each document.</p>
+ *
+ * <p>Translators aren't required to be thread safe, so a translator is only
+ * shared within a thread. In other words, each thread gets its own translator
+ * for each locale and mode, the first time it is requested. All other calls
+ * are passed on to the underlying factory.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class TranslatorPool implements BrailleTranslatorFactoryMakerService {
+	private final BrailleTranslatorFactoryMakerService factory;
+	private final ThreadLocal<Map<List<String>, BrailleTranslator>> translators;
+
+	/**
+	 * Creates a new translator pool.
+	 * @param factory the factory to create the translators with
+	 */
+	public TranslatorPool(BrailleTranslatorFactoryMakerService factory) {
+		this.factory = factory;
+		this.translators = ThreadLocal.withInitial(HashMap::new);
+	}
+
+	/**
+	 * Gets the factory that the translators are created with.
+	 * @return the factory
+	 */
+	public BrailleTranslatorFactoryMakerService getFactory() {
+		return factory;
+	}
+
+	@Override
+	public boolean supportsSpecification(String locale, String mode) {
+		return factory.supportsSpecification(locale, mode);
+	}
+
+	@Override
+	public Collection<TranslatorSpecification> listSpecifications() {
+		return factory.listSpecifications();
+	}
+
+	@Override
+	public BrailleTranslatorFactory newFactory(String locale, String mode) throws TranslatorConfigurationException {
+		return factory.newFactory(locale, mode);
+	}
+
+	/**
+	 * Gets the translator for the specified locale and mode in the current thread.
+	 * The translator is created the first time it is requested.
+	 */
+	@Override
+	public BrailleTranslator newTranslator(String locale, String mode) throws TranslatorConfigurationException {
+		Map<List<String>, BrailleTranslator> map = translators.get();
+		List<String> key = Arrays.asList(locale, mode);
+		BrailleTranslator ret = map.get(key);
+		if (ret==null) {
+			ret = factory.newTranslator(locale, mode);
+			map.put(key, ret);
+		}
+		return ret;
+	}
+
+}
@@ -132,6 +132,16 @@ public abstract class Block {
 		return isVolatile;
 	}
 
+	/**
+	 * Returns true if the layout of this block, including any nested content,
+	 * depends on values that are only known once the block has been placed,
+	 * for example cross references.
+	 * @return true if the content is volatile, false otherwise
+	 */
+	public boolean hasVolatileContent() {
+		return isVolatile();
+	}
+
 	public FormattingTypes.BreakBefore getBreakBeforeType() {
 		return breakBefore;
 	}
@@ -0,0 +1,169 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * <p>Provides an unsynchronized list of blocks that is built by appending
+ * blocks to it. The blocks are stored in fixed size chunks, so that the list
+ * can grow without copying the blocks.</p>
+ *
+ * <p>Blocks can be added at the end and removed from the end, other
+ * modifications are not supported. An immutable snapshot of the list can be
+ * created with {@link #view()}, without copying the blocks. Blocks that are
+ * added to the list after that aren't visible in the view, and removing blocks
+ * from the end of the list doesn't affect it.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+public class BlockList extends AbstractList<Block> implements RandomAccess {
+	private static final int CHUNK_BITS = 6;
+	private static final int CHUNK_SIZE = 1<<CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+	private Block[][] chunks;
+	// true for each chunk that no view can refer to
+	private boolean[] owned;
+	private int size;
+	// true if a view may refer to the current array of chunks
+	private boolean shared;
+
+	/**
+	 * Creates a new empty list.
+	 */
+	public BlockList() {
+		this.chunks = new Block[1][];
+		this.owned = new boolean[1];
+		this.size = 0;
+		this.shared = false;
+	}
+
+	@Override
+	public boolean add(Block block) {
+		int chunk = size>>>CHUNK_BITS;
+		if (chunk==chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunks.length*2);
+			owned = Arrays.copyOf(owned, owned.length*2);
+			shared = false;
+		}
+		if (chunks[chunk]==null) {
+			// views never read this slot, since it is beyond their size
+			chunks[chunk] = new Block[CHUNK_SIZE];
+			owned[chunk] = true;
+		}
+		chunks[chunk][size & CHUNK_MASK] = block;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Block> c) {
+		for (Block b : c) {
+			add(b);
+		}
+		return !c.isEmpty();
+	}
+
+	@Override
+	public Block get(int index) {
+		if (index<0 || index>=size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return chunks[index>>>CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the last block in the list.
+	 * @return the last block
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public Block getLast() {
+		if (size==0) {
+			throw new NoSuchElementException();
+		}
+		return get(size-1);
+	}
+
+	/**
+	 * Removes the last block in the list.
+	 * @return the removed block
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public Block removeLast() {
+		if (size==0) {
+			throw new NoSuchElementException();
+		}
+		int index = size-1;
+		int chunk = index>>>CHUNK_BITS;
+		if (!owned[chunk]) {
+			// A view may contain this position. Copy the chunk so that
+			// blocks added later don't show up in the view.
+			if (shared) {
+				chunks = chunks.clone();
+				shared = false;
+			}
+			chunks[chunk] = chunks[chunk].clone();
+			owned[chunk] = true;
+		}
+		Block ret = chunks[chunk][index & CHUNK_MASK];
+		chunks[chunk][index & CHUNK_MASK] = null;
+		size--;
+		modCount++;
+		return ret;
+	}
+
+	/**
+	 * Gets an immutable snapshot of this list. The blocks aren't copied.
+	 * @return the snapshot
+	 */
+	public List<Block> view() {
+		shared = true;
+		Arrays.fill(owned, false);
+		return new View(chunks, 0, size);
+	}
+
+	private static final class View extends AbstractList<Block> implements RandomAccess {
+		private final Block[][] chunks;
+		private final int offset;
+		private final int size;
+
+		private View(Block[][] chunks, int offset, int size) {
+			this.chunks = chunks;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		@Override
+		public Block get(int index) {
+			if (index<0 || index>=size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			int i = offset + index;
+			return chunks[i>>>CHUNK_BITS][i & CHUNK_MASK];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public List<Block> subList(int fromIndex, int toIndex) {
+			if (fromIndex<0 || toIndex>size || fromIndex>toIndex) {
+				throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+			}
+			return new View(chunks, offset+fromIndex, toIndex-fromIndex);
+		}
+	}
+}
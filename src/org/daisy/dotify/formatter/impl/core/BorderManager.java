@@ -197,7 +197,7 @@ public class BorderManager {
 
 	private RowImpl.Builder addBorders(RowImpl row) {
 		String res = "";
-		if (row.getChars().length() > 0) {
+		if (row.getCharCount() > 0) {
 			// remove trailing whitespace
 			String chars = trailingWs.matcher(row.getChars()).replaceAll("");
 			res = border.addBorderToRow(padLeft(master.getFlowWidth(), chars, row.getLeftMargin(), row.getRightMargin(),
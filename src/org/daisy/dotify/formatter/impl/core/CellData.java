@@ -34,6 +34,15 @@ class CellData {
 		return rowsIterator;
 	}
 	
+	/**
+	 * Creates a copy of this object with a new row iterator. The rows are
+	 * shared with this object.
+	 * @return a new copy
+	 */
+	CellData copy() {
+		return new CellData(rows, cellWidth, info, minWidth, forceCount);
+	}
+
 	void restartIterator() {
 		rowsIterator = rows.iterator();
 	}
@@ -18,10 +18,6 @@ import org.daisy.dotify.formatter.impl.common.FormatterCoreContext;
  * @author Joel Håkansson
  */
 public class ContentCollectionImpl extends FormatterCoreImpl implements ContentCollection  {
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = -2198713822437968076L;
 	private final Map<String, Item> items;
 	private final Stack<Item> open;
 	
@@ -0,0 +1,147 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.daisy.dotify.api.formatter.FieldList;
+import org.daisy.dotify.api.translator.BrailleTranslator;
+import org.daisy.dotify.api.translator.TextAttribute;
+
+/**
+ * <p>Provides a cache for translated header and footer fields. Most fields
+ * are the same on many pages, for example static text or a page number in
+ * a given numeral style, so translating them once is enough.</p>
+ *
+ * <p>The cache contains two kinds of entries: single fields, keyed by the
+ * resolved text, its style and the translator, and field lists that only
+ * contain static text, keyed by the field list and the translator. Both
+ * are bounded and evict the least recently used entry when full.</p>
+ *
+ * <p>Translators are compared by identity, since two translators of the same
+ * class may be configured differently.</p>
+ *
+ * <p>The cache is thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class FieldCache {
+	/**
+	 * The default maximum number of entries of each kind.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+	private final Map<List<Object>, String> fields;
+	private final Map<List<Object>, List<String>> lists;
+
+	/**
+	 * Creates a new cache with the default maximum size.
+	 */
+	public FieldCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a new cache with the specified maximum size.
+	 * @param maxSize the maximum number of entries of each kind
+	 * @throws IllegalArgumentException if max size is less than 1
+	 */
+	public FieldCache(int maxSize) {
+		if (maxSize<1) {
+			throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+		}
+		this.fields = newLruMap(maxSize);
+		this.lists = newLruMap(maxSize);
+	}
+
+	private static <V> Map<List<Object>, V> newLruMap(int maxSize) {
+		return new LinkedHashMap<List<Object>, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2419832657401832147L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, V> eldest) {
+				return size()>maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Creates a key for a single field.
+	 * @param translator the translator
+	 * @param text the resolved text, as passed to the translator
+	 * @param attributes the attributes of the text, or null
+	 * @return the key
+	 */
+	public static List<Object> fieldKey(BrailleTranslator translator, String text, TextAttribute attributes) {
+		return Arrays.asList(translator, text, toKey(attributes));
+	}
+
+	/**
+	 * Creates a key for a field list.
+	 * @param translator the translator
+	 * @param list the field list
+	 * @return the key
+	 */
+	public static List<Object> listKey(BrailleTranslator translator, FieldList list) {
+		return Arrays.asList(translator, list);
+	}
+
+	private static List<Object> toKey(TextAttribute attr) {
+		if (attr==null) {
+			return null;
+		}
+		List<Object> children = new ArrayList<>();
+		if (attr.hasChildren()) {
+			for (TextAttribute a : attr) {
+				children.add(toKey(a));
+			}
+		}
+		return Arrays.asList(attr.getWidth(), attr.getDictionaryIdentifier(), children);
+	}
+
+	/**
+	 * Gets a translated field.
+	 * @param key the key, see {@link #fieldKey(BrailleTranslator, String, TextAttribute)}
+	 * @return the translated field, or null if the key isn't in the cache
+	 */
+	public synchronized String getField(List<Object> key) {
+		return fields.get(key);
+	}
+
+	/**
+	 * Puts a translated field in the cache.
+	 * @param key the key, see {@link #fieldKey(BrailleTranslator, String, TextAttribute)}
+	 * @param value the translated field
+	 */
+	public synchronized void putField(List<Object> key, String value) {
+		fields.put(key, value);
+	}
+
+	/**
+	 * Gets the translated fields of a static field list.
+	 * @param key the key, see {@link #listKey(BrailleTranslator, FieldList)}
+	 * @return the translated fields, or null if the key isn't in the cache
+	 */
+	public synchronized List<String> getList(List<Object> key) {
+		return lists.get(key);
+	}
+
+	/**
+	 * Puts the translated fields of a static field list in the cache.
+	 * @param key the key, see {@link #listKey(BrailleTranslator, FieldList)}
+	 * @param value the translated fields
+	 */
+	public synchronized void putList(List<Object> key, List<String> value) {
+		lists.put(key, Collections.unmodifiableList(new ArrayList<>(value)));
+	}
+
+	/**
+	 * Gets the number of entries in the cache.
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return fields.size() + lists.size();
+	}
+}
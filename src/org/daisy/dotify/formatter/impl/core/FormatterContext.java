@@ -9,6 +9,8 @@ import org.daisy.dotify.api.formatter.LayoutMasterProperties;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
 import org.daisy.dotify.api.translator.TextBorderFactoryMakerService;
 import org.daisy.dotify.formatter.impl.common.FormatterCoreContext;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.TranslationCache;
 
 /**
  * Provides formatter context data.
@@ -23,7 +25,15 @@ public class FormatterContext extends FormatterCoreContext {
 	
 
 	public FormatterContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config) {
-		super(translatorFactory, tbf, config);
+		this(translatorFactory, tbf, config, null);
+	}
+
+	public FormatterContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache) {
+		this(translatorFactory, tbf, config, translationCache, new FormatterMetrics());
+	}
+
+	public FormatterContext(BrailleTranslatorFactoryMakerService translatorFactory, TextBorderFactoryMakerService tbf, FormatterConfiguration config, TranslationCache translationCache, FormatterMetrics metrics) {
+		super(translatorFactory, tbf, config, translationCache, metrics);
 		this.masters = new HashMap<>();
 		this.collections = new HashMap<>();
 		this.tocs = new HashMap<>();
@@ -47,11 +47,7 @@ import org.daisy.dotify.formatter.impl.segment.NewLineSegment;
 import org.daisy.dotify.formatter.impl.segment.PageNumberReference;
 import org.daisy.dotify.formatter.impl.segment.TextSegment;
 
-public class FormatterCoreImpl extends Stack<Block> implements FormatterCore, BlockGroup {
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = -7775469339792146048L;
+public class FormatterCoreImpl extends BlockList implements FormatterCore, BlockGroup {
 	private static final Logger logger = Logger.getLogger(FormatterCoreImpl.class.getCanonicalName());
 	protected final Stack<AncestorContext> propsContext;
 	private final long groupNumber;
@@ -280,11 +276,12 @@ public class FormatterCoreImpl extends Stack<Block> implements FormatterCore, Bl
 		RegularBlock block = new RegularBlock(blockId, rdp, scenario);
 		currentBlockAddress = new BlockAddress(groupNumber, currentBlockAddress.getBlockNumber()+1);
 		block.setBlockAddress(currentBlockAddress);
-		return this.push(block);
+		add(block);
+		return block;
 	}
 	
 	public Block getCurrentBlock() {
-		return this.peek();
+		return getLast();
 	}
 
 	@Override
@@ -391,9 +388,9 @@ public class FormatterCoreImpl extends Stack<Block> implements FormatterCore, Bl
 			} catch (FormatterException e) {
 				logger.log(Level.INFO, "Failed to render scenario.", e);
 				//if the scenario fails here, it should be excluded from evaluation later (otherwise it might win)
-				while (size()>0 && peek().getRenderingScenario()==rs) {
+				while (size()>0 && getLast().getRenderingScenario()==rs) {
 					//FIXME: this isn't enough, because other properties in this object may need to be rewound as well
-					pop();
+					removeLast();
 				}
 			}
 		}
@@ -22,13 +22,19 @@ public class LayoutMaster implements LayoutMasterBuilder, SectionProperties, Bor
 	private final PageTemplate defaultPageTemplate;
 	private PageAreaBuilderImpl pageArea;
 	private final FormatterCoreContext fc;
+	private final FieldCache fieldCache;
+	private final int borderHeight;
+	private PageTemplateSelector selector;
 
 	public LayoutMaster(FormatterCoreContext fc, LayoutMasterProperties props) {
 		this.fc = fc;
+		this.fieldCache = new FieldCache();
 		this.templates = new ArrayList<>();
 		this.props = props;
 		this.defaultPageTemplate = new PageTemplate(props.getRowSpacing());
 		this.pageArea = null;
+		this.borderHeight = (props.getBorder() != null ? (int)Math.ceil(distributeRowSpacing(props.getRowSpacing(), null, false).spacing*2) : 0);
+		this.selector = null;
 	}
 	
 	/**
@@ -61,23 +67,41 @@ public class LayoutMaster implements LayoutMasterBuilder, SectionProperties, Bor
 		};
 	}
 	
+	/**
+	 * Gets the cache for translated header and footer fields of
+	 * the page templates in this layout master.
+	 * @return the field cache
+	 */
+	public FieldCache getFieldCache() {
+		return fieldCache;
+	}
+
 	@Override
 	public PageTemplateBuilder newTemplate(Condition c) {
 		PageTemplate p = new PageTemplate(c, getRowSpacing());
 		templates.add(p);
+		selector = null;
 		return p;
 	}
 
 	/**
-	 * Gets the template for the specified page number
+	 * Gets the template for the specified page number. The templates are
+	 * compiled into a {@link PageTemplateSelector} the first time this
+	 * method is called after a template has been added.
 	 * @param pagenum the page number to get the template for
 	 * @return returns the template
 	 */
 	public PageTemplate getTemplate(int pagenum) {
-		for (PageTemplate t : templates) {
-			if (t.appliesTo(pagenum)) { return t; }
+		return getSelector().getTemplate(pagenum);
+	}
+
+	PageTemplateSelector getSelector() {
+		PageTemplateSelector ret = selector;
+		if (ret==null) {
+			ret = new PageTemplateSelector(new ArrayList<>(templates), defaultPageTemplate);
+			selector = ret;
 		}
-		return defaultPageTemplate;
+		return ret;
 	}
 
 	/**
@@ -184,6 +208,6 @@ public class LayoutMaster implements LayoutMasterBuilder, SectionProperties, Bor
 		return getPageHeight() - 
 				(int)Math.ceil(template.getHeaderHeight()) + template.validateAndAnalyzeHeader() -
 				(int)Math.ceil(template.getFooterHeight()) + template.validateAndAnalyzeFooter() -
-				(getBorder() != null ? (int)Math.ceil(distributeRowSpacing(getRowSpacing(), null, false).spacing*2) : 0);
+				borderHeight;
 	}
 }
@@ -2,7 +2,6 @@ package org.daisy.dotify.formatter.impl.core;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 import org.daisy.dotify.api.formatter.Condition;
@@ -25,13 +24,24 @@ public class PageTemplate implements PageTemplateBuilder {
 	private final List<FieldList> footer;
 	private final List<MarginRegion> leftMarginRegion;
 	private final List<MarginRegion> rightMarginRegion;
-	private final HashMap<Integer, Boolean> appliesTo;
 	private final float defaultRowSpacing;
-	private Float headerHeight;
-	private Float footerHeight;
-	private Integer flowIntoHeaderHeight;
-	private Integer flowIntoFooterHeight;
+	private Metrics headerMetrics;
+	private Metrics footerMetrics;
 	private Integer totalMarginRegion;
+
+	/**
+	 * Provides the figures of a header or footer that are needed
+	 * for each page. They are computed once.
+	 */
+	private static final class Metrics {
+		private final float height;
+		private final int flowIntoHeight;
+
+		private Metrics(float height, int flowIntoHeight) {
+			this.height = height;
+			this.flowIntoHeight = flowIntoHeight;
+		}
+	}
 	
 	PageTemplate(float rowSpacing) {
 		this(null, rowSpacing);
@@ -48,23 +58,20 @@ public class PageTemplate implements PageTemplateBuilder {
 		this.footer = new ArrayList<>();
 		this.leftMarginRegion = new ArrayList<>();
 		this.rightMarginRegion = new ArrayList<>();
-		this.appliesTo = new HashMap<>();
 		this.defaultRowSpacing = rowSpacing;
 	}
 
 	@Override
 	public void addToHeader(FieldList obj) {
 		// reset the cached values
-		headerHeight = null;
-		flowIntoHeaderHeight = null;
+		headerMetrics = null;
 		header.add(obj);
 	}
 	
 	@Override
 	public void addToFooter(FieldList obj) {
 		// reset the cached values
-		footerHeight = null;
-		flowIntoFooterHeight = null;
+		footerMetrics = null;
 		footer.add(obj);
 	}
 
@@ -81,10 +88,14 @@ public class PageTemplate implements PageTemplateBuilder {
 	}
 	
 	public float getHeaderHeight() {
-		if (headerHeight==null) {
-			headerHeight = getHeight(header, defaultRowSpacing);
+		return getHeaderMetrics().height;
+	}
+
+	private Metrics getHeaderMetrics() {
+		if (headerMetrics==null) {
+			headerMetrics = new Metrics(getHeight(header, defaultRowSpacing), validateAndAnalyzeHeaderFooter(true));
 		}
-		return headerHeight;
+		return headerMetrics;
 	}
 	
 	/**
@@ -99,10 +110,22 @@ public class PageTemplate implements PageTemplateBuilder {
 	}
 	
 	float getFooterHeight() {
-		if (footerHeight==null) {
-			footerHeight = getHeight(footer, defaultRowSpacing);
+		return getFooterMetrics().height;
+	}
+
+	private Metrics getFooterMetrics() {
+		if (footerMetrics==null) {
+			footerMetrics = new Metrics(getHeight(footer, defaultRowSpacing), validateAndAnalyzeHeaderFooter(false));
 		}
-		return footerHeight;
+		return footerMetrics;
+	}
+
+	/**
+	 * Gets the condition of this template.
+	 * @return the condition, or null if the template applies to all pages
+	 */
+	Condition getCondition() {
+		return condition;
 	}
 
 	/**
@@ -114,13 +137,8 @@ public class PageTemplate implements PageTemplateBuilder {
 		if (condition==null) {
 			return true;
 		}
-		// keep a HashMap with calculated results
-		if (appliesTo.containsKey(pagenum)) {
-			return appliesTo.get(pagenum);
-		}
-		boolean applies = condition.evaluate(new DefaultContext.Builder(null).currentPage(pagenum).build());
-		appliesTo.put(pagenum, applies);
-		return applies;
+		// The results are cached by the layout master, see PageTemplateSelector
+		return condition.evaluate(new DefaultContext.Builder(null).currentPage(pagenum).build());
 	}
 
 	@Override
@@ -145,18 +163,12 @@ public class PageTemplate implements PageTemplateBuilder {
 	
 	public int validateAndAnalyzeHeader() {
 		// do the analyzing lazily
-		if (flowIntoHeaderHeight==null) {
-			flowIntoHeaderHeight = validateAndAnalyzeHeaderFooter(true);
-		}
-		return flowIntoHeaderHeight;
+		return getHeaderMetrics().flowIntoHeight;
 	}
 	
 	public int validateAndAnalyzeFooter() {
 		// do the analyzing lazily
-		if (flowIntoFooterHeight==null) {
-			flowIntoFooterHeight = validateAndAnalyzeHeaderFooter(false); 
-		}
-		return flowIntoFooterHeight;
+		return getFooterMetrics().flowIntoHeight;
 	}
 	
 	private int validateAndAnalyzeHeaderFooter(boolean header) {
@@ -0,0 +1,135 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Provides the page template for a page number. The selector is compiled
+ * once from the templates of a layout master.</p>
+ *
+ * <p>If the conditions of all templates that can be selected are periodic, see
+ * {@link PeriodicCondition}, the template of each position in the combined
+ * period is computed up front and the template for a page is looked up in that
+ * table. Otherwise, the template selected for a page number is cached the first
+ * time it is requested.</p>
+ *
+ * @author Joel Håkansson
+ */
+class PageTemplateSelector {
+	/**
+	 * The largest combined period that is expanded into a table.
+	 */
+	static final int MAX_PERIOD = 1024;
+	/**
+	 * The largest page number that is cached when the conditions aren't periodic.
+	 */
+	private static final int MAX_CACHED_PAGE = 1<<16;
+	private final List<PageTemplate> templates;
+	private final PageTemplate defaultTemplate;
+	private final PageTemplate[] table;
+	private PageTemplate[] cache;
+
+	/**
+	 * Creates a new selector.
+	 * @param templates the templates, in order of precedence
+	 * @param defaultTemplate the template to use for pages where no other template applies
+	 */
+	PageTemplateSelector(List<PageTemplate> templates, PageTemplate defaultTemplate) {
+		this.templates = templates;
+		this.defaultTemplate = defaultTemplate;
+		int period = getPeriod(templates);
+		if (period>0) {
+			this.table = new PageTemplate[period];
+			for (int i=0; i<period; i++) {
+				// Uses the page numbers of the second period, so that all of them are positive
+				table[i] = select(period + i);
+			}
+		} else {
+			this.table = null;
+		}
+		this.cache = new PageTemplate[0];
+	}
+
+	/**
+	 * Gets the combined period of the templates that can be selected.
+	 * @param templates the templates
+	 * @return the period, or zero if one or more conditions aren't periodic
+	 * 		or if the period is larger than {@link #MAX_PERIOD}
+	 */
+	static int getPeriod(List<PageTemplate> templates) {
+		int period = 1;
+		for (PageTemplate t : templates) {
+			if (t.getCondition()==null) {
+				// Templates after this one are never selected
+				break;
+			} else if (t.getCondition() instanceof PeriodicCondition) {
+				int p = ((PeriodicCondition)t.getCondition()).getPeriod();
+				if (p<1) {
+					return 0;
+				}
+				period = lcm(period, p);
+				if (period>MAX_PERIOD) {
+					return 0;
+				}
+			} else {
+				return 0;
+			}
+		}
+		return period;
+	}
+
+	private static int lcm(int a, int b) {
+		return a / gcd(a, b) * b;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b!=0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Returns true if the templates are selected from a table.
+	 * @return true if the conditions are periodic, false otherwise
+	 */
+	boolean isPeriodic() {
+		return table!=null;
+	}
+
+	/**
+	 * Gets the template for the specified page number.
+	 * @param pagenum the page number
+	 * @return the template
+	 */
+	PageTemplate getTemplate(int pagenum) {
+		if (table!=null) {
+			return table[Math.floorMod(pagenum, table.length)];
+		} else if (pagenum<0 || pagenum>=MAX_CACHED_PAGE) {
+			return select(pagenum);
+		} else {
+			return getCached(pagenum);
+		}
+	}
+
+	private synchronized PageTemplate getCached(int pagenum) {
+		if (pagenum>=cache.length) {
+			cache = Arrays.copyOf(cache, Math.min(MAX_CACHED_PAGE, Math.max(pagenum+1, cache.length*2)));
+		}
+		PageTemplate ret = cache[pagenum];
+		if (ret==null) {
+			ret = select(pagenum);
+			cache[pagenum] = ret;
+		}
+		return ret;
+	}
+
+	private PageTemplate select(int pagenum) {
+		for (PageTemplate t : templates) {
+			if (t.appliesTo(pagenum)) { return t; }
+		}
+		return defaultTemplate;
+	}
+}
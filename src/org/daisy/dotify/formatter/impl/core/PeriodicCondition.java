@@ -0,0 +1,23 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import org.daisy.dotify.api.formatter.Condition;
+
+/**
+ * <p>Provides a page template condition that repeats with a fixed period.</p>
+ *
+ * <p>When evaluated for a page, the result only depends on the page number
+ * modulo the period. For example, a condition that applies to even pages has a
+ * period of two and a condition that applies to all pages has a period of one.
+ * This allows a {@link LayoutMaster} to evaluate the condition once for each
+ * position in the period instead of once for each page.</p>
+ *
+ * @author Joel Håkansson
+ */
+public interface PeriodicCondition extends Condition {
+
+	/**
+	 * Gets the period of this condition.
+	 * @return the period, a positive number
+	 */
+	int getPeriod();
+}
@@ -2,10 +2,14 @@ package org.daisy.dotify.formatter.impl.core;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.daisy.dotify.api.formatter.FormatterCore;
 import org.daisy.dotify.api.formatter.Marker;
@@ -27,11 +31,23 @@ import org.daisy.dotify.formatter.impl.search.DefaultContext;
 import org.daisy.dotify.formatter.impl.segment.Segment;
 
 class Table extends Block {
+	/**
+	 * The name of the system property that enables concurrent rendering of
+	 * the column widths that are tried in each step of the column width search.
+	 * Tables that contain references are always rendered in the calling thread.
+	 */
+	static final String PARALLEL_PROPERTY = "org.daisy.dotify.formatter.impl.parallelTables";
+	/**
+	 * The name of the system property that makes the column width search
+	 * start from the width of the content in each column, rather than from
+	 * the full width. This requires fewer renderings, but the result may
+	 * differ from the default search.
+	 */
+	static final String CONTENT_WIDTHS_PROPERTY = "org.daisy.dotify.formatter.impl.tableContentWidths";
 	private static final Logger logger = Logger.getLogger(Table.class.getCanonicalName());
 	private int headerRows;
 	private final TableData td;
 	private final TableProperties tableProps;
-	private Map<String, Result> resultCache;
 	private final TableBorderHandler tbh;
 
 	Table(FormatterCoreContext fc, TableProperties tableProps, RowDataProperties rdp, TextBorderFactoryMakerService tbf, String mode, RenderingScenario rs) {
@@ -50,7 +66,6 @@ class Table extends Block {
 		this.headerRows = template.headerRows;
 		this.td = template.td;
 		this.tableProps = template.tableProps;
-		this.resultCache = template.resultCache;
 		this.tbh = template.tbh;
 	}
 	
@@ -118,36 +133,30 @@ class Table extends Block {
 		int[] currentColumnWidth = new int[columnCount];
 		Arrays.fill(currentColumnWidth, columnWidth);
 		DefaultContext dc = DefaultContext.from(context).metaVolume(metaVolume).metaPage(metaPage).build();
-		resultCache = new HashMap<>();
 		Result r = minimizeCost(maxWidth, currentColumnWidth, colSpace, tableProps.getPreferredEmtpySpace(), context, dc, leftMargin, rightMargin);
 		return new TableBlockContentManager(context.getFlowWidth(), r.minWidth, r.forceCount, r.rows, rdp, context.getFcontext());
 	}
 	
 	private Result minimizeCost(int maxTableWidth, int[] columnWidth, int[] colSpacing, int spacePreferred, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin) {
+		SearchCache cache = new SearchCache(td);
+		// Lookups in the cross reference handler are recorded, which isn't thread safe.
+		// The segments of the cells are added to the blocks of the cells, not to the table.
+		boolean concurrent = !hasVolatileContent() && Boolean.getBoolean(PARALLEL_PROPERTY);
 		int columnCount = columnWidth.length;
-		int[] currentColumnWidth = Arrays.copyOf(columnWidth, columnWidth.length);
+		int[] currentColumnWidth = Boolean.getBoolean(CONTENT_WIDTHS_PROPERTY)?
+				contentWidths(cache, columnWidth, spacePreferred, context, dc):
+				Arrays.copyOf(columnWidth, columnWidth.length);
 		Result[] results = new Result[columnCount];
 		//base result
-		Result currentResult = renderTableWithCache(tableProps.getPreferredEmtpySpace(), currentColumnWidth, colSpacing, context, dc, leftMargin, rightMargin);
+		Result currentResult = renderTableWithCache(cache, tableProps.getPreferredEmtpySpace(), currentColumnWidth, colSpacing, context, dc, leftMargin, rightMargin, concurrent);
 		int x = 0;
 		while (true) {
-			// render all possibilities
-			for (int i=0; i<columnCount; i++) {
-				if (currentColumnWidth[i]>=1) {
-					// change value
-					currentColumnWidth[i] = currentColumnWidth[i] - 1;
-					try {
-						results[i] = renderTableWithCache(spacePreferred, currentColumnWidth, colSpacing, context, dc, leftMargin, rightMargin);
-					} catch (Exception e) {
-						// if rendering fails, invalidate this solution but continue
-						results[i] = null;
-					}
-					// restore value
-					currentColumnWidth[i] = currentColumnWidth[i] + 1;
-				} else {
-					results[i] = null;
-				}
-			}
+			// render all possibilities, each with one column narrowed by one
+			int[] widths = currentColumnWidth;
+			IntStream columns = IntStream.range(0, columnCount);
+			(concurrent?columns.parallel():columns).forEach(i->
+				results[i] = renderNarrower(i, cache, spacePreferred, widths, colSpacing, context, dc, leftMargin, rightMargin, concurrent)
+			);
 			// select
 			int tableWidth = 0;
 			for (int j=0; j<td.getGridWidth(); j++) {
@@ -180,6 +189,65 @@ class Table extends Block {
 		}
 		return currentResult;
 	}
+
+	private Result renderNarrower(int i, SearchCache cache, int spacePreferred, int[] columnWidth, int[] colSpacing, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin, boolean concurrent) {
+		if (columnWidth[i]<1) {
+			return null;
+		}
+		int[] trial = Arrays.copyOf(columnWidth, columnWidth.length);
+		trial[i]--;
+		try {
+			return renderTableWithCache(cache, spacePreferred, trial, colSpacing, context, dc, leftMargin, rightMargin, concurrent);
+		} catch (Exception e) {
+			// if rendering fails, invalidate this solution but continue
+			return null;
+		}
+	}
+
+	@Override
+	public boolean hasVolatileContent() {
+		return isVolatile() || hasVolatileCells();
+	}
+
+	/**
+	 * Returns true if any of the cells in this table contains objects that
+	 * make the formatting volatile, for example cross references.
+	 * @return true if a cell is volatile, false otherwise
+	 */
+	boolean hasVolatileCells() {
+		for (TableRow row : td) {
+			for (TableCell cell : row) {
+				if (cell.isVolatile()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the width of the content in each column, plus the preferred empty space.
+	 * Columns without content, and columns where all cells span several columns,
+	 * keep the supplied width.
+	 */
+	private int[] contentWidths(SearchCache cache, int[] columnWidth, int spacePreferred, BlockContext context, DefaultContext dc) {
+		int[] ret = new int[columnWidth.length];
+		for (TableRow row : td) {
+			for (TableCell cell : row) {
+				if (cell.getInfo().getColSpan()==1) {
+					int ci = cell.getInfo().getStartingPoint().getCol();
+					CellData cd = cache.getCell(cell, columnWidth[ci], w->cell.render(context.getFcontext(), dc, context.getRefs(), w, false));
+					for (RowImpl r : cd.getRows()) {
+						ret[ci] = Math.max(ret[ci], r.getWidth()-r.getLeaderSpace()+spacePreferred);
+					}
+				}
+			}
+		}
+		for (int i=0; i<ret.length; i++) {
+			ret[i] = ret[i]==0?columnWidth[i]:Math.max(1, Math.min(ret[i], columnWidth[i]));
+		}
+		return ret;
+	}
 	
 	private static class Result {
 		List<RowImpl> rows;
@@ -188,6 +256,78 @@ class Table extends Block {
 		int minWidth;
 		int forceCount;
 	}
+
+	/**
+	 * Provides the caches of a column width search. Failing results are also
+	 * put in the cache, to prevent them from being attempted again. Rendered cells
+	 * are cached by width, since a cell is rendered in the same way regardless
+	 * of the width of the other columns. Only the cells in the columns that
+	 * have changed are rendered again.
+	 */
+	static final class SearchCache {
+		private final Map<ColumnWidths, Optional<Result>> results;
+		private final Map<TableCell, Map<Integer, CellData>> cells;
+
+		SearchCache(TableData td) {
+			this.results = new ConcurrentHashMap<>();
+			// the map of cells isn't modified after this, so it can be read concurrently
+			this.cells = new IdentityHashMap<>();
+			for (TableRow row : td) {
+				for (TableCell cell : row) {
+					cells.put(cell, new ConcurrentHashMap<>());
+				}
+			}
+		}
+
+		/**
+		 * Gets a rendered cell with a row iterator of its own. The cell is
+		 * rendered the first time it is requested with the specified width.
+		 * @param cell the cell
+		 * @param width the width
+		 * @param render the function that renders the cell with a given width
+		 * @return the rendered cell
+		 */
+		CellData getCell(TableCell cell, int width, IntFunction<CellData> render) {
+			Map<Integer, CellData> rendered = cells.get(cell);
+			CellData ret = rendered.get(width);
+			if (ret==null) {
+				ret = render.apply(width);
+				CellData existing = rendered.putIfAbsent(width, ret);
+				if (existing!=null) {
+					ret = existing;
+				}
+			}
+			return ret.copy();
+		}
+	}
+
+	/**
+	 * Provides a key for a set of column widths.
+	 */
+	private static final class ColumnWidths {
+		private final int[] widths;
+		private final int hash;
+
+		private ColumnWidths(int[] widths) {
+			this.widths = Arrays.copyOf(widths, widths.length);
+			this.hash = Arrays.hashCode(widths);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ColumnWidths && Arrays.equals(widths, ((ColumnWidths)obj).widths);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(widths);
+		}
+	}
 	
 	private static Result min(Result v, Result ... values) {
 		if (values.length<1) {
@@ -205,42 +345,36 @@ class Table extends Block {
 		return ret;
 	}
 	
-	private Result renderTableWithCache(int spacePreferred, int[] columnWidth, int[] colSpacing, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin) {
-		String key = toKey(columnWidth);
+	private Result renderTableWithCache(SearchCache cache, int spacePreferred, int[] columnWidth, int[] colSpacing, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin, boolean concurrent) {
+		ColumnWidths key = new ColumnWidths(columnWidth);
+		Optional<Result> cached = cache.results.get(key);
+		if (cached!=null) {
+			// the result may be empty
+			logger.finest(()->"Using cached result with key: " + key);
+			return cached.orElse(null);
+		}
+		logger.finest(()->"Calculating new result for key: " + key);
 		Result r = null;
-		if (resultCache.containsKey(key)) {
-			// r may be null afterwards
-			r = resultCache.get(key);
-			logger.finest("Using cached result with key: " + key);
-		} else {
-			logger.finest("Calculating new result for key: " + key);
-			try {
-				r = renderTable(columnWidth, colSpacing, context, dc, leftMargin, rightMargin, spacePreferred); 
-				logger.finest("Cost for solution: " + r.cost.getCost());
-			} finally {
-				// Also put failing results in the resultCache to prevent them from being attempted again (this is why finally is used)
-				resultCache.put(toKey(columnWidth), r);
-			}			
+		try {
+			r = renderTable(cache, columnWidth, colSpacing, context, dc, leftMargin, rightMargin, spacePreferred, concurrent);
+			double cost = r.cost.getCost();
+			logger.finest(()->"Cost for solution: " + cost);
+		} finally {
+			// Also put failing results in the resultCache to prevent them from being attempted again (this is why finally is used)
+			cache.results.put(key, Optional.ofNullable(r));
 		}
 		return r;
 	}
 	
-	private String toKey(int...values) {
-		StringBuilder ret = new StringBuilder();
-		for (int v : values) {
-			ret.append(v).append(",");
-		}
-		return ret.toString();
-	}
-	
-	private Result renderTable(int[] columnWidth, int[] colSpacing, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin, int spacePreferred) {
+	private Result renderTable(SearchCache cache, int[] columnWidth, int[] colSpacing, BlockContext context, DefaultContext dc, MarginProperties leftMargin, MarginProperties rightMargin, int spacePreferred, boolean concurrent) {
 		List<RowImpl> result = new ArrayList<RowImpl>();
-		Result ret = updateRendering(columnWidth, colSpacing, new TableCostImpl(spacePreferred), context, dc);
+		Map<TableCell, CellData> cells = new IdentityHashMap<>();
+		Result ret = updateRendering(cache, cells, columnWidth, colSpacing, new TableCostImpl(spacePreferred), context, dc, concurrent);
 		for (int r=0; r<td.getGridHeight(); r++) {
 			// render into rows
 			boolean tableRowHasData = false;
-			while (hasMoreContent(r)) { //while content
-				RowImpl row = getResultRow(r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.EMPTY, false);
+			while (hasMoreContent(cells, r)) { //while content
+				RowImpl row = getResultRow(cells, r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.EMPTY, false);
 				//TODO: this will keep the whole table row together (if possible), but it could be more advanced
 				result.add(row);
 				tableRowHasData = true;
@@ -251,16 +385,16 @@ class Table extends Block {
 				if (tableProps.getTableRowSpacing()>0) {
 					{
 						// separate, do this border
-						RowImpl row = getResultRow(r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.THIS_BORDER, true);
+						RowImpl row = getResultRow(cells, r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.THIS_BORDER, true);
 						if (row!=null) { result.add(row); }
 					}{
 						// space
-						RowImpl row = getResultRow(r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.EMPTY, true);
+						RowImpl row = getResultRow(cells, r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.EMPTY, true);
 						if (row!=null) { result.add(row); }
 					}
 				} else {
 					// merged
-					RowImpl row = getResultRow(r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.MERGE, true);
+					RowImpl row = getResultRow(cells, r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.MERGE, true);
 					//row.setAllowsBreakAfter(false);
 					if (row!=null) { result.add(row); }
 				}
@@ -271,7 +405,7 @@ class Table extends Block {
 			}
 			if (addBorder && r<td.getGridHeight()-1 && tableProps.getTableRowSpacing()>0) {
 				// separate, do next border
-				RowImpl row = getResultRow(r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.NEXT_BORDER, true);
+				RowImpl row = getResultRow(cells, r, context, columnWidth, colSpacing, leftMargin, rightMargin, FillStyle.NEXT_BORDER, true);
 				if (row!=null) { result.add(row); }
 			}
 		}
@@ -281,7 +415,7 @@ class Table extends Block {
 		return ret;
 	}
 	
-	private Result updateRendering(int[] columnWidth, int[] colSpacing, TableCost costFunc, BlockContext context, DefaultContext dc) {
+	private Result updateRendering(SearchCache cache, Map<TableCell, CellData> cells, int[] columnWidth, int[] colSpacing, TableCost costFunc, BlockContext context, DefaultContext dc, boolean concurrent) {
 		Result ret = new Result();
 		ret.cost = costFunc;
 		int minWidth = context.getFlowWidth();
@@ -296,7 +430,8 @@ class Table extends Block {
 					}
 					flowWidth += columnWidth[ci+j];
 				}
-				CellData cd = cell.render(context.getFcontext(), dc, context.getRefs(), flowWidth);
+				CellData cd = cache.getCell(cell, flowWidth, w->cell.render(context.getFcontext(), dc, context.getRefs(), w, concurrent));
+				cells.put(cell, cd);
 				minWidth = Math.min(cd.getMinWidth(), minWidth);
 				forceCount += cd.getForceCount();
 				costFunc.addCell(cd.getRows(), flowWidth, cd.getForceCount());
@@ -307,12 +442,12 @@ class Table extends Block {
 		return ret;
 	}
 	
-	private boolean hasMoreContent(int r) {
+	private boolean hasMoreContent(Map<TableCell, CellData> cells, int r) {
 		CellData cr;
 		//This seems redundant, but the row iterator is different each time we're here
 		//and we need to know beforehand if there is any content left
 		for (int x=0; x<td.getGridWidth(); x++) {
-			cr = td.cellForGrid(r, x).getRendered();
+			cr = cells.get(td.cellForGrid(r, x));
 			// allow row change if the cell ends in another grid row
 			if (cr.getInfo().getEndPoint().getRow()<=r && cr.getRowIterator().hasNext()) {
 				return true;
@@ -348,14 +483,14 @@ class Table extends Block {
 		MERGE
 	}
 	
-	private RowImpl getResultRow(int r, BlockContext context, int[] columnWidth, int[] colSpacing, MarginProperties leftMargin, MarginProperties rightMargin, FillStyle f, boolean allowsBreakAfter) {
+	private RowImpl getResultRow(Map<TableCell, CellData> cells, int r, BlockContext context, int[] columnWidth, int[] colSpacing, MarginProperties leftMargin, MarginProperties rightMargin, FillStyle f, boolean allowsBreakAfter) {
 		CellData cr;
 		StringBuilder tableRow = new StringBuilder();
 		List<Marker> markers = new ArrayList<>();
 		List<String> anchors = new ArrayList<>();
 		List<String> identifiers = new ArrayList<>();
 		for (int j=0; j<td.getGridWidth(); j++) {
-			cr = td.cellForGrid(r, j).getRendered();
+			cr = cells.get(td.cellForGrid(r, j));
 			String data = "";
 			if (cr.getRowIterator().hasNext()) {
 				RowImpl row = cr.getRowIterator().next();
@@ -1,5 +1,6 @@
 package org.daisy.dotify.formatter.impl.core;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -33,7 +34,8 @@ class TableBorderHandler {
 		this.tableColSpacing = tableColSpacing;
 		this.tbf = tbf;
 		this.mode = mode;
-		this.cache = new HashMap<>(); //permits null values, which is relied on
+		// permits null values, which is relied on. Synchronized, since tables can be rendered concurrently
+		this.cache = Collections.synchronizedMap(new HashMap<>());
 	}
 	
 	String getSharedColumnString(Border cell1, Border cell2, BlockContext context) {
@@ -18,7 +18,6 @@ class TableCell extends FormatterCoreImpl {
 	 */
 	private static final long serialVersionUID = -673589204065659433L;
 	private final TableCellInfo info;
-	private CellData rendered;
 
 
 	TableCell(FormatterCoreContext fc, TableCellProperties props, GridPoint p) {
@@ -28,22 +27,48 @@ class TableCell extends FormatterCoreImpl {
 	TableCell(FormatterCoreContext fc, TableCellProperties props, boolean discardIdentifiers, GridPoint p) {
 		super(fc, discardIdentifiers);
 		this.info = new TableCellInfo(props, p);
-		this.rendered = null;
 	}
 
 	TableCellInfo getInfo() {
 		return info;
 	}
+
+	/**
+	 * Returns true if any of the blocks in this cell, including the cells of
+	 * tables in this cell, contains objects that make the formatting volatile,
+	 * for example cross references.
+	 * @return true if the cell is volatile, false otherwise
+	 */
+	boolean isVolatile() {
+		for (Block b : this) {
+			if (b.hasVolatileContent()) {
+				return true;
+			}
+		}
+		return false;
+	}
 	
-	CellData render(FormatterContext context, DefaultContext c, CrossReferenceHandler crh, int flowWidth) {
+	/**
+	 * Renders the cell with the specified width. The result is returned
+	 * and not stored in the cell, so that different widths can be tried
+	 * independently of each other.
+	 * @param context the formatter context
+	 * @param c the context
+	 * @param crh the cross reference handler
+	 * @param flowWidth the width of the cell
+	 * @param concurrent true if the cell may be rendered by several threads at
+	 * 		the same time, in which case the block content managers of the blocks
+	 * 		aren't reused
+	 * @return the rendered cell
+	 */
+	CellData render(FormatterContext context, DefaultContext c, CrossReferenceHandler crh, int flowWidth, boolean concurrent) {
 		List<RowImpl> rowData = new ArrayList<>();
 		List<Block> blocks = getBlocks(context, c, crh);
 		int minWidth = flowWidth;
 		int forceCount = 0;
 		for (Block block : blocks) {
-			AbstractBlockContentManager bcm = block.getBlockContentManager(
-					BlockContext.from(c).flowWidth(flowWidth).formatterContext(context).build()
-					);
+			BlockContext bc = BlockContext.from(c).flowWidth(flowWidth).formatterContext(context).build();
+			AbstractBlockContentManager bcm = concurrent?block.newBlockContentManager(bc):block.getBlockContentManager(bc);
 			rowData.addAll(bcm.getCollapsiblePreContentRows());
 			rowData.addAll(bcm.getInnerPreContentRows());
 			Optional<RowImpl> r;
@@ -55,12 +80,7 @@ class TableCell extends FormatterCoreImpl {
 			rowData.addAll(bcm.getPostContentRows());
 			rowData.addAll(bcm.getSkippablePostContentRows());
 		}
-		rendered = new CellData(rowData, flowWidth, info, minWidth, forceCount);
-		return rendered;
-	}
-
-	CellData getRendered() {
-		return rendered;
+		return new CellData(rowData, flowWidth, info, minWidth, forceCount);
 	}
 
 }
@@ -13,10 +13,6 @@ import org.daisy.dotify.formatter.impl.common.FormatterCoreContext;
  * @author Joel Håkansson
  */
 public class TableOfContentsImpl extends FormatterCoreImpl implements TableOfContents  {
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = -2198713822437968076L;
 	private final LinkedHashMap<String, String> refs;
 	
 	public TableOfContentsImpl(FormatterCoreContext fc) {
@@ -0,0 +1,250 @@
+package org.daisy.dotify.formatter.impl.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.daisy.dotify.api.engine.LayoutEngineException;
+import org.daisy.dotify.api.formatter.FormatterConfiguration;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+
+/**
+ * <p>Provides a layout engine that converts many documents, several at a time.
+ * This is faster than creating a new engine for each document, because the
+ * set up is made once for each thread instead of once for each document.</p>
+ *
+ * <p>The documents are converted by a fixed number of threads. Each thread has
+ * its own OBFL parser factory and XML factories, because these keep state
+ * while a document is parsed. The formatter factory, the translation cache,
+ * the translators of each thread, the text border factory and the expression
+ * factory are shared by all documents.</p>
+ *
+ * <p>The engine must be closed when it isn't needed anymore.</p>
+ *
+ * @author Joel Håkansson
+ */
+public class BatchLayoutEngine implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(BatchLayoutEngine.class.getCanonicalName());
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+	private final FormatterConfiguration config;
+	private final Supplier<PagedMediaWriter> writers;
+	private final ThreadLocal<LayoutEngineFactoryImpl> factories;
+	private final ExecutorService executor;
+
+	/**
+	 * Provides a document to convert.
+	 */
+	public static final class Job {
+		private final File input;
+		private final File output;
+		private final File snapshot;
+
+		/**
+		 * Creates a new job.
+		 * @param input the OBFL file
+		 * @param output the output file
+		 */
+		public Job(File input, File output) {
+			this(input, output, null);
+		}
+
+		/**
+		 * Creates a new job with a reference snapshot file. If the file exists,
+		 * it is used to seed the layout. When the job is completed, the file is
+		 * replaced with the references of the result, so that the next conversion
+		 * of the document, after a small edit for example, can be completed in fewer
+		 * iterations.
+		 * @param input the OBFL file
+		 * @param output the output file
+		 * @param snapshot the reference snapshot file, or null
+		 */
+		public Job(File input, File output, File snapshot) {
+			this.input = input;
+			this.output = output;
+			this.snapshot = snapshot;
+		}
+
+		/**
+		 * Gets the input file.
+		 * @return the input file
+		 */
+		public File getInput() {
+			return input;
+		}
+
+		/**
+		 * Gets the output file.
+		 * @return the output file
+		 */
+		public File getOutput() {
+			return output;
+		}
+
+		/**
+		 * Gets the reference snapshot file.
+		 * @return the reference snapshot file, or an empty optional if not set
+		 */
+		public Optional<File> getSnapshot() {
+			return Optional.ofNullable(snapshot);
+		}
+
+		@Override
+		public String toString() {
+			return input + " -> " + output;
+		}
+	}
+
+	/**
+	 * Provides the result of a job.
+	 */
+	public static final class Result {
+		private final Job job;
+		private final long nanos;
+		private final FormatterMetrics metrics;
+		private final Exception exception;
+
+		private Result(Job job, long nanos, FormatterMetrics metrics, Exception exception) {
+			this.job = job;
+			this.nanos = nanos;
+			this.metrics = metrics;
+			this.exception = exception;
+		}
+
+		/**
+		 * Gets the job.
+		 * @return the job
+		 */
+		public Job getJob() {
+			return job;
+		}
+
+		/**
+		 * Gets the time it took to convert the document, from the start of
+		 * parsing to the end of writing. Time spent waiting in the queue
+		 * isn't included.
+		 * @return the time, in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Gets the layout metrics of the document.
+		 * @return the metrics
+		 */
+		public FormatterMetrics getMetrics() {
+			return metrics;
+		}
+
+		/**
+		 * Gets the exception that made the conversion fail.
+		 * @return the exception, or an empty optional if the conversion succeeded
+		 */
+		public Optional<Exception> getException() {
+			return Optional.ofNullable(exception);
+		}
+
+		/**
+		 * Returns true if the conversion succeeded.
+		 * @return true if the conversion succeeded, false otherwise
+		 */
+		public boolean isSuccess() {
+			return exception==null;
+		}
+	}
+
+	/**
+	 * Creates a new batch layout engine.
+	 * @param config the formatter configuration
+	 * @param writers a supplier of writers, called once for each document
+	 * @param factories a supplier of layout engine factories, called once for each thread
+	 * @param threads the number of threads
+	 * @throws IllegalArgumentException if the number of threads is less than 1
+	 */
+	BatchLayoutEngine(FormatterConfiguration config, Supplier<PagedMediaWriter> writers, Supplier<LayoutEngineFactoryImpl> factories, int threads) {
+		if (threads<1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+		}
+		this.config = config;
+		this.writers = writers;
+		this.factories = ThreadLocal.withInitial(factories);
+		this.executor = Executors.newFixedThreadPool(threads, newThreadFactory());
+	}
+
+	private static ThreadFactory newThreadFactory() {
+		int pool = POOL_NUMBER.incrementAndGet();
+		AtomicInteger thread = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, "dotify-batch-" + pool + "-" + thread.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Converts the documents and waits for all of them to finish. A document
+	 * that fails doesn't stop the others, see {@link Result#getException()}.
+	 * @param jobs the documents to convert
+	 * @return the results, in the same order as the jobs
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	public List<Result> convert(List<Job> jobs) throws InterruptedException {
+		List<Future<Result>> futures = new ArrayList<>();
+		for (Job job : jobs) {
+			futures.add(executor.submit(()->convert(job)));
+		}
+		List<Result> ret = new ArrayList<>();
+		for (Future<Result> f : futures) {
+			try {
+				ret.add(f.get());
+			} catch (ExecutionException e) {
+				// convert(Job) catches all exceptions
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return ret;
+	}
+
+	private Result convert(Job job) {
+		long start = System.nanoTime();
+		LayoutEngineImpl engine = null;
+		Exception ex = null;
+		try {
+			engine = factories.get().newFormatterEngine(config, writers.get());
+			engine.setReferenceSnapshotFile(job.getSnapshot().orElse(null));
+			try (InputStream in = Files.newInputStream(job.getInput().toPath());
+				OutputStream out = Files.newOutputStream(job.getOutput().toPath())) {
+				engine.convert(in, out);
+			}
+		} catch (LayoutEngineException | IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "Failed to convert " + job.getInput(), e);
+			ex = e;
+		}
+		return new Result(job, System.nanoTime()-start, engine!=null?engine.getMetrics():new FormatterMetrics(), ex);
+	}
+
+	/**
+	 * Stops the threads of this engine. Documents that are being converted
+	 * are finished first.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+}
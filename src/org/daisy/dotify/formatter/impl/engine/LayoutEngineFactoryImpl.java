@@ -1,5 +1,7 @@
 package org.daisy.dotify.formatter.impl.engine;
 
+import java.util.function.Supplier;
+
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLInputFactory;
@@ -7,7 +9,6 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.xpath.XPathFactory;
 
-import org.daisy.dotify.api.engine.FormatterEngine;
 import org.daisy.dotify.api.engine.FormatterEngineFactoryService;
 import org.daisy.dotify.api.formatter.FormatterConfiguration;
 import org.daisy.dotify.api.formatter.FormatterFactory;
@@ -19,7 +20,9 @@ import org.daisy.dotify.api.obfl.ObflParserFactoryService;
 import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
 import org.daisy.dotify.api.translator.TextBorderFactoryMakerService;
 import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.formatter.impl.FormatterFactoryImpl;
 import org.daisy.dotify.formatter.impl.common.FactoryManager;
+import org.daisy.dotify.formatter.impl.obfl.ObflParserFactoryImpl;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -74,10 +77,47 @@ public class LayoutEngineFactoryImpl implements FormatterEngineFactoryService {
 	}
 
 	@Override
-	public FormatterEngine newFormatterEngine(FormatterConfiguration config, PagedMediaWriter writer) {
+	public LayoutEngineImpl newFormatterEngine(FormatterConfiguration config, PagedMediaWriter writer) {
 		setupFactoryManager();
 		return new LayoutEngineImpl(config, writer, factoryManager, obflFactory);
 	}
+
+	/**
+	 * Creates a new engine for converting many documents concurrently.
+	 * See {@link BatchLayoutEngine} for details.
+	 * @param config the formatter configuration
+	 * @param writers a supplier of writers, called once for each document
+	 * @param threads the number of threads
+	 * @return a new batch layout engine
+	 * @throws IllegalArgumentException if the number of threads is less than 1
+	 */
+	public BatchLayoutEngine newBatchEngine(FormatterConfiguration config, Supplier<PagedMediaWriter> writers, int threads) {
+		FormatterFactory formatterFactory = factoryManager.getFormatterFactory();
+		if (formatterFactory instanceof FormatterFactoryImpl) {
+			formatterFactory = ((FormatterFactoryImpl)formatterFactory).newPooledFactory();
+		}
+		FormatterFactory workerFormatterFactory = formatterFactory;
+		return new BatchLayoutEngine(config, writers, ()->newWorkerFactory(workerFormatterFactory), threads);
+	}
+
+	/**
+	 * Creates a factory for a thread of a batch engine. The factory has its own
+	 * OBFL parser factory and XML factories, the other factories are shared.
+	 * @param formatterFactory the formatter factory shared by the threads
+	 * @return a new factory
+	 */
+	private LayoutEngineFactoryImpl newWorkerFactory(FormatterFactory formatterFactory) {
+		ObflParserFactoryImpl parserFactory = new ObflParserFactoryImpl();
+		parserFactory.setFormatterFactory(formatterFactory);
+		parserFactory.setTextBorderFactoryMaker(factoryManager.getTextBorderFactory());
+		parserFactory.setExpressionFactory(factoryManager.getExpressionFactory());
+		LayoutEngineFactoryImpl ret = new LayoutEngineFactoryImpl();
+		ret.setObflParserFactory(parserFactory);
+		ret.setFormatterFactory(formatterFactory);
+		ret.setTextBorderFactoryMaker(factoryManager.getTextBorderFactory());
+		ret.setExpressionFactory(factoryManager.getExpressionFactory());
+		return ret;
+	}
 	
 	/**
 	 * Sets a factory dependency.
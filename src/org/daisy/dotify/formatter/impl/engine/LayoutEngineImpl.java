@@ -1,8 +1,14 @@
 package org.daisy.dotify.formatter.impl.engine;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,6 +29,8 @@ import org.daisy.dotify.api.writer.MetaDataItem;
 import org.daisy.dotify.api.writer.PagedMediaWriter;
 import org.daisy.dotify.api.writer.PagedMediaWriterException;
 import org.daisy.dotify.formatter.impl.common.FactoryManager;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.search.ReferenceSnapshot;
 
 /**
  * <p>
@@ -36,6 +44,13 @@ import org.daisy.dotify.formatter.impl.common.FactoryManager;
  *
  */
 class LayoutEngineImpl implements FormatterEngine {
+	/**
+	 * The name of the system property that specifies a reference snapshot file.
+	 * When set, the snapshot is used to seed the layout, if the file exists, and
+	 * it is replaced with the snapshot of the result. The property is read when
+	 * the engine is created, see also {@link #setReferenceSnapshotFile(File)}.
+	 */
+	static final String REFERENCE_SNAPSHOT_PROPERTY = "org.daisy.dotify.formatter.impl.referenceSnapshot";
 	private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
 	private static final QName DC_IDENTIFIER = new QName(DC_NS, "identifier");
 	private static final QName DC_DATE = new QName(DC_NS, "date");
@@ -45,6 +60,8 @@ class LayoutEngineImpl implements FormatterEngine {
 	private final ObflParserFactoryService obflFactory;
 	private final Logger logger;
 	private final FactoryManager fm;
+	private FormatterMetrics metrics;
+	private File snapshotFile;
 	
 	/**
 	 * Creates a new instance of LayoutEngineTask.
@@ -71,6 +88,28 @@ class LayoutEngineImpl implements FormatterEngine {
 		this.obflFactory = obflFactory;
 		this.logger = Logger.getLogger(LayoutEngineImpl.class.getCanonicalName());
 		this.fm = fm;
+		this.metrics = new FormatterMetrics();
+		String path = System.getProperty(REFERENCE_SNAPSHOT_PROPERTY);
+		this.snapshotFile = path!=null&&!path.isEmpty()?new File(path):null;
+	}
+
+	/**
+	 * Sets the file to seed the layout with and to save the references of the
+	 * result to, see {@link ReferenceSnapshot}. A file that doesn't exist, or that
+	 * can't be read, is ignored when seeding.
+	 * @param value the file, or null to not use a reference snapshot
+	 */
+	void setReferenceSnapshotFile(File value) {
+		this.snapshotFile = value;
+	}
+
+	/**
+	 * Gets the metrics of the latest conversion. If the formatter doesn't
+	 * provide metrics, only the parsing time is recorded.
+	 * @return the metrics
+	 */
+	public FormatterMetrics getMetrics() {
+		return metrics;
 	}
 
 	@Override
@@ -83,7 +122,19 @@ class LayoutEngineImpl implements FormatterEngine {
 				ObflParser obflParser = obflFactory.newObflParser();
 				Formatter formatter = fm.getFormatterFactory().newFormatter(config.getLocale(), config.getTranslationMode());
 				formatter.setConfiguration(config);
-				obflParser.parse(fm.getXmlInputFactory().createXMLEventReader(input), formatter);
+				metrics = formatter instanceof FormatterMetrics.Provider
+						?((FormatterMetrics.Provider)formatter).getMetrics()
+						:new FormatterMetrics();
+				File sf = snapshotFile;
+				if (sf!=null && formatter instanceof ReferenceSnapshot.Seedable) {
+					((ReferenceSnapshot.Seedable)formatter).setReferenceSeed(readSnapshot(sf));
+				}
+				FormatterMetrics.Timer t = metrics.start(FormatterMetrics.Phase.PARSING);
+				try {
+					obflParser.parse(fm.getXmlInputFactory().createXMLEventReader(input), formatter);
+				} finally {
+					t.close();
+				}
 
 				try {
 					input.close();
@@ -100,6 +151,12 @@ class LayoutEngineImpl implements FormatterEngine {
 				writer.prepare(meta);
 				writer.open(output);
 				formatter.write(writer);
+				if (sf!=null && formatter instanceof ReferenceSnapshot.Seedable) {
+					((ReferenceSnapshot.Seedable)formatter).getReferenceSnapshot().ifPresent(v->writeSnapshot(v, sf));
+				}
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine("Layout metrics: " + metrics.toJson());
+				}
 
 			} catch (PagedMediaWriterException e) {
 				throw new LayoutEngineException("Could not open media writer.", e);
@@ -117,5 +174,45 @@ class LayoutEngineImpl implements FormatterEngine {
 		}
 	}
 
+	private ReferenceSnapshot readSnapshot(File f) {
+		if (!f.isFile()) {
+			return null;
+		}
+		try (InputStream is = new FileInputStream(f)) {
+			return ReferenceSnapshot.read(is);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to read reference snapshot: " + f, e);
+			return null;
+		}
+	}
+
+	private void writeSnapshot(ReferenceSnapshot snapshot, File f) {
+		// the snapshot is written to a temporary file first, so that a failed
+		// or concurrent write never leaves a partial snapshot behind
+		Path target = f.getAbsoluteFile().toPath();
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(target.getParent(), f.getName(), ".tmp");
+			try (OutputStream os = Files.newOutputStream(tmp)) {
+				snapshot.write(os);
+			}
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to write reference snapshot: " + f, e);
+		} finally {
+			if (tmp!=null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					logger.log(Level.FINE, "Failed to delete temporary file: " + tmp, e);
+				}
+			}
+		}
+	}
+
 }
- 
\ No newline at end of file
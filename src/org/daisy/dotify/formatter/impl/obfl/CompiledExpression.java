@@ -0,0 +1,270 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Provides an expression that has been parsed into a tree, so that
+ * it can be evaluated any number of times without parsing the expression
+ * string again. Operators are resolved and constants are converted when
+ * the expression is compiled.</p>
+ *
+ * <p>A compiled expression is immutable and can be shared between threads.
+ * The result of evaluating it is the same as if the expression string had
+ * been interpreted. This includes errors, which are reported when the part
+ * of the expression containing the error is evaluated, in the same order
+ * as in the interpreter.</p>
+ *
+ * @author Joel Håkansson
+ */
+final class CompiledExpression {
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private final Node[] exprs;
+	private final int slotReferences;
+
+	/**
+	 * Provides an operator.
+	 */
+	@FunctionalInterface
+	interface Operator {
+		/**
+		 * Applies the operator to the arguments.
+		 * @param args the evaluated arguments
+		 * @param scope the scope of the evaluation
+		 * @return the result
+		 */
+		Object apply(Object[] args, Scope scope);
+	}
+
+	/**
+	 * Provides the variables of an evaluation. Variables set in the expression
+	 * are only visible in the same evaluation.
+	 */
+	static final class Scope {
+		private final ExpressionImpl owner;
+		private final Map<String, Object> globalVars;
+		private final Object[] slots;
+		private Map<String, Object> localVars;
+
+		private Scope(ExpressionImpl owner, Map<String, Object> globalVars, Object[] slots) {
+			this.owner = owner;
+			this.globalVars = globalVars;
+			this.slots = slots;
+			this.localVars = null;
+		}
+
+		ExpressionImpl getOwner() {
+			return owner;
+		}
+
+		void setVariable(String key, Object value) {
+			if (localVars==null) {
+				localVars = new HashMap<>();
+			}
+			localVars.put(key, value);
+		}
+
+		private boolean hasVariable(String key) {
+			return (localVars!=null && localVars.containsKey(key)) || globalVars.containsKey(key);
+		}
+
+		private Object getVariable(String key) {
+			if (localVars!=null && localVars.containsKey(key)) {
+				return localVars.get(key);
+			}
+			return globalVars.get(key);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Node {
+		Object evaluate(Scope scope);
+	}
+
+	private CompiledExpression(Node[] exprs, int slotReferences) {
+		this.exprs = exprs;
+		this.slotReferences = slotReferences;
+	}
+
+	/**
+	 * Compiles an expression. This method doesn't throw an exception if the
+	 * expression contains errors, instead the error is thrown when the
+	 * expression is evaluated.
+	 * @param expr the expression
+	 * @return a compiled expression
+	 */
+	static CompiledExpression compile(String expr) {
+		return compile(expr, Collections.emptyList());
+	}
+
+	/**
+	 * Compiles an expression with variable slots. A value that is the name of
+	 * a slot, including the $ prefix, is bound to the value of the slot when the
+	 * expression is evaluated, see {@link #evaluate(ExpressionImpl, Map, Object[])}.
+	 * Slots take precedence over other variables. If several slots have the same
+	 * name, the last one is used.
+	 * @param expr the expression
+	 * @param slots the slot names, a name may be null if the slot isn't used
+	 * @return a compiled expression
+	 */
+	static CompiledExpression compile(String expr, List<String> slots) {
+		int[] refs = new int[1];
+		try {
+			String[] args = getArgs(expr);
+			Node[] exprs = new Node[args.length];
+			for (int i=0; i<args.length; i++) {
+				exprs[i] = compileNode(args[i], slots, refs);
+			}
+			return new CompiledExpression(exprs, refs[0]);
+		} catch (RuntimeException e) {
+			return new CompiledExpression(new Node[]{error(e)}, refs[0]);
+		}
+	}
+
+	/**
+	 * Gets the number of references to slots in this expression.
+	 * @return the number of references
+	 */
+	int getSlotReferences() {
+		return slotReferences;
+	}
+
+	/**
+	 * Converts a string to a value in the same way as an unquoted
+	 * constant in an expression.
+	 * @param value the string
+	 * @return a double, if the string is a number, otherwise the string
+	 */
+	static Object toValue(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return value;
+		}
+	}
+
+	/**
+	 * Evaluates this expression.
+	 * @param owner the expression implementation that evaluates this expression
+	 * @param globalVars the global variables, with the keys prefixed by $
+	 * @return the result of the last part of the expression
+	 */
+	Object evaluate(ExpressionImpl owner, Map<String, Object> globalVars) {
+		return evaluate(owner, globalVars, null);
+	}
+
+	/**
+	 * Evaluates this expression with values for the slots.
+	 * @param owner the expression implementation that evaluates this expression
+	 * @param globalVars the global variables, with the keys prefixed by $
+	 * @param slots the slot values, in the order of the slot names that the
+	 * 		expression was compiled with, or null if compiled without slots
+	 * @return the result of the last part of the expression
+	 */
+	Object evaluate(ExpressionImpl owner, Map<String, Object> globalVars, Object[] slots) {
+		Scope scope = new Scope(owner, globalVars, slots);
+		for (int i=0; i<exprs.length-1; i++) {
+			exprs[i].evaluate(scope);
+		}
+		return exprs[exprs.length-1].evaluate(scope);
+	}
+
+	private static Node compileNode(String expr, List<String> slots, int[] refs) {
+		try {
+			expr = expr.trim();
+			expr = WHITESPACE.matcher(expr).replaceAll(" ");
+			int leftPar = expr.indexOf('(');
+			int rightPar = expr.lastIndexOf(')');
+			if (leftPar==-1 && rightPar==-1) {
+				return compileValue(expr, slots, refs);
+			} else if (leftPar>-1 && rightPar>-1) {
+				return compileOperation(getArgs(expr.substring(leftPar+1, rightPar)), slots, refs);
+			} else {
+				throw new IllegalArgumentException("Unmatched parenthesis");
+			}
+		} catch (RuntimeException e) {
+			return error(e);
+		}
+	}
+
+	private static Node compileValue(String expr, List<String> slots, int[] refs) {
+		if (expr.startsWith("\"") && expr.endsWith("\"")) {
+			return constant(expr.substring(1, expr.length()-1));
+		}
+		// Variables are always prefixed by $, anything else is a constant
+		if (expr.startsWith("$")) {
+			int slot = slots.lastIndexOf(expr);
+			if (slot>-1) {
+				refs[0]++;
+				return scope -> scope.slots[slot];
+			}
+			return scope -> scope.hasVariable(expr)?scope.getVariable(expr):expr;
+		}
+		return constant(toValue(expr));
+	}
+
+	private static Node compileOperation(String[] args1, List<String> slots, int[] refs) {
+		String name = args1[0].trim();
+		Node[] args = new Node[args1.length-1];
+		for (int i=0; i<args.length; i++) {
+			args[i] = compileNode(args1[i+1], slots, refs);
+		}
+		Operator op = ExpressionImpl.getOperator(name);
+		if (op==null) {
+			op = (values, scope) -> {
+				throw new IllegalArgumentException("Unknown operator: '" + name + "'");
+			};
+		}
+		Operator operator = op;
+		return scope -> {
+			Object[] values = new Object[args.length];
+			for (int i=0; i<args.length; i++) {
+				values[i] = args[i].evaluate(scope);
+			}
+			return operator.apply(values, scope);
+		};
+	}
+
+	private static Node constant(Object value) {
+		return scope -> value;
+	}
+
+	private static Node error(RuntimeException e) {
+		return scope -> {
+			throw e;
+		};
+	}
+
+	private static String[] getArgs(String expr) {
+		expr = expr.trim();
+		List<String> ret = new ArrayList<>();
+		int ci = 0;
+		int level = 0;
+		boolean str = false;
+		for (int i=0; i<expr.length(); i++) {
+			if (expr.charAt(i)=='(') {
+				if (str) {
+					throw new IllegalArgumentException("Unmatched quote");
+				}
+				level++;
+			} else if (expr.charAt(i)==')') {
+				if (str) {
+					throw new IllegalArgumentException("Unmatched quote");
+				}
+				level--;
+			} else if (expr.charAt(i)=='"') {
+				str = !str;
+			}
+			else if (expr.charAt(i)==' ' && level==0 && !str) {
+				ret.add(expr.substring(ci, i));
+				ci=i+1;
+			}
+		}
+		ret.add(expr.substring(ci, expr.length()));
+		return ret.toArray(new String[ret.size()]);
+	}
+}
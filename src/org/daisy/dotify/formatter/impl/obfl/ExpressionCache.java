@@ -0,0 +1,80 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Provides a cache for compiled expressions, keyed by the expression
+ * string. The cache is bounded and evicts the least recently used
+ * expression when it is full.</p>
+ *
+ * <p>Expression strings are often created by replacing variables with
+ * their values, for example the page number, which is why the cache
+ * must be bounded. The cache is thread safe.</p>
+ *
+ * @author Joel Håkansson
+ */
+final class ExpressionCache {
+	/**
+	 * The default maximum number of expressions in a cache.
+	 */
+	static final int DEFAULT_MAX_SIZE = 5000;
+	private final Map<String, CompiledExpression> expressions;
+
+	/**
+	 * Creates a new cache with the default maximum size.
+	 */
+	ExpressionCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a new cache with the specified maximum size.
+	 * @param maxSize the maximum number of expressions in the cache
+	 * @throws IllegalArgumentException if max size is less than 1
+	 */
+	ExpressionCache(final int maxSize) {
+		if (maxSize<1) {
+			throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+		}
+		this.expressions = new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2304539183437287311L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+				return size()>maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets the compiled expression for the specified expression string. If
+	 * the expression isn't in the cache, it is compiled and added to the cache.
+	 * @param expr the expression string
+	 * @return the compiled expression
+	 */
+	CompiledExpression get(String expr) {
+		synchronized (expressions) {
+			CompiledExpression ret = expressions.get(expr);
+			if (ret!=null) {
+				return ret;
+			}
+		}
+		// Compile outside of the lock, at worst an expression is compiled twice
+		CompiledExpression ret = CompiledExpression.compile(expr);
+		synchronized (expressions) {
+			expressions.put(expr, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the number of expressions in the cache.
+	 * @return the number of expressions
+	 */
+	int size() {
+		synchronized (expressions) {
+			return expressions.size();
+		}
+	}
+}
@@ -14,11 +14,12 @@ import org.osgi.service.component.annotations.ReferenceCardinality;
  */
 @Component
 public class ExpressionFactoryImpl implements ExpressionFactory {
+	private final ExpressionCache cache = new ExpressionCache();
 	private Integer2TextFactoryMakerService itf;
 
 	@Override
 	public Expression newExpression() {
-		return new ExpressionImpl(itf);
+		return new ExpressionImpl(itf, cache);
 	}
 
 	/**
@@ -3,7 +3,6 @@ package org.daisy.dotify.formatter.impl.obfl;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -50,34 +49,78 @@ import org.daisy.dotify.api.text.IntegerOutOfRange;
  * <p>
  * Quotes must surround arguments containing whitespace.
  * </p>
+ * <p>
+ * Expressions are compiled the first time they are evaluated and the
+ * compiled expressions are kept in an {@link ExpressionCache}. Expressions
+ * created by the same factory share the cache.
+ * </p>
  * 
  * @author Joel Håkansson
  */
 class ExpressionImpl implements Expression {
 	private static final Logger logger = Logger.getLogger(ExpressionImpl.class.getCanonicalName());
 	private static final Map<String, Instant> CONFIGURATION_WARNING_ISSUED = Collections.synchronizedMap(new HashMap<>());
-	private HashMap<String, Object> localVars;
-	private Map<String, Object> globalVars;
+	private static final Map<String, CompiledExpression.Operator> OPERATORS = new HashMap<>();
+	static {
+		OPERATORS.put("+", (args, scope) -> add(args));
+		OPERATORS.put("-", (args, scope) -> subtract(args));
+		OPERATORS.put("*", (args, scope) -> multiply(args));
+		OPERATORS.put("/", (args, scope) -> divide(args));
+		OPERATORS.put("%", (args, scope) -> modulo(args));
+		OPERATORS.put("=", (args, scope) -> equalsOp(args));
+		OPERATORS.put("<", (args, scope) -> smallerThan(args));
+		OPERATORS.put("<=", (args, scope) -> smallerThanOrEqualTo(args));
+		OPERATORS.put(">", (args, scope) -> greaterThan(args));
+		OPERATORS.put(">=", (args, scope) -> greaterThanOrEqualTo(args));
+		OPERATORS.put("&", (args, scope) -> and(args));
+		OPERATORS.put("|", (args, scope) -> or(args));
+		OPERATORS.put("if", (args, scope) -> ifOp(args));
+		OPERATORS.put("now", (args, scope) -> now(args));
+		OPERATORS.put("round", (args, scope) -> round(args));
+		OPERATORS.put("set", (args, scope) -> set(args, scope));
+		OPERATORS.put("int2text", (args, scope) -> scope.getOwner().int2text(args));
+		OPERATORS.put("concat", (args, scope) -> concat(args));
+		OPERATORS.put("format", (args, scope) -> message(args));
+		OPERATORS.put("!", (args, scope) -> not(args));
+		OPERATORS.put("numeral-format", (args, scope) -> numeralFormat(args));
+	}
+	private final Map<String, Object> globalVars;
 	private final Integer2TextFactoryMakerService integer2textFactoryMaker;
+	private final ExpressionCache cache;
 
 	public ExpressionImpl(Integer2TextFactoryMakerService integer2textFactoryMaker) {
+		this(integer2textFactoryMaker, new ExpressionCache());
+	}
+
+	/**
+	 * Creates a new expression that uses the supplied cache for compiled expressions.
+	 * @param integer2textFactoryMaker the integer2text factory maker service
+	 * @param cache the cache
+	 */
+	ExpressionImpl(Integer2TextFactoryMakerService integer2textFactoryMaker, ExpressionCache cache) {
 		// = Integer2TextFactoryMaker.newInstance();
 		this.integer2textFactoryMaker = integer2textFactoryMaker;
 		this.globalVars = new HashMap<>();
+		this.cache = cache;
 	}
 	
 	@Override
 	public Object evaluate(String expr) {
-		localVars = new HashMap<>(globalVars);
-		// return value
-		String[] exprs = getArgs(expr);
-		for (int i=0; i<exprs.length-1; i++) {
-			doEvaluate(exprs[i]);
-		}
-		return toReturnType(doEvaluate(exprs[exprs.length-1]));
+		return toReturnType(cache.get(expr).evaluate(this, globalVars));
 	}
 	
-	private Object toReturnType(Object ret) {
+	/**
+	 * Evaluates a compiled expression with values for its slots, see
+	 * {@link CompiledExpression#compile(String, java.util.List)}.
+	 * @param expr the compiled expression
+	 * @param slots the slot values
+	 * @return the result
+	 */
+	Object evaluate(CompiledExpression expr, Object[] slots) {
+		return toReturnType(expr.evaluate(this, globalVars, slots));
+	}
+
+	private static Object toReturnType(Object ret) {
 		if (ret instanceof Double) {
 			Double d = (Double)ret;
 			if (d.intValue()==d) {
@@ -102,88 +145,13 @@ class ExpressionImpl implements Expression {
 		globalVars.clear();
 	}
 
-	private Object doEval1(String expr) {
-		if (expr.startsWith("\"") && expr.endsWith("\"")) {
-			return expr.substring(1, expr.length()-1);
-		}
-		if (localVars.containsKey(expr)) {
-			return localVars.get(expr);
-		}
-		try {
-			return toNumber(expr);
-		} catch (NumberFormatException e) {
-			return expr;
-		}
-	}
-	
-	private Object doEval2(String[] args1) {
-		String operator = args1[0].trim();
-		Object[] args = new Object[args1.length-1];
-		for (int i=0; i<args.length; i++) {
-			args[i] = doEvaluate(args1[i+1]);
-		}
-		//System.arraycopy(args1, 1, args, 0, args1.length-1);
-		if ("+".equals(operator)) {
-			return add(args);
-		} else if ("-".equals(operator)) {
-			return subtract(args);
-		} else if ("*".equals(operator)) {
-			return multiply(args);
-		} else if ("/".equals(operator)) {
-			return divide(args);
-		} else if ("%".equals(operator)) {
-			return modulo(args);
-		} else if ("=".equals(operator)) {
-			return equalsOp(args);
-		} else if ("<".equals(operator)) {
-			return smallerThan(args);
-		}  else if ("<=".equals(operator)) {
-			return smallerThanOrEqualTo(args);
-		} else if (">".equals(operator)) {
-			return greaterThan(args);
-		} else if (">=".equals(operator)) {
-			return greaterThanOrEqualTo(args);
-		} else if ("&".equals(operator)) {
-			return and(args);
-		} else if ("|".equals(operator)) {
-			return or(args);
-		} else if ("if".equals(operator)) {
-			return ifOp(args);
-		} else if ("now".equals(operator)) {
-			return now(args);
-		} else if ("round".equals(operator)) {
-			return round(args);
-		} else if ("set".equals(operator)) {
-			return set(args);
-		} else if ("int2text".equals(operator)) {
-			return int2text(args);
-		} else if ("concat".equals(operator)) {
-			return concat(args);
-		} else if ("format".equals(operator)) {
-			return message(args);
-		} else if ("!".equals(operator)) {
-			return not(args);
-		} else if ("numeral-format".equals(operator)) {
-			return numeralFormat(args);
-		}
-		else {
-			throw new IllegalArgumentException("Unknown operator: '" + operator + "'");
-		}
-	}
-
-	private Object doEvaluate(String expr) {
-		
-		expr = expr.trim();
-		expr = expr.replaceAll("\\s+", " ");
-		int leftPar = expr.indexOf('(');
-		int rightPar = expr.lastIndexOf(')');
-		if (leftPar==-1 && rightPar==-1) {
-			return doEval1(expr);
-		} else if (leftPar>-1 && rightPar>-1) {
-			return doEval2( getArgs(expr.substring(leftPar+1, rightPar)));
-		} else {
-			throw new IllegalArgumentException("Unmatched parenthesis");
-		}
+	/**
+	 * Gets the operator with the specified name.
+	 * @param name the name
+	 * @return the operator, or null if the name isn't an operator
+	 */
+	static CompiledExpression.Operator getOperator(String name) {
+		return OPERATORS.get(name);
 	}
 
 	private static double toNumber(Object input) {
@@ -342,11 +310,11 @@ class ExpressionImpl implements Expression {
 		}
 	}
 	
-	private Object set(Object[] input) {
+	private static Object set(Object[] input, CompiledExpression.Scope scope) {
 		if (input.length>2) {
 			throw new IllegalArgumentException("Wrong number of arguments: (set key value)");
 		}
-		localVars.put("$"+input[0].toString(), input[1]);
+		scope.setVariable("$"+input[0].toString(), input[1]);
 		return input[1];
 	}
 
@@ -391,7 +359,7 @@ class ExpressionImpl implements Expression {
 		}
 	}
 
-	private Object concat(Object[] input) {
+	private static Object concat(Object[] input) {
 		StringBuilder sb = new StringBuilder();
 		for (Object o : input) {
 			sb.append(toReturnType(o));
@@ -399,48 +367,10 @@ class ExpressionImpl implements Expression {
 		return sb.toString();
 	}
 	
-	private Object message(Object[] input) {
+	private static Object message(Object[] input) {
 		Object[] args = new Object[input.length-1];
 		System.arraycopy(input, 1, args, 0, input.length-1);
 		return MessageFormat.format(input[0].toString(), args);
 	}
 
-	private static String[] getArgs(String expr) {
-		expr = expr.trim();
-		ArrayList<String> ret = new ArrayList<>();
-		int ci = 0;
-		int level = 0;
-		boolean str = false;
-		for (int i=0; i<expr.length(); i++) {
-			if (expr.charAt(i)=='(') {
-				if (str) {
-					throw new IllegalArgumentException("Unmatched quote");
-				}
-				level++;
-			} else if (expr.charAt(i)==')') {
-				if (str) {
-					throw new IllegalArgumentException("Unmatched quote");
-				}
-				level--;
-			} else if (expr.charAt(i)=='"') {
-				str = !str;
-			}
-			else if (expr.charAt(i)==' ' && level==0 && !str) {
-				ret.add(expr.substring(ci, i));
-				ci=i+1;
-			}
-		}
-		ret.add(expr.substring(ci, expr.length()));
-		String[] r = new String[ret.size()];
-		/*
-		for (int i=0; i<ret.size(); i++) {
-			String arg = ret.get(i);
-			if (arg.startsWith("\"") && arg.endsWith("\"")) {
-				arg = arg.substring(1, arg.length()-1);
-				ret.set(i, arg);
-			}
-		}*/
-		return ret.toArray(r);
-	}
-
 }
\ No newline at end of file
@@ -24,7 +24,7 @@ public class OBFLCondition extends OBFLExpressionBase implements Condition {
 		if (exp==null) {
 			return true;
 		} else {
-			return ef.newExpression().evaluate(ExpressionTools.resolveVariables(exp, buildArgs(context))).equals(true);
+			return evaluateExpression(context).equals(true);
 		}
 	}
 
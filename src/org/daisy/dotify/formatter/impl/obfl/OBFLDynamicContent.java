@@ -24,7 +24,7 @@ public class OBFLDynamicContent extends OBFLExpressionBase implements DynamicCon
 		if (exp==null) {
 			return "";
 		} else {
-			return ef.newExpression().evaluate(ExpressionTools.resolveVariables(exp, buildArgs(context))).toString();
+			return evaluateExpression(context).toString();
 		}
 	}
 
@@ -1,9 +1,15 @@
 package org.daisy.dotify.formatter.impl.obfl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.daisy.dotify.api.formatter.Context;
+import org.daisy.dotify.api.obfl.Expression;
 import org.daisy.dotify.api.obfl.ExpressionFactory;
 
 public abstract class OBFLExpressionBase {
@@ -25,6 +31,22 @@ public abstract class OBFLExpressionBase {
 	protected String metaPageNumberVariable;
 	protected String sheetCountVariable;
 	protected String volumeSheetCountVariable;
+	// the expression compiled with a slot for each variable, or null if not compiled yet
+	private Compiled compiled;
+	
+	/**
+	 * Provides the expression compiled with variable slots.
+	 */
+	private static final class Compiled {
+		private final CompiledExpression expression;
+		// false if the slots don't give the same result as resolving the variables in the expression string
+		private final boolean usable;
+
+		private Compiled(CompiledExpression expression, boolean usable) {
+			this.expression = expression;
+			this.usable = usable;
+		}
+	}
 	
 	public OBFLExpressionBase(String exp, ExpressionFactory ef, boolean extended) {
 		this.ef = ef;
@@ -44,6 +66,7 @@ public abstract class OBFLExpressionBase {
 	}
 	
 	public void setPageNumberVariable(String pageNumberVariable) {
+		compiled = null;
 		if (pageNumberVariable==null) {
 			this.pageNumberVariable = DEFAULT_PAGE_NUMBER_VARIABLE_NAME;
 		} else {
@@ -52,6 +75,7 @@ public abstract class OBFLExpressionBase {
 	}
 	
 	public void setVolumeNumberVariable(String volumeNumberVariable) {
+		compiled = null;
 		if (volumeNumberVariable==null) {
 			this.volumeNumberVariable = DEFAULT_VOLUME_NUMBER_VARIABLE_NAME;
 		} else {
@@ -60,6 +84,7 @@ public abstract class OBFLExpressionBase {
 	}
 
 	public void setVolumeCountVariable(String volumeCountVariable) {
+		compiled = null;
 		if (volumeCountVariable==null) {
 			this.volumeCountVariable = DEFAULT_VOLUME_COUNT_VARIABLE_NAME;
 		} else {
@@ -68,6 +93,7 @@ public abstract class OBFLExpressionBase {
 	}
 
 	public void setMetaVolumeNumberVariable(String metaVolumeNumberVariable) {
+		compiled = null;
 		if (metaVolumeNumberVariable==null) {
 			this.metaVolumeNumberVariable = DEFAULT_EVENT_VOLUME_NUMBER;
 		} else {
@@ -76,6 +102,7 @@ public abstract class OBFLExpressionBase {
 	}
 	
 	public void setMetaPageNumberVariable(String metaPageNumberVariable) {
+		compiled = null;
 		if (metaPageNumberVariable==null) {
 			this.metaPageNumberVariable = DEFAULT_EVENT_PAGE_NUMBER;
 		} else {
@@ -109,4 +136,64 @@ public abstract class OBFLExpressionBase {
 		return variables;
 	}
 
+	/**
+	 * Evaluates the expression with the variables of the context. The expression is
+	 * compiled once, with a slot for each variable, instead of resolving the variables
+	 * in the expression string and compiling the result on every evaluation.
+	 * @param context the context
+	 * @return the result
+	 */
+	protected Object evaluateExpression(Context context) {
+		Expression e = ef.newExpression();
+		if (e instanceof ExpressionImpl) {
+			Compiled c = compiled;
+			if (c==null) {
+				c = compile();
+				compiled = c;
+			}
+			if (c.usable) {
+				return ((ExpressionImpl)e).evaluate(c.expression, new Object[]{
+						toValue(context.getCurrentPage()),
+						toValue(context.getCurrentVolume()),
+						toValue(context.getVolumeCount()),
+						toValue(context.getMetaVolume()),
+						toValue(context.getMetaPage()),
+						toValue(context.getSheetsInDocument()),
+						toValue(context.getSheetsInVolume())
+				});
+			}
+		}
+		return e.evaluate(ExpressionTools.resolveVariables(exp, buildArgs(context)));
+	}
+
+	private static Object toValue(Object value) {
+		return CompiledExpression.toValue(""+value);
+	}
+
+	private Compiled compile() {
+		// same order as the values in evaluateExpression(Context)
+		List<String> names = Arrays.asList(pageNumberVariable, volumeNumberVariable, volumeCountVariable,
+				metaVolumeNumberVariable, metaPageNumberVariable, sheetCountVariable, volumeSheetCountVariable);
+		List<String> slots = new ArrayList<>();
+		int occurrences = 0;
+		for (String name : names) {
+			if (name==null) {
+				slots.add(null);
+			} else {
+				slots.add("$"+name);
+				if (!slots.subList(0, slots.size()-1).contains("$"+name)) {
+					// counted in the same way as the variables are found by ExpressionTools.resolveVariables
+					Matcher m = Pattern.compile("\\$"+name+"(?=\\W)").matcher(exp);
+					while (m.find()) {
+						occurrences++;
+					}
+				}
+			}
+		}
+		CompiledExpression ret = CompiledExpression.compile(exp, slots);
+		// Variables that are not separate values in the expression, for example inside a
+		// string, are resolved differently. Such expressions are evaluated as before.
+		return new Compiled(ret, ret.getSlotReferences()==occurrences);
+	}
+
 }
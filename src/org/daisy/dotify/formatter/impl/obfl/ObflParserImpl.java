@@ -387,7 +387,7 @@ public class ObflParserImpl extends XMLParserBase implements ObflParser {
 	private void parseTemplate(LayoutMasterBuilder master, XMLEvent event, XMLEventIterator input) throws XMLStreamException {
 		PageTemplateBuilder template;
 		if (equalsStart(event, ObflQName.TEMPLATE)) {
-			template = master.newTemplate(new OBFLCondition(getAttr(event, ObflQName.ATTR_USE_WHEN), fm.getExpressionFactory(), false));
+			template = master.newTemplate(PageCondition.newInstance(getAttr(event, ObflQName.ATTR_USE_WHEN), fm.getExpressionFactory()));
 		} else {
 			template = master.newTemplate(null);
 		}
@@ -659,7 +659,7 @@ public class ObflParserImpl extends XMLParserBase implements ObflParser {
 	private Transformer configureTransformer(RendererInfo n) {
 		try {
 			TransformerFactory tf = fm.getTransformerFactory();
-			tf.setURIResolver(new URIResolver() {
+			URIResolver resolver = new URIResolver() {
 				@Override
 				public Source resolve(String href, String base) throws TransformerException {
 					if ("".equals(base)) {
@@ -670,8 +670,10 @@ public class ObflParserImpl extends XMLParserBase implements ObflParser {
 					}
 					return null;
 				}
-			});
-			Transformer ret = tf.newTransformer(new DOMSource(n.getProcessor()));
+			};
+			tf.setURIResolver(resolver);
+			Transformer ret = n.getTemplates(tf).newTransformer();
+			ret.setURIResolver(resolver);
 			for (String name : n.getParams().keySet()) {
 				ret.setParameter(name, n.getParams().get(name));
 			}
@@ -0,0 +1,78 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import java.util.OptionalInt;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.daisy.dotify.api.obfl.ExpressionFactory;
+import org.daisy.dotify.formatter.impl.core.PeriodicCondition;
+
+/**
+ * <p>Provides a page template condition that is known to be periodic, such as
+ * <code>(= (% $page 2) 0)</code>, so that the layout master can select templates
+ * from a table instead of evaluating the condition for every page.</p>
+ *
+ * <p>Use {@link #newInstance(String, ExpressionFactory)} to create a condition.
+ * Expressions that aren't recognized as periodic are returned as a plain
+ * {@link OBFLCondition}.</p>
+ *
+ * @author Joel Håkansson
+ */
+class PageCondition extends OBFLCondition implements PeriodicCondition {
+	// (= (% $page n) r) or (= r (% $page n))
+	private static final String MOD = "\\(\\s*%\\s+\\$" + DEFAULT_PAGE_NUMBER_VARIABLE_NAME + "\\s+(\\d+)\\s*\\)";
+	private static final Pattern MOD_EQUALS = Pattern.compile("\\s*\\(\\s*=\\s+(?:" + MOD + "\\s*(\\d+)|(\\d+)\\s*" + MOD + ")\\s*\\)\\s*");
+	private final int period;
+
+	private PageCondition(String exp, ExpressionFactory ef, int period) {
+		super(exp, ef, false);
+		this.period = period;
+	}
+
+	/**
+	 * Creates a new page template condition.
+	 * @param exp the expression, or null if the template applies to all pages
+	 * @param ef the expression factory
+	 * @return a periodic condition if the expression is recognized as one,
+	 * 		a plain condition otherwise
+	 */
+	static OBFLCondition newInstance(String exp, ExpressionFactory ef) {
+		OptionalInt period = getPeriod(exp);
+		if (period.isPresent()) {
+			return new PageCondition(exp, ef, period.getAsInt());
+		} else {
+			return new OBFLCondition(exp, ef, false);
+		}
+	}
+
+	/**
+	 * Gets the period of an expression, if it can be determined.
+	 * @param exp the expression
+	 * @return the period, or an empty optional if the expression
+	 * 		isn't recognized as periodic
+	 */
+	static OptionalInt getPeriod(String exp) {
+		if (exp==null) {
+			return OptionalInt.of(1);
+		}
+		Matcher m = MOD_EQUALS.matcher(exp);
+		if (m.matches()) {
+			String n = m.group(1)!=null?m.group(1):m.group(4);
+			try {
+				int period = Integer.parseInt(n);
+				if (period>0) {
+					return OptionalInt.of(period);
+				}
+			} catch (NumberFormatException e) {
+				// Too large, evaluate the expression instead
+			}
+		}
+		return OptionalInt.empty();
+	}
+
+	@Override
+	public int getPeriod() {
+		return period;
+	}
+
+}
@@ -5,6 +5,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
 
 import org.w3c.dom.Node;
 
@@ -14,6 +18,7 @@ final class RendererInfo {
 	private final String qualifier;
 	private final String cost;
 	private final Map<String, String> params;
+	private Templates templates;
 	static class Builder {
 		private final NamespaceContext namespaceContext;
 		private final Node processor;
@@ -52,6 +57,20 @@ final class RendererInfo {
 		return processor;
 	}
 
+	/**
+	 * Gets the compiled processor. The processor is compiled the first time
+	 * this method is called, and the same templates are returned after that.
+	 * @param tf the transformer factory to compile the processor with
+	 * @return the templates
+	 * @throws TransformerConfigurationException if the processor could not be compiled
+	 */
+	synchronized Templates getTemplates(TransformerFactory tf) throws TransformerConfigurationException {
+		if (templates==null) {
+			templates = tf.newTemplates(new DOMSource(processor));
+		}
+		return templates;
+	}
+
 	String getQualifier() {
 		return qualifier;
 	}
@@ -0,0 +1,231 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>Provides a SAX content handler that converts the events it receives into
+ * StAX events, so that the result of a transformation can be read with the
+ * same code as the input document, without serializing it and parsing it again.</p>
+ *
+ * <p>Adjacent character events are merged. The handler rejects input that isn't a
+ * well-formed document, i.e. that doesn't have exactly one root element or that
+ * has text outside of it.</p>
+ *
+ * @author Joel Håkansson
+ */
+class XMLEventBuffer extends DefaultHandler {
+	private final XMLEventFactory eventFactory;
+	private final List<XMLEvent> events;
+	private final List<Namespace> namespaces;
+	private final StringBuilder chars;
+	private Locator locator;
+	private int depth;
+	private boolean hasRoot;
+
+	/**
+	 * Creates a new empty buffer.
+	 * @param eventFactory the factory to create the events with
+	 */
+	XMLEventBuffer(XMLEventFactory eventFactory) {
+		this.eventFactory = eventFactory;
+		this.events = new ArrayList<>();
+		this.namespaces = new ArrayList<>();
+		this.chars = new StringBuilder();
+		this.depth = 0;
+		this.hasRoot = false;
+	}
+
+	/**
+	 * Gets an iterator over the buffered events.
+	 * @return the iterator
+	 */
+	XMLEventIterator iterator() {
+		Iterator<XMLEvent> it = events.iterator();
+		return new XMLEventIterator() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public XMLEvent nextEvent() throws XMLStreamException {
+				try {
+					return it.next();
+				} catch (NoSuchElementException e) {
+					throw new XMLStreamException(e);
+				}
+			}
+
+			@Override
+			public void close() { }
+		};
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+	}
+
+	private void add(XMLEvent event) {
+		events.add(event);
+	}
+
+	private void flushCharacters() {
+		if (chars.length()>0) {
+			setLocation();
+			add(eventFactory.createCharacters(chars.toString()));
+			eventFactory.setLocation(null);
+			chars.setLength(0);
+		}
+	}
+
+	private void setLocation() {
+		if (locator!=null) {
+			eventFactory.setLocation(new BufferLocation(locator));
+		}
+	}
+
+	@Override
+	public void startDocument() {
+		add(eventFactory.createStartDocument());
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		flushCharacters();
+		if (!hasRoot) {
+			throw new SAXException("The result doesn't contain a root element.");
+		}
+		add(eventFactory.createEndDocument());
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) {
+		namespaces.add(eventFactory.createNamespace(prefix==null?"":prefix, uri));
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		flushCharacters();
+		if (depth==0) {
+			if (hasRoot) {
+				throw new SAXException("The result contains more than one root element.");
+			}
+			hasRoot = true;
+		}
+		depth++;
+		List<Attribute> attributes = new ArrayList<>();
+		for (int i=0; i<atts.getLength(); i++) {
+			String aqName = atts.getQName(i);
+			if ("xmlns".equals(aqName) || aqName.startsWith("xmlns:")) {
+				continue;
+			}
+			attributes.add(eventFactory.createAttribute(prefix(aqName), atts.getURI(i), localName(atts.getLocalName(i), aqName), atts.getValue(i)));
+		}
+		setLocation();
+		add(eventFactory.createStartElement(prefix(qName), uri, localName(localName, qName), attributes.iterator(), new ArrayList<>(namespaces).iterator()));
+		eventFactory.setLocation(null);
+		namespaces.clear();
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		flushCharacters();
+		depth--;
+		add(eventFactory.createEndElement(prefix(qName), uri, localName(localName, qName)));
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (depth==0) {
+			for (int i=start; i<start+length; i++) {
+				if (!Character.isWhitespace(ch[i])) {
+					throw new SAXException("The result contains text outside of the root element.");
+				}
+			}
+		} else {
+			chars.append(ch, start, length);
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		characters(ch, start, length);
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) {
+		flushCharacters();
+		add(eventFactory.createProcessingInstruction(target, data));
+	}
+
+	private static String prefix(String qName) {
+		int i = qName.indexOf(':');
+		return i<0?"":qName.substring(0, i);
+	}
+
+	private static String localName(String localName, String qName) {
+		if (localName!=null && !localName.isEmpty()) {
+			return localName;
+		}
+		int i = qName.indexOf(':');
+		return i<0?qName:qName.substring(i+1);
+	}
+
+	/**
+	 * Provides a snapshot of a SAX location.
+	 */
+	private static class BufferLocation implements Location {
+		private final int line;
+		private final int column;
+		private final String publicId;
+		private final String systemId;
+
+		private BufferLocation(Locator locator) {
+			this.line = locator.getLineNumber();
+			this.column = locator.getColumnNumber();
+			this.publicId = locator.getPublicId();
+			this.systemId = locator.getSystemId();
+		}
+
+		@Override
+		public int getLineNumber() {
+			return line;
+		}
+
+		@Override
+		public int getColumnNumber() {
+			return column;
+		}
+
+		@Override
+		public int getCharacterOffset() {
+			return -1;
+		}
+
+		@Override
+		public String getPublicId() {
+			return publicId;
+		}
+
+		@Override
+		public String getSystemId() {
+			return systemId;
+		}
+	}
+}
@@ -1,29 +1,20 @@
 package org.daisy.dotify.formatter.impl.obfl;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.sax.SAXResult;
 
 import org.daisy.dotify.api.formatter.FormatterCore;
 import org.daisy.dotify.api.formatter.FormatterException;
 import org.daisy.dotify.api.formatter.RenderingScenario;
 import org.daisy.dotify.api.formatter.TextProperties;
 import org.daisy.dotify.api.obfl.Expression;
-import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 public class XSLTRenderingScenario implements RenderingScenario {
 	private final ObflParserImpl parser;
@@ -45,15 +36,8 @@ public class XSLTRenderingScenario implements RenderingScenario {
 	@Override
 	public void renderScenario(FormatterCore formatter) throws FormatterException {
 		try {
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-			t.transform(new DOMSource(node), new StreamResult(os));
-			
-			//TODO: could event reader report the errors reported by the dom parser? Specifically, more than one root node.
-			newDocumentFromInputStream(new ByteArrayInputStream(os.toByteArray()), parser.getFactoryManager().getDocumentBuilderFactory());
-
 			//render
-			XMLInputFactory factory =  parser.getFactoryManager().getXmlInputFactory();
-			XMLEventIterator input = new XMLEventReaderAdapter(factory.createXMLEventReader(new ByteArrayInputStream(os.toByteArray())));
+			XMLEventIterator input = transform(t, node, parser.getFactoryManager().getXmlEventFactory()).iterator();
 			XMLEvent event;
 			while (input.hasNext()) {
 				event = input.nextEvent();
@@ -81,12 +65,15 @@ public class XSLTRenderingScenario implements RenderingScenario {
 		}
 	}
 	
-	private static Document newDocumentFromInputStream(InputStream in, DocumentBuilderFactory factory) throws FormatterException {
-		Document ret = null;
+	/**
+	 * Transforms the node into a buffer. The buffer rejects results that aren't
+	 * well-formed, for example with more than one root node.
+	 */
+	private static XMLEventBuffer transform(Transformer t, Node node, XMLEventFactory factory) throws FormatterException {
+		XMLEventBuffer ret = new XMLEventBuffer(factory);
 		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			ret = builder.parse(new InputSource(in));
-		} catch (ParserConfigurationException | SAXException | IOException e) {
+			t.transform(new DOMSource(node), new SAXResult(ret));
+		} catch (TransformerException e) {
 			throw new FormatterException(e);
 		}
 		return ret;
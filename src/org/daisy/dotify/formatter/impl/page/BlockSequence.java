@@ -1,13 +1,18 @@
 package org.daisy.dotify.formatter.impl.page;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import org.daisy.dotify.api.formatter.FormatterSequence;
 import org.daisy.dotify.api.formatter.SequenceProperties;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
 import org.daisy.dotify.formatter.impl.core.BlockContext;
 import org.daisy.dotify.formatter.impl.core.FormatterContext;
 import org.daisy.dotify.formatter.impl.core.FormatterCoreImpl;
 import org.daisy.dotify.formatter.impl.core.LayoutMaster;
+import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
+import org.daisy.dotify.formatter.impl.search.DefaultContext;
 
 /**
  * Provides an interface for a sequence of block contents.
@@ -15,10 +20,12 @@ import org.daisy.dotify.formatter.impl.core.LayoutMaster;
  * @author Joel Håkansson
  */
 public class BlockSequence extends FormatterCoreImpl implements FormatterSequence {
-	private static final long serialVersionUID = -6105005856680272131L;
 	private final LayoutMaster master;
 	private final SequenceProperties props;
 	private List<RowGroupSequence> cache;
+	private List<RowGroupSequence> prepared;
+	private BlockContext preparedContext;
+	private CrossReferenceHandler.Fork preparedFork;
 	
 	public BlockSequence(FormatterContext fc, SequenceProperties props, LayoutMaster master) {
 		super(fc);
@@ -56,9 +63,75 @@ public class BlockSequence extends FormatterCoreImpl implements FormatterSequenc
 	 */
 	List<RowGroupSequence> selectScenario(LayoutMaster master, BlockContext bc, boolean useCache) {
 		if (cache==null || !useCache) {
-			cache = ScenarioProcessor.process(master, this, bc); 
+			FormatterMetrics.Timer t = bc.getFcontext().getMetrics().start(FormatterMetrics.Phase.SCENARIO_SELECTION);
+			try {
+				if (prepared!=null && bc.equals(preparedContext)
+						&& bc.getRefs().merge(Collections.singletonList(preparedFork))) {
+					cache = prepared;
+				} else {
+					cache = ScenarioProcessor.process(master, this, bc);
+				}
+			} finally {
+				prepared = null;
+				preparedContext = null;
+				preparedFork = null;
+				t.close();
+			}
 		}
 		return cache;
 	}
 
+	/**
+	 * Creates the block context used for scenario processing.
+	 * @param master the layout master
+	 * @param blockContext the block context of the sequence
+	 * @return the block context
+	 */
+	static BlockContext newScenarioContext(LayoutMaster master, BlockContext blockContext) {
+		//For the scenario processing, it is assumed that all page templates have margin regions that are of the same width.
+		//However, it is unlikely to have a big impact on the selection.
+		return BlockContext.from(blockContext)
+				.flowWidth(master.getFlowWidth() - master.getTemplate(1).getTotalMarginRegionWidth())
+				.build();
+	}
+
+	/**
+	 * <p>Creates a task that selects the rendering scenarios of this sequence ahead of time,
+	 * in the same way as when the sequence is paginated with the specified context.
+	 * The task can run in another thread, since it uses a fork of the cross reference
+	 * handler. The cross reference handler must not be modified while the task is running.</p>
+	 *
+	 * <p>The result is used when the scenarios are selected, provided that the context
+	 * is the same and that the fork can be merged at that point. Otherwise, the selection
+	 * is made again.</p>
+	 *
+	 * @param context the formatter context
+	 * @param rcontext the reference context
+	 * @return the task, or an empty optional if the selection has already been made, or if the
+	 * 		sequence contains rendering scenarios or volatile content
+	 */
+	public Optional<Runnable> newPreparationTask(FormatterContext context, DefaultContext rcontext) {
+		if (cache!=null || stream().anyMatch(b->b.getRenderingScenario()!=null || b.hasVolatileContent())) {
+			return Optional.empty();
+		}
+		BlockContext bc = newScenarioContext(master, BlockContext.from(rcontext)
+				.flowWidth(master.getFlowWidth())
+				.formatterContext(context)
+				.build());
+		CrossReferenceHandler.Fork fork = bc.getRefs().fork();
+		return Optional.of(()->{
+			FormatterMetrics.Timer t = context.getMetrics().start(FormatterMetrics.Phase.SCENARIO_SELECTION);
+			try {
+				fork.run(()->prepared = ScenarioProcessor.process(master, this, bc));
+				preparedContext = bc;
+				preparedFork = fork;
+			} catch (RuntimeException e) {
+				// the selection is made again when the sequence is paginated
+				prepared = null;
+			} finally {
+				t.close();
+			}
+		});
+	}
+
 }
@@ -14,11 +14,13 @@ import org.daisy.dotify.api.formatter.MarkerReferenceField;
 import org.daisy.dotify.api.formatter.NoField;
 import org.daisy.dotify.api.translator.BrailleTranslator;
 import org.daisy.dotify.api.translator.DefaultTextAttribute;
+import org.daisy.dotify.api.translator.TextAttribute;
 import org.daisy.dotify.api.translator.TextBorderStyle;
 import org.daisy.dotify.api.translator.Translatable;
 import org.daisy.dotify.api.translator.TranslationException;
 import org.daisy.dotify.formatter.impl.core.BorderManager;
 import org.daisy.dotify.formatter.impl.core.BorderManagerProperties;
+import org.daisy.dotify.formatter.impl.core.FieldCache;
 import org.daisy.dotify.formatter.impl.core.FormatterContext;
 import org.daisy.dotify.formatter.impl.core.LayoutMaster;
 import org.daisy.dotify.formatter.impl.core.PageTemplate;
@@ -33,9 +35,11 @@ class FieldResolver {
 	private final FormatterContext fcontext;
 	private final CrossReferenceHandler crh;
 	private final PageDetails detailsTemplate;
+	private final FieldCache fieldCache;
 
 	FieldResolver(LayoutMaster master, FormatterContext fcontext, CrossReferenceHandler crh, PageDetails detailsTemplate) {
 		this.master = master;
+		this.fieldCache = master.getFieldCache();
 		this.fcontext = fcontext;
 		this.crh = crh;
 		this.detailsTemplate = detailsTemplate;
@@ -102,24 +106,71 @@ class FieldResolver {
 	}
 
 	private List<String> resolveField(PageDetails p, FieldList chunks, int width, String padding, BrailleTranslator translator, Optional<String> noField) {
+		// A list of static text only is translated once per layout master
+		List<Object> listKey = null;
+		if (isStatic(chunks)) {
+			listKey = FieldCache.listKey(translator, chunks);
+			List<String> ret = fieldCache.getList(listKey);
+			if (ret!=null) {
+				return ret;
+			}
+		}
 		ArrayList<String> chunkF = new ArrayList<>();
 		for (Field f : chunks.getFields()) {
 			DefaultTextAttribute.Builder b = new DefaultTextAttribute.Builder(null);
-			String resolved = softHyphen.matcher(resolveField(f, p, b, noField)).replaceAll("");
-			Translatable.Builder tr = Translatable.text(fcontext.getConfiguration().isMarkingCapitalLetters()?resolved:resolved.toLowerCase()).
-										hyphenate(false);
-			if (resolved.length()>0) {
-				tr.attributes(b.build(resolved.length()));
+			String resolved = resolveField(f, p, b, noField);
+			if (resolved.indexOf('\u00ad')>=0) {
+				resolved = softHyphen.matcher(resolved).replaceAll("");
 			}
-			try {
-				chunkF.add(translator.translate(tr.build()).getTranslatedRemainder());
-			} catch (TranslationException e) {
-				throw new PaginatorException(e);
+			String text = fcontext.getConfiguration().isMarkingCapitalLetters()?resolved:resolved.toLowerCase();
+			TextAttribute attributes = resolved.length()>0?b.build(resolved.length()):null;
+			List<Object> key = FieldCache.fieldKey(translator, text, attributes);
+			String translated = fieldCache.getField(key);
+			if (translated==null) {
+				Translatable.Builder tr = Translatable.text(text).hyphenate(false);
+				if (attributes!=null) {
+					tr.attributes(attributes);
+				}
+				try {
+					translated = translator.translate(tr.build()).getTranslatedRemainder();
+				} catch (TranslationException e) {
+					throw new PaginatorException(e);
+				}
+				fieldCache.putField(key, translated);
 			}
+			chunkF.add(translated);
+		}
+		if (listKey!=null) {
+			fieldCache.putList(listKey, chunkF);
 		}
 		return chunkF;
 	}
 
+	/**
+	 * Returns true if the field list only contains static text, in other
+	 * words if it resolves to the same text on every page.
+	 */
+	private static boolean isStatic(FieldList chunks) {
+		for (Field f : chunks.getFields()) {
+			if (!isStatic(f)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isStatic(Field f) {
+		if (f instanceof CompoundField) {
+			for (Field f2 : (CompoundField)f) {
+				if (!isStatic(f2)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return !(f instanceof NoField || f instanceof MarkerReferenceField || f instanceof CurrentPageField);
+	}
+
 	private String distribute(PageDetails p, FieldList chunks, int width, String padding, BrailleTranslator translator, Optional<String> noField) throws PaginatorToolsException {
 		List<String> chunkF = resolveField(p, chunks, width, padding, translator, noField);
 		return PaginatorTools.distribute(chunkF, width, padding,
@@ -2,9 +2,11 @@ package org.daisy.dotify.formatter.impl.page;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 
 import org.daisy.dotify.api.formatter.BlockPosition;
@@ -20,6 +22,7 @@ import org.daisy.dotify.common.splitter.SplitPointHandler;
 import org.daisy.dotify.common.splitter.SplitPointSpecification;
 import org.daisy.dotify.common.splitter.StandardSplitOption;
 import org.daisy.dotify.common.splitter.Supplements;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
 import org.daisy.dotify.formatter.impl.core.Block;
 import org.daisy.dotify.formatter.impl.core.BlockContext;
 import org.daisy.dotify.formatter.impl.core.ContentCollectionImpl;
@@ -86,12 +89,7 @@ public class PageSequenceBuilder2 {
 				.formatterContext(context)
 				.build();
 		this.staticAreaContent = new PageAreaContent(seq.getLayoutMaster().getPageAreaBuilder(), blockContext);
-		//For the scenario processing, it is assumed that all page templates have margin regions that are of the same width.
-		//However, it is unlikely to have a big impact on the selection.
-		BlockContext bc = BlockContext.from(blockContext)
-				.flowWidth(master.getFlowWidth() - master.getTemplate(1).getTotalMarginRegionWidth())
-				.build();
-		this.dataGroups = seq.selectScenario(master, bc, true);
+		this.dataGroups = seq.selectScenario(master, BlockSequence.newScenarioContext(master, blockContext), true);
 		this.cd = new CollectionData(staticAreaContent, blockContext, master, collection);
 		this.dataGroupsIndex = 0;
 		this.seqId = seqId;
@@ -145,6 +143,7 @@ public class PageSequenceBuilder2 {
 	private PageImpl newPage(int pageNumberOffset) {
 		PageDetails details = new PageDetails(master.duplex(), new PageId(pageCount, getGlobalStartIndex(), seqId), cbl, pageNumberOffset);
 		PageImpl ret = new PageImpl(fieldResolver, details, master, context, staticAreaContent);
+		context.getMetrics().pageCreated();
 		pageCount ++;
 		if (keepNextSheets>0) {
 			ret.setAllowsVolumeBreak(false);
@@ -169,7 +168,13 @@ public class PageSequenceBuilder2 {
 	
 	public PageImpl nextPage(int pageNumberOffset, boolean hyphenateLastLine, Optional<TransitionContent> transitionContent, boolean wasSplitInSequence, boolean isFirst) throws PaginatorException, RestartPaginationException // pagination must be restarted in PageStructBuilder.paginateInner
 	{
-		PageImpl ret = nextPageInner(pageNumberOffset, hyphenateLastLine, transitionContent, wasSplitInSequence, isFirst);
+		PageImpl ret;
+		FormatterMetrics.Timer t = context.getMetrics().start(FormatterMetrics.Phase.PAGE_SPLITTING);
+		try {
+			ret = nextPageInner(pageNumberOffset, hyphenateLastLine, transitionContent, wasSplitInSequence, isFirst);
+		} finally {
+			t.close();
+		}
 		blockContext.getRefs().keepPageDetails(ret.getDetails());
 		for (String id : ret.getIdentifiers()) {
 			blockContext.getRefs().setPageNumber(id, ret.getPageNumber());
@@ -275,6 +280,7 @@ public class PageSequenceBuilder2 {
 								)*limit-in;
 					};
 					// Finding from the full height
+					context.getMetrics().increment(FormatterMetrics.Counter.SPLIT_POINT_SEARCHES);
 					spec = sph.find(current.getFlowHeight() - anyHeight, copy, cost, force?StandardSplitOption.ALLOW_FORCE:null);
 					SplitPoint<RowGroup, RowGroupDataSource> x = sph.split(spec, copy);
 					// If the tail is empty, there's no need for a transition
@@ -282,6 +288,7 @@ public class PageSequenceBuilder2 {
 					blockBoundary = Optional.of(hasBlockInScope(x.getHead(), flowHeight));
 					if (!x.getTail().isEmpty() && blockBoundary.get()) {
 						// Find the best break point with the new limit
+						context.getMetrics().increment(FormatterMetrics.Counter.SPLIT_POINT_SEARCHES);
 						spec = sph.find(flowHeight, copy, cost, transitionContent.isPresent()?StandardSplitOption.NO_LAST_UNIT_SIZE:null, force?StandardSplitOption.ALLOW_FORCE:null);
 					} else {
 						addTransition = false;
@@ -299,6 +306,7 @@ public class PageSequenceBuilder2 {
 					}
 					// Either RESUME, or no transition on this page.
 					float flowHeight = current.getFlowHeight() - anyHeight - seqHeight;
+					context.getMetrics().increment(FormatterMetrics.Counter.SPLIT_POINT_SEARCHES);
 					spec = sph.find(flowHeight, copy, cost, force?StandardSplitOption.ALLOW_FORCE:null);
 				}
 				// Now apply the information to the live data
@@ -476,11 +484,15 @@ public class PageSequenceBuilder2 {
 	
 	private void reassignCollection() throws PaginatorException {
 		//reassign collection
+		Set<String> changed = new HashSet<>();
 		if (areaProps!=null) {
+			changed.add(areaProps.getCollectionId());
 			int i = 0;
 			for (FallbackRule r : areaProps.getFallbackRules()) {
 				i++;
 				if (r instanceof RenameFallbackRule) {
+					changed.add(r.applyToCollection());
+					changed.add(((RenameFallbackRule)r).getToCollection());
 					ContentCollectionImpl reassigned = context.getCollections().remove(r.applyToCollection());
 					if (context.getCollections().put(((RenameFallbackRule)r).getToCollection(), reassigned)!=null) {
 						throw new PaginatorException("Fallback id already in use:" + ((RenameFallbackRule)r).getToCollection());
@@ -493,7 +505,10 @@ public class PageSequenceBuilder2 {
 				throw new PaginatorException("Failed to fit collection '" + areaProps.getCollectionId() + "' within the page-area boundaries, and no fallback was defined.");
 			}
 		}
-		throw new RestartPaginationException();
+		if (changed.isEmpty()) {
+			throw new RestartPaginationException();
+		}
+		throw new RestartPaginationException("Collections were reassigned: " + changed, changed);
 	}
 	
 	static class CollectionData implements Supplements<RowGroup> {
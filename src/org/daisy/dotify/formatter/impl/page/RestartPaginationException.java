@@ -1,5 +1,10 @@
 package org.daisy.dotify.formatter.impl.page;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * <p>Indicates that the pagination should be restarted from the beginning (the start of the current
  * iteration). This may for example occur when a change in the page layout is triggered, such as
@@ -19,25 +24,52 @@ public class RestartPaginationException extends RuntimeException {
 	 * 
 	 */
 	private static final long serialVersionUID = 2017654555446022589L;
+	private final Set<String> changedCollections;
 
 	RestartPaginationException() {
+		this.changedCollections = null;
+	}
+
+	/**
+	 * Creates a new exception caused by a change to the specified collections.
+	 * Sequences that don't use any of the collections aren't affected by the
+	 * change, and may keep their previous result.
+	 * @param message the message
+	 * @param changedCollections the identifiers of the collections that have changed
+	 */
+	RestartPaginationException(String message, Set<String> changedCollections) {
+		super(message);
+		this.changedCollections = Collections.unmodifiableSet(new HashSet<>(changedCollections));
 	}
 
 	RestartPaginationException(String message) {
 		super(message);
+		this.changedCollections = null;
 	}
 
 	RestartPaginationException(Throwable cause) {
 		super(cause);
+		this.changedCollections = null;
 	}
 
 	RestartPaginationException(String message, Throwable cause) {
 		super(message, cause);
+		this.changedCollections = null;
 	}
 
 	RestartPaginationException(String message, Throwable cause, boolean enableSuppression,
 			boolean writableStackTrace) {
 		super(message, cause, enableSuppression, writableStackTrace);
+		this.changedCollections = null;
+	}
+
+	/**
+	 * Gets the identifiers of the collections whose change caused the restart.
+	 * @return the collection identifiers, or an empty optional if the extent
+	 * 		of the change is unknown, in which case all previous results are compromised
+	 */
+	public Optional<Set<String>> getChangedCollections() {
+		return Optional.ofNullable(changedCollections);
 	}
 
 }
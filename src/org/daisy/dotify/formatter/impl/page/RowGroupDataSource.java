@@ -1,6 +1,5 @@
 package org.daisy.dotify.formatter.impl.page;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -13,6 +12,8 @@ import org.daisy.dotify.common.splitter.SplitPointHandler;
 import org.daisy.dotify.common.splitter.SplitPointSpecification;
 import org.daisy.dotify.common.splitter.SplitResult;
 import org.daisy.dotify.common.splitter.Supplements;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.SharedBuffer;
 import org.daisy.dotify.formatter.impl.core.Block;
 import org.daisy.dotify.formatter.impl.core.BlockContext;
 import org.daisy.dotify.formatter.impl.core.LayoutMaster;
@@ -58,6 +59,7 @@ class RowGroupDataSource implements SplitPointDataSource<RowGroup, RowGroupDataS
 
 	RowGroupDataSource(RowGroupDataSource template) {
 		this(template, 0);
+		bc.getFcontext().getMetrics().increment(FormatterMetrics.Counter.DATA_SOURCE_COPIES);
 	}
 	
 	RowGroupDataSource(RowGroupDataSource template, int offset) {
@@ -214,7 +216,7 @@ class RowGroupDataSource implements SplitPointDataSource<RowGroup, RowGroupDataS
 		if (data.getGroup()!=null) {
 			throw new IllegalStateException();
 		} else {
-			data.setGroup(new ArrayList<>());
+			data.setGroup(new SharedBuffer<>());
 		}
 	}
 
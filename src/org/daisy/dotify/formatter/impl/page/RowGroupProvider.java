@@ -48,6 +48,7 @@ class RowGroupProvider {
 		this.bc = bc;
 		this.phase = 0;
 		this.rowIndex = 0;
+		Object reader = bc.getRefs().setReader(g.getBlockAddress());
 		this.owc = new OrphanWidowControl(g.getRowDataProperties().getOrphans(),
 				g.getRowDataProperties().getWidows(), 
 				bc.getRefs().getRowCount(g.getBlockAddress()));
@@ -55,6 +56,7 @@ class RowGroupProvider {
 				|| !bc.getRefs().getGroupMarkers(g.getBlockAddress()).isEmpty()
 				|| !bc.getRefs().getGroupIdentifiers(g.getBlockAddress()).isEmpty()
 				|| g.getKeepWithNextSheets() > 0 || g.getKeepWithPreviousSheets() > 0;
+		bc.getRefs().setReader(reader);
 		this.keepWithNext = keepWithNext;
 	}
 
@@ -97,8 +99,12 @@ class RowGroupProvider {
 			this.context = g.contextWithMeta(context);
 			bcm.setContext(this.context);
 		}
-		RowGroup b = nextInner(lineProps);
-		return b;
+		Object reader = bc.getRefs().setReader(g.getBlockAddress());
+		try {
+			return nextInner(lineProps);
+		} finally {
+			bc.getRefs().setReader(reader);
+		}
 	}
 
 	private RowGroup nextInner(LineProperties lineProps) {
@@ -4,19 +4,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.daisy.dotify.api.formatter.FormattingTypes.BreakBefore;
+import org.daisy.dotify.formatter.impl.common.SharedBuffer;
 import org.daisy.dotify.formatter.impl.core.Block;
 
 class RowGroupSequence {
 	private final List<Block> blocks;
 	private final BreakBefore breakBefore;
 	private VerticalSpacing vSpacing;
-	private List<RowGroup> group;
+	private SharedBuffer<RowGroup> group;
 
 	public RowGroupSequence(BreakBefore breakBefore, VerticalSpacing vSpacing) {
-		this(breakBefore, vSpacing, new ArrayList<>(), new ArrayList<>());
+		this(breakBefore, vSpacing, new ArrayList<>(), new SharedBuffer<>());
 	}
 	
-	public RowGroupSequence(BreakBefore breakBefore, VerticalSpacing vSpacing, List<Block> blocks, List<RowGroup> group) {
+	public RowGroupSequence(BreakBefore breakBefore, VerticalSpacing vSpacing, List<Block> blocks, SharedBuffer<RowGroup> group) {
 		this.blocks = blocks;
 		this.group = group;
 		this.vSpacing = vSpacing;
@@ -38,19 +39,13 @@ class RowGroupSequence {
 	private RowGroupSequence(RowGroupSequence template, VerticalSpacing vs, int offset, boolean deepMode) {
 		this.blocks = deepMode?new ArrayList<>(template.blocks):template.blocks;
 		if (deepMode) {
-			this.group = new ArrayList<>();
+			this.group = new SharedBuffer<>();
 			for (RowGroup rg : template.group) {
 				group.add(new RowGroup(rg));
 			}
 		} else {
-			if (template.group==null) {
-				this.group = null;
-			} else if (template.group.size()>offset) {
-				this.group = new ArrayList<>(
-						offset>0?template.group.subList(offset, template.group.size()):template.group);
-			} else {
-				this.group = new ArrayList<>();
-			}
+			// The groups are shared with the template until either of them adds a group
+			this.group = template.group==null?null:template.group.tail(offset);
 		}
 		this.vSpacing = vs;
 		this.breakBefore = template.breakBefore;
@@ -60,7 +55,7 @@ class RowGroupSequence {
 		return group;
 	}
 	
-	void setGroup(List<RowGroup> value) {
+	void setGroup(SharedBuffer<RowGroup> value) {
 		this.group = value;
 	}
 	
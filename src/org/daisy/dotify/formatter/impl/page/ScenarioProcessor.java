@@ -1,13 +1,17 @@
 package org.daisy.dotify.formatter.impl.page;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.daisy.dotify.api.formatter.RenderingScenario;
 import org.daisy.dotify.formatter.impl.core.Block;
 import org.daisy.dotify.formatter.impl.core.BlockContext;
 import org.daisy.dotify.formatter.impl.core.LayoutMaster;
+import org.daisy.dotify.formatter.impl.row.BlockStatistics;
+import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
 
 /**
  * Processes scenarios and selects the best one. The decision is based on the cost
@@ -16,6 +20,13 @@ import org.daisy.dotify.formatter.impl.core.LayoutMaster;
  * @author Joel Håkansson
  */
 class ScenarioProcessor {
+	/**
+	 * The name of the system property that enables the concurrent layout of the
+	 * scenarios of a rendering. When set to "true", the scenarios are laid out
+	 * concurrently, each with a copy of the scenario data and a fork of the cross
+	 * reference handler, before the costs are calculated.
+	 */
+	static final String PARALLEL_PROPERTY = "org.daisy.dotify.formatter.impl.parallelScenarios";
 	private static final String baseline = "base";
 	private static final String scenario = "best";
 	
@@ -55,16 +66,97 @@ class ScenarioProcessor {
 	
 	static List<RowGroupSequence> process(LayoutMaster master, Iterable<Block> seq, BlockContext bc) {
 		final ScenarioProcessor rec = new ScenarioProcessor();
+		// consecutive blocks with scenarios, if the scenarios can be laid out concurrently
+		List<Block> scenarioBlocks = Boolean.getBoolean(PARALLEL_PROPERTY)
+				&& bc.getRefs()!=null && !bc.getRefs().isForked()?new ArrayList<>():null;
 		for (Block g : seq)  {
-			try {
-				rec.processBlock(master, g, bc);
-			} catch (Exception e) {
-				rec.invalidateScenario(e);
+			if (scenarioBlocks!=null) {
+				if (g.getRenderingScenario()!=null) {
+					scenarioBlocks.add(g);
+					continue;
+				}
+				rec.processScenarioBlocks(master, scenarioBlocks, bc);
 			}
+			rec.processBlockOrInvalidate(master, g, bc);
+		}
+		if (scenarioBlocks!=null) {
+			rec.processScenarioBlocks(master, scenarioBlocks, bc);
 		}
 		return rec.processResult();
 	}
-	
+
+	private void processBlockOrInvalidate(LayoutMaster master, Block g, BlockContext bc) {
+		try {
+			processBlock(master, g, bc);
+		} catch (Exception e) {
+			invalidateScenario(e);
+		}
+	}
+
+	private void processScenarioBlocks(LayoutMaster master, List<Block> blocks, BlockContext bc) {
+		if (!blocks.isEmpty() && !processInParallel(master, blocks, bc)) {
+			for (Block g : blocks) {
+				processBlockOrInvalidate(master, g, bc);
+			}
+		}
+		blocks.clear();
+	}
+
+	/**
+	 * Lays out the scenarios of the supplied blocks concurrently and selects the best one,
+	 * with the same result as {@link #processBlock(LayoutMaster, Block, BlockContext)}.
+	 * Nothing is changed if this isn't possible.
+	 * @param master the layout master
+	 * @param blocks consecutive blocks with scenarios
+	 * @param bc the block context
+	 * @return true if the blocks were processed, false otherwise
+	 */
+	private boolean processInParallel(LayoutMaster master, List<Block> blocks, BlockContext bc) {
+		if (current!=null || blocks.stream().anyMatch(Block::hasVolatileContent)) {
+			return false;
+		}
+		List<Scenario> scenarios = new ArrayList<>();
+		for (Block g : blocks) {
+			if (scenarios.isEmpty() || scenarios.get(scenarios.size()-1).rs!=g.getRenderingScenario()) {
+				scenarios.add(new Scenario(g.getRenderingScenario(), new ScenarioData(data), bc.getRefs().fork(), scenarios.isEmpty()));
+			}
+			scenarios.get(scenarios.size()-1).blocks.add(g);
+		}
+		if (scenarios.size()<2) {
+			return false;
+		}
+		scenarios.parallelStream().forEach(s->s.fork.run(()->s.process(master, bc)));
+		if (scenarios.stream().anyMatch(s->s.failed)) {
+			return false;
+		}
+		// Calculating the cost isn't thread safe
+		float height = data.calcSize();
+		double cost = Double.MAX_VALUE;
+		ScenarioData best = null;
+		ScenarioData selected = null;
+		try {
+			for (int i=0; i<scenarios.size(); i++) {
+				Scenario s = scenarios.get(i);
+				double ncost = s.rs.calculateCost(setParams(s.data.calcSize()-height, s.minWidth, s.forceCount));
+				if (i<scenarios.size()-1) {
+					if (ncost<cost) {
+						cost = ncost;
+						best = s.data;
+					}
+				} else {
+					selected = (ncost>cost && best!=null)?best:s.data;
+				}
+			}
+		} catch (RuntimeException e) {
+			return false;
+		}
+		if (!bc.getRefs().merge(scenarios.stream().map(s->s.fork).collect(Collectors.toList()))) {
+			return false;
+		}
+		data = selected;
+		return true;
+	}
+
 	/**
 	 * Process a new block for a scenario
 	 * @param master the layout master
@@ -173,4 +265,43 @@ class ScenarioProcessor {
 		return params;
 	}
 
+	private static class Scenario {
+		private final RenderingScenario rs;
+		private final ScenarioData data;
+		private final CrossReferenceHandler.Fork fork;
+		private final boolean first;
+		private final List<Block> blocks = new ArrayList<>();
+		private float minWidth = 0;
+		private double forceCount = 0;
+		private boolean failed = false;
+
+		private Scenario(RenderingScenario rs, ScenarioData data, CrossReferenceHandler.Fork fork, boolean first) {
+			this.rs = rs;
+			this.data = data;
+			this.fork = fork;
+			this.first = first;
+		}
+
+		private void process(LayoutMaster master, BlockContext bc) {
+			try {
+				for (int i=0; i<blocks.size(); i++) {
+					data.processBlock(master, blocks.get(i), bc);
+					BlockStatistics stats = data.getBlockStatistics();
+					if (i==0) {
+						minWidth = stats.getMinimumAvailableWidth();
+						// the forced breaks of the first block of the first scenario aren't counted
+						if (first) {
+							continue;
+						}
+					}
+					forceCount += stats.getForceBreakCount();
+					minWidth = Math.min(minWidth, stats.getMinimumAvailableWidth());
+				}
+			} catch (Exception e) {
+				// the scenarios are processed again, one at a time
+				failed = true;
+			}
+		}
+	}
+
 }
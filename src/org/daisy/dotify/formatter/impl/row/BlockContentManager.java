@@ -1,12 +1,13 @@
 package org.daisy.dotify.formatter.impl.row;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import org.daisy.dotify.api.formatter.Context;
 import org.daisy.dotify.api.formatter.Marker;
 import org.daisy.dotify.formatter.impl.common.FormatterCoreContext;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.SharedBuffer;
 import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
 import org.daisy.dotify.formatter.impl.search.DefaultContext;
 import org.daisy.dotify.formatter.impl.segment.Segment;
@@ -20,31 +21,37 @@ import org.daisy.dotify.formatter.impl.segment.Segment;
  * @author Joel Håkansson
  */
 public class BlockContentManager extends AbstractBlockContentManager {
-	private final List<RowImpl> rows;
+	private final SharedBuffer<RowImpl> rows;
 	private final SegmentProcessor sp;
 	private int rowIndex;
+	// The result of looking ahead in the segment processor, or null if unknown.
+	// Valid until the segment processor is modified.
+	private Boolean hasMoreRows;
 	
 	public BlockContentManager(String blockId, int flowWidth, List<Segment> segments, RowDataProperties rdp, CrossReferenceHandler refs, Context context, FormatterCoreContext fcontext) {
 		super(flowWidth, rdp, fcontext);
-		this.rows = new ArrayList<>();
+		this.rows = new SharedBuffer<>();
 		this.sp = new SegmentProcessor(blockId, segments, flowWidth, refs, context, flowWidth - margins.getRightMargin().getContent().length(), margins, fcontext, rdp);
 		initFields();
 	}
 	
 	private BlockContentManager(BlockContentManager template) {
 		super(template);
-		this.rows = new ArrayList<>(template.rows);
+		this.rows = template.rows.copy();
 		this.sp = new SegmentProcessor(template.sp);
 		this.rowIndex = template.rowIndex;
+		this.hasMoreRows = template.hasMoreRows;
 	}
 	
     private void initFields() {
 		rowIndex = 0;
+		hasMoreRows = null;
     }
 	
     @Override
 	public void setContext(DefaultContext context) {
 		this.sp.setContext(context);
+		this.hasMoreRows = null;
 	}
 
 	@Override
@@ -62,11 +69,20 @@ public class BlockContentManager extends AbstractBlockContentManager {
 	 * the required amount of data).
 	 */
 	private boolean ensureBuffer(int index, LineProperties lineProps) {
-		while (index<0 || rows.size()<index) {
-			if (!sp.hasMoreData()) {
-				return false;
+		if (index>=0 && rows.size()>=index) {
+			return true;
+		}
+		FormatterMetrics.Timer t = fcontext.getMetrics().start(FormatterMetrics.Phase.ROW_BREAKING);
+		try {
+			while (index<0 || rows.size()<index) {
+				if (!sp.hasMoreData()) {
+					return false;
+				}
+				hasMoreRows = null;
+				sp.getNext(lineProps).ifPresent(v->rows.add(v));
 			}
-			sp.getNext(lineProps).ifPresent(v->rows.add(v));
+		} finally {
+			t.close();
 		}
 		return rows.size()>=index;
 	}
@@ -102,7 +118,11 @@ public class BlockContentManager extends AbstractBlockContentManager {
 			if (!sp.hasMoreData()) {
 				return false;
 			} else {
-				return new SegmentProcessor(sp).getNext(LineProperties.DEFAULT).isPresent();
+				// Looking ahead requires that a row is created on a copy, so the result is kept
+				if (hasMoreRows==null) {
+					hasMoreRows = new SegmentProcessor(sp).getNext(LineProperties.DEFAULT).isPresent();
+				}
+				return hasMoreRows;
 			}
 		} else if (diff<0) {
 			// The next value should always follow the size of the last produced result.
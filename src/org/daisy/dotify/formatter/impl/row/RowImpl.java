@@ -1,6 +1,7 @@
 package org.daisy.dotify.formatter.impl.row;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -9,11 +10,29 @@ import org.daisy.dotify.api.formatter.Marker;
 import org.daisy.dotify.api.writer.Row;
 
 /**
- * Provides a single row of text. {@link RowImpl}s are immutable.
+ * <p>Provides a single row of text. {@link RowImpl}s are immutable.</p>
+ *
+ * <p>If {@link #PACKED_PROPERTY} is set, rows that only contain braille
+ * patterns (U+2800 to U+28FF) are stored with one byte per character
+ * instead of as a string, which is half the size. The string is then
+ * created each time {@link #getChars()} is called, so code that reads the
+ * characters more than once should keep a reference to the result. The
+ * string isn't kept by the row, since that would undo the saving for
+ * every row that is read, for example when it is written.</p>
  * @author Joel Håkansson
  */
 public final class RowImpl implements Row {
+	/**
+	 * Set this system property to "true" to store braille rows
+	 * with one byte per character. The property is read once, when
+	 * this class is loaded.
+	 */
+	static final String PACKED_PROPERTY = "org.daisy.dotify.formatter.impl.packedRows";
+	private static final boolean PACKED = Boolean.getBoolean(PACKED_PROPERTY);
+	private static final char BRAILLE_PATTERN_BLANK = '\u2800';
+	// At most one of chars and packed is non-null
 	private final String chars;
+	private final byte[] packed;
 	private final List<Marker> markers;
 	private final List<String> anchors;
 	private final List<String> identifiers;
@@ -44,7 +63,7 @@ public final class RowImpl implements Row {
 		}
 
 		public Builder(RowImpl template) {
-			this.chars = template.chars;
+			this.chars = template.getChars();
 			this.markers = new ArrayList<>(template.markers);
 			this.anchors = new ArrayList<>(template.anchors);
 			this.identifiers = new ArrayList<>(template.identifiers);
@@ -220,14 +239,25 @@ public final class RowImpl implements Row {
 		}
 
 		public RowImpl build() {
+			return build(PACKED);
+		}
+
+		/**
+		 * Builds the row.
+		 * @param pack true to pack the characters if possible, regardless
+		 * 		of {@link RowImpl#PACKED_PROPERTY}, false otherwise
+		 * @return the row
+		 */
+		RowImpl build(boolean pack) {
 			assertNotBuilt();
 			built = true;
-			return new RowImpl(this);
+			return new RowImpl(this, pack);
 		}
 	}
 	
-	private RowImpl(Builder builder) {
-		this.chars = builder.chars;
+	private RowImpl(Builder builder, boolean pack) {
+		this.packed = pack?pack(builder.chars):null;
+		this.chars = packed==null?builder.chars:null;
 		this.markers = Collections.unmodifiableList(builder.markers);
 		this.anchors = Collections.unmodifiableList(builder.anchors);
 		this.identifiers = Collections.unmodifiableList(builder.identifiers);
@@ -248,7 +278,8 @@ public final class RowImpl implements Row {
 		this(chars, new MarginProperties(), new MarginProperties());
 	}
 	public RowImpl(String chars, MarginProperties leftMargin, MarginProperties rightMargin) {
-		this.chars = chars;
+		this.packed = PACKED?pack(chars):null;
+		this.chars = packed==null?chars:null;
 		this.markers = Collections.emptyList();
 		this.anchors = Collections.emptyList();
 		this.identifiers = Collections.emptyList();
@@ -269,20 +300,99 @@ public final class RowImpl implements Row {
 	}
 
 	/**
-	 * Get the characters on this row
+	 * Packs the characters with one byte per character, if all
+	 * characters are braille patterns.
+	 * @param chars the characters
+	 * @return the packed characters, or null if the characters should be kept as is
+	 */
+	static byte[] pack(String chars) {
+		if (chars==null || chars.isEmpty()) {
+			return null;
+		}
+		byte[] ret = new byte[chars.length()];
+		for (int i=0; i<chars.length(); i++) {
+			char c = chars.charAt(i);
+			if ((c & 0xFF00) != BRAILLE_PATTERN_BLANK) {
+				return null;
+			}
+			ret[i] = (byte)c;
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns true if rows that only contain braille patterns are packed,
+	 * in other words if {@link #PACKED_PROPERTY} was set when this class was loaded.
+	 * @return true if braille rows are packed, false otherwise
+	 */
+	public static boolean isPackingEnabled() {
+		return PACKED;
+	}
+
+	/**
+	 * Returns true if the characters of this row are packed.
+	 * @return true if the characters are packed, false otherwise
+	 */
+	boolean isPacked() {
+		return packed!=null;
+	}
+
+	/**
+	 * Get the characters on this row. If the characters are packed, a new
+	 * string is created each time this method is called.
 	 * @return returns the characters on the row
 	 */
 	@Override
 	public String getChars() {
+		if (packed!=null) {
+			char[] ret = new char[packed.length];
+			for (int i=0; i<packed.length; i++) {
+				ret[i] = (char)(BRAILLE_PATTERN_BLANK | (packed[i] & 0xFF));
+			}
+			return new String(ret);
+		}
 		return chars;
 	}
+
+	/**
+	 * Gets the number of characters on this row. This is the same as
+	 * <code>getChars().length()</code>, but doesn't create a string if
+	 * the characters are packed.
+	 * @return the number of characters
+	 */
+	public int getCharCount() {
+		return packed!=null?packed.length:chars.length();
+	}
+
+	private int charsHashCode() {
+		if (packed!=null) {
+			// Same as the hash code of the string
+			int h = 0;
+			for (byte b : packed) {
+				h = 31 * h + (BRAILLE_PATTERN_BLANK | (b & 0xFF));
+			}
+			return h;
+		}
+		return chars==null?0:chars.hashCode();
+	}
+
+	private boolean charsEquals(RowImpl other) {
+		if (packed!=null && other.packed!=null) {
+			return Arrays.equals(packed, other.packed);
+		} else if (packed==null && other.packed==null) {
+			return chars==null?other.chars==null:chars.equals(other.chars);
+		} else {
+			// Packing was turned on or off in between
+			return getChars().equals(other.getChars());
+		}
+	}
 	
 	public int getLeaderSpace() {
 		return leaderSpace;
 	}
 
 	public int getWidth() {
-		return chars.length()+leftMargin.getContent().length()+rightMargin.getContent().length();
+		return getCharCount()+leftMargin.getContent().length()+rightMargin.getContent().length();
 	}
 
 	/**
@@ -359,7 +469,7 @@ public final class RowImpl implements Row {
 		result = prime * result + ((alignment == null) ? 0 : alignment.hashCode());
 		result = prime * result + (allowsBreakAfter ? 1231 : 1237);
 		result = prime * result + ((anchors == null) ? 0 : anchors.hashCode());
-		result = prime * result + ((chars == null) ? 0 : chars.hashCode());
+		result = prime * result + charsHashCode();
 		result = prime * result + leaderSpace;
 		result = prime * result + ((leftMargin == null) ? 0 : leftMargin.hashCode());
 		result = prime * result + ((markers == null) ? 0 : markers.hashCode());
@@ -396,11 +506,7 @@ public final class RowImpl implements Row {
 		} else if (!anchors.equals(other.anchors)) {
 			return false;
 		}
-		if (chars == null) {
-			if (other.chars != null) {
-				return false;
-			}
-		} else if (!chars.equals(other.chars)) {
+		if (!charsEquals(other)) {
 			return false;
 		}
 		if (leaderSpace != other.leaderSpace) {
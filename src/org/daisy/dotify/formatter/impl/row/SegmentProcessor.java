@@ -1,6 +1,5 @@
 package org.daisy.dotify.formatter.impl.row;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -17,6 +16,7 @@ import org.daisy.dotify.api.translator.Translatable;
 import org.daisy.dotify.api.translator.TranslatableWithContext;
 import org.daisy.dotify.api.translator.TranslationException;
 import org.daisy.dotify.formatter.impl.common.FormatterCoreContext;
+import org.daisy.dotify.formatter.impl.common.SharedBuffer;
 import org.daisy.dotify.formatter.impl.row.RowImpl.Builder;
 import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
 import org.daisy.dotify.formatter.impl.search.DefaultContext;
@@ -42,9 +42,9 @@ class SegmentProcessor implements SegmentProcessing {
 
 	private int segmentIndex;
 	private RowImpl.Builder currentRow;
-	private final ArrayList<Marker> groupMarkers;
-	private final ArrayList<String> groupAnchors;
-	private final ArrayList<String> groupIdentifiers;
+	private final SharedBuffer<Marker> groupMarkers;
+	private final SharedBuffer<String> groupAnchors;
+	private final SharedBuffer<String> groupIdentifiers;
 	private AggregatedBrailleTranslatorResult.Builder layoutOrApplyAfterLeader;
 	private String currentLeaderMode;
 	private boolean seenSegmentAfterLeader;
@@ -63,9 +63,9 @@ class SegmentProcessor implements SegmentProcessing {
 		this.segments = Collections.unmodifiableList(removeStyles(segments).collect(Collectors.toList()));
 		this.attr = buildAttributeWithContext(null, segments);
 		this.context = context;
-		this.groupMarkers = new ArrayList<>();
-		this.groupAnchors = new ArrayList<>();
-		this.groupIdentifiers = new ArrayList<>();
+		this.groupMarkers = new SharedBuffer<>();
+		this.groupAnchors = new SharedBuffer<>();
+		this.groupIdentifiers = new SharedBuffer<>();
 		this.leaderManager = new LeaderManager();
 		this.significantContent = calculateSignificantContent(this.segments, context, rdp);
 		this.spc = new SegmentProcessorContext(fcontext, rdp, margins, flowWidth, available);
@@ -80,9 +80,9 @@ class SegmentProcessor implements SegmentProcessing {
 		this.context = template.context;
 		this.spc = template.spc;
 		this.currentRow = template.currentRow==null?null:new RowImpl.Builder(template.currentRow);
-		this.groupAnchors = new ArrayList<>(template.groupAnchors);
-		this.groupMarkers = new ArrayList<>(template.groupMarkers);
-		this.groupIdentifiers = new ArrayList<>(template.groupIdentifiers);
+		this.groupAnchors = template.groupAnchors.copy();
+		this.groupMarkers = template.groupMarkers.copy();
+		this.groupIdentifiers = template.groupIdentifiers.copy();
 		this.leaderManager = new LeaderManager(template.leaderManager);
 		this.layoutOrApplyAfterLeader = template.layoutOrApplyAfterLeader==null?null:new AggregatedBrailleTranslatorResult.Builder(template.layoutOrApplyAfterLeader);
 		this.currentLeaderMode = template.currentLeaderMode;
@@ -400,7 +400,7 @@ class SegmentProcessor implements SegmentProcessing {
 		RowImpl r = currentRow.build();
 		empty = false;
 		//Make calculations for underlining
-		int width = r.getChars().length();
+		int width = r.getCharCount();
 		int left = r.getLeftMargin().getContent().length();
 		int right = r.getRightMargin().getContent().length();
 		int space = spc.getFlowWidth() - width - left - right;
@@ -0,0 +1,74 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * <p>Provides an index of the anchors in a volume, by collection.</p>
+ *
+ * <p>For each collection, the index contains the pages of the volume that have
+ * at least one anchor to an item in the collection, with the anchors of each
+ * page filtered and without duplicates. A collection is indexed the first time
+ * it is requested.</p>
+ *
+ * <p>The index is a snapshot. It must be built again when the anchor data of
+ * the volume changes. As long as the anchor data is the same, the same
+ * lists are returned, which can be used to tell if anything has changed.</p>
+ *
+ * @author Joel Håkansson
+ */
+class AnchorIndex {
+	private final Iterable<AnchorData> data;
+	private final Map<String, List<AnchorData>> itemsByCollection;
+
+	/**
+	 * Creates a new anchor index.
+	 * @param data the anchor data of the volume
+	 */
+	AnchorIndex(Iterable<AnchorData> data) {
+		this.data = data;
+		this.itemsByCollection = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Gets the anchor data that this index was built from.
+	 * @return the anchor data
+	 */
+	Iterable<AnchorData> getData() {
+		return data;
+	}
+
+	/**
+	 * Gets the pages with anchors to items in the specified collection.
+	 * @param collectionId the collection identifier
+	 * @param isItem a test for whether an anchor is an item in the collection.
+	 * 		Only used the first time the collection is requested.
+	 * @return an unmodifiable list of anchor data, containing only the anchors
+	 * 		of the collection, in document order
+	 */
+	List<AnchorData> getItems(String collectionId, Predicate<String> isItem) {
+		return itemsByCollection.computeIfAbsent(collectionId, k->build(isItem));
+	}
+
+	private List<AnchorData> build(Predicate<String> isItem) {
+		List<AnchorData> ret = new ArrayList<>();
+		for (AnchorData ad : data) {
+			Set<String> refs = new LinkedHashSet<>();
+			for (String a : ad.getAnchors()) {
+				if (isItem.test(a)) {
+					refs.add(a);
+				}
+			}
+			if (!refs.isEmpty()) {
+				ret.add(new AnchorData(Collections.unmodifiableList(new ArrayList<>(refs)), ad.getPageNumber()));
+			}
+		}
+		return Collections.unmodifiableList(ret);
+	}
+}
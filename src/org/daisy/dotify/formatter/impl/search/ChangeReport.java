@@ -0,0 +1,134 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * <p>Provides a report of the changes that made a {@link CrossReferenceHandler} dirty,
+ * in other words, why another iteration is needed.</p>
+ *
+ * <p>The report has one item per lookup handler in the cross reference handler,
+ * with the number of requested keys, and the keys that changed together with
+ * the objects that read them (if reader tracking is enabled). In addition,
+ * data that is only tracked with a flag, such as the page search information,
+ * is included with one change if the flag is set.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class ChangeReport {
+	private static final int MAX_KEYS_IN_STRING = 10;
+	private final Map<String, Item> items;
+
+	private static final class Item {
+		private final int requested;
+		private final int changed;
+		private final Map<Object, Set<Object>> changes;
+
+		private Item(int requested, int changed, Map<Object, Set<Object>> changes) {
+			this.requested = requested;
+			this.changed = changed;
+			this.changes = changes;
+		}
+	}
+
+	ChangeReport() {
+		this.items = new LinkedHashMap<>();
+	}
+
+	void add(String name, LookupHandler<?, ?> handler) {
+		Map<Object, Set<Object>> changes = Collections.unmodifiableMap(new LinkedHashMap<Object, Set<Object>>(handler.getChanges()));
+		items.put(name, new Item(handler.getRequestedCount(), changes.size(), changes));
+	}
+
+	void add(String name, boolean changed) {
+		items.put(name, new Item(0, changed?1:0, Collections.emptyMap()));
+	}
+
+	/**
+	 * Gets the names of the items in this report.
+	 * @return the names
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(items.keySet());
+	}
+
+	/**
+	 * Gets the number of keys requested in the named item.
+	 * @param name the name
+	 * @return the number of requested keys
+	 * @throws IllegalArgumentException if the name isn't in this report
+	 */
+	public int getRequestedCount(String name) {
+		return getItem(name).requested;
+	}
+
+	/**
+	 * Gets the number of changes in the named item.
+	 * @param name the name
+	 * @return the number of changes
+	 * @throws IllegalArgumentException if the name isn't in this report
+	 */
+	public int getChangedCount(String name) {
+		return getItem(name).changed;
+	}
+
+	/**
+	 * Gets the changed keys in the named item, mapped to the objects that read them.
+	 * @param name the name
+	 * @return the changed keys and their readers
+	 * @throws IllegalArgumentException if the name isn't in this report
+	 */
+	public Map<Object, Set<Object>> getChanges(String name) {
+		return getItem(name).changes;
+	}
+
+	/**
+	 * Returns true if there are changes in any item in this report.
+	 * @return true if there are changes, false otherwise
+	 */
+	public boolean hasChanges() {
+		return items.values().stream().anyMatch(v->v.changed>0);
+	}
+
+	private Item getItem(String name) {
+		Item ret = items.get(name);
+		if (ret==null) {
+			throw new IllegalArgumentException("No such item: " + name);
+		}
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Entry<String, Item> e : items.entrySet()) {
+			Item item = e.getValue();
+			if (item.changed==0) {
+				continue;
+			}
+			if (sb.length()>0) {
+				sb.append('\n');
+			}
+			sb.append(e.getKey()).append(": ").append(item.changed).append(" changed");
+			if (item.requested>0) {
+				sb.append(" (of ").append(item.requested).append(" requested)");
+			}
+			Iterator<Entry<Object, Set<Object>>> it = item.changes.entrySet().iterator();
+			for (int i = 0; i<MAX_KEYS_IN_STRING && it.hasNext(); i++) {
+				Entry<Object, Set<Object>> c = it.next();
+				sb.append("\n\t").append(c.getKey());
+				if (!c.getValue().isEmpty()) {
+					sb.append(" read by ").append(c.getValue());
+				}
+			}
+			if (it.hasNext()) {
+				sb.append("\n\t...");
+			}
+		}
+		return sb.toString();
+	}
+}
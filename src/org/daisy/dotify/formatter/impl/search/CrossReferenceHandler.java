@@ -1,13 +1,20 @@
 package org.daisy.dotify.formatter.impl.search;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.daisy.dotify.api.formatter.Marker;
 import org.daisy.dotify.api.formatter.MarkerReferenceField;
@@ -16,6 +23,7 @@ public class CrossReferenceHandler {
 	private final LookupHandler<String, Integer> pageRefs;
 	private final LookupHandler<String, Integer> volumeRefs;
 	private final LookupHandler<Integer, Iterable<AnchorData>> anchorRefs;
+	private final Map<Integer, AnchorIndex> anchorIndex;
 	private final LookupHandler<String, Integer> variables;
 	private final LookupHandler<SheetIdentity, Boolean> breakable;
 	private final LookupHandler<BlockAddress, Integer> rowCount;
@@ -25,6 +33,8 @@ public class CrossReferenceHandler {
 	private final LookupHandler<BlockLineLocation, TransitionProperties> transitionProperties;
 	private final LookupHandler<BlockLineLocation, PageDetails> nextPageDetails;
 	private final Map<Integer, Overhead> volumeOverhead;
+	private final Map<Integer, Overhead> overheadSeed;
+	private final Set<Integer> overheadSeedRequests;
     private final Map<String, Integer> counters;
 	private final SearchInfo searchInfo;
 	private static final String VOLUMES_KEY = "volumes";
@@ -35,20 +45,38 @@ public class CrossReferenceHandler {
     private Set<String> pageIds;
 	private boolean overheadDirty = false;
 	private boolean readOnly = false;
+	private LookupRecord record = null;
+	private Object reader = null;
+	private final ThreadLocal<Fork> attached = new ThreadLocal<>();
+	private final AtomicInteger attachedCount = new AtomicInteger();
 	
 	public CrossReferenceHandler() {
-		this.pageRefs = new LookupHandler<>();
-		this.volumeRefs = new LookupHandler<>();
-		this.anchorRefs = new LookupHandler<>();
-		this.variables = new LookupHandler<>();
-		this.breakable = new LookupHandler<>();
-		this.rowCount = new LookupHandler<>();
-        this.groupAnchors = new LookupHandler<>();
-        this.groupMarkers = new LookupHandler<>();
-        this.groupIdentifiers = new LookupHandler<>();
-		this.transitionProperties = new LookupHandler<>();
-		this.nextPageDetails = new LookupHandler<>();
+		this(false);
+	}
+
+	/**
+	 * Creates a new cross reference handler.
+	 * @param trackReaders true if the readers of each requested value should be
+	 * 		tracked, false otherwise. When tracking is enabled, the readers of changed
+	 * 		values are included in {@link #getChangeReport()}. This is useful for
+	 * 		finding out why another iteration is needed, but it is slower.
+	 */
+	public CrossReferenceHandler(boolean trackReaders) {
+		this.pageRefs = new LookupHandler<>(trackReaders);
+		this.volumeRefs = new LookupHandler<>(trackReaders);
+		this.anchorRefs = new LookupHandler<>(trackReaders);
+		this.anchorIndex = new ConcurrentHashMap<>();
+		this.variables = new LookupHandler<>(trackReaders);
+		this.breakable = new LookupHandler<>(trackReaders);
+		this.rowCount = new LookupHandler<>(trackReaders);
+        this.groupAnchors = new LookupHandler<>(trackReaders);
+        this.groupMarkers = new LookupHandler<>(trackReaders);
+        this.groupIdentifiers = new LookupHandler<>(trackReaders);
+		this.transitionProperties = new LookupHandler<>(trackReaders);
+		this.nextPageDetails = new LookupHandler<>(trackReaders);
 		this.volumeOverhead = new HashMap<>();
+		this.overheadSeed = new HashMap<>();
+		this.overheadSeedRequests = new HashSet<>();
 		this.counters = new HashMap<>();
 		this.searchInfo = new SearchInfo();
         this.pageIds = new HashSet<>();
@@ -61,6 +89,58 @@ public class CrossReferenceHandler {
 	public void setReadWrite() {
 		readOnly = false;
 	}
+
+	/**
+	 * Returns true if this handler is in read only mode.
+	 * @return true if in read only mode, false otherwise
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Sets the record that lookups should be added to. Lookups are only
+	 * recorded in read/write mode.
+	 * @param value the record, or null to stop recording
+	 * @return the previous record, or null if there wasn't one
+	 */
+	public LookupRecord setLookupRecord(LookupRecord value) {
+		LookupRecord ret = record;
+		record = value;
+		return ret;
+	}
+
+	/**
+	 * Sets the object that reads values from this handler, typically a {@link BlockAddress},
+	 * a {@link SequenceId} or a volume number. The reader is used in {@link #getChangeReport()}.
+	 * Readers are only tracked while the handler isn't read only, since lookups
+	 * made in read only mode don't count.
+	 * In a fork, the previous reader may be a placeholder for the reader of the handler, which
+	 * is resolved when the fork is merged. Either way, it can be used to restore the previous reader.
+	 * @param value the reader, or null if unknown
+	 * @return the previous reader, or null if there wasn't one
+	 */
+	public Object setReader(Object value) {
+		Fork f = getAttachedFork();
+		if (f!=null) {
+			return f.setReader(value);
+		}
+		Object ret = reader;
+		reader = value;
+		return ret;
+	}
+
+	private <K, V> V lookup(LookupHandler<K, V> handler, K key, V def) {
+		Fork f = getAttachedFork();
+		if (f!=null) {
+			return f.lookup(handler, key, def);
+		}
+		V ret = handler.get(key, def, readOnly, reader);
+		if (record!=null && !readOnly) {
+			record.add(handler, key, ret, ()->handler.get(key, def, readOnly));
+		}
+		return ret;
+	}
 	
 	/**
 	 * Gets the volume for the specified identifier.
@@ -68,7 +148,7 @@ public class CrossReferenceHandler {
 	 * @return returns the volume number, one-based
 	 */
 	public Integer getVolumeNumber(String refid) {
-		return volumeRefs.get(refid, null, readOnly);
+		return lookup(volumeRefs, refid, null);
 	}
 	
 	public void setVolumeNumber(String refid, int volume) {
@@ -82,7 +162,7 @@ public class CrossReferenceHandler {
 	 * @return returns the page number, one-based
 	 */
 	public Integer getPageNumber(String refid) {
-		return pageRefs.get(refid, null, readOnly);
+		return lookup(pageRefs, refid, null);
 	}
 	
 	public void setPageNumber(String refid, int page) {
@@ -94,11 +174,44 @@ public class CrossReferenceHandler {
 	}
 	
 	public Iterable<AnchorData> getAnchorData(int volume) {
-		return anchorRefs.get(volume, null, readOnly);
+		return lookup(anchorRefs, volume, null);
 	}
 	
+	/**
+	 * Gets the pages in a volume with anchors to items in a collection. The anchors
+	 * are filtered and without duplicates. This is the same as filtering the
+	 * result of {@link #getAnchorData(int)}, but the result is indexed when the
+	 * anchor data is set. As long as the anchor data of the volume is unchanged,
+	 * the same list is returned.
+	 * @param volume the volume
+	 * @param collectionId the collection identifier
+	 * @param isItem a test for whether an anchor is an item in the collection
+	 * @return an unmodifiable list of anchor data, or null if there is no
+	 * 		anchor data for the volume
+	 */
+	public List<AnchorData> getItemAnchors(int volume, String collectionId, Predicate<String> isItem) {
+		Iterable<AnchorData> data = lookup(anchorRefs, volume, null);
+		if (data==null) {
+			return null;
+		}
+		AnchorIndex index = anchorIndex.get(volume);
+		if (index==null || index.getData()!=data) {
+			// the anchor data returned isn't the latest data set for the volume
+			index = new AnchorIndex(data);
+			anchorIndex.put(volume, index);
+		}
+		return index.getItems(collectionId, isItem);
+	}
+
 	public void setAnchorData(int volume, Iterable<AnchorData> data) {
 		if (readOnly) { return; }
+		AnchorIndex index = anchorIndex.get(volume);
+		if (index!=null && index.getData().equals(data)) {
+			// keep the index, and the anchor data it was built from, if nothing has changed
+			data = index.getData();
+		} else {
+			anchorIndex.put(volume, new AnchorIndex(data));
+		}
 		anchorRefs.put(volume, data);
 	}
 	
@@ -151,7 +264,7 @@ public class CrossReferenceHandler {
 	
 	public void setRowCount(BlockAddress blockId, int value) {
 		if (readOnly) { return; }
-		rowCount.put(blockId, value);
+		put(rowCount, blockId, value);
 	}
 	
 	public void trimPageDetails() {
@@ -163,37 +276,119 @@ public class CrossReferenceHandler {
 		if (readOnly) {
 			return;
 		}
-		groupAnchors.put(blockId, anchors.isEmpty() ? Collections.emptyList() : new ArrayList<>(anchors));
+		put(groupAnchors, blockId, anchors.isEmpty() ? Collections.emptyList() : new ArrayList<>(anchors));
 	}
 
 	public void setGroupMarkers(BlockAddress blockId, List<Marker> markers) {
 		if (readOnly) {
 			return;
 		}
-		groupMarkers.put(blockId, markers.isEmpty() ? Collections.emptyList() : new ArrayList<>(markers));
+		put(groupMarkers, blockId, markers.isEmpty() ? Collections.emptyList() : new ArrayList<>(markers));
 	}
 	
 	public void setGroupIdentifiers(BlockAddress blockId, List<String> identifiers) {
 		if (readOnly) {
 			return;
 		}
-		groupIdentifiers.put(blockId, identifiers.isEmpty() ? Collections.emptyList() : new ArrayList<>(identifiers));
+		put(groupIdentifiers, blockId, identifiers.isEmpty() ? Collections.emptyList() : new ArrayList<>(identifiers));
 	}
 	
+	private <K, V> void put(LookupHandler<K, V> handler, K key, V value) {
+		Fork f = getAttachedFork();
+		if (f!=null) {
+			f.put(handler, key, value);
+		} else {
+			handler.put(key, value);
+		}
+	}
+
+	private Fork getAttachedFork() {
+		// avoids the thread local in the common case
+		return attachedCount.get()>0?attached.get():null;
+	}
+
+	/**
+	 * Creates a fork of this handler. A fork makes it possible to lay out
+	 * blocks in another thread, see {@link Fork}.
+	 * @return a new fork
+	 */
+	public Fork fork() {
+		return new Fork();
+	}
+
+	/**
+	 * Returns true if a fork of this handler is in use in the current thread.
+	 * @return true if a fork is in use, false otherwise
+	 */
+	public boolean isForked() {
+		return getAttachedFork()!=null;
+	}
+
+	/**
+	 * Merges forks of this handler. If the values read in each fork are unchanged,
+	 * taking the values put by the preceding forks into account, the calls made in
+	 * the forks are made again on this handler, one fork at a time, in the order
+	 * of the list. This gives the same result as if the calls had been made on this handler
+	 * in the first place. Otherwise, the handler is left unchanged.
+	 * @param forks the forks, in the order they would have been used on this handler
+	 * @return true if the forks were merged, false otherwise
+	 * @throws IllegalArgumentException if a fork isn't a fork of this handler
+	 * @throws IllegalStateException if a fork is in use or has already been merged, or
+	 * 		if a fork is in use in the current thread
+	 */
+	public boolean merge(List<Fork> forks) {
+		if (isForked()) {
+			throw new IllegalStateException("Forks can't be merged in a fork.");
+		}
+		for (int i=0; i<forks.size(); i++) {
+			Fork f = forks.get(i);
+			if (f.getParent()!=this) {
+				throw new IllegalArgumentException("Not a fork of this handler.");
+			}
+			if (f.merged || f.running) {
+				throw new IllegalStateException("The fork is in use or has already been merged.");
+			}
+			if (f.readOnly!=readOnly || !f.isCurrent(forks.subList(0, i))) {
+				return false;
+			}
+		}
+		for (Fork f : forks) {
+			f.merged = true;
+			Object inherited = reader;
+			for (Consumer<Object> op : f.ops) {
+				op.accept(inherited);
+			}
+		}
+		return true;
+	}
+
 	public Overhead getOverhead(int volumeNumber) {
 		if (volumeNumber<1) {
 			throw new IndexOutOfBoundsException("Volume must be greater than or equal to 1");
 		}
 		if (volumeOverhead.get(volumeNumber)==null) {
-			if (readOnly) { return new Overhead(0, 0); }
-			volumeOverhead.put(volumeNumber, new Overhead(0, 0));
-			overheadDirty = true;
+			Overhead seeded = overheadSeed.get(volumeNumber);
+			if (seeded!=null) {
+				if (readOnly) { return seeded; }
+				volumeOverhead.put(volumeNumber, seeded);
+				overheadSeedRequests.add(volumeNumber);
+			} else {
+				if (readOnly) { return new Overhead(0, 0); }
+				volumeOverhead.put(volumeNumber, new Overhead(0, 0));
+				overheadDirty = true;
+			}
 		}
 		return volumeOverhead.get(volumeNumber);
 	}
 	
 	public void setOverhead(int volumeNumber, Overhead overhead) {
 		if (readOnly) { return; }
+		Overhead seeded = overheadSeed.remove(volumeNumber);
+		if (seeded!=null && overheadSeedRequests.remove(volumeNumber)
+				&& (seeded.getPreContentSize()!=overhead.getPreContentSize()
+				|| seeded.getPostContentSize()!=overhead.getPostContentSize())) {
+			overheadDirty = true;
+		}
 		volumeOverhead.put(volumeNumber, overhead);
 	}
 	
@@ -211,47 +406,47 @@ public class CrossReferenceHandler {
 	 * @return returns the number of volumes
 	 */
 	public int getVolumeCount() {
-		return variables.get(VOLUMES_KEY, 1, readOnly);
+		return lookup(variables, VOLUMES_KEY, 1);
 	}
 	
 	public int getSheetsInVolume(int volume) {
-		return variables.get(SHEETS_IN_VOLUME+volume, 0, readOnly);
+		return lookup(variables, SHEETS_IN_VOLUME+volume, 0);
 	}
 
 	public int getSheetsInDocument() {
-		return variables.get(SHEETS_IN_DOCUMENT, 0, readOnly);
+		return lookup(variables, SHEETS_IN_DOCUMENT, 0);
 	}
 	
 	public int getPagesInVolume(int volume) {
-		return variables.get(PAGES_IN_VOLUME+volume, 0, readOnly);
+		return lookup(variables, PAGES_IN_VOLUME+volume, 0);
 	}
 
 	public int getPagesInDocument() {
-		return variables.get(PAGES_IN_DOCUMENT, 0, readOnly);
+		return lookup(variables, PAGES_IN_DOCUMENT, 0);
 	}
 	
 	public boolean getBreakable(SheetIdentity ident) {
-		return breakable.get(ident, true, readOnly);
+		return lookup(breakable, ident, true);
 	}
 	
 	public Optional<TransitionProperties> getTransitionProperties(BlockLineLocation id) {
-		return Optional.ofNullable(transitionProperties.get(id, null, readOnly));
+		return Optional.ofNullable(lookup(transitionProperties, id, null));
 	}
 
 	public List<String> getGroupAnchors(BlockAddress blockId) {
-		return groupAnchors.get(blockId, Collections.emptyList(), readOnly);
+		return lookup(groupAnchors, blockId, Collections.emptyList());
 	}
 
 	public List<Marker> getGroupMarkers(BlockAddress blockId) {
-		return groupMarkers.get(blockId, Collections.emptyList(), readOnly);
+		return lookup(groupMarkers, blockId, Collections.emptyList());
 	}
 	
 	public List<String> getGroupIdentifiers(BlockAddress blockId) {
-		return groupIdentifiers.get(blockId, Collections.emptyList(), readOnly);
+		return lookup(groupIdentifiers, blockId, Collections.emptyList());
 	}
 	
 	public int getRowCount(BlockAddress blockId) {
-		return rowCount.get(blockId, Integer.MAX_VALUE, readOnly);
+		return lookup(rowCount, blockId, Integer.MAX_VALUE);
 	}
 	
 	public void keepPageDetails(PageDetails value) {
@@ -302,11 +497,15 @@ public class CrossReferenceHandler {
 	 * @return returns the marker value, or an empty string if not found
 	 */
 	public String findMarker(PageId id, MarkerReferenceField spec) {
-		return searchInfo.findStartAndMarker(id, spec);
+		String ret = searchInfo.findStartAndMarker(id, spec);
+		if (record!=null && !readOnly) {
+			record.add(searchInfo, Arrays.asList(id, spec), ret, ()->searchInfo.findStartAndMarker(id, spec));
+		}
+		return ret;
 	}
 
 	public Optional<PageDetails> getNextPageDetailsInSequence(BlockLineLocation id) {
-		return Optional.ofNullable(nextPageDetails.get(id, null, readOnly));
+		return Optional.ofNullable(lookup(nextPageDetails, id, null));
 	}
 	
 	public void setNextPageDetailsInSequence(BlockLineLocation id, PageDetails details) {
@@ -327,6 +526,29 @@ public class CrossReferenceHandler {
 		 //|| groupMarkers.isDirty() || rowCount.isDirty()
 	}
 	
+	/**
+	 * Gets a report of the changes since the dirty flag was last reset. The report
+	 * includes all lookup handlers, including those that don't affect {@link #isDirty()}.
+	 * @return the change report
+	 */
+	public ChangeReport getChangeReport() {
+		ChangeReport ret = new ChangeReport();
+		ret.add("pageRefs", pageRefs);
+		ret.add("volumeRefs", volumeRefs);
+		ret.add("anchorRefs", anchorRefs);
+		ret.add("variables", variables);
+		ret.add("breakable", breakable);
+		ret.add("rowCount", rowCount);
+		ret.add("groupAnchors", groupAnchors);
+		ret.add("groupMarkers", groupMarkers);
+		ret.add("groupIdentifiers", groupIdentifiers);
+		ret.add("transitionProperties", transitionProperties);
+		ret.add("nextPageDetails", nextPageDetails);
+		ret.add("overhead", overheadDirty);
+		ret.add("searchInfo", searchInfo.isDirty());
+		return ret;
+	}
+
 	/**
 	 * Sets the dirty flag on all tracked data. This is typically used to reset 
 	 * the value of the flag when rendering another pass. However, by setting this
@@ -347,13 +569,198 @@ public class CrossReferenceHandler {
 		//rowCount.setDirty(value);
 		//groupAnchors.setDirty(value);
 		//groupMarkers.setDirty(value);
+		if (!value) {
+			rowCount.clearChanges();
+			groupAnchors.clearChanges();
+			groupMarkers.clearChanges();
+			groupIdentifiers.clearChanges();
+			nextPageDetails.clearChanges();
+		}
 		overheadDirty = value;
 		counters.clear();
 	}
 
+	/**
+	 * Seeds this handler with the values of an earlier layout. Seeded values
+	 * are used until the actual values are available. A seeded value that
+	 * has been used, but that isn't confirmed by the end of the first iteration,
+	 * makes the handler dirty, see {@link #releaseSeed()}.
+	 * @param snapshot the snapshot
+	 * @throws IllegalStateException if the handler has values
+	 */
+	public void seed(ReferenceSnapshot snapshot) {
+		if (!volumeOverhead.isEmpty()) {
+			throw new IllegalStateException("Only an empty handler can be seeded.");
+		}
+		pageRefs.seed(snapshot.getPageRefs());
+		volumeRefs.seed(snapshot.getVolumeRefs());
+		variables.seed(snapshot.getVariables());
+		breakable.seed(snapshot.getBreakable());
+		anchorRefs.seed(new HashMap<>(snapshot.getAnchors()));
+		for (Map.Entry<Integer, List<AnchorData>> e : snapshot.getAnchors().entrySet()) {
+			anchorIndex.put(e.getKey(), new AnchorIndex(e.getValue()));
+		}
+		overheadSeed.putAll(snapshot.getOverhead());
+		overheadSeedRequests.clear();
+	}
+
+	/**
+	 * Releases the seed, if any. Seeded values that have been used, but that
+	 * haven't been confirmed by the actual values, make the handler dirty.
+	 * This should be called at the end of each iteration, before checking
+	 * {@link #isDirty()}. It has no effect unless the handler is seeded.
+	 */
+	public void releaseSeed() {
+		if (readOnly) { return; }
+		pageRefs.releaseSeed();
+		volumeRefs.releaseSeed();
+		variables.releaseSeed();
+		breakable.releaseSeed();
+		anchorRefs.releaseSeed();
+		if (!overheadSeedRequests.isEmpty()) {
+			overheadDirty = true;
+			overheadSeedRequests.clear();
+		}
+		overheadSeed.clear();
+	}
+
+	/**
+	 * Gets a snapshot of the values of this handler. The snapshot is only
+	 * meaningful when the handler isn't dirty at the end of an iteration.
+	 * @return the snapshot
+	 */
+	public ReferenceSnapshot getSnapshot() {
+		Map<Integer, List<AnchorData>> anchors = new HashMap<>();
+		for (Map.Entry<Integer, Iterable<AnchorData>> e : anchorRefs.getValues().entrySet()) {
+			List<AnchorData> data = new ArrayList<>();
+			e.getValue().forEach(data::add);
+			anchors.put(e.getKey(), data);
+		}
+		return new ReferenceSnapshot(pageRefs.getValues(), volumeRefs.getValues(), variables.getValues(),
+				anchors, breakable.getValues(), volumeOverhead);
+	}
+
     public void resetUniqueChecks() {
 		if (readOnly) { return; }
         pageIds = new HashSet<>();
     }
 
+	/**
+	 * <p>Provides a fork of a cross reference handler. The lookups made while
+	 * a fork is in use in a thread, see {@link #run(Runnable)}, read the values
+	 * of the handler without affecting it, and the values put are only visible in the fork.
+	 * The calls are recorded so that they can be made on the handler once
+	 * the fork is merged, see {@link CrossReferenceHandler#merge(List)}.</p>
+	 *
+	 * <p>Forks are meant for laying out blocks without references. Only lookups,
+	 * the reader and the row count and group data of blocks are supported. The handler
+	 * must not be modified while a fork of it is in use.</p>
+	 */
+	public class Fork {
+		private final Map<LookupHandler<?, ?>, Map<Object, Object>> values = new HashMap<>();
+		private final List<Check> checks = new ArrayList<>();
+		private final List<Consumer<Object>> ops = new ArrayList<>();
+		private final boolean readOnly;
+		// the reader of the handler when the fork is merged
+		private final Object inherited = new Object();
+		private Object reader = inherited;
+		private boolean running = false;
+		private boolean merged = false;
+
+		private Fork() {
+			this.readOnly = CrossReferenceHandler.this.readOnly;
+		}
+
+		/**
+		 * Runs a task in the current thread, using this fork for all calls to
+		 * the handler made in the thread while the task is running.
+		 * @param task the task
+		 * @throws IllegalStateException if the fork is in use or has already been merged
+		 */
+		public void run(Runnable task) {
+			if (running || merged) {
+				throw new IllegalStateException("The fork is in use or has already been merged.");
+			}
+			// the thread may already use a fork, if it is waiting for another task
+			Fork prv = attached.get();
+			running = true;
+			attached.set(this);
+			attachedCount.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				attachedCount.decrementAndGet();
+				if (prv!=null) {
+					attached.set(prv);
+				} else {
+					attached.remove();
+				}
+				running = false;
+			}
+		}
+
+		private CrossReferenceHandler getParent() {
+			return CrossReferenceHandler.this;
+		}
+
+		private boolean isCurrent(List<Fork> preceding) {
+			for (Check c : checks) {
+				if (!c.isCurrent(preceding)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private Object setReader(Object value) {
+			Object ret = reader;
+			reader = value;
+			ops.add(r->CrossReferenceHandler.this.setReader(value==inherited?r:value));
+			return ret;
+		}
+
+		private <K, V> V lookup(LookupHandler<K, V> handler, K key, V def) {
+			ops.add(r->CrossReferenceHandler.this.lookup(handler, key, def));
+			Map<Object, Object> m = values.get(handler);
+			if (m!=null && m.containsKey(key)) {
+				@SuppressWarnings("unchecked")
+				V ret = (V)m.get(key);
+				return ret;
+			}
+			V ret = handler.get(key, def, true);
+			checks.add(new Check(handler, key, ret, ()->Objects.equals(handler.get(key, def, true), ret)));
+			return ret;
+		}
+
+		private <K, V> void put(LookupHandler<K, V> handler, K key, V value) {
+			Objects.requireNonNull(value);
+			ops.add(r->handler.put(key, value));
+			values.computeIfAbsent(handler, k->new HashMap<>()).put(key, value);
+		}
+	}
+
+	private static class Check {
+		private final LookupHandler<?, ?> handler;
+		private final Object key;
+		private final Object value;
+		private final BooleanSupplier current;
+
+		private Check(LookupHandler<?, ?> handler, Object key, Object value, BooleanSupplier current) {
+			this.handler = handler;
+			this.key = key;
+			this.value = value;
+			this.current = current;
+		}
+
+		private boolean isCurrent(List<Fork> preceding) {
+			for (int i=preceding.size()-1; i>=0; i--) {
+				Map<Object, Object> m = preceding.get(i).values.get(handler);
+				if (m!=null && m.containsKey(key)) {
+					return Objects.equals(m.get(key), value);
+				}
+			}
+			return current.getAsBoolean();
+		}
+	}
+
 }
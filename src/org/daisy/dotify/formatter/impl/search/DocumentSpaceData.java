@@ -1,8 +1,6 @@
 package org.daisy.dotify.formatter.impl.search;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,13 +9,21 @@ import java.util.Map;
  */
 class DocumentSpaceData {
 
-		final List<PageDetails> pageDetails;
+		final PageDetailsArray pageDetails;
+		final PageDetailsArray uncommitted;
+		final View<PageDetails> pageView;
 		final Map<Integer, View<PageDetails>> volumeViews;
 		final Map<SequenceId, View<PageDetails>> sequenceViews;
+		final MarkerIndex markerIndex;
+		boolean volumeViewsSearched;
 		
 		DocumentSpaceData() {
-			this.pageDetails = new ArrayList<>();
+			this.pageDetails = new PageDetailsArray();
+			this.uncommitted = new PageDetailsArray();
+			this.pageView = new View<>(pageDetails, 0);
 			this.volumeViews = new HashMap<>();
 			this.sequenceViews = new HashMap<>();		
+			this.markerIndex = new MarkerIndex();
+			this.volumeViewsSearched = false;
 		}
-	}
\ No newline at end of file
+	}
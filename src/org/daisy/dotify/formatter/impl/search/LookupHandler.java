@@ -1,7 +1,9 @@
 package org.daisy.dotify.formatter.impl.search;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -47,6 +49,18 @@ do {
  * important to make sure that requested information is added to 
  * the map at some point.</p>
  * 
+ * <p>A handler can be seeded with the values of an earlier run, see
+ * {@link #seed(Map)}. A seeded value is returned when a key hasn't been put
+ * yet, but it doesn't count as a value until it has been confirmed by a put
+ * of the same value. Seeded values that have been requested, but that aren't
+ * confirmed when the seed is released, make the handler dirty.</p>
+ * 
+ * <p>To find out why another iteration is needed, the keys that
+ * made the {@link LookupHandler} dirty are available with {@link #getChanges()}.
+ * If the handler is created with reader tracking enabled, the objects that
+ * read each key are also available. A reader is supplied when a value is requested,
+ * typically a {@link BlockAddress}, a {@link SequenceId} or a volume number.</p>
+ * 
  * <p><strong>Note that this implementation is not synchronized.</strong>
  * If multiple threads access a hash map concurrently, and at least one of
  * the threads modifies the map structurally, it <i>must</i> be
@@ -61,15 +75,32 @@ class LookupHandler<K, V> {
 	private final Map<K, V> keyValueMap;
 	private final Map<K, V> uncommitted;
 	private final Set<K> requestedKeys;
+	private final Set<K> changedKeys;
+	private final Map<K, Set<Object>> readers;
+	private final Set<K> seedRequests;
+	private Map<K, V> seed;
 	private boolean dirty;
 	
 	/**
 	 * Creates a new empty lookup handler.
 	 */
 	LookupHandler() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new empty lookup handler.
+	 * @param trackReaders true if the readers of each requested key should be tracked,
+	 * 		false otherwise
+	 */
+	LookupHandler(boolean trackReaders) {
 		this.keyValueMap = new HashMap<>();
 		this.uncommitted = new HashMap<>();
 		this.requestedKeys = new HashSet<>();
+		this.changedKeys = new HashSet<>();
+		this.readers = trackReaders?new HashMap<>():null;
+		this.seedRequests = new HashSet<>();
+		this.seed = null;
 		this.dirty = false;
 	}
 
@@ -109,13 +140,40 @@ class LookupHandler<K, V> {
 	 * if this map contains no mapping for the key
 	 */
 	V get(K key, V def, boolean traceless) {
+		return get(key, def, traceless, null);
+	}
+
+	/**
+	 * Returns the value to which the specified key is mapped, or the default value 
+	 * if this map contains no mapping for the key.
+	 * @param key the key
+	 * @param def the default value
+	 * @param traceless when true, the integrity mechanism is bypassed. In other
+	 * 		words, a value can be retrieved without affecting the value 
+	 * 		of {@link #isDirty()}. Use with care.
+	 * @param reader the object that reads the value, or null if not known. The reader
+	 * 		is only stored if reader tracking is enabled.
+	 * @return the value to which the specified key is mapped, or the default value 
+	 * if this map contains no mapping for the key
+	 */
+	V get(K key, V def, boolean traceless, Object reader) {
 		if (!traceless) {
 			requestedKeys.add(key);
+			if (readers!=null && reader!=null) {
+				readers.computeIfAbsent(key, k->new HashSet<>()).add(reader);
+			}
 		}
 		V ret = keyValueMap.get(key);
+		if (ret==null && seed!=null) {
+			ret = seed.get(key);
+			if (ret!=null && !traceless) {
+				seedRequests.add(key);
+			}
+		}
 		if (ret==null) {
 			if (!traceless) {
 				dirty = true;
+				changedKeys.add(key);
 			}
 			//ret is null here, so if def is also null, either variable can be returned
 			return def;
@@ -164,11 +222,55 @@ class LookupHandler<K, V> {
 			throw new IllegalStateException(key + " has uncommitted values. Commit before putting.");
 		}
 		V prv = keyValueMap.put(key, value);
+		if (prv==null && seed!=null) {
+			prv = seed.remove(key);
+			seedRequests.remove(key);
+		}
 		if (requestedKeys.contains(key) && prv!=null && !prv.equals(value)) {
 			dirty = true;
+			changedKeys.add(key);
 		}
 	}
 
+	/**
+	 * Seeds this handler with values from an earlier run. Seeded values are
+	 * returned by the <code>get</code> methods until a value is put for the key.
+	 * Seeding is only useful before the first iteration, when the handler is empty.
+	 * @param values the values
+	 * @throws IllegalStateException if the handler has values
+	 */
+	void seed(Map<K, V> values) {
+		if (!keyValueMap.isEmpty()) {
+			throw new IllegalStateException("Only an empty handler can be seeded.");
+		}
+		seed = new HashMap<>(values);
+		seedRequests.clear();
+	}
+
+	/**
+	 * Releases the seed. If any seeded value was requested but hasn't been
+	 * confirmed by a put since, the handler is marked as dirty, since the value
+	 * may no longer be valid. Call this at the end of the first iteration,
+	 * before checking {@link #isDirty()}.
+	 */
+	void releaseSeed() {
+		for (K key : seedRequests) {
+			dirty = true;
+			changedKeys.add(key);
+		}
+		seedRequests.clear();
+		seed = null;
+	}
+
+	/**
+	 * Gets the values of this handler. Kept values that haven't been committed,
+	 * and seeded values, aren't included.
+	 * @return an unmodifiable map of the values
+	 */
+	Map<K, V> getValues() {
+		return Collections.unmodifiableMap(keyValueMap);
+	}
+
 	/**
 	 * Returns true if the value for any requested key was not present,
 	 * or if the value for any requested key changed after it was last requested.
@@ -178,6 +280,40 @@ class LookupHandler<K, V> {
 		return dirty;
 	}
 	
+	/**
+	 * Gets the keys that have made this handler dirty, in other words the keys
+	 * that were requested before a value was available or whose value changed
+	 * after having been requested. Each key is mapped to the objects that read it,
+	 * if reader tracking is enabled. Otherwise, the sets are empty.
+	 * @return the changed keys and their readers
+	 */
+	Map<K, Set<Object>> getChanges() {
+		Map<K, Set<Object>> ret = new LinkedHashMap<>();
+		for (K key : changedKeys) {
+			Set<Object> r = readers!=null?readers.get(key):null;
+			ret.put(key, r!=null?Collections.unmodifiableSet(new HashSet<>(r)):Collections.emptySet());
+		}
+		return ret;
+	}
+
+	/**
+	 * Clears the changed keys and their readers without affecting the dirty status.
+	 */
+	void clearChanges() {
+		changedKeys.clear();
+		if (readers!=null) {
+			readers.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of keys requested since the dirty status was last reset.
+	 * @return the number of requested keys
+	 */
+	int getRequestedCount() {
+		return requestedKeys.size();
+	}
+
 	/**
 	 * Sets the dirty status
 	 * @param value the value
@@ -189,6 +325,7 @@ class LookupHandler<K, V> {
 		}
 		if (!value) {
 			requestedKeys.clear();
+			clearChanges();
 		}
 		dirty = value;
 	}
@@ -0,0 +1,101 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * <p>Provides a record of the lookups made in a {@link CrossReferenceHandler}
+ * while some output was being produced.</p>
+ *
+ * <p>If none of the recorded lookups would return a different value
+ * today, the output would be the same if it was produced again. In
+ * that case, the output from the previous iteration can be reused.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class LookupRecord {
+	private final Set<Lookup> lookups;
+
+	/**
+	 * Creates a new empty record.
+	 */
+	public LookupRecord() {
+		this.lookups = new LinkedHashSet<>();
+	}
+
+	/**
+	 * Adds a lookup to this record.
+	 * @param source the source of the value, for example a lookup handler
+	 * @param key the key
+	 * @param value the value that the lookup returned
+	 * @param lookup a supplier that performs the same lookup again
+	 */
+	void add(Object source, Object key, Object value, Supplier<?> lookup) {
+		lookups.add(new Lookup(source, key, value, lookup));
+	}
+
+	/**
+	 * Returns true if all recorded lookups return the same value as
+	 * when they were recorded. Note that this method performs each lookup again,
+	 * which means that the lookups are tracked in the same way as the
+	 * original lookups.
+	 * @return true if the all lookups are unchanged, false otherwise
+	 */
+	public boolean isUnchanged() {
+		for (Lookup l : lookups) {
+			if (!Objects.equals(l.value, l.lookup.get())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of distinct lookups in this record.
+	 * @return the number of lookups
+	 */
+	public int size() {
+		return lookups.size();
+	}
+
+	private static final class Lookup {
+		private final Object source;
+		private final Object key;
+		private final Object value;
+		private final Supplier<?> lookup;
+
+		private Lookup(Object source, Object key, Object value, Supplier<?> lookup) {
+			this.source = source;
+			this.key = key;
+			this.value = value;
+			this.lookup = lookup;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + System.identityHashCode(source);
+			result = prime * result + ((key == null) ? 0 : key.hashCode());
+			result = prime * result + ((value == null) ? 0 : value.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			Lookup other = (Lookup) obj;
+			return source == other.source && Objects.equals(key, other.key) && Objects.equals(value, other.value);
+		}
+	}
+}
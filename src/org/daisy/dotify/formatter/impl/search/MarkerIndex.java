@@ -0,0 +1,145 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.daisy.dotify.api.formatter.Marker;
+
+/**
+ * <p>Provides an index of the pages that contain markers with a given name.</p>
+ *
+ * <p>For each marker name, the index contains a sorted array of the indices of the
+ * pages that have at least one marker with that name. This makes it possible to
+ * find the nearest page with a marker in a range of pages using a binary search,
+ * instead of looking at every page in between.</p>
+ *
+ * <p>The index is updated one page at a time, as pages are committed. Since pages
+ * are mostly committed in order, an update is usually an append.</p>
+ *
+ * @author Joel Håkansson
+ */
+class MarkerIndex {
+	private static final String[] NO_NAMES = new String[0];
+	private final Map<String, IntArray> pagesByName;
+	// The names that each page is listed under, by page index
+	private String[][] namesByPage;
+
+	/**
+	 * Creates an empty marker index.
+	 */
+	MarkerIndex() {
+		this.pagesByName = new HashMap<>();
+		this.namesByPage = new String[0][];
+	}
+
+	/**
+	 * Updates the index with the markers of a page. The page replaces
+	 * the page previously indexed at the same page index, if any.
+	 * @param pageIndex the page index
+	 * @param page the page, or null to remove the page from the index
+	 */
+	void update(int pageIndex, PageDetails page) {
+		String[] names = page==null?NO_NAMES:namesOf(page.getMarkers());
+		String[] old = pageIndex<namesByPage.length?namesByPage[pageIndex]:null;
+		if (old!=null) {
+			for (String n : old) {
+				if (!contains(names, n)) {
+					pagesByName.get(n).remove(pageIndex);
+				}
+			}
+		}
+		for (String n : names) {
+			pagesByName.computeIfAbsent(n, k->new IntArray()).add(pageIndex);
+		}
+		if (pageIndex>=namesByPage.length) {
+			namesByPage = Arrays.copyOf(namesByPage, Math.max(pageIndex+1, namesByPage.length*2));
+		}
+		namesByPage[pageIndex] = names;
+	}
+
+	private static String[] namesOf(List<Marker> markers) {
+		if (markers.isEmpty()) {
+			return NO_NAMES;
+		}
+		String[] ret = new String[markers.size()];
+		int size = 0;
+		for (Marker m : markers) {
+			if (!contains(ret, m.getName())) {
+				ret[size] = m.getName();
+				size++;
+			}
+		}
+		return size==ret.length?ret:Arrays.copyOf(ret, size);
+	}
+
+	private static boolean contains(String[] names, String name) {
+		for (String n : names) {
+			if (name.equals(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class IntArray {
+		private int[] values = new int[4];
+		private int size = 0;
+
+		private void add(int value) {
+			int i;
+			if (size==0 || values[size-1]<value) {
+				i = size;
+			} else {
+				i = Arrays.binarySearch(values, 0, size, value);
+				if (i>=0) {
+					return;
+				}
+				i = -(i+1);
+			}
+			if (size==values.length) {
+				values = Arrays.copyOf(values, size*2);
+			}
+			System.arraycopy(values, i, values, i+1, size-i);
+			values[i] = value;
+			size++;
+		}
+
+		private void remove(int value) {
+			int i = Arrays.binarySearch(values, 0, size, value);
+			if (i>=0) {
+				System.arraycopy(values, i+1, values, i, size-i-1);
+				size--;
+			}
+		}
+	}
+
+	/**
+	 * Finds the nearest page, starting at (and including) the specified page index and moving in the
+	 * specified direction, that contains a marker with the specified name.
+	 * @param name the marker name
+	 * @param start the page index to start from
+	 * @param dir the direction, 1 for forward and -1 for backward
+	 * @param fromIndex the first page index in the range (inclusive)
+	 * @param toIndex the last page index in the range (exclusive)
+	 * @return the page index, or -1 if there is no such page in the range
+	 */
+	int find(String name, int start, int dir, int fromIndex, int toIndex) {
+		IntArray a = pagesByName.get(name);
+		if (a==null) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(a.values, 0, a.size, start);
+		if (i<0) {
+			// the insertion point is the index of the first element greater than start
+			int ins = -(i+1);
+			i = dir>0?ins:ins-1;
+		}
+		if (i<0 || i>=a.size) {
+			return -1;
+		}
+		int ret = a.values[i];
+		return ret>=fromIndex && ret<toIndex?ret:-1;
+	}
+}
@@ -0,0 +1,104 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * <p>Provides a list of page details indexed by page index. Unlike an
+ * {@link java.util.ArrayList}, setting an index beyond the end of the
+ * list is allowed, in which case the list is padded with nulls.</p>
+ *
+ * <p>The list can also keep track of the indices that have been set since
+ * it was last cleared, which makes it possible to use it as a sparse
+ * int-keyed map of uncommitted page details.</p>
+ *
+ * @author Joel Håkansson
+ */
+class PageDetailsArray extends AbstractList<PageDetails> implements RandomAccess {
+	private static final int INITIAL_CAPACITY = 16;
+	private PageDetails[] items;
+	private int size;
+	private int[] setIndices;
+	private int setCount;
+
+	PageDetailsArray() {
+		this.items = new PageDetails[INITIAL_CAPACITY];
+		this.size = 0;
+		this.setIndices = new int[INITIAL_CAPACITY];
+		this.setCount = 0;
+	}
+
+	@Override
+	public PageDetails get(int index) {
+		if (index<0 || index>=size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return items[index];
+	}
+
+	/**
+	 * Gets the page details at the specified index, or null if the
+	 * index is beyond the end of the list.
+	 * @param index the index
+	 * @return the page details, or null
+	 */
+	PageDetails getOrNull(int index) {
+		return index<size?items[index]:null;
+	}
+
+	@Override
+	public PageDetails set(int index, PageDetails value) {
+		if (index<0) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		if (index>=items.length) {
+			items = Arrays.copyOf(items, Math.max(index+1, items.length*2));
+		}
+		if (index>=size) {
+			size = index+1;
+		}
+		PageDetails ret = items[index];
+		if (ret==null && value!=null) {
+			if (setCount==setIndices.length) {
+				setIndices = Arrays.copyOf(setIndices, setCount*2);
+			}
+			setIndices[setCount] = index;
+			setCount++;
+		}
+		items[index] = value;
+		return ret;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of indices that have been set since the list was last cleared.
+	 * @return the number of indices
+	 */
+	int getSetCount() {
+		return setCount;
+	}
+
+	/**
+	 * Gets the i:th index that has been set since the list was last cleared,
+	 * in the order that they were first set.
+	 * @param i the ordinal, less than {@link #getSetCount()}
+	 * @return the index
+	 */
+	int getSetIndex(int i) {
+		return setIndices[i];
+	}
+
+	@Override
+	public void clear() {
+		for (int i=0; i<setCount; i++) {
+			items[setIndices[i]] = null;
+		}
+		size = 0;
+		setCount = 0;
+	}
+}
@@ -0,0 +1,229 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>Provides the values of a {@link CrossReferenceHandler} after a completed
+ * layout: page and volume numbers of identifiers, variables, such as the
+ * number of volumes and sheets, anchor data, the breakable status of sheets
+ * and the overhead of each volume.</p>
+ *
+ * <p>A snapshot can be saved next to the result and used to seed the first
+ * iteration of a later layout of the same, or a slightly edited, document.
+ * When nothing that affects the references has changed, the layout can then
+ * be completed in a single iteration. Seeded values that turn out to be wrong
+ * are detected in the same way as other changed values and are replaced
+ * in the next iteration, at the cost of the iterations needed to get there.</p>
+ *
+ * <p>The volume division isn't included. The search for a volume division
+ * depends on the divisions that have been tried before, so starting it from
+ * an earlier result could end in a different division than starting it from
+ * the preliminary calculation.</p>
+ *
+ * <p>Values that are keyed by block address, such as row counts and transition
+ * properties, aren't included. Block addresses are assigned in the order that
+ * blocks are created, which isn't stable from one run to the next.</p>
+ *
+ * @author Joel Håkansson
+ */
+public final class ReferenceSnapshot {
+	private static final int MAGIC = 0x44525331; // "DRS1"
+	private static final int VERSION = 2;
+	private static final int MAX_SIZE = 1 << 20;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final Map<String, Integer> pageRefs;
+	private final Map<String, Integer> volumeRefs;
+	private final Map<String, Integer> variables;
+	private final Map<Integer, List<AnchorData>> anchors;
+	private final Map<SheetIdentity, Boolean> breakable;
+	private final Map<Integer, Overhead> overhead;
+
+	/**
+	 * Provides access to the reference snapshots of an object, typically a formatter.
+	 */
+	public interface Seedable {
+		/**
+		 * Sets the snapshot to seed the next layout with.
+		 * @param seed the snapshot, or null to start without values
+		 */
+		void setReferenceSeed(ReferenceSnapshot seed);
+
+		/**
+		 * Gets the snapshot of the latest completed layout.
+		 * @return the snapshot, or an empty optional if no layout has been completed
+		 */
+		Optional<ReferenceSnapshot> getReferenceSnapshot();
+	}
+
+	ReferenceSnapshot(Map<String, Integer> pageRefs, Map<String, Integer> volumeRefs, Map<String, Integer> variables,
+			Map<Integer, List<AnchorData>> anchors, Map<SheetIdentity, Boolean> breakable, Map<Integer, Overhead> overhead) {
+		this.pageRefs = Collections.unmodifiableMap(new HashMap<>(pageRefs));
+		this.volumeRefs = Collections.unmodifiableMap(new HashMap<>(volumeRefs));
+		this.variables = Collections.unmodifiableMap(new HashMap<>(variables));
+		this.anchors = Collections.unmodifiableMap(new HashMap<>(anchors));
+		this.breakable = Collections.unmodifiableMap(new HashMap<>(breakable));
+		this.overhead = Collections.unmodifiableMap(new HashMap<>(overhead));
+	}
+
+	Map<String, Integer> getPageRefs() {
+		return pageRefs;
+	}
+
+	Map<String, Integer> getVolumeRefs() {
+		return volumeRefs;
+	}
+
+	Map<String, Integer> getVariables() {
+		return variables;
+	}
+
+	Map<Integer, List<AnchorData>> getAnchors() {
+		return anchors;
+	}
+
+	Map<SheetIdentity, Boolean> getBreakable() {
+		return breakable;
+	}
+
+	Map<Integer, Overhead> getOverhead() {
+		return overhead;
+	}
+
+	/**
+	 * Writes this snapshot to the specified stream. The stream is not closed.
+	 * @param os the output stream
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeValues(out, pageRefs);
+		writeValues(out, volumeRefs);
+		writeValues(out, variables);
+		out.writeInt(anchors.size());
+		for (Map.Entry<Integer, List<AnchorData>> e : anchors.entrySet()) {
+			out.writeInt(e.getKey());
+			out.writeInt(e.getValue().size());
+			for (AnchorData ad : e.getValue()) {
+				out.writeInt(ad.getPageNumber());
+				out.writeInt(ad.getAnchors().size());
+				for (String a : ad.getAnchors()) {
+					out.writeUTF(a);
+				}
+			}
+		}
+		out.writeInt(breakable.size());
+		for (Map.Entry<SheetIdentity, Boolean> e : breakable.entrySet()) {
+			SheetIdentity s = e.getKey();
+			out.writeUTF(s.getSpace().name());
+			out.writeInt(s.getSpace()==Space.BODY?s.getVolumeGroup():s.getVolumeIndex());
+			out.writeInt(s.getSheetIndex());
+			out.writeBoolean(e.getValue());
+		}
+		out.writeInt(overhead.size());
+		for (Map.Entry<Integer, Overhead> e : overhead.entrySet()) {
+			out.writeInt(e.getKey());
+			out.writeInt(e.getValue().getPreContentSize());
+			out.writeInt(e.getValue().getPostContentSize());
+		}
+		out.flush();
+	}
+
+	private static void writeValues(DataOutputStream out, Map<String, Integer> values) throws IOException {
+		out.writeInt(values.size());
+		for (Map.Entry<String, Integer> e : values.entrySet()) {
+			out.writeUTF(e.getKey());
+			out.writeInt(e.getValue());
+		}
+	}
+
+	/**
+	 * Reads a snapshot from the specified stream. The stream is not closed.
+	 * @param is the input stream
+	 * @return the snapshot
+	 * @throws IOException if the stream could not be read, or if it doesn't
+	 * 		contain a snapshot in a supported version
+	 */
+	public static ReferenceSnapshot read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+		if (in.readInt()!=MAGIC) {
+			throw new IOException("Not a reference snapshot.");
+		}
+		int version = in.readInt();
+		if (version!=VERSION) {
+			throw new IOException("Unsupported reference snapshot version: " + version);
+		}
+		Map<String, Integer> pageRefs = readValues(in);
+		Map<String, Integer> volumeRefs = readValues(in);
+		Map<String, Integer> variables = readValues(in);
+		Map<Integer, List<AnchorData>> anchors = new HashMap<>();
+		for (int i=readSize(in); i>0; i--) {
+			int volume = in.readInt();
+			int count = readSize(in);
+			List<AnchorData> data = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+			for (int j=0; j<count; j++) {
+				int page = in.readInt();
+				int refCount = readSize(in);
+				List<String> refs = new ArrayList<>(Math.min(refCount, INITIAL_CAPACITY));
+				for (int k=0; k<refCount; k++) {
+					refs.add(in.readUTF());
+				}
+				data.add(new AnchorData(refs, page));
+			}
+			anchors.put(volume, data);
+		}
+		Map<SheetIdentity, Boolean> breakable = new HashMap<>();
+		for (int i=readSize(in); i>0; i--) {
+			Space space;
+			try {
+				space = Space.valueOf(in.readUTF());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown space in reference snapshot.", e);
+			}
+			int volume = in.readInt();
+			int sheet = in.readInt();
+			SheetIdentity s = space==Space.BODY
+					?new SheetIdentity(space, null, volume, sheet)
+					:new SheetIdentity(space, volume, null, sheet);
+			breakable.put(s, in.readBoolean());
+		}
+		Map<Integer, Overhead> overhead = new HashMap<>();
+		for (int i=readSize(in); i>0; i--) {
+			int volume = in.readInt();
+			overhead.put(volume, new Overhead(in.readInt(), in.readInt()));
+		}
+		return new ReferenceSnapshot(pageRefs, volumeRefs, variables, anchors, breakable, overhead);
+	}
+
+	private static Map<String, Integer> readValues(DataInputStream in) throws IOException {
+		Map<String, Integer> ret = new HashMap<>();
+		for (int i=readSize(in); i>0; i--) {
+			String key = in.readUTF();
+			ret.put(key, in.readInt());
+		}
+		return ret;
+	}
+
+	private static int readSize(DataInputStream in) throws IOException {
+		int ret = in.readInt();
+		// sizes are checked so that a corrupt file can't make us allocate huge amounts of memory
+		if (ret<0 || ret>MAX_SIZE) {
+			throw new IOException("Unexpected data in reference snapshot: " + ret);
+		}
+		return ret;
+	}
+}
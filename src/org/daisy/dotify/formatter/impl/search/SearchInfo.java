@@ -3,7 +3,6 @@ package org.daisy.dotify.formatter.impl.search;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 
 import org.daisy.dotify.api.formatter.Marker;
@@ -14,44 +13,42 @@ import org.daisy.dotify.api.formatter.MarkerReferenceField.MarkerSearchScope;
 class SearchInfo {
 
 	private final Map<DocumentSpace, DocumentSpaceData> spaces;
-	private final Map<String, PageDetails> uncommitted;
 	private boolean dirty;
 	
 	SearchInfo() {
 		this.spaces = new HashMap<>();
-		this.uncommitted = new HashMap<>();
 		this.dirty = false;
 	}
 	
-	private static String toKey(PageDetails value) {
-		return value.getSequenceId().getSpace() + "-" + value.getPageId();
-	}
-	
 	void keepPageDetails(PageDetails value) {
 		if (value.getPageId().getPageIndex()<0) {
 			throw new IllegalArgumentException("Negative page id not allowed.");
 		}
-		uncommitted.put(toKey(value), value);
+		getViewForSpace(value.getSequenceId().getSpace()).uncommitted.set(value.getPageId().getPageIndex(), value);
 	}
 	
 	void commitPageDetails() {
-		for (Entry<String, PageDetails> entry : uncommitted.entrySet()) {
-			PageDetails value = entry.getValue();
-			DocumentSpaceData data = getViewForSpace(value.getSequenceId().getSpace());
-			while (value.getPageId().getPageIndex()>=data.pageDetails.size()) {
-				data.pageDetails.add(null);
+		for (DocumentSpaceData data : spaces.values()) {
+			PageDetailsArray uncommitted = data.uncommitted;
+			if (uncommitted.getSetCount()==0) {
+				continue;
 			}
-			PageDetails old = data.pageDetails.set(value.getPageId().getPageIndex(), value);
-			// Only check the previous value if dirty isn't already true
-			if (!dirty && !value.equals(old)) {
-				dirty = true;
+			for (int i=0; i<uncommitted.getSetCount(); i++) {
+				PageDetails value = uncommitted.get(uncommitted.getSetIndex(i));
+				PageDetails old = data.pageDetails.set(value.getPageId().getPageIndex(), value);
+				data.markerIndex.update(value.getPageId().getPageIndex(), value);
+				// Only check the previous value if dirty isn't already true
+				if (!dirty && !value.equals(old)) {
+					dirty = true;
+				}
 			}
+			uncommitted.clear();
+			data.pageView.setToIndex(data.pageDetails.size());
 		}
-		uncommitted.clear();
 	}
 
 	View<PageDetails> getPageView(DocumentSpace space) {
-		return new View<PageDetails>(getViewForSpace(space).pageDetails, 0, getViewForSpace(space).pageDetails.size());
+		return getViewForSpace(space).pageView;
 	}
 
 	View<PageDetails> getContentsInVolume(int volumeNumber, DocumentSpace space) {
@@ -63,8 +60,8 @@ class SearchInfo {
 	}
 	
 	void setSequenceScope(SequenceId sequenceId, int fromIndex, int toIndex) {
-		View<PageDetails> pw = new View<PageDetails>(getViewForSpace(sequenceId.getSpace()).pageDetails, fromIndex, toIndex);
-		getViewForSpace(sequenceId.getSpace()).sequenceViews.put(sequenceId, pw);
+		DocumentSpaceData data = getViewForSpace(sequenceId.getSpace());
+		updateScope(data, data.sequenceViews, sequenceId, fromIndex, toIndex);
 	}
 	
 	void setVolumeScope(int volumeNumber, int fromIndex, int toIndex) {
@@ -72,11 +69,34 @@ class SearchInfo {
 	}
 
 	void setVolumeScope(int volumeNumber, int fromIndex, int toIndex, DocumentSpace space) {
-		View<PageDetails> pw = new View<PageDetails>(getViewForSpace(space).pageDetails, fromIndex, toIndex);
-		for (PageDetails p : pw.getItems()) {
-			p.setVolumeNumber(volumeNumber);
+		DocumentSpaceData data = getViewForSpace(space);
+		if (data.volumeViewsSearched && !dirty) {
+			// Markers have been searched in volume scope, the result may change if the volume has moved
+			View<PageDetails> old = data.volumeViews.get(volumeNumber);
+			if (old==null || old.getGlobalStartIndex()!=fromIndex || old.getToIndex()!=toIndex) {
+				dirty = true;
+			}
+		}
+		View<PageDetails> pw = updateScope(data, data.volumeViews, volumeNumber, fromIndex, toIndex);
+		for (int i=0; i<pw.size(); i++) {
+			pw.get(i).setVolumeNumber(volumeNumber);
+		}
+	}
+	
+	/**
+	 * Updates the view for the specified scope, reusing the existing view if
+	 * it starts at the same index. Since scopes are usually the same in each
+	 * iteration, this avoids creating new views.
+	 */
+	private static <K> View<PageDetails> updateScope(DocumentSpaceData data, Map<K, View<PageDetails>> views, K key, int fromIndex, int toIndex) {
+		View<PageDetails> pw = views.get(key);
+		if (pw!=null && pw.getGlobalStartIndex()==fromIndex) {
+			pw.setToIndex(toIndex);
+		} else {
+			pw = new View<PageDetails>(data.pageDetails, fromIndex, toIndex);
+			views.put(key, pw);
 		}
-		getViewForSpace(space).volumeViews.put(volumeNumber, pw);
+		return pw;
 	}
 	
 	DocumentSpaceData getViewForSpace(DocumentSpace space) {
@@ -158,9 +178,6 @@ class SearchInfo {
 	String findMarker(final PageDetails page, final MarkerReferenceField markerRef) {
 		PageDetails currentPage = page;
 		while (currentPage!=null) {
-			if (markerRef.getSearchScope()==MarkerSearchScope.VOLUME || markerRef.getSearchScope()==MarkerSearchScope.DOCUMENT) {
-				throw new RuntimeException("Marker reference scope not implemented: " + markerRef.getSearchScope());
-			}
 			int dir = 1;
 			int index = 0;
 			int count = 0;
@@ -191,8 +208,11 @@ class SearchInfo {
 				index += dir; 
 				count++;
 			}
-			if (markerRef.getSearchScope() == MarkerReferenceField.MarkerSearchScope.SEQUENCE ||
-				markerRef.getSearchScope() == MarkerSearchScope.SHEET && currentPage.isWithinSheetScope(dir) //||
+			if (markerRef.getSearchScope() == MarkerSearchScope.SEQUENCE ||
+				markerRef.getSearchScope() == MarkerSearchScope.VOLUME ||
+				markerRef.getSearchScope() == MarkerSearchScope.DOCUMENT) {
+				currentPage = findNextPageWithMarker(currentPage, markerRef, dir);
+			} else if (markerRef.getSearchScope() == MarkerSearchScope.SHEET && currentPage.isWithinSheetScope(dir) //||
 				//markerRef.getSearchScope() == MarkerSearchScope.SPREAD && page.isWithinSequenceSpreadScope(dir)
 				) {
 				//Keep while moving: next = page.getPageInScope(page.getSequenceParent(), dir, false);
@@ -208,13 +228,41 @@ class SearchInfo {
 		return "";
 	}
 	
-	private Optional<PageDetails> getPageDetails(PageId p) {
-		DocumentSpaceData data = getViewForSpace(p.getSequenceId().getSpace());
-		if (p.getPageIndex()<data.pageDetails.size()) {
-			return Optional.ofNullable(data.pageDetails.get(p.getPageIndex()));
-		} else {
-			return Optional.empty();
+	/**
+	 * Finds the nearest page in the search scope of the marker reference, after the
+	 * current page in the search direction, that has a marker with the referenced name.
+	 * @param currentPage the current page
+	 * @param markerRef the marker reference
+	 * @param dir the search direction
+	 * @return the page, or null if not found
+	 */
+	private PageDetails findNextPageWithMarker(PageDetails currentPage, MarkerReferenceField markerRef, int dir) {
+		DocumentSpaceData data = getViewForSpace(currentPage.getSequenceId().getSpace());
+		View<PageDetails> scope;
+		switch (markerRef.getSearchScope()) {
+			case SEQUENCE:
+				//Keep while moving: next = page.getPageInScope(page.getSequenceParent(), dir, false);
+				scope = getContentsInSequence(currentPage.getSequenceId());
+				break;
+			case VOLUME:
+				data.volumeViewsSearched = true;
+				scope = getContentsInVolume(currentPage.getVolumeNumber(), currentPage.getSequenceId().getSpace());
+				break;
+			case DOCUMENT:
+				scope = data.pageView;
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported scope: " + markerRef.getSearchScope());
 		}
+		if (scope==null) {
+			return null;
+		}
+		int index = data.markerIndex.find(markerRef.getName(), currentPage.getPageId().getPageIndex()+dir, dir, scope.getGlobalStartIndex(), scope.getToIndex());
+		return index<0?null:data.pageDetails.get(index);
+	}
+
+	private Optional<PageDetails> getPageDetails(PageId p) {
+		return Optional.ofNullable(getViewForSpace(p.getSequenceId().getSpace()).pageDetails.getOrNull(p.getPageIndex()));
 	}
 	
 	String findStartAndMarker(PageId id, MarkerReferenceField f2) {
@@ -224,6 +272,10 @@ class SearchInfo {
 					if (f2.getSearchScope()==MarkerSearchScope.SPREAD ||
 						f2.getSearchScope()==MarkerSearchScope.SPREAD_CONTENT) {
 						start = getPageInVolumeWithOffset(p, f2.getOffset(), shouldAdjustOutOfBounds(p, f2));
+					} else if (f2.getSearchScope()==MarkerSearchScope.VOLUME) {
+						start = getPageInVolumeWithOffset(p, f2.getOffset(), shouldAdjustOutOfBounds(p, f2));
+					} else if (f2.getSearchScope()==MarkerSearchScope.DOCUMENT) {
+						start = getPageInDocumentWithOffset(p, f2.getOffset(), shouldAdjustOutOfBounds(p, f2));
 					} else {
 						//Keep while moving: start = p.getPageInScope(p.getSequenceParent(), f2.getOffset(), shouldAdjustOutOfBounds(p, f2));
 						start = p.getPageInScope(getContentsInSequence(p.getSequenceId()), f2.getOffset(), shouldAdjustOutOfBounds(p, f2));
@@ -25,6 +25,10 @@ public class SheetIdentity {
 		return volumeIndex;
 	}
 
+	public Integer getVolumeGroup() {
+		return volumeGroup;
+	}
+
 	public int getSheetIndex() {
 		return sheetIndex;
 	}
@@ -10,7 +10,7 @@ public class TextSegment implements Segment {
 	private final String chars;
 	private final TextProperties tp;
 	private final boolean markCapitalLetters;
-	private BrailleTranslatorResult cache;
+	private volatile BrailleTranslatorResult cache;
 
 	public TextSegment(String chars, TextProperties tp, boolean markCapitalLetters) {
 		this.chars = Objects.requireNonNull(chars);
@@ -0,0 +1,292 @@
+package org.daisy.dotify.formatter.impl.sheet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.daisy.dotify.formatter.impl.search.BlockLineLocation;
+import org.daisy.dotify.formatter.impl.search.LookupRecord;
+import org.daisy.dotify.formatter.impl.search.SequenceId;
+import org.daisy.dotify.formatter.impl.search.SheetIdentity;
+
+/**
+ * <p>Provides a cache for the sheets of block sequences in the main body of text.</p>
+ *
+ * <p>The sheets of a block sequence are stored together with the state that the
+ * sequence started from and a record of the cross reference lookups that were made
+ * while it was paginated. In the next iteration, if the sequence starts from the same
+ * state and none of the lookups return a different value, the sheets are reused
+ * instead of paginating the sequence again.</p>
+ *
+ * <p>Note that the sheets are only reusable if they don't depend on where the
+ * volume breaks are, which isn't the case if volume transitions are used
+ * or if volumes may not end on a hyphenated line.</p>
+ *
+ * @author Joel Håkansson
+ */
+public class SequenceCache {
+	private final Map<SequenceId, Entry> entries;
+
+	/**
+	 * Creates a new empty cache.
+	 */
+	public SequenceCache() {
+		this.entries = new HashMap<>();
+	}
+
+	/**
+	 * Removes all entries from the cache. This must be used when the
+	 * pagination is restarted, since the formatter context is changed.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Removes the entries of the block sequences that use any of the specified
+	 * collections in a page area. This can be used instead of {@link #clear()} when
+	 * the pagination is restarted because these collections have changed, since
+	 * the sheets of the other sequences don't depend on them.
+	 * @param collectionIds the collection identifiers
+	 */
+	public void invalidate(Set<String> collectionIds) {
+		entries.values().removeIf(e->e.collectionId!=null && collectionIds.contains(e.collectionId));
+	}
+
+	/**
+	 * Gets the number of block sequences in the cache.
+	 * @return the number of sequences
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets a replay of the sheets for the specified sequence, if the cached sheets
+	 * can be reused in the specified state.
+	 * @param seqId the sequence id
+	 * @param state the state that the sequence starts from
+	 * @return a replay of the sheets, or null if the sequence must be paginated
+	 */
+	Replay replay(SequenceId seqId, StartState state) {
+		Entry e = entries.get(seqId);
+		if (e!=null && e.start.equals(state) && e.lookups.isUnchanged()) {
+			return new Replay(e);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts recording the sheets for the specified sequence.
+	 * @param seqId the sequence id
+	 * @param state the state that the sequence starts from
+	 * @param collectionId the identifier of the collection used in the page area
+	 * 		of the sequence, or null if the sequence doesn't have a page area
+	 * @return a new recorder
+	 */
+	Recorder record(SequenceId seqId, StartState state, String collectionId) {
+		entries.remove(seqId);
+		return new Recorder(seqId, state, collectionId);
+	}
+
+	/**
+	 * Provides the state that a block sequence starts from.
+	 */
+	static final class StartState {
+		private final int pageIndex;
+		private final int sheetIndex;
+		private final int pageNumberOffset;
+		private final BlockLineLocation location;
+
+		/**
+		 * Creates a new start state.
+		 * @param pageIndex the index of the first page in the sequence, counting all preceding pages
+		 * @param sheetIndex the index of the first sheet in the volume group
+		 * @param pageNumberOffset the page number offset
+		 * @param location the location of the last line of the previous sequence
+		 */
+		StartState(int pageIndex, int sheetIndex, int pageNumberOffset, BlockLineLocation location) {
+			this.pageIndex = pageIndex;
+			this.sheetIndex = sheetIndex;
+			this.pageNumberOffset = pageNumberOffset;
+			this.location = location;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(pageIndex, sheetIndex, pageNumberOffset, location);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			StartState other = (StartState) obj;
+			return pageIndex == other.pageIndex && sheetIndex == other.sheetIndex
+					&& pageNumberOffset == other.pageNumberOffset && Objects.equals(location, other.location);
+		}
+	}
+
+	private static final class Entry {
+		private final StartState start;
+		private final LookupRecord lookups;
+		private final List<Sheet> sheets;
+		private final List<Map<SheetIdentity, Boolean>> breakable;
+		private final int[] lastPageNumbers;
+		private final BlockLineLocation endLocation;
+		private final String collectionId;
+
+		private Entry(Recorder r, BlockLineLocation endLocation) {
+			this.start = r.start;
+			this.collectionId = r.collectionId;
+			this.lookups = r.lookups;
+			this.sheets = r.sheets;
+			this.breakable = r.breakable;
+			this.lastPageNumbers = new int[r.lastPageNumbers.size()];
+			for (int i=0; i<lastPageNumbers.length; i++) {
+				lastPageNumbers[i] = r.lastPageNumbers.get(i);
+			}
+			this.endLocation = endLocation;
+		}
+	}
+
+	/**
+	 * Provides a recorder for the sheets of a block sequence.
+	 */
+	final class Recorder {
+		private final SequenceId seqId;
+		private final StartState start;
+		private final LookupRecord lookups;
+		private final List<Sheet> sheets;
+		private final List<Map<SheetIdentity, Boolean>> breakable;
+		private final List<Integer> lastPageNumbers;
+		private final String collectionId;
+		private Map<SheetIdentity, Boolean> kept;
+		private int pageCount;
+
+		private Recorder(SequenceId seqId, StartState start, String collectionId) {
+			this.seqId = seqId;
+			this.start = start;
+			this.collectionId = collectionId;
+			this.pageCount = start.pageIndex;
+			this.lookups = new LookupRecord();
+			this.sheets = new ArrayList<>();
+			this.breakable = new ArrayList<>();
+			this.lastPageNumbers = new ArrayList<>();
+			this.kept = new LinkedHashMap<>();
+		}
+
+		/**
+		 * Gets the record that lookups should be added to while the sequence is paginated.
+		 * @return the lookup record
+		 */
+		LookupRecord getLookups() {
+			return lookups;
+		}
+
+		/**
+		 * Records a breakable value that was kept in the cross reference handler.
+		 * The values are replayed together with the next sheet that is added.
+		 * @param ident the sheet identity
+		 * @param value the value
+		 */
+		void keepBreakable(SheetIdentity ident, boolean value) {
+			kept.put(ident, value);
+		}
+
+		/**
+		 * Adds a sheet.
+		 * @param sheet the sheet
+		 * @param lastPageNumber the page number offset after this sheet
+		 * @param pageCount the page count after this sheet, counting all preceding pages
+		 * @return true if the sheet was added, false if the page count shows that
+		 * 		pages from other sequences have been counted in the meantime.
+		 * 		In this case, the recorder must not be used anymore.
+		 */
+		boolean add(Sheet sheet, int lastPageNumber, int pageCount) {
+			this.pageCount += sheet.getPages().size();
+			if (this.pageCount!=pageCount) {
+				return false;
+			}
+			sheets.add(sheet);
+			breakable.add(kept.isEmpty()?Collections.emptyMap():kept);
+			kept = new LinkedHashMap<>();
+			lastPageNumbers.add(lastPageNumber);
+			return true;
+		}
+
+		/**
+		 * Stores the recorded sheets in the cache.
+		 * @param endLocation the location of the last line in the sequence
+		 */
+		void finish(BlockLineLocation endLocation) {
+			entries.put(seqId, new Entry(this, endLocation));
+		}
+	}
+
+	/**
+	 * Provides a replay of the sheets of a cached block sequence.
+	 */
+	static final class Replay {
+		private final Entry entry;
+		private int index;
+
+		private Replay(Entry entry) {
+			this.entry = entry;
+			this.index = 0;
+		}
+
+		Replay(Replay template) {
+			this.entry = template.entry;
+			this.index = template.index;
+		}
+
+		static Replay copyUnlessNull(Replay template) {
+			return template==null?null:new Replay(template);
+		}
+
+		boolean hasNext() {
+			return index<entry.sheets.size();
+		}
+
+		Sheet next() {
+			Sheet ret = entry.sheets.get(index);
+			index++;
+			return ret;
+		}
+
+		/**
+		 * Gets the page number offset after the last sheet returned by {@link #next()}.
+		 * @return the page number offset
+		 */
+		int getLastPageNumber() {
+			return entry.lastPageNumbers[index-1];
+		}
+
+		/**
+		 * Gets the breakable values that were kept while the last sheet returned
+		 * by {@link #next()} was paginated.
+		 * @return the breakable values
+		 */
+		Map<SheetIdentity, Boolean> getBreakable() {
+			return entry.breakable.get(index-1);
+		}
+
+		BlockLineLocation getEndLocation() {
+			return entry.endLocation;
+		}
+	}
+}
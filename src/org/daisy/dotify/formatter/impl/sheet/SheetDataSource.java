@@ -1,16 +1,19 @@
 package org.daisy.dotify.formatter.impl.sheet;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.daisy.dotify.api.formatter.PageAreaProperties;
 import org.daisy.dotify.api.formatter.TransitionBuilderProperties.ApplicationRange;
 import org.daisy.dotify.api.writer.SectionProperties;
 import org.daisy.dotify.common.splitter.DefaultSplitResult;
 import org.daisy.dotify.common.splitter.SplitPointDataSource;
 import org.daisy.dotify.common.splitter.SplitResult;
 import org.daisy.dotify.common.splitter.Supplements;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
+import org.daisy.dotify.formatter.impl.common.SharedBuffer;
 import org.daisy.dotify.formatter.impl.core.FormatterContext;
 import org.daisy.dotify.formatter.impl.core.TransitionContent;
 import org.daisy.dotify.formatter.impl.page.BlockSequence;
@@ -37,6 +40,7 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	//Global state
 	private final PageCounter pageCounter;
 	private final FormatterContext context;
+	private final SequenceCache cache;
 	//Input data
 	private final DefaultContext rcontext;
 	private final Integer volumeGroup;
@@ -46,6 +50,8 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	private int seqsIndex;
 	private SequenceId seqId;
 	private PageSequenceBuilder2 psb;
+	private SequenceCache.Replay replay;
+	private SequenceCache.Recorder recorder;
 	private int psbCurStartIndex; // index of first page of current psb in current volume
 	private SectionProperties sectionProperties;
 	private int sheetIndex;
@@ -59,20 +65,41 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	private boolean wasSplitInsideSequence;
 	private boolean volumeEnded;
 	//Output buffer
-	private List<Sheet> sheetBuffer;
+	private SharedBuffer<Sheet> sheetBuffer;
 
 	public SheetDataSource(PageCounter pageCounter, FormatterContext context, DefaultContext rcontext, Integer volumeGroup, List<BlockSequence> seqsIterator) {
+		this(pageCounter, context, rcontext, volumeGroup, seqsIterator, null);
+	}
+
+	/**
+	 * Creates a new sheet data source that uses the specified cache to reuse the
+	 * sheets of block sequences from a previous iteration.
+	 * The cache is only used if the sheets don't depend on where the volume
+	 * breaks are, in other words if volume transitions aren't used
+	 * and volumes are allowed to end on a hyphenated line.
+	 * @param pageCounter the page counter
+	 * @param context the formatter context
+	 * @param rcontext the reference context
+	 * @param volumeGroup the volume group
+	 * @param seqsIterator the block sequences
+	 * @param cache the sequence cache, or null
+	 */
+	public SheetDataSource(PageCounter pageCounter, FormatterContext context, DefaultContext rcontext, Integer volumeGroup, List<BlockSequence> seqsIterator, SequenceCache cache) {
 		this.pageCounter = pageCounter;
 		this.context = context;
+		this.cache = (context.getTransitionBuilder().getProperties().getApplicationRange()==ApplicationRange.NONE
+				&& context.getConfiguration().allowsEndingVolumeOnHyphen())?cache:null;
 		this.rcontext = rcontext;
 		this.volumeGroup = volumeGroup;
 		this.seqsIterator = seqsIterator;
-		this.sheetBuffer = new ArrayList<>();
+		this.sheetBuffer = new SharedBuffer<>();
 		this.volBreakAllowed = true;
 		this.sheetOffset = 0;
 		this.seqsIndex = 0;
 		this.seqId = null;
 		this.psb = null;
+		this.replay = null;
+		this.recorder = null;
 		this.psbCurStartIndex = 0;
 		this.sectionProperties = null;
 		this.sheetIndex = 0;
@@ -88,6 +115,7 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	
 	public SheetDataSource(SheetDataSource template) {
 		this(template, 0, false);
+		context.getMetrics().increment(FormatterMetrics.Counter.DATA_SOURCE_COPIES);
 	}
 
 	/**
@@ -102,22 +130,23 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	private SheetDataSource(SheetDataSource template, int offset, boolean tail) {
 		this.pageCounter = tail?template.pageCounter:new PageCounter(template.pageCounter);
 		this.context = template.context;
+		this.cache = template.cache;
 		this.rcontext = template.rcontext;
 		this.volumeGroup = template.volumeGroup;
 		this.seqsIterator = template.seqsIterator;
 		this.seqsIndex = template.seqsIndex;
 		this.seqId = template.seqId;
 		this.psb = tail?template.psb:PageSequenceBuilder2.copyUnlessNull(template.psb);
+		this.replay = tail?template.replay:SequenceCache.Replay.copyUnlessNull(template.replay);
+		// Only the tail continues recording, copies aren't used in read/write mode
+		this.recorder = tail?template.recorder:null;
 		this.psbCurStartIndex = template.psbCurStartIndex;
 		this.sectionProperties = template.sectionProperties;
 		this.sheetOffset = template.sheetOffset+offset;
 		this.sheetIndex = template.sheetIndex;
 		this.pageIndex = template.pageIndex;
-		if (template.sheetBuffer.size()>offset) {
-			this.sheetBuffer = new ArrayList<>(template.sheetBuffer.subList(offset, template.sheetBuffer.size()));
-		} else {
-			this.sheetBuffer = new ArrayList<>();
-		}
+		// The sheets are shared with the template until either of them adds a sheet
+		this.sheetBuffer = template.sheetBuffer.tail(offset);
 		this.volBreakAllowed = template.volBreakAllowed;
 		this.counter = template.counter;
 		this.initialPageOffset = template.initialPageOffset;
@@ -159,7 +188,7 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 
 	@Override
 	public boolean isEmpty() {
-		return seqsIndex>=seqsIterator.size() && sheetBuffer.isEmpty() && (psb==null || !psb.hasNext());
+		return seqsIndex>=seqsIterator.size() && sheetBuffer.isEmpty() && (psb==null || !psb.hasNext()) && (replay==null || !replay.hasNext());
 	}
 
 	@Override
@@ -174,23 +203,50 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 	 * @return returns true if the index element was available, false otherwise
 	 */
 	private boolean ensureBuffer(int index) {
+		if (recorder!=null) {
+			rcontext.getRefs().setLookupRecord(recorder.getLookups());
+		}
+		Object reader = rcontext.getRefs().setReader(seqId);
+		try {
+			return ensureBufferInner(index);
+		} finally {
+			rcontext.getRefs().setReader(reader);
+			if (recorder!=null) {
+				rcontext.getRefs().setLookupRecord(null);
+			}
+		}
+	}
+
+	private boolean ensureBufferInner(int index) {
 		Sheet.Builder s = null;
 		SheetIdentity si = null;
 		while (index<0 || sheetBuffer.size()<index) {
 			if (updateCounter) { 
-				if(counter!=null) {
-					initialPageOffset = rcontext.getRefs().getPageNumberOffset(counter) - psb.size();
-				} else {
-					initialPageOffset = pageCounter.getDefaultPageOffset() - psb.size();
+				// A replayed sequence has a fixed page number offset
+				if (psb!=null) {
+					if(counter!=null) {
+						initialPageOffset = rcontext.getRefs().getPageNumberOffset(counter) - psb.size();
+					} else {
+						initialPageOffset = pageCounter.getDefaultPageOffset() - psb.size();
+					}
+					psbCurStartIndex = psb.getToIndex();
 				}
-				psbCurStartIndex = psb.getToIndex();
 				updateCounter = false;
 			}
+			if (replay!=null && replay.hasNext()) {
+				addReplayedSheet();
+				continue;
+			}
 			if (psb==null || !psb.hasNext()) {
 				if (s!=null) {
 					//Last page in the sequence doesn't need volume keep priority
-					sheetBuffer.add(s.build());
+					addSheet(s.build());
 					s=null;
+					if (recorder!=null) {
+						recorder.finish(psb.currentBlockLineLocation());
+						recorder = null;
+						rcontext.getRefs().setLookupRecord(null);
+					}
 					continue;
 				}
 				if (seqsIndex>=seqsIterator.size()) {
@@ -209,21 +265,43 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 					 initialPageOffset = pageCounter.getDefaultPageOffset();
 				}
 				seqId = new SequenceId(seqsIndex, new DocumentSpace(rcontext.getSpace(), rcontext.getCurrentVolume()), volumeGroup);
-				BlockLineLocation cbl = psb!=null?psb.currentBlockLineLocation():new BlockLineLocation(new BlockAddress(-1, -1), -1);
+				rcontext.getRefs().setReader(seqId);
+				BlockLineLocation cbl;
+				if (replay!=null) {
+					cbl = replay.getEndLocation();
+				} else {
+					cbl = psb!=null?psb.currentBlockLineLocation():new BlockLineLocation(new BlockAddress(-1, -1), -1);
+				}
 				psbCurStartIndex = pageCounter.getPageCount();
-				psb = new PageSequenceBuilder2(psbCurStartIndex, bs.getLayoutMaster(), initialPageOffset, bs, context, rcontext, seqId, cbl);
-				sectionProperties = bs.getLayoutMaster().newSectionProperties();
 				s = null;
 				si = null;
 				sheetIndex = 0;
 				pageIndex = 0;
+				replay = null;
+				// A named page counter can be shared with pre- and post-volume content, in which case
+				// the page numbers after a volume break depend on that content.
+				if (cache!=null && counter==null) {
+					SequenceCache.StartState state = new SequenceCache.StartState(psbCurStartIndex, sheetBuffer.size()+sheetOffset, initialPageOffset, cbl);
+					replay = cache.replay(seqId, state);
+					if (replay!=null) {
+						psb = null;
+						continue;
+					}
+					if (!rcontext.getRefs().isReadOnly()) {
+						PageAreaProperties area = bs.getLayoutMaster().getPageArea();
+						recorder = cache.record(seqId, state, area!=null?area.getCollectionId():null);
+						rcontext.getRefs().setLookupRecord(recorder.getLookups());
+					}
+				}
+				psb = new PageSequenceBuilder2(psbCurStartIndex, bs.getLayoutMaster(), initialPageOffset, bs, context, rcontext, seqId, cbl);
+				sectionProperties = bs.getLayoutMaster().newSectionProperties();
 			}
 			int currentSize = sheetBuffer.size();
 			while (psb.hasNext() && currentSize == sheetBuffer.size()) {
 				if (!sectionProperties.duplex() || pageIndex % 2 == 0 || volumeEnded || s==null) {
 					if (s!=null) {
 						Sheet r = s.build();
-						sheetBuffer.add(r);
+						addSheet(r);
 						s = null;
 						if (volumeEnded) {
 							pageIndex += pageIndex%2==1?1:0;
@@ -306,7 +384,7 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 				setPreviousSheet(si.getSheetIndex()-1, Math.min(p.keepPreviousSheets(), sheetIndex-1), rcontext);
 				volBreakAllowed &= p.allowsVolumeBreak();
 				if (!sectionProperties.duplex() || pageIndex % 2 == 1 || volumeEnded) {
-					rcontext.getRefs().keepBreakable(si, volBreakAllowed);
+					keepBreakable(si, volBreakAllowed);
 				}
 				s.add(p);
 				pageIndex++;
@@ -315,23 +393,94 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 				if (!psb.hasNext()) {
 					rcontext.getRefs().setSequenceScope(seqId, psb.getGlobalStartIndex(), psb.getToIndex());
 				}
-				int lastPageNumber = initialPageOffset + psbCurStartIndex - psb.getGlobalStartIndex() + psb.getSizeLast(psbCurStartIndex);
-				if (counter!=null) {
-					rcontext.getRefs().setPageNumberOffset(counter, lastPageNumber);
-				} else {
-					pageCounter.setDefaultPageOffset(lastPageNumber);
-				}
+				setPageNumberOffset(getLastPageNumber());
 			}
 		}
 		return true;
 	}
 
+	private void addSheet(Sheet sheet) {
+		sheetBuffer.add(sheet);
+		if (recorder!=null && !recorder.add(sheet, getLastPageNumber(), pageCounter.getPageCount())) {
+			// The page counter has been used by a later volume group in the meantime,
+			// the sheets cannot be reused.
+			recorder = null;
+			rcontext.getRefs().setLookupRecord(null);
+		}
+	}
+
+	private void keepBreakable(SheetIdentity si, boolean value) {
+		rcontext.getRefs().keepBreakable(si, value);
+		if (recorder!=null && !rcontext.getRefs().isReadOnly()) {
+			recorder.keepBreakable(si, value);
+		}
+	}
+
+	/**
+	 * <p>Adds the next sheet from the replay, with the same side effects as
+	 * if the sheet had been paginated. The page details and the breakable values
+	 * are kept again, so that they are committed in this iteration as well,
+	 * and the page numbers of the identifiers, the sequence scope
+	 * and the page number offset are set again.</p>
+	 *
+	 * <p>The other values that are set when a sequence is paginated aren't
+	 * set again, because the values set when the sheets were recorded remain
+	 * in the cross reference handler and would be the same:</p>
+	 * <ul>
+	 * <li>The row count and the anchors, markers and identifiers of each row group
+	 * are stored by block address. The blocks of the sequence are laid out
+	 * the same, since none of the lookups made while they were laid out have changed.</li>
+	 * <li>The next page details in sequence and the transition properties
+	 * are only used with volume transitions, in which case the cache isn't used.</li>
+	 * <li>Volume numbers are only set in pre- and post-volume content, which
+	 * doesn't use the cache.</li>
+	 * </ul>
+	 */
+	private void addReplayedSheet() {
+		Sheet sheet = replay.next();
+		for (PageImpl p : sheet.getPages()) {
+			pageCounter.increasePageCount();
+			rcontext.getRefs().keepPageDetails(p.getDetails());
+			for (String id : p.getIdentifiers()) {
+				rcontext.getRefs().setPageNumber(id, p.getPageNumber());
+			}
+		}
+		for (Map.Entry<SheetIdentity, Boolean> e : replay.getBreakable().entrySet()) {
+			rcontext.getRefs().keepBreakable(e.getKey(), e.getValue());
+		}
+		if (!replay.hasNext()) {
+			rcontext.getRefs().setSequenceScope(seqId, psbCurStartIndex, pageCounter.getPageCount());
+			setPageNumberOffset(getLastPageNumber());
+		}
+		sheetBuffer.add(sheet);
+	}
+
+	/**
+	 * Gets the page number offset after the last sheet in the buffer.
+	 * @return the page number offset
+	 */
+	private int getLastPageNumber() {
+		if (replay!=null) {
+			return replay.getLastPageNumber();
+		} else {
+			return initialPageOffset + psbCurStartIndex - psb.getGlobalStartIndex() + psb.getSizeLast(psbCurStartIndex);
+		}
+	}
+
+	private void setPageNumberOffset(int value) {
+		if (counter!=null) {
+			rcontext.getRefs().setPageNumberOffset(counter, value);
+		} else {
+			pageCounter.setDefaultPageOffset(value);
+		}
+	}
+
 	private void setPreviousSheet(int start, int p, DefaultContext rcontext) {
 		int i = 0;
 		//TODO: simplify this?
 		for (int x = start; i < p && x > 0; x--) {
 			SheetIdentity si = new SheetIdentity(rcontext.getSpace(), rcontext.getCurrentVolume(), volumeGroup, x);
-			rcontext.getRefs().keepBreakable(si, false);
+			keepBreakable(si, false);
 			i++;
 		}
 	}
@@ -350,13 +499,8 @@ public class SheetDataSource implements SplitPointDataSource<Sheet, SheetDataSou
 		if (!ensureBuffer(atIndex)) {
 			throw new IndexOutOfBoundsException("" + atIndex);
 		}
-		int lastPageNumber = initialPageOffset + psbCurStartIndex - psb.getGlobalStartIndex() + psb.getSizeLast(psbCurStartIndex);
-		if (counter!=null) {
-			rcontext.getRefs().setPageNumberOffset(counter, lastPageNumber);
-		} else {
-			pageCounter.setDefaultPageOffset(lastPageNumber);
-		}
-		wasSplitInsideSequence = psb.hasNext();
+		setPageNumberOffset(getLastPageNumber());
+		wasSplitInsideSequence = replay!=null?replay.hasNext():psb.hasNext();
 		isFirst = false;
 		if (atIndex==0) {
 			return new DefaultSplitResult<Sheet, SheetDataSource>(Collections.emptyList(), new SheetDataSource(this, atIndex, true));
@@ -1,38 +1,44 @@
 package org.daisy.dotify.formatter.impl.volume;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.RandomAccess;
 
 import org.daisy.dotify.api.formatter.SequenceProperties;
 import org.daisy.dotify.formatter.impl.core.Block;
+import org.daisy.dotify.formatter.impl.core.BlockList;
 import org.daisy.dotify.formatter.impl.core.LayoutMaster;
 import org.daisy.dotify.formatter.impl.page.BlockSequence;
 
 /**
- * Provides methods for manipulating a flow sequence.
+ * <p>Provides methods for manipulating a flow sequence.</p>
+ *
+ * <p>The sequence is an immutable list that is replaced by each operation.
+ * Groups of blocks are included as views of the lists they come from, and
+ * removing or inserting blocks creates a view of the parts that remain.
+ * The blocks are only copied when a new sequence is created.</p>
  * @author Joel Håkansson
  */
 class BlockSequenceManipulator {
 	private HashMap<String, Integer> taggedEntries;
-	private final Stack<Block> sequence;
+	private List<Block> sequence;
 	private final SequenceProperties props;
 	private final LayoutMaster master;
 	
 	BlockSequenceManipulator(BlockSequence b) {
-		this.sequence = new Stack<>();
-		for (Block bb : b) {
-			this.sequence.add(bb);
-		}
+		this.sequence = b.view();
 		this.master = b.getLayoutMaster();
 		this.props = b.getSequenceProperties();
 		this.taggedEntries = tagSequence(this.sequence);
 	}
 	
 	BlockSequenceManipulator(LayoutMaster master, SequenceProperties props) {
-		this.sequence = new Stack<>();
+		this.sequence = Collections.emptyList();
 		this.master = master;
 		this.props = props;
 		this.taggedEntries = tagSequence(this.sequence);
@@ -50,18 +56,10 @@ class BlockSequenceManipulator {
 	}
 	
 	void insertGroup(Iterable<Block> blocks, String beforeId) {
-		ArrayList<Block> call = new ArrayList<>();
-		for (Block b : blocks) {
-			call.add(b);
-		}
-		insertGroup(call, beforeId);
+		insertGroup(toList(blocks), beforeId);
 	}
 	void appendGroup(Iterable<Block> blocks) {
-		ArrayList<Block> call = new ArrayList<>();
-		for (Block b : blocks) {
-			call.add(b);
-		}
-		sequence.addAll(call);
+		sequence = concat(sequence, toList(blocks));
 		taggedEntries = tagSequence(sequence);
 	}
 	
@@ -70,7 +68,7 @@ class BlockSequenceManipulator {
 		if (beforeIndex==null) {
 			throw new IllegalArgumentException("Cannot find identifier " + beforeId);
 		}
-		sequence.addAll(beforeIndex, seq);
+		sequence = concat(sequence.subList(0, beforeIndex), toList(seq), sequence.subList(beforeIndex, sequence.size()));
 		taggedEntries = tagSequence(sequence);
 	}
 
@@ -79,7 +77,7 @@ class BlockSequenceManipulator {
 		if (index==null) {
 			throw new IllegalArgumentException("Cannot find identifier " + id);
 		}
-		sequence.removeElementAt(index);
+		sequence = concat(sequence.subList(0, index), sequence.subList(index+1, sequence.size()));
 		taggedEntries = tagSequence(sequence);
 	}
 	
@@ -89,8 +87,8 @@ class BlockSequenceManipulator {
 		if (fromIndex==null || toIndex==null) {
 			throw new IllegalArgumentException("Cannot find identifier " + fromId + "/" + toId);
 		}
-		for (int i=0; i<toIndex-fromIndex; i++) {
-			sequence.remove((int)fromIndex);
+		if (toIndex>fromIndex) {
+			sequence = concat(sequence.subList(0, fromIndex), sequence.subList(toIndex, sequence.size()));
 		}
 		taggedEntries = tagSequence(sequence);
 	}
@@ -98,13 +96,109 @@ class BlockSequenceManipulator {
 	void removeTail(String fromId) {
 		Integer fromIndex = taggedEntries.get(fromId);
 		fromIndex++;
-		int count = sequence.size()-fromIndex;
-		for (int i=0; i<count; i++) {
-			sequence.remove((int)fromIndex);
-		}
+		sequence = sequence.subList(0, fromIndex);
 		taggedEntries = tagSequence(sequence);
 	}
 
+	/**
+	 * Gets the blocks as an immutable list, without copying them
+	 * if they are in a {@link BlockList}.
+	 * @param blocks the blocks
+	 * @return a list of the blocks
+	 */
+	private static List<Block> toList(Iterable<Block> blocks) {
+		if (blocks instanceof BlockList) {
+			return ((BlockList)blocks).view();
+		}
+		ArrayList<Block> ret = new ArrayList<>();
+		for (Block b : blocks) {
+			ret.add(b);
+		}
+		return Collections.unmodifiableList(ret);
+	}
+
+	@SafeVarargs
+	private static List<Block> concat(List<Block> ... lists) {
+		return concat(Arrays.asList(lists));
+	}
+
+	private static List<Block> concat(List<List<Block>> lists) {
+		List<List<Block>> parts = new ArrayList<>();
+		for (List<Block> l : lists) {
+			if (l instanceof Concatenation) {
+				parts.addAll(((Concatenation)l).parts);
+			} else if (!l.isEmpty()) {
+				parts.add(l);
+			}
+		}
+		if (parts.isEmpty()) {
+			return Collections.emptyList();
+		} else if (parts.size()==1) {
+			return parts.get(0);
+		}
+		return new Concatenation(parts);
+	}
+
+	/**
+	 * Provides an immutable view of several lists, one after the other.
+	 */
+	private static final class Concatenation extends AbstractList<Block> implements RandomAccess {
+		private final List<List<Block>> parts;
+		// the index of the first block of each part
+		private final int[] offsets;
+		private final int size;
+
+		private Concatenation(List<List<Block>> parts) {
+			this.parts = parts;
+			this.offsets = new int[parts.size()];
+			int s = 0;
+			for (int i=0; i<parts.size(); i++) {
+				offsets[i] = s;
+				s += parts.get(i).size();
+			}
+			this.size = s;
+		}
+
+		@Override
+		public Block get(int index) {
+			if (index<0 || index>=size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			// The parts are never empty, so the offsets are unique
+			int i = Arrays.binarySearch(offsets, index);
+			if (i<0) {
+				i = -i-2;
+			}
+			return parts.get(i).get(index-offsets[i]);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Returns a view of the specified range. The view is created from
+		 * the parts, so that views of views don't nest.
+		 */
+		@Override
+		public List<Block> subList(int fromIndex, int toIndex) {
+			if (fromIndex<0 || toIndex>size || fromIndex>toIndex) {
+				throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+			}
+			List<List<Block>> ret = new ArrayList<>();
+			for (int i=0; i<parts.size() && offsets[i]<toIndex; i++) {
+				List<Block> part = parts.get(i);
+				int from = Math.max(fromIndex-offsets[i], 0);
+				int to = Math.min(toIndex-offsets[i], part.size());
+				if (from<to) {
+					ret.add(from==0 && to==part.size()?part:part.subList(from, to));
+				}
+			}
+			return concat(ret);
+		}
+	}
+
 	private static HashMap<String, Integer> tagSequence(List<Block> seq) {
 		HashMap<String, Integer> entries = new HashMap<>();
 		int i = 0;
@@ -120,7 +214,5 @@ class BlockSequenceManipulator {
 	List<Block> getBlocks() {
 		return sequence;
 	}
-	
-
 
 }
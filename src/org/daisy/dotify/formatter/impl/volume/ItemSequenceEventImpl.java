@@ -2,6 +2,8 @@ package org.daisy.dotify.formatter.impl.volume;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.daisy.dotify.api.formatter.FormatterCore;
 import org.daisy.dotify.api.formatter.ItemSequenceProperties;
@@ -34,6 +36,7 @@ class ItemSequenceEventImpl implements ReferenceListBuilder, BlockGroup {
 	private final FormatterCoreImpl volumeEndEvents;
 	private final FormatterCoreImpl collectionEndEvents;
 	private final long groupNumber;
+	private final Map<Integer, VolumeBlocks> volumeBlocks;
 	
 	ItemSequenceEventImpl(FormatterCoreContext fc, ItemSequenceProperties.Range range, String collectionID) {
 		this.collectionID = collectionID;
@@ -45,6 +48,7 @@ class ItemSequenceEventImpl implements ReferenceListBuilder, BlockGroup {
 		this.volumeEndEvents = new FormatterCoreImpl(fc);
 		this.collectionEndEvents = new FormatterCoreImpl(fc);
 		this.groupNumber = BlockAddress.getNextGroupNumber();
+		this.volumeBlocks = new ConcurrentHashMap<>();
 	}
 
 	@Override
@@ -84,68 +88,21 @@ class ItemSequenceEventImpl implements ReferenceListBuilder, BlockGroup {
 		if (c==null) {
 			return ret;
 		}
-		BlockAddress currentBlockAddress = new BlockAddress(groupNumber, 0);
+		int blockNumber = 0;
 		ret.addAll(collectionStartEvents);
 		boolean hasContents = false;
 		for (int i=0; i<crh.getVolumeCount(); i++) {
-			Iterable<AnchorData> v = crh.getAnchorData(i+1);
-			if (v!=null) {
-				ArrayList<Block> volume = (range == ItemSequenceProperties.Range.DOCUMENT) ? new ArrayList<Block>() : ret;
-				for (AnchorData ad : v) {
-					ArrayList<String> refs = new ArrayList<>();
-					for (String a : ad.getAnchors()) {
-						if (c.containsItemID(a) && !refs.contains(a)) {
-							refs.add(a);
-						}
-					}
-					if (!refs.isEmpty() && (range == ItemSequenceProperties.Range.DOCUMENT || (i+1)==vars.getCurrentVolume())) {
-						hasContents = true;
-						{
-							ArrayList<Block> b = new ArrayList<>();
-							for (Block blk : pageStartEvents) {
-								Block bl = blk.copy();
-								currentBlockAddress = new BlockAddress(groupNumber, currentBlockAddress.getBlockNumber()+1);
-								bl.setBlockAddress(currentBlockAddress);
-								bl.setMetaPage(ad.getPageNumber());
-								bl.setMetaVolume(i+1);
-								b.add(bl);
-							}
-							volume.addAll(b);
-						}
-						for (String key : refs) {
-							volume.addAll(c.getBlocks(key));
-						}
-						{
-							ArrayList<Block> b = new ArrayList<>();
-							for (Block blk : pageEndEvents) {
-								Block bl = blk.copy();
-								currentBlockAddress = new BlockAddress(groupNumber, currentBlockAddress.getBlockNumber()+1);
-								bl.setBlockAddress(currentBlockAddress);
-								bl.setMetaPage(ad.getPageNumber());
-								bl.setMetaVolume(i+1);
-								b.add(bl);
-							}
-							volume.addAll(b);
-						}
-					}
-				}
-				if (range == ItemSequenceProperties.Range.DOCUMENT && !volume.isEmpty()) {
-					for (Block blk : volumeStartEvents) {
-						Block bl = blk.copy();
-						currentBlockAddress = new BlockAddress(groupNumber, currentBlockAddress.getBlockNumber()+1);
-						bl.setBlockAddress(currentBlockAddress);
-						bl.setMetaVolume(i+1);
-						ret.add(bl);
-					}
-					ret.addAll(volume);
-					for (Block blk : volumeEndEvents) {
-						Block bl = blk.copy();
-						currentBlockAddress = new BlockAddress(groupNumber, currentBlockAddress.getBlockNumber()+1);
-						bl.setBlockAddress(currentBlockAddress);
-						bl.setMetaVolume(i+1);
-						ret.add(bl);
-					}
+			List<AnchorData> items = crh.getItemAnchors(i+1, collectionID, c::containsItemID);
+			if (items!=null && !items.isEmpty() && (range == ItemSequenceProperties.Range.DOCUMENT || (i+1)==vars.getCurrentVolume())) {
+				hasContents = true;
+				VolumeBlocks vb = volumeBlocks.get(i+1);
+				// The items of the volume are the same list as long as the anchors of the volume are unchanged
+				if (vb==null || vb.items!=items || vb.firstBlockNumber!=blockNumber) {
+					vb = newVolumeBlocks(c, i+1, items, blockNumber);
+					volumeBlocks.put(i+1, vb);
 				}
+				ret.addAll(vb.blocks);
+				blockNumber = vb.lastBlockNumber;
 			}
 		}
 		ret.addAll(collectionEndEvents);
@@ -156,6 +113,64 @@ class ItemSequenceEventImpl implements ReferenceListBuilder, BlockGroup {
 		return new ArrayList<>();
 	}
 
+	private VolumeBlocks newVolumeBlocks(ContentCollectionImpl c, int volume, List<AnchorData> items, int firstBlockNumber) {
+		List<Block> pages = new ArrayList<>();
+		int blockNumber = firstBlockNumber;
+		for (AnchorData ad : items) {
+			blockNumber = addEvents(pageStartEvents, pages, blockNumber, volume, ad.getPageNumber());
+			for (String key : ad.getAnchors()) {
+				pages.addAll(c.getBlocks(key));
+			}
+			blockNumber = addEvents(pageEndEvents, pages, blockNumber, volume, ad.getPageNumber());
+		}
+		if (range != ItemSequenceProperties.Range.DOCUMENT || pages.isEmpty()) {
+			// Volume events are only added to volumes with contents
+			return new VolumeBlocks(items, firstBlockNumber, blockNumber, pages);
+		}
+		// The volume events are numbered after the page events
+		List<Block> ret = new ArrayList<>();
+		blockNumber = addEvents(volumeStartEvents, ret, blockNumber, volume, null);
+		ret.addAll(pages);
+		blockNumber = addEvents(volumeEndEvents, ret, blockNumber, volume, null);
+		return new VolumeBlocks(items, firstBlockNumber, blockNumber, ret);
+	}
+
+	/**
+	 * Adds copies of the event blocks to the list.
+	 * @return the block number of the last block added
+	 */
+	private int addEvents(List<Block> events, List<Block> ret, int blockNumber, int volume, Integer page) {
+		for (Block blk : events) {
+			Block bl = blk.copy();
+			blockNumber++;
+			bl.setBlockAddress(new BlockAddress(groupNumber, blockNumber));
+			if (page!=null) {
+				bl.setMetaPage(page);
+			}
+			bl.setMetaVolume(volume);
+			ret.add(bl);
+		}
+		return blockNumber;
+	}
+
+	/**
+	 * Provides the blocks of a volume, so that they can be reused
+	 * when the items of the volume haven't changed.
+	 */
+	private static class VolumeBlocks {
+		private final List<AnchorData> items;
+		private final int firstBlockNumber;
+		private final int lastBlockNumber;
+		private final List<Block> blocks;
+
+		private VolumeBlocks(List<AnchorData> items, int firstBlockNumber, int lastBlockNumber, List<Block> blocks) {
+			this.items = items;
+			this.firstBlockNumber = firstBlockNumber;
+			this.lastBlockNumber = lastBlockNumber;
+			this.blocks = blocks;
+		}
+	}
+
 	@Override
 	public boolean isGenerated() {
 		return true;
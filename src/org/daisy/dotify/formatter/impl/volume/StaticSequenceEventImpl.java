@@ -9,7 +9,6 @@ import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
 import org.daisy.dotify.formatter.impl.search.DefaultContext;
 
 class StaticSequenceEventImpl extends FormatterCoreImpl implements VolumeSequence {
-	private static final long serialVersionUID = 4646831324973203983L;
 	private final SequenceProperties props;
 	private BlockSequence ret;
 
@@ -0,0 +1,165 @@
+package org.daisy.dotify.formatter.impl.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p>Provides a buffered text output. Text is collected in a character buffer
+ * and encoded with a single encoder into a byte buffer, which is written to
+ * the underlying stream when it is full. Unlike a <code>PrintStream</code>,
+ * nothing is written to the stream until a buffer is full or the output is
+ * closed.</p>
+ *
+ * <p>Characters that cannot be encoded are replaced, in the same way as in
+ * a <code>PrintStream</code>. Errors in the underlying stream are thrown as
+ * unchecked exceptions.</p>
+ *
+ * @author Joel Håkansson
+ */
+final class BufferedTextOutput implements Closeable {
+	/**
+	 * The default size of the buffers, in characters and bytes respectively.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	private final OutputStream out;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+
+	/**
+	 * Creates a new output with the default buffer size.
+	 * @param out the underlying stream
+	 * @param charset the charset
+	 */
+	BufferedTextOutput(OutputStream out, Charset charset) {
+		this(out, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new output.
+	 * @param out the underlying stream
+	 * @param charset the charset
+	 * @param size the size of the buffers
+	 * @throws IllegalArgumentException if size is less than 16
+	 */
+	BufferedTextOutput(OutputStream out, Charset charset, int size) {
+		if (size<16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16: " + size);
+		}
+		this.out = out;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(size);
+		this.bytes = ByteBuffer.allocate(size);
+	}
+
+	/**
+	 * Appends a string.
+	 * @param s the string
+	 * @return this object
+	 */
+	BufferedTextOutput append(String s) {
+		int off = 0;
+		int len = s.length();
+		while (off<len) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			int end = Math.min(len, off + chars.remaining());
+			chars.put(s, off, end);
+			off = end;
+		}
+		return this;
+	}
+
+	/**
+	 * Appends a character.
+	 * @param c the character
+	 * @return this object
+	 */
+	BufferedTextOutput append(char c) {
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+		chars.put(c);
+		return this;
+	}
+
+	/**
+	 * Appends the decimal representation of an integer.
+	 * @param value the integer
+	 * @return this object
+	 */
+	BufferedTextOutput append(int value) {
+		return append(Integer.toString(value));
+	}
+
+	/**
+	 * Appends a boolean as "true" or "false".
+	 * @param value the boolean
+	 * @return this object
+	 */
+	BufferedTextOutput append(boolean value) {
+		return append(value?"true":"false");
+	}
+
+	/**
+	 * Appends the line separator of the platform.
+	 * @return this object
+	 */
+	BufferedTextOutput newLine() {
+		return append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Encodes the characters in the buffer. A high surrogate at the end
+	 * of the buffer is kept until the next character is available.
+	 * @param endOfInput true if there is no more input, false otherwise
+	 */
+	private void encode(boolean endOfInput) {
+		chars.flip();
+		while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+			writeBytes();
+		}
+		chars.compact();
+	}
+
+	private void writeBytes() {
+		try {
+			out.write(bytes.array(), 0, bytes.position());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Writes the buffered text to the underlying stream and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			encode(true);
+			CoderResult r;
+			while ((r = encoder.flush(bytes)).isOverflow()) {
+				writeBytes();
+			}
+			if (r.isError()) {
+				r.throwException();
+			}
+			writeBytes();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -1,8 +1,9 @@
 package org.daisy.dotify.formatter.impl.writer;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -13,6 +14,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.namespace.QName;
 
@@ -26,14 +28,22 @@ import org.daisy.dotify.common.io.StateObject;
 
 
 /**
- * PagedMediaWriter implementation that outputs PEF 2008-1.
+ * <p>PagedMediaWriter implementation that outputs PEF 2008-1.</p>
+ * <p>The output is buffered and isn't written to the stream until the buffer
+ * is full or the writer is closed. If the {@link #GZIP_KEY} property is
+ * "true", the output is gzip compressed.</p>
  * @author Joel Håkansson
  *
  */
 class PEFMediaWriter implements PagedMediaWriter {
 	private static final String DC_NAMESPACE_URI = "http://purl.org/dc/elements/1.1/";
 	private static final Logger logger = Logger.getLogger(PEFMediaWriter.class.getCanonicalName());
-	private PrintStream pst;
+	/**
+	 * The name of the property that enables gzip compression of the output.
+	 */
+	static final String GZIP_KEY = "gzip";
+	private final boolean gzip;
+	private BufferedTextOutput out;
 	private boolean hasOpenVolume;
 	private boolean hasOpenSection;
 	private boolean hasOpenPage;
@@ -57,6 +67,7 @@ class PEFMediaWriter implements PagedMediaWriter {
 		cRows = 0;
 		cRowgap = 0;
 		cDuplex = true;
+		gzip = Boolean.parseBoolean(p.getProperty(GZIP_KEY));
 		state = new StateObject("Writer");
 		this.metadata = new ArrayList<>();
 	}
@@ -78,51 +89,44 @@ class PEFMediaWriter implements PagedMediaWriter {
 		}
 		state.assertUnopened();
 		state.open();
-		try {
-			pst = new PrintStream(os, true, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			// should never happen
-			throw new PagedMediaWriterException("Cannot open PrintStream with UTF-8.", e);
+		if (gzip) {
+			try {
+				os = new GZIPOutputStream(os, BufferedTextOutput.DEFAULT_BUFFER_SIZE);
+			} catch (IOException e) {
+				throw new PagedMediaWriterException("Cannot open gzip stream.", e);
+			}
 		}
+		out = new BufferedTextOutput(os, StandardCharsets.UTF_8);
 		hasOpenVolume = false;		
 		hasOpenSection = false;
 		hasOpenPage = false;
-		pst.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-		pst.println("<pef version=\"2008-1\" xmlns=\"http://www.daisy.org/ns/2008/pef\">");
-		pst.println("<head>");
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").newLine();
+		out.append("<pef version=\"2008-1\" xmlns=\"http://www.daisy.org/ns/2008/pef\">").newLine();
+		out.append("<head>").newLine();
 		List<MetaDataItem> meta = organizeMetadata(metadata);
 		Map<String, String> ns = getNamespaces(meta);
 
-		pst.print("<meta");
+		out.append("<meta");
 		for (Entry<String, String> entry : ns.entrySet()) {
-			pst.print(" ");
-			pst.print("xmlns:");
-			pst.print(entry.getValue());
-			pst.print("=\"");
-			pst.print(entry.getKey());
-			pst.print("\"");
+			out.append(" xmlns:").append(entry.getValue()).append("=\"").append(entry.getKey()).append('"');
 		}
-		pst.println(">");
+		out.append('>').newLine();
 
 		if (meta!=null) {
 			for (MetaDataItem item : meta) {
 				String name = ns.get(item.getKey().getNamespaceURI())+":"+item.getKey().getLocalPart();
-				pst.print("<"+ name);
+				out.append('<').append(name);
 				AttributeItem att = item.getAttribute();
 				if (att!=null) {
-					pst.print(" ");
-					pst.print(att.getName());
-					pst.print("=\"");
-					pst.print(escape(att.getValue()));
-					pst.print("\"");
+					out.append(' ').append(att.getName()).append("=\"").append(escape(att.getValue())).append('"');
 				}
-				pst.println(">"+ escape(item.getValue()) + "</" + name + ">");
+				out.append('>').append(escape(item.getValue())).append("</").append(name).append('>').newLine();
 			}
 		}
 
-		pst.println("</meta>");
-		pst.println("</head>");
-		pst.println("<body>");
+		out.append("</meta>").newLine();
+		out.append("</head>").newLine();
+		out.append("<body>").newLine();
 	}
 	
 	private static List<MetaDataItem> organizeMetadata(List<MetaDataItem> meta) {
@@ -195,15 +199,15 @@ class PEFMediaWriter implements PagedMediaWriter {
 		if (!hasOpenSection) {
 			throw new IllegalStateException("No open section.");
 		}
-		pst.println("<page>");
+		out.append("<page>").newLine();
 		hasOpenPage = true;
 	}
 	
 	//performance optimization over nonBraillePattern.matcher(row.getChars()).matches()
-	private boolean validate(Row row) {
+	private boolean validate(String chars) {
 		char c;
-		for (int i=0; i<row.getChars().length(); i++) {
-			c = row.getChars().charAt(i);
+		for (int i=0; i<chars.length(); i++) {
+			c = chars.charAt(i);
 			if (c<0x2800||c>0x28FF) {
 				return false;
 			}
@@ -214,24 +218,31 @@ class PEFMediaWriter implements PagedMediaWriter {
 	@Override
 	public void newRow(Row row) {
 		state.assertOpen();
+		String chars = row.getChars();
 
-		if (errorCount<10 && logger.isLoggable(Level.WARNING) && !validate(row)) {
+		if (errorCount<10 && logger.isLoggable(Level.WARNING) && !validate(chars)) {
 			logger.warning(
 					"Non-braille characters in output"+
-						(errorCount==9?" (supressing additional messages of this kind)":"") + ": " + row.getChars()
+						(errorCount==9?" (supressing additional messages of this kind)":"") + ": " + chars
 					);
 			errorCount++;
 		}
-		pst.println("<row" +
-		(row.getRowSpacing()!=null?" rowgap=\""+(int)Math.floor((row.getRowSpacing()-1)*4)+"\"":"") +
-		(row.getChars().length()>0?">"+row.getChars()+"</row>":"/>")
-		);
+		out.append("<row");
+		if (row.getRowSpacing()!=null) {
+			out.append(" rowgap=\"").append((int)Math.floor((row.getRowSpacing()-1)*4)).append('"');
+		}
+		if (chars.length()>0) {
+			out.append('>').append(chars).append("</row>");
+		} else {
+			out.append("/>");
+		}
+		out.newLine();
 	}
 	
 	@Override
 	public void newRow() {
 		state.assertOpen();
-		pst.println("<row/>");
+		out.append("<row/>").newLine();
 	}
 	
 	@Override
@@ -242,11 +253,11 @@ class PEFMediaWriter implements PagedMediaWriter {
 		cRows = master.getPageHeight();
 		cRowgap = (int)Math.floor((master.getRowSpacing()-1)*4);
 		cDuplex = master.duplex();
-		pst.println("<volume cols=\"" + cCols + 
-				"\" rows=\"" + cRows +
-				"\" rowgap=\"" + cRowgap +
-				"\" duplex=\"" + cDuplex +
-				"\">");
+		out.append("<volume cols=\"").append(cCols)
+			.append("\" rows=\"").append(cRows)
+			.append("\" rowgap=\"").append(cRowgap)
+			.append("\" duplex=\"").append(cDuplex)
+			.append("\">").newLine();
 		hasOpenVolume = true;
 	}
 
@@ -257,21 +268,21 @@ class PEFMediaWriter implements PagedMediaWriter {
 			newVolume(master);
 		}
 		closeOpenSection();
-		pst.print("<section");
+		out.append("<section");
 
 		if (cCols!=master.getPageWidth()) {
-			pst.print(" cols=\"" + master.getPageWidth() + "\"");
+			out.append(" cols=\"").append(master.getPageWidth()).append('"');
 		}
 		if (cRows!=master.getPageHeight()) { 
-			pst.print(" rows=\"" + master.getPageHeight() + "\"");
+			out.append(" rows=\"").append(master.getPageHeight()).append('"');
 		}
 		if (cRowgap!=(int)Math.floor((master.getRowSpacing()-1)*4)) {
-			pst.print(" rowgap=\"" + (int)Math.floor((master.getRowSpacing()-1)*4) + "\"");
+			out.append(" rowgap=\"").append((int)Math.floor((master.getRowSpacing()-1)*4)).append('"');
 		}
 		if (cDuplex!=master.duplex()) {
-			pst.print(" duplex=\"" + master.duplex() + "\"");
+			out.append(" duplex=\"").append(master.duplex()).append('"');
 		}
-		pst.println(">");
+		out.append('>').newLine();
 		hasOpenSection = true;
 	}
 	
@@ -303,7 +314,7 @@ class PEFMediaWriter implements PagedMediaWriter {
 		state.assertOpen();
 		closeOpenSection();
 		if (hasOpenVolume) {
-			pst.println("</volume>");
+			out.append("</volume>").newLine();
 			hasOpenVolume = false;
 		}
 	}
@@ -312,7 +323,7 @@ class PEFMediaWriter implements PagedMediaWriter {
 		state.assertOpen();
 		closeOpenPage();
 		if (hasOpenSection) {
-			pst.println("</section>");
+			out.append("</section>").newLine();
 			hasOpenSection = false;
 		}
 	}
@@ -320,7 +331,7 @@ class PEFMediaWriter implements PagedMediaWriter {
 	private void closeOpenPage() {
 		state.assertOpen();
 		if (hasOpenPage) {
-			pst.println("</page>");
+			out.append("</page>").newLine();
 			hasOpenPage = false;
 		}
 	}
@@ -332,10 +343,15 @@ class PEFMediaWriter implements PagedMediaWriter {
 		}
 		state.assertOpen();
 		closeOpenVolume();
-		pst.println("</body>");
-		pst.println("</pef>");
-		pst.close();
-		state.close();
+		out.append("</body>").newLine();
+		out.append("</pef>").newLine();
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			state.close();
+		}
 	}
 
 }
@@ -22,13 +22,24 @@ class PEFMediaWriterFactory implements PagedMediaWriterFactory {
 
 	@Override
 	public Object getFeature(String key) {
-		return null;
+		if (PEFMediaWriter.GZIP_KEY.equals(key)) {
+			return Boolean.parseBoolean(p.getProperty(PEFMediaWriter.GZIP_KEY));
+		} else {
+			return null;
+		}
 	}
 
 	@Override
 	public void setFeature(String key, Object value)
 			throws PagedMediaWriterConfigurationException {
-		throw new PEFMediaWriterConfigurationException("Unknown feature: " + key);
+		if (PEFMediaWriter.GZIP_KEY.equals(key)) {
+			if (value==null) {
+				throw new PEFMediaWriterConfigurationException("Value of " + key + " cannot be null.");
+			}
+			p.setProperty(PEFMediaWriter.GZIP_KEY, value.toString());
+		} else {
+			throw new PEFMediaWriterConfigurationException("Unknown feature: " + key);
+		}
 	}
 	
 	private class PEFMediaWriterConfigurationException extends PagedMediaWriterConfigurationException {
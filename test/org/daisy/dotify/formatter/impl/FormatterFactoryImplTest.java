@@ -0,0 +1,54 @@
+package org.daisy.dotify.formatter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.daisy.dotify.api.formatter.BlockProperties;
+import org.daisy.dotify.api.formatter.Formatter;
+import org.daisy.dotify.api.formatter.FormatterSequence;
+import org.daisy.dotify.api.formatter.LayoutMasterProperties;
+import org.daisy.dotify.api.formatter.SequenceProperties;
+import org.daisy.dotify.api.formatter.TextProperties;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+@SuppressWarnings("javadoc")
+public class FormatterFactoryImplTest {
+
+	private static void format(FormatterFactoryImpl factory) {
+		Formatter f = factory.newFormatter("sv-SE", "bypass");
+		f.newLayoutMaster("main", new LayoutMasterProperties.Builder(20, 5).build());
+		FormatterSequence s = f.newSequence(new SequenceProperties.Builder("main").build());
+		s.startBlock(new BlockProperties.Builder().build());
+		s.addChars("abc def ghi jkl", new TextProperties.Builder("sv-SE").build());
+		s.endBlock();
+		f.write(Mockito.mock(PagedMediaWriter.class));
+	}
+
+	@Test
+	public void testTranslationCacheIsPerFactory() {
+		FormatterFactoryImpl f1 = new FormatterFactoryImpl();
+		f1.setCreatedWithSPI();
+		FormatterFactoryImpl f2 = new FormatterFactoryImpl();
+		f2.setCreatedWithSPI();
+		assertNotSame(f1.getTranslationCache(), f2.getTranslationCache());
+		format(f1);
+		assertTrue(f1.getTranslationCache().size()>0);
+		assertEquals(0, f2.getTranslationCache().size());
+		assertSame(f1.getTranslationCache(), f1.newPooledFactory().getTranslationCache());
+	}
+
+	@Test
+	public void testTranslationCacheIsClearedWhenTranslatorChanges() {
+		FormatterFactoryImpl f = new FormatterFactoryImpl();
+		f.setCreatedWithSPI();
+		format(f);
+		assertTrue(f.getTranslationCache().size()>0);
+		f.setTranslator(BrailleTranslatorFactoryMaker.newInstance());
+		assertEquals(0, f.getTranslationCache().size());
+	}
+}
@@ -1,6 +1,7 @@
 package org.daisy.dotify.formatter.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -15,8 +16,10 @@ import org.daisy.dotify.api.formatter.FormatterSequence;
 import org.daisy.dotify.api.formatter.LayoutMasterProperties;
 import org.daisy.dotify.api.formatter.SequenceProperties;
 import org.daisy.dotify.api.formatter.TextProperties;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMakerService;
 import org.daisy.dotify.api.translator.TextAttribute;
+import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
 import org.daisy.dotify.api.translator.TranslatorConfigurationException;
 import org.daisy.dotify.api.writer.MetaDataItem;
 import org.daisy.dotify.api.writer.PagedMediaWriter;
@@ -24,6 +27,7 @@ import org.daisy.dotify.api.writer.PagedMediaWriterException;
 import org.daisy.dotify.api.writer.Row;
 import org.daisy.dotify.api.writer.SectionProperties;
 import org.daisy.dotify.common.text.IdentityFilter;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics;
 import org.daisy.dotify.translator.DefaultBrailleFilter;
 import org.daisy.dotify.translator.DefaultMarkerProcessor;
 import org.daisy.dotify.translator.Marker;
@@ -111,4 +115,29 @@ public class FormatterImplTest {
 		assertEquals("1>a2>b<2c<1", sb.toString());
 	}
 	
+	@Test
+	public void testMetrics() {
+		FormatterImpl f1 = new FormatterImpl(
+				BrailleTranslatorFactoryMaker.newInstance(),
+				TextBorderFactoryMaker.newInstance(),
+				new FormatterConfiguration.Builder("sv-SE", "bypass").build());
+		f1.newLayoutMaster("main", new LayoutMasterProperties.Builder(20, 5).build());
+		FormatterSequence f = f1.newSequence(new SequenceProperties.Builder("main").build());
+		TextProperties tp = new TextProperties.Builder("sv-SE").build();
+		for (int i=0; i<10; i++) {
+			f.startBlock(new BlockProperties.Builder().build());
+			f.addChars("abc def ghi jkl", tp);
+			f.endBlock();
+		}
+		f1.write(Mockito.mock(PagedMediaWriter.class));
+		FormatterMetrics metrics = f1.getMetrics();
+		assertTrue(metrics.getCount(FormatterMetrics.Counter.ITERATIONS)>=1);
+		assertTrue(metrics.getPeakPages()>=2);
+		assertTrue(metrics.getCount(FormatterMetrics.Counter.TRANSLATIONS)>0);
+		assertTrue(metrics.getCount(FormatterMetrics.Counter.SPLIT_POINT_SEARCHES)>=2);
+		assertTrue(metrics.getCalls(FormatterMetrics.Phase.ROW_BREAKING)>0);
+		assertEquals(metrics.getCount(FormatterMetrics.Counter.PAGES), metrics.getCalls(FormatterMetrics.Phase.PAGE_SPLITTING));
+		assertEquals(1, metrics.getCalls(FormatterMetrics.Phase.WRITING));
+	}
+
 }
@@ -0,0 +1,88 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.daisy.dotify.api.translator.BrailleTranslator;
+import org.daisy.dotify.api.translator.BrailleTranslatorResult;
+import org.daisy.dotify.api.translator.Translatable;
+import org.daisy.dotify.api.translator.TranslationException;
+import org.daisy.dotify.common.text.IdentityFilter;
+import org.daisy.dotify.translator.DefaultBrailleFilter;
+import org.daisy.dotify.translator.SimpleBrailleTranslator;
+import org.daisy.dotify.translator.impl.DefaultBrailleFinalizer;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class CachingBrailleTranslatorTest {
+	private final String loc = "und";
+	private final String mode = "bypass";
+
+	private BrailleTranslator newTranslator() {
+		return spy(new SimpleBrailleTranslator(
+				new DefaultBrailleFilter(new IdentityFilter(), loc, null, null),
+				new DefaultBrailleFinalizer(), mode));
+	}
+
+	@Test
+	public void testCachedResultIsIndependentCopy() throws TranslationException {
+		BrailleTranslator t = newTranslator();
+		TranslationCache cache = new TranslationCache();
+		CachingBrailleTranslator ct = new CachingBrailleTranslator(t, cache, loc);
+		BrailleTranslatorResult r1 = ct.translate(Translatable.text("abcdef").build());
+		assertEquals("abc", r1.nextTranslatedRow(3, true));
+		BrailleTranslatorResult r2 = ct.translate(Translatable.text("abcdef").build());
+		assertEquals("abcdef", r2.getTranslatedRemainder());
+		verify(t, times(1)).translate(any(Translatable.class));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testKeyIncludesProperties() throws TranslationException {
+		BrailleTranslator t = newTranslator();
+		TranslationCache cache = new TranslationCache();
+		CachingBrailleTranslator ct = new CachingBrailleTranslator(t, cache, loc);
+		ct.translate(Translatable.text("abc").build());
+		ct.translate(Translatable.text("abc").markCapitalLetters(false).build());
+		ct.translate(Translatable.text("abc").locale("en").build());
+		verify(t, times(3)).translate(any(Translatable.class));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testCacheIsShared() throws TranslationException {
+		TranslationCache cache = new TranslationCache();
+		Object id = new Object();
+		new CachingBrailleTranslator(newTranslator(), id, cache, loc).translate(Translatable.text("abc").build());
+		BrailleTranslator t = newTranslator();
+		new CachingBrailleTranslator(t, id, cache, loc).translate(Translatable.text("abc").build());
+		verify(t, times(0)).translate(any(Translatable.class));
+	}
+
+	@Test
+	public void testKeyIncludesTranslatorIdentity() throws TranslationException {
+		TranslationCache cache = new TranslationCache();
+		new CachingBrailleTranslator(newTranslator(), cache, loc).translate(Translatable.text("abc").build());
+		BrailleTranslator t = newTranslator();
+		new CachingBrailleTranslator(t, cache, loc).translate(Translatable.text("abc").build());
+		verify(t, times(1)).translate(any(Translatable.class));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testEviction() throws TranslationException {
+		TranslationCache cache = new TranslationCache(2);
+		CachingBrailleTranslator ct = new CachingBrailleTranslator(newTranslator(), cache, loc);
+		ct.translate(Translatable.text("a").build());
+		ct.translate(Translatable.text("b").build());
+		ct.translate(Translatable.text("a").build());
+		ct.translate(Translatable.text("c").build());
+		assertEquals(2, cache.size());
+		ct.translate(Translatable.text("a").build());
+		assertEquals(2, cache.getHitCount());
+	}
+}
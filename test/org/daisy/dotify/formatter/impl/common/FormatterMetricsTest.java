@@ -0,0 +1,70 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics.Counter;
+import org.daisy.dotify.formatter.impl.common.FormatterMetrics.Phase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class FormatterMetricsTest {
+
+	@Test
+	public void testNestedPhasesAreExclusive() throws InterruptedException {
+		FormatterMetrics metrics = new FormatterMetrics();
+		FormatterMetrics.Timer outer = metrics.start(Phase.PAGE_SPLITTING);
+		try {
+			FormatterMetrics.Timer inner = metrics.start(Phase.ROW_BREAKING);
+			try {
+				Thread.sleep(20);
+			} finally {
+				inner.close();
+			}
+			inner = metrics.start(Phase.ROW_BREAKING);
+			try {
+				Thread.sleep(20);
+			} finally {
+				inner.close();
+			}
+		} finally {
+			outer.close();
+		}
+		assertEquals(1, metrics.getCalls(Phase.PAGE_SPLITTING));
+		assertEquals(2, metrics.getCalls(Phase.ROW_BREAKING));
+		assertTrue(metrics.getNanos(Phase.ROW_BREAKING)>=40_000_000);
+		assertTrue(metrics.getNanos(Phase.PAGE_SPLITTING)<metrics.getNanos(Phase.ROW_BREAKING));
+		assertEquals(0, metrics.getCalls(Phase.WRITING));
+	}
+
+	@Test
+	public void testPeakPages() {
+		FormatterMetrics metrics = new FormatterMetrics();
+		metrics.startIteration();
+		metrics.pageCreated();
+		metrics.pageCreated();
+		metrics.increment(Counter.RESTARTS);
+		metrics.startIteration();
+		metrics.pageCreated();
+		assertEquals(2, metrics.getCount(Counter.ITERATIONS));
+		assertEquals(1, metrics.getCount(Counter.RESTARTS));
+		assertEquals(3, metrics.getCount(Counter.PAGES));
+		assertEquals(2, metrics.getPeakPages());
+	}
+
+	@Test
+	public void testJson() {
+		FormatterMetrics metrics = new FormatterMetrics();
+		metrics.increment(Counter.TRANSLATIONS);
+		assertEquals("{\"phases\":{"
+				+ "\"parsing\":{\"nanos\":0,\"calls\":0},"
+				+ "\"scenarioSelection\":{\"nanos\":0,\"calls\":0},"
+				+ "\"rowBreaking\":{\"nanos\":0,\"calls\":0},"
+				+ "\"pageSplitting\":{\"nanos\":0,\"calls\":0},"
+				+ "\"volumeSplitting\":{\"nanos\":0,\"calls\":0},"
+				+ "\"writing\":{\"nanos\":0,\"calls\":0}},"
+				+ "\"counters\":{\"iterations\":0,\"restarts\":0,\"splitPointSearches\":0,"
+				+ "\"dataSourceCopies\":0,\"translations\":1,\"pages\":0},"
+				+ "\"peakPages\":0}", metrics.toJson());
+	}
+}
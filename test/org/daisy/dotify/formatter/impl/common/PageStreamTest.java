@@ -0,0 +1,146 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.daisy.dotify.api.writer.AttributeItem;
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class PageStreamTest {
+
+	private static Row row(String chars, Float rowSpacing) {
+		return new Row() {
+			@Override
+			public String getChars() {
+				return chars;
+			}
+
+			@Override
+			public Float getRowSpacing() {
+				return rowSpacing;
+			}
+		};
+	}
+
+	private static SectionProperties props(int width, boolean duplex) {
+		return new PageStream.Properties(width, 29, 1f, duplex);
+	}
+
+	private static byte[] record(List<MetaDataItem> meta) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PageStreamWriter w = new PageStreamWriter();
+		w.prepare(meta);
+		w.open(out);
+		w.newVolume(props(32, true));
+		w.newSection(props(32, true));
+		w.newPage();
+		w.newRow(row("⠁⠃⠉", null));
+		w.newRow();
+		w.newRow(row("⠁⠃⠉", 2f));
+		w.newRow(row("abc ö", null));
+		w.newPage();
+		w.newRow(row("abc ö", 0.5f));
+		w.newSection(props(20, false));
+		w.newVolume(props(32, true));
+		w.newSection(props(32, true));
+		w.close();
+		return out.toByteArray();
+	}
+
+	private static final List<String> EXPECTED = Arrays.asList(
+			"volume 32x29,1.0,true",
+			"section 32x29,1.0,true",
+			"page",
+			"row ⠁⠃⠉",
+			"row",
+			"row ⠁⠃⠉ 2.0",
+			"row abc ö",
+			"page",
+			"row abc ö 0.5",
+			"section 20x29,1.0,false",
+			"volume 32x29,1.0,true",
+			"section 32x29,1.0,true");
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MetaDataItem title = new MetaDataItem(new QName("http://purl.org/dc/elements/1.1/", "title", "dc"), "Title");
+		MetaDataItem meta = new MetaDataItem.Builder(new QName("http://www.daisy.org/ns/2008/pef", "meta"), "value")
+				.attribute(new AttributeItem("name", "x")).build();
+		byte[] data = record(Arrays.asList(title, meta));
+		try (PageStreamReader r = new PageStreamReader(new ByteArrayInputStream(data))) {
+			List<MetaDataItem> m = r.getMetadata();
+			assertEquals(2, m.size());
+			assertEquals(title.getKey(), m.get(0).getKey());
+			assertEquals("dc", m.get(0).getKey().getPrefix());
+			assertEquals("Title", m.get(0).getValue());
+			assertEquals(null, m.get(0).getAttribute());
+			assertEquals("name", m.get(1).getAttribute().getName());
+			assertEquals("x", m.get(1).getAttribute().getValue());
+			RecordingWriter w = new RecordingWriter();
+			r.replay(w);
+			assertEquals(EXPECTED, w.calls);
+		}
+	}
+
+	@Test
+	public void testReplayToSeveralWriters() throws IOException {
+		byte[] data = record(Collections.emptyList());
+		try (PageStreamReader r = new PageStreamReader(new ByteArrayInputStream(data))) {
+			RecordingWriter w1 = new RecordingWriter();
+			RecordingWriter w2 = new RecordingWriter();
+			r.replay(w1, w2);
+			assertEquals(EXPECTED, w1.calls);
+			assertEquals(EXPECTED, w2.calls);
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PageStreamWriter w = new PageStreamWriter();
+		w.open(out);
+		w.newVolume(props(40, true));
+		w.newSection(props(40, true));
+		String chars = "⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿⠿";
+		for (int i=0; i<100; i++) {
+			w.newPage();
+			w.newRow(row(chars, null));
+		}
+		w.close();
+		// a braille row is written once, one byte per character, and then referenced
+		// with five bytes per page (page, row, flags and a two byte slot index)
+		assertTrue(out.size() < chars.length() + 100 * 5 + 64);
+		try (PageStreamReader r = new PageStreamReader(new ByteArrayInputStream(out.toByteArray()))) {
+			RecordingWriter rw = new RecordingWriter();
+			r.replay(rw);
+			assertEquals(202, rw.calls.size());
+			assertEquals("row " + chars, rw.calls.get(201));
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testNotAPageStream() throws IOException {
+		new PageStreamReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testReplayTwice() throws IOException {
+		try (PageStreamReader r = new PageStreamReader(new ByteArrayInputStream(record(Collections.emptyList())))) {
+			r.replay();
+			r.replay();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriter;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
+
+/**
+ * Records the calls made to a writer as strings.
+ */
+@SuppressWarnings("javadoc")
+class RecordingWriter implements PagedMediaWriter {
+	final List<String> calls = new ArrayList<>();
+
+	private static String toString(SectionProperties props) {
+		return props.getPageWidth() + "x" + props.getPageHeight() + "," + props.getRowSpacing() + "," + props.duplex();
+	}
+
+	@Override
+	public void newVolume(SectionProperties props) {
+		calls.add("volume " + toString(props));
+	}
+
+	@Override
+	public void newSection(SectionProperties props) {
+		calls.add("section " + toString(props));
+	}
+
+	@Override
+	public void newPage() {
+		calls.add("page");
+	}
+
+	@Override
+	public void newRow(Row row) {
+		calls.add("row " + row.getChars() + (row.getRowSpacing()!=null?" " + row.getRowSpacing():""));
+	}
+
+	@Override
+	public void newRow() {
+		calls.add("row");
+	}
+
+	@Override
+	public void prepare(List<MetaDataItem> meta) {
+	}
+
+	@Override
+	public void open(OutputStream os) {
+	}
+
+	@Override
+	public void close() {
+		calls.add("close");
+	}
+}
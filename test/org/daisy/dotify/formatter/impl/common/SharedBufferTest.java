@@ -0,0 +1,97 @@
+package org.daisy.dotify.formatter.impl.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SharedBufferTest {
+
+	private static SharedBuffer<String> newBuffer(String ... values) {
+		SharedBuffer<String> ret = new SharedBuffer<>();
+		for (String v : values) {
+			ret.add(v);
+		}
+		return ret;
+	}
+
+	@Test
+	public void testAdd() {
+		SharedBuffer<String> b = newBuffer();
+		for (int i=0; i<100; i++) {
+			b.add("" + i);
+		}
+		assertEquals(100, b.size());
+		assertEquals("0", b.get(0));
+		assertEquals("99", b.get(99));
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		SharedBuffer<String> b = newBuffer("a", "b");
+		SharedBuffer<String> c = b.copy();
+		b.add("c");
+		c.add("x");
+		c.add("y");
+		assertEquals(Arrays.asList("a", "b", "c"), b);
+		assertEquals(Arrays.asList("a", "b", "x", "y"), c);
+		b.add("d");
+		assertEquals(Arrays.asList("a", "b", "c", "d"), b);
+	}
+
+	@Test
+	public void testTail() {
+		SharedBuffer<String> b = newBuffer("a", "b", "c");
+		SharedBuffer<String> t = b.tail(1);
+		assertEquals(Arrays.asList("b", "c"), t);
+		t.add("d");
+		b.add("x");
+		assertEquals(Arrays.asList("b", "c", "d"), t);
+		assertEquals(Arrays.asList("a", "b", "c", "x"), b);
+	}
+
+	@Test
+	public void testTailBeyondSize() {
+		SharedBuffer<String> b = newBuffer("a", "b");
+		SharedBuffer<String> t = b.tail(5);
+		assertTrue(t.isEmpty());
+		t.add("c");
+		assertEquals(Arrays.asList("c"), t);
+		assertEquals(Arrays.asList("a", "b"), b);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testTailNegative() {
+		newBuffer("a").tail(-1);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testGetOutsideCopy() {
+		SharedBuffer<String> b = newBuffer("a");
+		SharedBuffer<String> c = b.copy();
+		b.add("b");
+		c.get(1);
+	}
+
+	@Test
+	public void testClearDoesNotAffectCopy() {
+		SharedBuffer<String> b = newBuffer("a", "b");
+		SharedBuffer<String> c = b.copy();
+		b.clear();
+		assertTrue(b.isEmpty());
+		b.add("x");
+		assertEquals(Arrays.asList("x"), b);
+		assertEquals(Arrays.asList("a", "b"), c);
+	}
+
+	@Test
+	public void testToArray() {
+		SharedBuffer<String> b = newBuffer("a", "b", "c").tail(1);
+		assertArrayEquals(new Object[]{"b", "c"}, b.toArray());
+		assertArrayEquals(new String[]{"b", "c"}, b.toArray(new String[0]));
+	}
+}
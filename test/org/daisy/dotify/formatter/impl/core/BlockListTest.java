@@ -0,0 +1,73 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.daisy.dotify.formatter.impl.row.RowDataProperties;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class BlockListTest {
+
+	private static List<Block> newBlocks(int count) {
+		List<Block> ret = new ArrayList<>();
+		for (int i=0; i<count; i++) {
+			ret.add(new RegularBlock("b"+i, new RowDataProperties.Builder().build(), null));
+		}
+		return ret;
+	}
+
+	@Test
+	public void testAddAndRemove() {
+		List<Block> blocks = newBlocks(200);
+		BlockList list = new BlockList();
+		list.addAll(blocks);
+		assertEquals(blocks, list);
+		assertSame(blocks.get(199), list.getLast());
+		assertSame(blocks.get(199), list.removeLast());
+		assertEquals(blocks.subList(0, 199), list);
+	}
+
+	@Test
+	public void testView() {
+		List<Block> blocks = newBlocks(130);
+		BlockList list = new BlockList();
+		list.addAll(blocks.subList(0, 100));
+		List<Block> view = list.view();
+		list.add(blocks.get(100));
+		list.removeLast();
+		list.removeLast();
+		list.addAll(blocks.subList(101, 130));
+		assertEquals(blocks.subList(0, 100), view);
+		assertEquals(blocks.subList(10, 70), view.subList(10, 70));
+		assertEquals(blocks.subList(20, 30), view.subList(10, 70).subList(10, 20));
+		assertEquals(128, list.size());
+		assertSame(blocks.get(101), list.get(99));
+	}
+
+	@Test
+	public void testViewRemoveAcrossChunks() {
+		List<Block> blocks = newBlocks(70);
+		BlockList list = new BlockList();
+		list.addAll(blocks.subList(0, 65));
+		List<Block> view = list.view();
+		list.removeLast();
+		list.removeLast();
+		list.removeLast();
+		list.addAll(blocks.subList(65, 70));
+		assertEquals(blocks.subList(0, 65), view);
+		assertSame(blocks.get(63), view.get(63));
+		assertEquals(67, list.size());
+		assertSame(blocks.get(65), list.get(62));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testViewIsImmutable() {
+		BlockList list = new BlockList();
+		list.addAll(newBlocks(1));
+		list.view().add(list.get(0));
+	}
+}
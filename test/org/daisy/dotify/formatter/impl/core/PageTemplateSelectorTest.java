@@ -0,0 +1,113 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.daisy.dotify.api.formatter.Condition;
+import org.daisy.dotify.api.formatter.Context;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class PageTemplateSelectorTest {
+
+	private static class ModCondition implements PeriodicCondition {
+		private final int period;
+		private final int remainder;
+		private final AtomicInteger evaluations = new AtomicInteger();
+
+		private ModCondition(int period, int remainder) {
+			this.period = period;
+			this.remainder = remainder;
+		}
+
+		@Override
+		public boolean evaluate() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean evaluate(Context context) {
+			evaluations.incrementAndGet();
+			return context.getCurrentPage()%period==remainder;
+		}
+
+		@Override
+		public int getPeriod() {
+			return period;
+		}
+	}
+
+	@Test
+	public void testPeriodic() {
+		ModCondition even = new ModCondition(2, 0);
+		ModCondition third = new ModCondition(3, 1);
+		PageTemplate t1 = new PageTemplate(even, 1);
+		PageTemplate t2 = new PageTemplate(third, 1);
+		PageTemplate def = new PageTemplate(1);
+		PageTemplateSelector selector = new PageTemplateSelector(Arrays.asList(t1, t2), def);
+		assertTrue(selector.isPeriodic());
+		int evaluations = even.evaluations.get() + third.evaluations.get();
+		for (int i=1; i<100; i++) {
+			PageTemplate expected = i%2==0?t1:(i%3==1?t2:def);
+			assertSame(expected, selector.getTemplate(i));
+		}
+		assertEquals(evaluations, even.evaluations.get() + third.evaluations.get());
+	}
+
+	@Test
+	public void testNotPeriodic() {
+		AtomicInteger evaluations = new AtomicInteger();
+		Condition first = new Condition() {
+			@Override
+			public boolean evaluate() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean evaluate(Context context) {
+				evaluations.incrementAndGet();
+				return context.getCurrentPage()==1;
+			}
+		};
+		PageTemplate t1 = new PageTemplate(first, 1);
+		PageTemplate t2 = new PageTemplate(null, 1);
+		PageTemplateSelector selector = new PageTemplateSelector(Arrays.asList(t1, t2), new PageTemplate(1));
+		assertFalse(selector.isPeriodic());
+		for (int j=0; j<2; j++) {
+			assertSame(t1, selector.getTemplate(1));
+			assertSame(t2, selector.getTemplate(2));
+			assertSame(t2, selector.getTemplate(300));
+		}
+		assertEquals(3, evaluations.get());
+	}
+
+	@Test
+	public void testPeriodIgnoresUnreachableTemplates() {
+		Condition any = new Condition() {
+			@Override
+			public boolean evaluate() {
+				return false;
+			}
+
+			@Override
+			public boolean evaluate(Context context) {
+				return false;
+			}
+		};
+		assertEquals(2, PageTemplateSelector.getPeriod(Arrays.asList(
+				new PageTemplate(new ModCondition(2, 1), 1),
+				new PageTemplate(null, 1),
+				new PageTemplate(any, 1))));
+		assertEquals(0, PageTemplateSelector.getPeriod(Arrays.asList(
+				new PageTemplate(new ModCondition(2, 1), 1),
+				new PageTemplate(any, 1))));
+		assertEquals(0, PageTemplateSelector.getPeriod(Arrays.asList(
+				new PageTemplate(new ModCondition(1000, 1), 1),
+				new PageTemplate(new ModCondition(999, 1), 1))));
+	}
+}
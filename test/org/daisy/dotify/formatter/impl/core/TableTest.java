@@ -0,0 +1,166 @@
+package org.daisy.dotify.formatter.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.daisy.dotify.api.formatter.FormatterConfiguration;
+import org.daisy.dotify.api.formatter.FormatterCore;
+import org.daisy.dotify.api.formatter.NumeralStyle;
+import org.daisy.dotify.api.formatter.TableCellProperties;
+import org.daisy.dotify.api.formatter.TableProperties;
+import org.daisy.dotify.api.formatter.TextProperties;
+import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
+import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
+import org.daisy.dotify.formatter.impl.row.AbstractBlockContentManager;
+import org.daisy.dotify.formatter.impl.row.RowImpl;
+import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
+import org.daisy.dotify.formatter.impl.search.DefaultContext;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TableTest {
+	private static final String[] WORDS = {"abc", "de", "fghij", "k", "lmnop qr", "stu vwx yz"};
+
+	private static List<String> renderTable(String property) {
+		if (property!=null) {
+			System.setProperty(property, "true");
+		}
+		try {
+			FormatterContext fcontext = new FormatterContext(
+					BrailleTranslatorFactoryMaker.newInstance(),
+					TextBorderFactoryMaker.newInstance(),
+					new FormatterConfiguration.Builder("sv-SE", "bypass").build()
+			);
+			FormatterCoreImpl formatter = new FormatterCoreImpl(fcontext);
+			TextProperties tp = new TextProperties.Builder("sv-SE").build();
+			formatter.startTable(new TableProperties.Builder().tableColSpacing(1).build());
+			for (int r=0; r<6; r++) {
+				formatter.beginsTableRow();
+				for (int c=0; c<4; c++) {
+					FormatterCore cell = formatter.beginsTableCell(new TableCellProperties.Builder().build());
+					cell.addChars(WORDS[(r*5+c*3)%WORDS.length], tp);
+				}
+			}
+			formatter.endTable();
+			Block table = formatter.get(0);
+			BlockContext context = BlockContext.from(new DefaultContext.Builder(new CrossReferenceHandler()).build())
+					.flowWidth(30)
+					.formatterContext(fcontext)
+					.build();
+			AbstractBlockContentManager bcm = table.getBlockContentManager(context);
+			List<String> ret = new ArrayList<>();
+			Optional<RowImpl> row;
+			while ((row=bcm.getNext()).isPresent()) {
+				ret.add(row.get().getChars());
+			}
+			return ret;
+		} finally {
+			if (property!=null) {
+				System.clearProperty(property);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelColumnSearch() {
+		List<String> expected = renderTable(null);
+		assertEquals(10, expected.size());
+		assertEquals(expected, renderTable(Table.PARALLEL_PROPERTY));
+	}
+
+	@Test
+	public void testVolatileCells() {
+		FormatterContext fcontext = new FormatterContext(
+				BrailleTranslatorFactoryMaker.newInstance(),
+				TextBorderFactoryMaker.newInstance(),
+				new FormatterConfiguration.Builder("sv-SE", "bypass").build()
+		);
+		FormatterCoreImpl formatter = new FormatterCoreImpl(fcontext);
+		TextProperties tp = new TextProperties.Builder("sv-SE").build();
+		formatter.startTable(new TableProperties.Builder().build());
+		formatter.beginsTableRow();
+		formatter.beginsTableCell(new TableCellProperties.Builder().build()).addChars(WORDS[0], tp);
+		FormatterCore cell = formatter.beginsTableCell(new TableCellProperties.Builder().build());
+		cell.addChars(WORDS[1], tp);
+		formatter.endTable();
+		formatter.startTable(new TableProperties.Builder().build());
+		formatter.beginsTableRow();
+		formatter.beginsTableCell(new TableCellProperties.Builder().build()).addChars(WORDS[0], tp);
+		cell = formatter.beginsTableCell(new TableCellProperties.Builder().build());
+		cell.insertReference("ref", NumeralStyle.DEFAULT);
+		formatter.endTable();
+		Table table = (Table)formatter.get(0);
+		Table tableWithReference = (Table)formatter.get(1);
+		assertFalse(table.hasVolatileCells());
+		// The reference is added to the cell, not to the table
+		assertFalse(tableWithReference.isVolatile());
+		assertTrue(tableWithReference.hasVolatileCells());
+	}
+
+	@Test
+	public void testContentWidths() {
+		assertEquals(renderTable(null), renderTable(Table.CONTENT_WIDTHS_PROPERTY));
+	}
+
+	@Test
+	public void testCellCache() {
+		FormatterContext fcontext = new FormatterContext(
+				BrailleTranslatorFactoryMaker.newInstance(),
+				TextBorderFactoryMaker.newInstance(),
+				new FormatterConfiguration.Builder("sv-SE", "bypass").build()
+		);
+		TextProperties tp = new TextProperties.Builder("sv-SE").build();
+		TableData td = new TableData(fcontext);
+		for (int r=0; r<2; r++) {
+			td.beginsTableRow();
+			for (int c=0; c<2; c++) {
+				td.beginsTableCell(new TableCellProperties.Builder().build()).addChars(WORDS[4+c], tp);
+			}
+		}
+		td.closeTable();
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		DefaultContext dc = new DefaultContext.Builder(crh).build();
+		TableCell cell = td.cellForGrid(0, 1);
+		AtomicInteger renderings = new AtomicInteger();
+		IntFunction<CellData> render = w->{
+			renderings.incrementAndGet();
+			return cell.render(fcontext, dc, crh, w, false);
+		};
+		Table.SearchCache cache = new Table.SearchCache(td);
+		CellData wide = cache.getCell(cell, 10, render);
+		CellData narrow = cache.getCell(cell, 4, render);
+		CellData wideAgain = cache.getCell(cell, 10, render);
+		assertEquals(2, renderings.get());
+		// The cached rendering is reused, the row iterators are not
+		assertSame(wide.getRows(), wideAgain.getRows());
+		while (wide.getRowIterator().hasNext()) {
+			wide.getRowIterator().next();
+		}
+		assertTrue(wideAgain.getRowIterator().hasNext());
+		// The cached renderings are the same as new renderings
+		assertEquals(toChars(cell.render(fcontext, dc, crh, 10, false)), toChars(wideAgain));
+		assertEquals(toChars(cell.render(fcontext, dc, crh, 4, false)), toChars(narrow));
+		assertFalse(toChars(wideAgain).equals(toChars(narrow)));
+	}
+
+	@Test
+	public void testSameTableTwice() {
+		assertEquals(renderTable(null), renderTable(null));
+	}
+
+	private static List<String> toChars(CellData cd) {
+		List<String> ret = new ArrayList<>();
+		for (RowImpl r : cd.getRows()) {
+			ret.add(r.getChars());
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,36 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ExpressionCacheTest {
+
+	@Test
+	public void testSameExpression() {
+		ExpressionCache cache = new ExpressionCache();
+		assertSame(cache.get("(+ 1 2)"), cache.get("(+ 1 2)"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		ExpressionCache cache = new ExpressionCache(2);
+		CompiledExpression a = cache.get("(+ 1 2)");
+		CompiledExpression b = cache.get("(+ 1 3)");
+		// Makes (+ 1 2) the most recently used
+		cache.get("(+ 1 2)");
+		cache.get("(+ 1 4)");
+		assertEquals(2, cache.size());
+		assertSame(a, cache.get("(+ 1 2)"));
+		assertNotSame(b, cache.get("(+ 1 3)"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMaxSize() {
+		new ExpressionCache(0);
+	}
+}
@@ -1,5 +1,6 @@
 package org.daisy.dotify.formatter.impl.obfl;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import org.daisy.dotify.api.obfl.Expression;
 import org.daisy.dotify.api.text.Integer2TextConfigurationException;
@@ -207,6 +208,41 @@ public class ExpressionTest {
 		assertEquals("c", e.evaluate("(numeral-format lower-alpha 3)"));
 	}
 
+	@Test
+	public void testExpression_localVariablesAreNotRetained() {
+		assertEquals(3, e.evaluate("(set var 3) $var"));
+		assertEquals("$var", e.evaluate("$var"));
+	}
+
+	@Test
+	public void testExpression_compiledWithGlobalVariables() {
+		Expression e2 = new ExpressionImpl(null);
+		e2.setVariable("v", 1);
+		assertEquals(2, e2.evaluate("(+ $v 1)"));
+		e2.setVariable("v", 5);
+		assertEquals(6, e2.evaluate("(+ $v 1)"));
+		e2.removeVariable("v");
+		assertEquals("$v", e2.evaluate("(concat $v)"));
+	}
+
+	@Test
+	public void testExpression_errorIsRepeated() {
+		for (int i=0; i<2; i++) {
+			try {
+				e.evaluate("(+ 1 (foo 2))");
+				fail();
+			} catch (IllegalArgumentException ex) {
+				assertEquals("Unknown operator: 'foo'", ex.getMessage());
+			}
+		}
+	}
+
+	@Test(expected=NumberFormatException.class)
+	public void testExpression_errorsInEvaluationOrder() {
+		// The arguments are evaluated before the operator is resolved
+		e.evaluate("(foo (+ \"a\" 1))");
+	}
+
 	/*
 		input + " -> " + ret + " (" +ret.getClass() + ")";
 	 */
@@ -0,0 +1,53 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.daisy.dotify.api.formatter.Context;
+import org.daisy.dotify.api.obfl.ExpressionFactory;
+import org.daisy.dotify.formatter.impl.search.CrossReferenceHandler;
+import org.daisy.dotify.formatter.impl.search.DefaultContext;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class OBFLDynamicContentTest {
+	private static final String[] EXPRESSIONS = {
+			"(+ $page 1)",
+			"(concat \"Page \" $page \" of volume \" $volume)",
+			"(if (= (% $page 2) 0) \"even\" \"odd\")",
+			"(concat \"$page\" $page)",
+			"$page",
+			"(concat $started-page-number \"-\" $started-volume-number)",
+			"(+ $volumes $sheets-in-document $sheets-in-volume)",
+	};
+
+	private static String resolved(ExpressionFactory ef, String exp, Context context) {
+		// the way dynamic content was evaluated before variable slots
+		OBFLDynamicContent c = new OBFLDynamicContent(exp, ef, true);
+		return ef.newExpression().evaluate(ExpressionTools.resolveVariables(exp, c.buildArgs(context))).toString();
+	}
+
+	@Test
+	public void testSameAsResolvedVariables() {
+		ExpressionFactoryImpl ef = new ExpressionFactoryImpl();
+		ef.setCreatedWithSPI();
+		for (String exp : EXPRESSIONS) {
+			OBFLDynamicContent content = new OBFLDynamicContent(exp, ef, true);
+			for (int page=1; page<5; page++) {
+				Context context = new DefaultContext.Builder(new CrossReferenceHandler())
+						.currentPage(page).currentVolume(2).metaPage(page+10).metaVolume(1).build();
+				assertEquals(exp, resolved(ef, exp, context), content.render(context));
+			}
+		}
+	}
+
+	@Test
+	public void testRenamedVariable() {
+		ExpressionFactoryImpl ef = new ExpressionFactoryImpl();
+		ef.setCreatedWithSPI();
+		OBFLDynamicContent content = new OBFLDynamicContent("(concat $p \"-\" $page)", ef, false);
+		Context context = new DefaultContext.Builder(new CrossReferenceHandler()).currentPage(3).build();
+		assertEquals("$p-3", content.render(context));
+		content.setPageNumberVariable("p");
+		assertEquals("3-$page", content.render(context));
+	}
+}
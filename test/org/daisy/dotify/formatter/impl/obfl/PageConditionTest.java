@@ -0,0 +1,29 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.OptionalInt;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class PageConditionTest {
+
+	@Test
+	public void testGetPeriod() {
+		assertEquals(OptionalInt.of(1), PageCondition.getPeriod(null));
+		assertEquals(OptionalInt.of(2), PageCondition.getPeriod("(= (% $page 2) 0)"));
+		assertEquals(OptionalInt.of(2), PageCondition.getPeriod(" (=  1 (%  $page 2 ))"));
+		assertEquals(OptionalInt.of(4), PageCondition.getPeriod("(= (% $page 4) 3)"));
+	}
+
+	@Test
+	public void testNotPeriodic() {
+		assertFalse(PageCondition.getPeriod("(= $page 1)").isPresent());
+		assertFalse(PageCondition.getPeriod("(= (% $volume 2) 0)").isPresent());
+		assertFalse(PageCondition.getPeriod("(= (% $page 0) 0)").isPresent());
+		assertFalse(PageCondition.getPeriod("(= (% $pages 2) 0)").isPresent());
+		assertFalse(PageCondition.getPeriod("(& (= (% $page 2) 0) (= $page 1))").isPresent());
+	}
+}
@@ -0,0 +1,54 @@
+package org.daisy.dotify.formatter.impl.obfl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class XMLEventBufferTest {
+
+	private static XMLEventIterator transform(String xml) throws TransformerException {
+		XMLEventBuffer buffer = new XMLEventBuffer(XMLEventFactory.newInstance());
+		TransformerFactory.newInstance().newTransformer().transform(new StreamSource(new StringReader(xml)), new SAXResult(buffer));
+		return buffer.iterator();
+	}
+
+	@Test
+	public void testEvents() throws TransformerException, XMLStreamException {
+		XMLEventIterator input = transform("<r xmlns=\"http://www.daisy.org/ns/2011/obfl\" a=\"1\">ab<b>c</b>d</r>");
+		assertEquals(XMLEvent.START_DOCUMENT, input.nextEvent().getEventType());
+		StartElement root = input.nextEvent().asStartElement();
+		assertEquals(new QName("http://www.daisy.org/ns/2011/obfl", "r"), root.getName());
+		assertEquals("1", root.getAttributeByName(new QName("a")).getValue());
+		assertEquals("ab", input.nextEvent().asCharacters().getData());
+		assertEquals(new QName("http://www.daisy.org/ns/2011/obfl", "b"), input.nextEvent().asStartElement().getName());
+		assertEquals("c", input.nextEvent().asCharacters().getData());
+		assertEquals(new QName("http://www.daisy.org/ns/2011/obfl", "b"), input.nextEvent().asEndElement().getName());
+		assertEquals("d", input.nextEvent().asCharacters().getData());
+		assertEquals(new QName("http://www.daisy.org/ns/2011/obfl", "r"), input.nextEvent().asEndElement().getName());
+		assertEquals(XMLEvent.END_DOCUMENT, input.nextEvent().getEventType());
+		assertFalse(input.hasNext());
+	}
+
+	@Test(expected=TransformerException.class)
+	public void testMoreThanOneRoot() throws TransformerException {
+		XMLEventBuffer buffer = new XMLEventBuffer(XMLEventFactory.newInstance());
+		String xslt = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+				+ "<xsl:template match=\"/\"><a/><b/></xsl:template></xsl:stylesheet>";
+		TransformerFactory.newInstance().newTransformer(new StreamSource(new StringReader(xslt)))
+			.transform(new StreamSource(new StringReader("<x/>")), new SAXResult(buffer));
+	}
+}
@@ -1,15 +1,20 @@
 package org.daisy.dotify.formatter.impl.page;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Optional;
 
+import org.daisy.dotify.api.formatter.CurrentPageField;
 import org.daisy.dotify.api.formatter.FieldList;
 import org.daisy.dotify.api.formatter.FormatterConfiguration;
 import org.daisy.dotify.api.formatter.LayoutMasterProperties;
 import org.daisy.dotify.api.formatter.NoField;
+import org.daisy.dotify.api.formatter.NumeralStyle;
 import org.daisy.dotify.api.formatter.PageTemplateBuilder;
 import org.daisy.dotify.api.formatter.StringField;
+import org.daisy.dotify.api.translator.BrailleTranslator;
 import org.daisy.dotify.api.translator.BrailleTranslatorFactoryMaker;
 import org.daisy.dotify.api.translator.TextBorderFactoryMaker;
 import org.daisy.dotify.api.translator.TranslatorConfigurationException;
@@ -74,4 +79,70 @@ public class FieldResolverTest {
 		assertEquals(10, resolver.getWidth(1, 8));
 	}
 
+	@Test
+	public void testRenderField_Cached() throws TranslatorConfigurationException {
+		FormatterContext fcontext = new FormatterContext(
+			BrailleTranslatorFactoryMaker.newInstance(),
+			TextBorderFactoryMaker.newInstance(),
+			new FormatterConfiguration.Builder("sv-SE", "bypass").build()
+		);
+		LayoutMaster master = new LayoutMaster(fcontext,
+				new LayoutMasterProperties.Builder(10, 8).build());
+		FieldList title = new FieldList.Builder(Arrays.asList(new StringField("Title"))).build();
+		FieldList pagenum = new FieldList.Builder(Arrays.asList(new StringField("p"), new CurrentPageField(NumeralStyle.DEFAULT))).build();
+		PageDetails details = new PageDetails(
+				true,
+				new PageId(0, 0,
+					new SequenceId(
+						0,
+						new DocumentSpace(Space.BODY, null),
+						0
+					)
+				),
+				null,
+				0);
+		FieldResolver resolver = new FieldResolver(master, fcontext, null, details);
+		BrailleTranslator translator = fcontext.getDefaultTranslator();
+		for (int i=0; i<3; i++) {
+			assertEquals("Title", resolver.renderField(details.with(i), title, translator, Optional.empty()).getChars());
+			assertEquals("p" + (i+1), resolver.renderField(details.with(i), pagenum, translator, Optional.empty()).getChars().replace(" ", ""));
+		}
+		// the static list and its field, "p" and three page numbers
+		assertEquals(6, master.getFieldCache().size());
+	}
+
+	@Test
+	public void testRenderField_CachedPerTranslator() throws TranslatorConfigurationException {
+		FormatterContext fcontext = new FormatterContext(
+			BrailleTranslatorFactoryMaker.newInstance(),
+			TextBorderFactoryMaker.newInstance(),
+			new FormatterConfiguration.Builder("sv-SE", "bypass").build()
+		);
+		LayoutMaster master = new LayoutMaster(fcontext,
+				new LayoutMasterProperties.Builder(10, 8).build());
+		FieldList title = new FieldList.Builder(Arrays.asList(new StringField("Title"))).build();
+		PageDetails details = new PageDetails(
+				true,
+				new PageId(0, 0,
+					new SequenceId(
+						0,
+						new DocumentSpace(Space.BODY, null),
+						0
+					)
+				),
+				null,
+				0);
+		FieldResolver resolver = new FieldResolver(master, fcontext, null, details);
+		// two translators of the same class and mode
+		BrailleTranslator t1 = BrailleTranslatorFactoryMaker.newInstance().newTranslator("sv-SE", "bypass");
+		BrailleTranslator t2 = BrailleTranslatorFactoryMaker.newInstance().newTranslator("sv-SE", "bypass");
+		assertEquals("Title", resolver.renderField(details, title, t1, Optional.empty()).getChars());
+		int size = master.getFieldCache().size();
+		assertEquals("Title", resolver.renderField(details, title, t1, Optional.empty()).getChars());
+		assertEquals(size, master.getFieldCache().size());
+		// the entries of the first translator aren't used for the second
+		assertEquals("Title", resolver.renderField(details, title, t2, Optional.empty()).getChars());
+		assertTrue(master.getFieldCache().size()>size);
+	}
+
 }
@@ -0,0 +1,39 @@
+package org.daisy.dotify.formatter.impl.row;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class RowImplTest {
+
+	private static RowImpl newRow(String chars, boolean packed) {
+		return new RowImpl.Builder(chars).build(packed);
+	}
+
+	@Test
+	public void testPacked() {
+		RowImpl packed = newRow("⠁⠃⠀⣿", true);
+		RowImpl plain = newRow("⠁⠃⠀⣿", false);
+		assertTrue(packed.isPacked());
+		assertFalse(plain.isPacked());
+		assertEquals("⠁⠃⠀⣿", packed.getChars());
+		assertEquals(4, packed.getCharCount());
+		assertEquals(4, packed.getWidth());
+		assertEquals(plain, packed);
+		assertEquals(plain.hashCode(), packed.hashCode());
+		assertEquals(packed, newRow("⠁⠃⠀⣿", true));
+		assertNotEquals(packed, newRow("⠁⠃⠀⠀", true));
+		assertEquals(packed, new RowImpl.Builder(packed).build());
+	}
+
+	@Test
+	public void testNotPacked() {
+		assertFalse(newRow("⠁b", true).isPacked());
+		assertFalse(newRow("", true).isPacked());
+		assertEquals("⠁b", newRow("⠁b", true).getChars());
+	}
+}
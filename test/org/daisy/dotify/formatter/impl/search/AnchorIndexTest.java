@@ -0,0 +1,44 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class AnchorIndexTest {
+
+	@Test
+	public void testGetItems() {
+		AnchorIndex index = new AnchorIndex(Arrays.asList(
+				new AnchorData(Arrays.asList("n1", "x", "n2", "n1"), 1),
+				new AnchorData(Arrays.asList("x"), 2),
+				new AnchorData(Arrays.asList("n3"), 3)));
+		List<AnchorData> items = index.getItems("notes", a->a.startsWith("n"));
+		assertEquals(Arrays.asList(
+				new AnchorData(Arrays.asList("n1", "n2"), 1),
+				new AnchorData(Arrays.asList("n3"), 3)), items);
+		assertSame(items, index.getItems("notes", a->a.startsWith("n")));
+		assertEquals(Arrays.asList(
+				new AnchorData(Arrays.asList("x"), 1),
+				new AnchorData(Arrays.asList("x"), 2)), index.getItems("other", a->a.equals("x")));
+	}
+
+	@Test
+	public void testItemAnchorsKeptWhileUnchanged() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		assertNull(crh.getItemAnchors(1, "notes", a->true));
+		crh.setAnchorData(1, Arrays.asList(new AnchorData(Arrays.asList("n1"), 1)));
+		List<AnchorData> items = crh.getItemAnchors(1, "notes", a->true);
+		assertEquals(1, items.size());
+		crh.setAnchorData(1, Arrays.asList(new AnchorData(Arrays.asList("n1"), 1)));
+		assertSame(items, crh.getItemAnchors(1, "notes", a->true));
+		crh.setAnchorData(1, Arrays.asList(new AnchorData(Arrays.asList("n1"), 2)));
+		assertNotSame(items, crh.getItemAnchors(1, "notes", a->true));
+	}
+}
@@ -0,0 +1,83 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class CrossReferenceHandlerTest {
+
+	@Test
+	public void testForkIsolation() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		BlockAddress a = new BlockAddress(1, 1);
+		CrossReferenceHandler.Fork fork = crh.fork();
+		fork.run(()->{
+			assertEquals(Integer.MAX_VALUE, crh.getRowCount(a));
+			crh.setRowCount(a, 5);
+			assertEquals(5, crh.getRowCount(a));
+			assertEquals(null, crh.getPageNumber("x"));
+		});
+		assertFalse(crh.isDirty());
+		assertEquals(Integer.MAX_VALUE, crh.getRowCount(a));
+	}
+
+	@Test
+	public void testMerge() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		BlockAddress a = new BlockAddress(1, 1);
+		CrossReferenceHandler.Fork fork = crh.fork();
+		fork.run(()->{
+			crh.setRowCount(a, 5);
+			crh.getPageNumber("x");
+		});
+		assertTrue(crh.merge(Collections.singletonList(fork)));
+		assertTrue(crh.isDirty());
+		assertEquals(5, crh.getRowCount(a));
+	}
+
+	@Test
+	public void testMergeChanged() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		CrossReferenceHandler.Fork fork = crh.fork();
+		fork.run(()->crh.getVolumeNumber("x"));
+		crh.setVolumeNumber("x", 2);
+		assertFalse(crh.merge(Collections.singletonList(fork)));
+		assertFalse(crh.isDirty());
+	}
+
+	@Test
+	public void testMergeChangedByPrecedingFork() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		BlockAddress a = new BlockAddress(1, 1);
+		CrossReferenceHandler.Fork f1 = crh.fork();
+		CrossReferenceHandler.Fork f2 = crh.fork();
+		f1.run(()->crh.setRowCount(a, 5));
+		f2.run(()->crh.getRowCount(a));
+		assertFalse(crh.merge(Arrays.asList(f1, f2)));
+		assertEquals(Integer.MAX_VALUE, crh.getRowCount(a));
+		assertTrue(crh.merge(Arrays.asList(f2, f1)));
+		assertEquals(5, crh.getRowCount(a));
+	}
+
+	@Test
+	public void testMergeReader() {
+		CrossReferenceHandler crh = new CrossReferenceHandler(true);
+		BlockAddress a = new BlockAddress(1, 1);
+		CrossReferenceHandler.Fork fork = crh.fork();
+		fork.run(()->{
+			Object reader = crh.setReader(a);
+			crh.getPageNumber("x");
+			crh.setReader(reader);
+		});
+		crh.setReader("seq");
+		assertTrue(crh.merge(Collections.singletonList(fork)));
+		assertEquals("seq", crh.setReader(null));
+		assertEquals(Collections.singleton(a), crh.getChangeReport().getChanges("pageRefs").get("x"));
+	}
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+
 import org.junit.Test;
 
 @SuppressWarnings("javadoc")
@@ -55,4 +57,95 @@ public class LookupHandlerTest {
 		assertEquals(34, message.length());
 	}
 
+	@Test
+	public void testChangesWithReaders() {
+		LookupHandler<String, String> lh = new LookupHandler<>(true);
+		lh.put("key2", "value2");
+		lh.setDirty(false);
+		assertEquals("def", lh.get(key1, "def", false, "reader1"));
+		assertEquals("value2", lh.get("key2", "def", false, "reader2"));
+		lh.put("key2", "value2");
+		lh.put(key1, value1);
+		assertTrue(lh.isDirty());
+		assertEquals(2, lh.getRequestedCount());
+		assertEquals(1, lh.getChanges().size());
+		assertEquals(Collections.singleton("reader1"), lh.getChanges().get(key1));
+		lh.setDirty(false);
+		assertTrue(lh.getChanges().isEmpty());
+	}
+
+	@Test
+	public void testChangesWithoutReaders() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.get(key1, "def", false, "reader1");
+		lh.put(key1, value1);
+		assertEquals(Collections.emptySet(), lh.getChanges().get(key1));
+	}
+
+	@Test
+	public void testChangeReport() {
+		CrossReferenceHandler crh = new CrossReferenceHandler(true);
+		crh.setReader("reader1");
+		crh.getPageNumber("a");
+		crh.setReader(null);
+		crh.setPageNumber("a", 3);
+		ChangeReport report = crh.getChangeReport();
+		assertTrue(report.hasChanges());
+		assertEquals(1, report.getChangedCount("pageRefs"));
+		assertEquals(Collections.singleton("reader1"), report.getChanges("pageRefs").get("a"));
+		assertEquals(0, report.getChangedCount("variables"));
+		crh.setDirty(false);
+		assertFalse(crh.getChangeReport().hasChanges());
+	}
+
+	@Test
+	public void testSeedConfirmed() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.seed(Collections.singletonMap(key1, value1));
+		assertEquals(value1, lh.get(key1, "def"));
+		assertFalse(lh.isDirty());
+		lh.put(key1, value1);
+		lh.releaseSeed();
+		assertFalse(lh.isDirty());
+	}
+
+	@Test
+	public void testSeedChanged() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.seed(Collections.singletonMap(key1, value1));
+		assertEquals(value1, lh.get(key1, "def"));
+		lh.put(key1, "other");
+		assertTrue(lh.isDirty());
+		assertTrue(lh.getChanges().containsKey(key1));
+	}
+
+	@Test
+	public void testSeedNotConfirmed() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.seed(Collections.singletonMap(key1, value1));
+		assertEquals(value1, lh.get(key1, "def"));
+		assertFalse(lh.isDirty());
+		lh.releaseSeed();
+		assertTrue(lh.isDirty());
+		lh.setDirty(false);
+		// the seed is gone
+		assertEquals("def", lh.get(key1, "def"));
+	}
+
+	@Test
+	public void testSeedNotRequested() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.seed(Collections.singletonMap(key1, value1));
+		lh.releaseSeed();
+		assertFalse(lh.isDirty());
+		assertTrue(lh.getValues().isEmpty());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testSeedNotEmpty() {
+		LookupHandler<String, String> lh = new LookupHandler<>();
+		lh.put(key1, value1);
+		lh.seed(Collections.singletonMap(key1, value1));
+	}
+
 }
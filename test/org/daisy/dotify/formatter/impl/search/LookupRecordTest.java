@@ -0,0 +1,55 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class LookupRecordTest {
+
+	@Test
+	public void testUnchanged() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		crh.setPageNumber("a", 3);
+		LookupRecord record = new LookupRecord();
+		crh.setLookupRecord(record);
+		assertEquals(Integer.valueOf(3), crh.getPageNumber("a"));
+		assertEquals(1, crh.getVolumeCount());
+		crh.setLookupRecord(null);
+		assertEquals(2, record.size());
+		assertTrue(record.isUnchanged());
+	}
+
+	@Test
+	public void testChanged() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		LookupRecord record = new LookupRecord();
+		crh.setLookupRecord(record);
+		assertEquals(null, crh.getPageNumber("a"));
+		crh.setLookupRecord(null);
+		crh.setPageNumber("a", 3);
+		assertFalse(record.isUnchanged());
+	}
+
+	@Test
+	public void testRepeatedLookupsAreRecordedOnce() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		LookupRecord record = new LookupRecord();
+		crh.setLookupRecord(record);
+		crh.getRowCount(new BlockAddress(1, 1));
+		crh.getRowCount(new BlockAddress(1, 1));
+		assertEquals(1, record.size());
+	}
+
+	@Test
+	public void testReadOnlyLookupsAreNotRecorded() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		LookupRecord record = new LookupRecord();
+		crh.setLookupRecord(record);
+		crh.setReadOnly();
+		crh.getPageNumber("a");
+		assertEquals(0, record.size());
+	}
+}
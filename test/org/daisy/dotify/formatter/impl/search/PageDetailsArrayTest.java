@@ -0,0 +1,36 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class PageDetailsArrayTest {
+
+	@Test
+	public void testSetBeyondEnd() {
+		PageDetailsArray a = new PageDetailsArray();
+		PageDetails p = new PageDetails(true, new PageId(40, 0, new SequenceId(0, DocumentSpace.BODY, 0)), null, 0);
+		assertNull(a.set(40, p));
+		assertEquals(41, a.size());
+		assertNull(a.get(39));
+		assertEquals(p, a.get(40));
+		assertNull(a.getOrNull(41));
+		assertEquals(1, a.getSetCount());
+		assertEquals(40, a.getSetIndex(0));
+	}
+
+	@Test
+	public void testClear() {
+		PageDetailsArray a = new PageDetailsArray();
+		PageDetails p = new PageDetails(true, new PageId(3, 0, new SequenceId(0, DocumentSpace.BODY, 0)), null, 0);
+		a.set(3, p);
+		a.set(3, p);
+		assertEquals(1, a.getSetCount());
+		a.clear();
+		assertEquals(0, a.size());
+		assertEquals(0, a.getSetCount());
+		assertNull(a.getOrNull(3));
+	}
+}
@@ -0,0 +1,115 @@
+package org.daisy.dotify.formatter.impl.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ReferenceSnapshotTest {
+
+	private static CrossReferenceHandler newHandler() {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		crh.setPageNumber("a", 3);
+		crh.setVolumeNumber("a", 1);
+		crh.setVolumeCount(2);
+		crh.setSheetsInVolume(1, 10);
+		crh.setAnchorData(1, Arrays.asList(new AnchorData(Arrays.asList("n1", "n2"), 3)));
+		crh.keepBreakable(new SheetIdentity(Space.BODY, null, 0, 4), false);
+		crh.keepBreakable(new SheetIdentity(Space.PRE_CONTENT, 2, null, 1), true);
+		crh.commitBreakable();
+		crh.setOverhead(1, new Overhead(2, 1));
+		return crh;
+	}
+
+	private static ReferenceSnapshot copy(ReferenceSnapshot snapshot) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.write(out);
+		return ReferenceSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		ReferenceSnapshot expected = newHandler().getSnapshot();
+		ReferenceSnapshot actual = copy(expected);
+		assertEquals(expected.getPageRefs(), actual.getPageRefs());
+		assertEquals(expected.getVolumeRefs(), actual.getVolumeRefs());
+		assertEquals(expected.getVariables(), actual.getVariables());
+		assertEquals(expected.getAnchors(), actual.getAnchors());
+		assertEquals(expected.getBreakable(), actual.getBreakable());
+		assertEquals(1, actual.getOverhead().size());
+		assertEquals(2, actual.getOverhead().get(1).getPreContentSize());
+		assertEquals(1, actual.getOverhead().get(1).getPostContentSize());
+	}
+
+	@Test(expected=IOException.class)
+	public void testReadInvalid() throws IOException {
+		ReferenceSnapshot.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+	}
+
+	@Test(expected=IOException.class)
+	public void testReadOversizedCount() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		newHandler().getSnapshot().write(out);
+		byte[] data = out.toByteArray();
+		// overwrite the number of page references, which follows the magic number and the version
+		ByteArrayOutputStream modified = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(modified);
+		dos.write(data, 0, 8);
+		dos.writeInt(Integer.MAX_VALUE);
+		dos.write(data, 12, data.length-12);
+		ReferenceSnapshot.read(new ByteArrayInputStream(modified.toByteArray()));
+	}
+
+	@Test
+	public void testSeedUnchanged() throws IOException {
+		ReferenceSnapshot snapshot = copy(newHandler().getSnapshot());
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		crh.seed(snapshot);
+		assertEquals(Integer.valueOf(3), crh.getPageNumber("a"));
+		assertEquals(2, crh.getVolumeCount());
+		assertEquals(2, crh.getOverhead(1).getPreContentSize());
+		assertFalse(crh.getBreakable(new SheetIdentity(Space.BODY, null, 0, 4)));
+		assertEquals(1, crh.getItemAnchors(1, "notes", v->v.equals("n2")).size());
+		assertFalse(crh.isDirty());
+		// the actual values
+		CrossReferenceHandler actual = newHandler();
+		crh.setPageNumber("a", 3);
+		crh.setVolumeCount(2);
+		crh.setAnchorData(1, actual.getAnchorData(1));
+		crh.keepBreakable(new SheetIdentity(Space.BODY, null, 0, 4), false);
+		crh.commitBreakable();
+		crh.setOverhead(1, new Overhead(2, 1));
+		crh.releaseSeed();
+		assertFalse(crh.isDirty());
+	}
+
+	@Test
+	public void testSeedChanged() throws IOException {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		crh.seed(copy(newHandler().getSnapshot()));
+		assertEquals(Integer.valueOf(3), crh.getPageNumber("a"));
+		assertEquals(2, crh.getOverhead(1).getPreContentSize());
+		crh.setPageNumber("a", 3);
+		crh.setOverhead(1, new Overhead(3, 1));
+		crh.releaseSeed();
+		assertTrue(crh.isDirty());
+	}
+
+	@Test
+	public void testSeedNotConfirmed() throws IOException {
+		CrossReferenceHandler crh = new CrossReferenceHandler();
+		crh.seed(copy(newHandler().getSnapshot()));
+		assertEquals(Integer.valueOf(1), crh.getVolumeNumber("a"));
+		assertFalse(crh.isDirty());
+		crh.releaseSeed();
+		assertTrue(crh.isDirty());
+	}
+}
@@ -1,12 +1,19 @@
 package org.daisy.dotify.formatter.impl.search;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.daisy.dotify.api.formatter.Marker;
+import org.daisy.dotify.api.formatter.MarkerReferenceField;
+import org.daisy.dotify.api.formatter.MarkerReferenceField.MarkerSearchDirection;
+import org.daisy.dotify.api.formatter.MarkerReferenceField.MarkerSearchScope;
 import org.junit.Test;
 
 @SuppressWarnings("javadoc")
@@ -33,6 +40,68 @@ public class SearchInfoTest {
 		assertEquals(6, seq.size());
 	}
 	
+	@Test
+	public void testFindMarkerInVolumeAndDocument() {
+		SearchInfo si = new SearchInfo();
+		Map<Integer, ArrayList<Marker>> markers = new HashMap<>();
+		markers.put(1, new ArrayList<>(Arrays.asList(new Marker("chapter", "A"), new Marker("chapter", "B"))));
+		markers.put(4, new ArrayList<>(Collections.singletonList(new Marker("chapter", "C"))));
+		addPages(si, 3, 0, true, 0, 0, DocumentSpace.BODY, 0, markers);
+		addPages(si, 3, 3, true, 0, 1, DocumentSpace.BODY, 0, markers);
+		si.setVolumeScope(1, 0, 3, DocumentSpace.BODY);
+		si.setVolumeScope(2, 3, 6, DocumentSpace.BODY);
+		si.setSequenceScope(new SequenceId(0, DocumentSpace.BODY, 0), 0, 3);
+		si.setSequenceScope(new SequenceId(1, DocumentSpace.BODY, 0), 3, 6);
+		View<PageDetails> doc = si.getPageView(DocumentSpace.BODY);
+
+		MarkerReferenceField volBack = new MarkerReferenceField("chapter", MarkerSearchDirection.BACKWARD, MarkerSearchScope.VOLUME);
+		MarkerReferenceField volFwd = new MarkerReferenceField("chapter", MarkerSearchDirection.FORWARD, MarkerSearchScope.VOLUME);
+		MarkerReferenceField docBack = new MarkerReferenceField("chapter", MarkerSearchDirection.BACKWARD, MarkerSearchScope.DOCUMENT);
+		MarkerReferenceField seqBack = new MarkerReferenceField("chapter", MarkerSearchDirection.BACKWARD, MarkerSearchScope.SEQUENCE);
+		assertEquals("B", si.findMarker(doc.get(2), volBack));
+		assertEquals("A", si.findMarker(doc.get(0), volFwd));
+		assertEquals("", si.findMarker(doc.get(3), volBack));
+		assertEquals("C", si.findMarker(doc.get(5), volBack));
+		assertEquals("B", si.findMarker(doc.get(3), docBack));
+		assertEquals("", si.findMarker(doc.get(3), seqBack));
+		assertEquals("", si.findMarker(doc.get(0), docBack));
+	}
+
+	@Test
+	public void testVolumeScopeChangeIsDirtyAfterVolumeSearch() {
+		SearchInfo si = new SearchInfo();
+		addPages(si, 6, 0, true, 0, 0, DocumentSpace.BODY, 0);
+		si.setVolumeScope(1, 0, 3, DocumentSpace.BODY);
+		si.setDirty(false);
+		si.findMarker(si.getPageView(DocumentSpace.BODY).get(1), new MarkerReferenceField("chapter", MarkerSearchDirection.BACKWARD, MarkerSearchScope.VOLUME));
+		si.setVolumeScope(1, 0, 3, DocumentSpace.BODY);
+		assertFalse(si.isDirty());
+		si.setVolumeScope(1, 0, 4, DocumentSpace.BODY);
+		assertTrue(si.isDirty());
+	}
+
+	@Test
+	public void testFindMarkerAfterRecommit() {
+		SearchInfo si = new SearchInfo();
+		Map<Integer, ArrayList<Marker>> markers = new HashMap<>();
+		markers.put(1, new ArrayList<>(Collections.singletonList(new Marker("chapter", "A"))));
+		addPages(si, 4, 0, true, 0, 0, DocumentSpace.BODY, 0, markers);
+		si.setSequenceScope(new SequenceId(0, DocumentSpace.BODY, 0), 0, 6);
+		MarkerReferenceField docBack = new MarkerReferenceField("chapter", MarkerSearchDirection.BACKWARD, MarkerSearchScope.DOCUMENT);
+		MarkerReferenceField docFwd = new MarkerReferenceField("chapter", MarkerSearchDirection.FORWARD, MarkerSearchScope.DOCUMENT);
+		assertEquals("A", si.findMarker(si.getPageView(DocumentSpace.BODY).get(3), docBack));
+		// The marker moves from the second page to the third, and two pages are added
+		markers.clear();
+		markers.put(2, new ArrayList<>(Collections.singletonList(new Marker("chapter", "B"))));
+		markers.put(5, new ArrayList<>(Collections.singletonList(new Marker("chapter", "C"))));
+		addPages(si, 6, 0, true, 0, 0, DocumentSpace.BODY, 0, markers);
+		View<PageDetails> doc = si.getPageView(DocumentSpace.BODY);
+		assertEquals("", si.findMarker(doc.get(1), docBack));
+		assertEquals("B", si.findMarker(doc.get(3), docBack));
+		assertEquals("B", si.findMarker(doc.get(0), docFwd));
+		assertEquals("C", si.findMarker(doc.get(3), docFwd));
+	}
+
 	private static void addPages(SearchInfo si, int count, int offset, boolean duplex, int globalStartIndex, int sequenceId, DocumentSpace space, Integer volumeGroup) {
 		addPages(si, count, offset, duplex, globalStartIndex, sequenceId, space, volumeGroup, Collections.emptyMap());
 	}
@@ -0,0 +1,37 @@
+package org.daisy.dotify.formatter.impl.sheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.daisy.dotify.formatter.impl.search.DocumentSpace;
+import org.daisy.dotify.formatter.impl.search.SequenceId;
+import org.daisy.dotify.formatter.impl.search.Space;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SequenceCacheTest {
+
+	@Test
+	public void testInvalidateByCollection() {
+		SequenceCache cache = new SequenceCache();
+		DocumentSpace body = new DocumentSpace(Space.BODY, null);
+		SequenceId plain = new SequenceId(1, body, 0);
+		SequenceId notes = new SequenceId(2, body, 0);
+		SequenceId other = new SequenceId(3, body, 0);
+		SequenceCache.StartState state = new SequenceCache.StartState(0, 0, 0, null);
+		cache.record(plain, state, null).finish(null);
+		cache.record(notes, state, "footnotes").finish(null);
+		cache.record(other, state, "sidenotes").finish(null);
+		cache.invalidate(new HashSet<>(Arrays.asList("footnotes", "endnotes")));
+		assertEquals(2, cache.size());
+		assertNotNull(cache.replay(plain, state));
+		assertNull(cache.replay(notes, state));
+		assertNotNull(cache.replay(other, state));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,77 @@
+package org.daisy.dotify.formatter.impl.volume;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.daisy.dotify.formatter.impl.core.Block;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+@SuppressWarnings("javadoc")
+public class BlockSequenceManipulatorTest {
+
+	private static List<Block> newBlocks(int count) {
+		List<Block> ret = new ArrayList<>();
+		for (int i=0; i<count; i++) {
+			// stub only, so that the calls aren't recorded
+			Block b = Mockito.mock(Block.class, Mockito.withSettings().stubOnly());
+			Mockito.when(b.getBlockIdentifier()).thenReturn("b"+i);
+			ret.add(b);
+		}
+		return ret;
+	}
+
+	@Test
+	public void testManyInsertsAndRemovals() {
+		List<Block> blocks = newBlocks(40);
+		List<Block> expected = new ArrayList<>(blocks.subList(0, 20));
+		List<Block> unused = new ArrayList<>(blocks.subList(20, 40));
+		BlockSequenceManipulator m = new BlockSequenceManipulator(null, null);
+		m.appendGroup(expected);
+		Random r = new Random(7);
+		// enough operations to overflow the stack if the views were nested
+		for (int i=0; i<20000; i++) {
+			int op = r.nextInt(3);
+			if (op==0 && !unused.isEmpty() && !expected.isEmpty()) {
+				Block b = unused.remove(r.nextInt(unused.size()));
+				int index = r.nextInt(expected.size());
+				m.insertGroup(Collections.singletonList(b), expected.get(index).getBlockIdentifier());
+				expected.add(index, b);
+			} else if (op==1 && !unused.isEmpty()) {
+				Block b = unused.remove(r.nextInt(unused.size()));
+				m.appendGroup(Arrays.asList(b));
+				expected.add(b);
+			} else if (!expected.isEmpty()) {
+				Block b = expected.remove(r.nextInt(expected.size()));
+				m.removeGroup(b.getBlockIdentifier());
+				unused.add(b);
+			}
+		}
+		assertEquals(expected, m.getBlocks());
+		m.appendGroup(unused);
+		expected.addAll(unused);
+		assertEquals(expected, m.getBlocks());
+		int size = expected.size();
+		assertEquals(expected.subList(1, size-1), m.getBlocks().subList(1, size-1));
+		assertEquals(expected.subList(2, size/2), m.getBlocks().subList(1, size-1).subList(1, size/2-1));
+	}
+
+	@Test
+	public void testRemoveRange() {
+		List<Block> blocks = newBlocks(10);
+		BlockSequenceManipulator m = new BlockSequenceManipulator(null, null);
+		m.appendGroup(blocks.subList(0, 5));
+		m.appendGroup(blocks.subList(5, 10));
+		m.removeRange("b3", "b7");
+		List<Block> expected = new ArrayList<>(blocks.subList(0, 3));
+		expected.addAll(blocks.subList(7, 10));
+		assertEquals(expected, m.getBlocks());
+		m.removeTail("b1");
+		assertEquals(blocks.subList(0, 2), m.getBlocks());
+	}
+}
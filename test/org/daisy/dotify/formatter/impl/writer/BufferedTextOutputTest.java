@@ -0,0 +1,50 @@
+package org.daisy.dotify.formatter.impl.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class BufferedTextOutputTest {
+
+	@Test
+	public void testLongerThanBuffer() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StringBuilder exp = new StringBuilder();
+		try (BufferedTextOutput out = new BufferedTextOutput(os, StandardCharsets.UTF_8, 16)) {
+			for (int i=0; i<100; i++) {
+				out.append("⠁⠃⠉").append(i).append('x').append(i%2==0);
+				exp.append("⠁⠃⠉").append(i).append('x').append(i%2==0);
+			}
+		}
+		assertEquals(exp.toString(), new String(os.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSurrogatePairAtBufferBoundary() throws IOException {
+		String text = "0123456789abcde𝄞fgh";
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (BufferedTextOutput out = new BufferedTextOutput(os, StandardCharsets.UTF_8, 16)) {
+			out.append(text);
+		}
+		assertEquals(text, new String(os.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testMalformedInputIsReplaced() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (BufferedTextOutput out = new BufferedTextOutput(os, StandardCharsets.UTF_8)) {
+			out.append("a\uD834b");
+		}
+		assertEquals("a?b", new String(os.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBufferSize() {
+		new BufferedTextOutput(new ByteArrayOutputStream(), StandardCharsets.UTF_8, 8);
+	}
+}
@@ -2,17 +2,25 @@ package org.daisy.dotify.formatter.impl.writer;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.namespace.QName;
 
 import org.daisy.dotify.api.writer.AttributeItem;
 import org.daisy.dotify.api.writer.MetaDataItem;
+import org.daisy.dotify.api.writer.PagedMediaWriterConfigurationException;
 import org.daisy.dotify.api.writer.PagedMediaWriterException;
+import org.daisy.dotify.api.writer.Row;
+import org.daisy.dotify.api.writer.SectionProperties;
 import org.junit.Test;
 
 @SuppressWarnings("javadoc")
@@ -51,4 +59,81 @@ public class PEFMediaWriterTest {
 				+ "</pef>";
 		assertEquals(exp, w.toString().replaceAll("[\\r\\n]+", ""));
 	}
+
+	@Test
+	public void testGzip() throws PagedMediaWriterException, IOException {
+		Properties props = new Properties();
+		props.setProperty(PEFMediaWriter.GZIP_KEY, "true");
+		PEFMediaWriter p = new PEFMediaWriter(props);
+		p.prepare(new ArrayList<>());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		p.open(os);
+		SectionProperties sp = new SectionProperties() {
+			@Override
+			public int getPageWidth() {
+				return 10;
+			}
+			@Override
+			public int getPageHeight() {
+				return 20;
+			}
+			@Override
+			public float getRowSpacing() {
+				return 1;
+			}
+			@Override
+			public boolean duplex() {
+				return true;
+			}
+		};
+		p.newSection(sp);
+		p.newPage();
+		p.newRow(new Row() {
+			@Override
+			public String getChars() {
+				return "⠁⠃";
+			}
+			@Override
+			public Float getRowSpacing() {
+				return null;
+			}
+		});
+		p.newRow();
+		p.close();
+		String res;
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] b = new byte[1024];
+			int len;
+			while ((len = is.read(b))>-1) {
+				bytes.write(b, 0, len);
+			}
+			res = new String(bytes.toByteArray(), StandardCharsets.UTF_8).replaceAll("[\\r\\n]+", "");
+		}
+		String body = res.substring(res.indexOf("<body>"));
+		assertEquals("<body>"
+				+ "<volume cols=\"10\" rows=\"20\" rowgap=\"0\" duplex=\"true\">"
+				+ "<section>"
+				+ "<page>"
+				+ "<row>⠁⠃</row>"
+				+ "<row/>"
+				+ "</page>"
+				+ "</section>"
+				+ "</volume>"
+				+ "</body>"
+				+ "</pef>", body);
+	}
+
+	@Test(expected=PagedMediaWriterConfigurationException.class)
+	public void testGzipFeatureNull() throws PagedMediaWriterConfigurationException {
+		new PEFMediaWriterFactory().setFeature(PEFMediaWriter.GZIP_KEY, null);
+	}
+
+	@Test
+	public void testGzipFeature() throws PagedMediaWriterConfigurationException {
+		PEFMediaWriterFactory f = new PEFMediaWriterFactory();
+		assertEquals(false, f.getFeature(PEFMediaWriter.GZIP_KEY));
+		f.setFeature(PEFMediaWriter.GZIP_KEY, true);
+		assertEquals(true, f.getFeature(PEFMediaWriter.GZIP_KEY));
+	}
 }